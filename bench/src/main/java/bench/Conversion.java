@@ -0,0 +1,49 @@
+package bench;
+
+import engine.BoardState;
+import engine.CompactBoard;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copying boards and converting them to and from compact boards and FEN strings.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Conversion {
+    @Benchmark
+    public BoardState copy(Position p) {
+        return p.board.copy();
+    }
+
+    @Benchmark
+    public CompactBoard compact(Position p) {
+        return p.board.compact();
+    }
+
+    @Benchmark
+    public long load(Position p) {
+        p.target.load(p.compact);
+        return p.target.getWhitePawns();
+    }
+
+    @Benchmark
+    public String fenString(Position p) {
+        return p.board.fenString(true);
+    }
+
+    @Benchmark
+    public BoardState fenParse(Position p) {
+        return new BoardState(p.fen);
+    }
+}
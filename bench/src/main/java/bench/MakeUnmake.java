@@ -0,0 +1,62 @@
+package bench;
+
+import engine.BoardState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Making moves and building children. One operation covers every white move of the position (every pseudo move for
+ * identifyWhiteMove), so compare positions by their number of moves.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MakeUnmake {
+    @Benchmark
+    public long makeUnmake(Position p) {
+        BoardState bs = p.board;
+        long sum = 0;
+        for (int m : p.moves) {
+            bs.whiteMove(m);
+            sum += bs.zobrist();
+            bs.undoWhiteMove(m);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public void makeCompactUnmake(Position p, Blackhole bh) {
+        BoardState bs = p.board;
+        for (int m : p.moves) {
+            bs.whiteMove(m);
+            bh.consume(bs.compact());
+            bs.undoWhiteMove(m);
+        }
+    }
+
+    @Benchmark
+    public void childAfter(Position p, Blackhole bh) {
+        for (int m : p.moves) {
+            bh.consume(p.board.whiteChildAfter(m));
+        }
+    }
+
+    @Benchmark
+    public long identifyWhiteMove(Position p) {
+        long sum = 0;
+        for (int m : p.pseudoMoves) {
+            sum += p.board.identifyWhiteMove(m);
+        }
+        return sum;
+    }
+}
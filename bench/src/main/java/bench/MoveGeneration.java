@@ -0,0 +1,54 @@
+package bench;
+
+import engine.Move;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Move generators, one call per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoveGeneration {
+    @Benchmark
+    public int whiteMoves(Position p) {
+        return p.board.whiteMoves(p.buffer);
+    }
+
+    @Benchmark
+    public int whitePseudoMoves(Position p) {
+        return p.board.whitePseudoMoves(p.buffer);
+    }
+
+    // the Move list API, for its allocation rate
+    @Benchmark
+    public List<Move> whitePseudoMovesList(Position p) {
+        return p.board.whitePseudoMoves();
+    }
+
+    @Benchmark
+    public int whiteQuietMoves(Position p) {
+        return p.board.whiteQuietMoves(p.buffer);
+    }
+
+    @Benchmark
+    public int whiteCaptureMoves(Position p) {
+        return p.board.whiteCaptureMoves(p.buffer);
+    }
+
+    @Benchmark
+    public int blackMoves(Position p) {
+        return p.board.blackMoves(p.buffer);
+    }
+}
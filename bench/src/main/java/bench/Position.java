@@ -0,0 +1,46 @@
+package bench;
+
+import engine.BoardState;
+import engine.CompactBoard;
+import engine.PackedMove;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+
+/**
+ * One position of the benchmark set with everything the benchmarks need precomputed, so results are reported per
+ * position. The set is the built in perft suite of Perft plus one position with en passant.
+ */
+@State(Scope.Thread)
+public class Position {
+    @Param({
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+            "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+            "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+            "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+            "rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3",
+    })
+    public String fen;
+
+    public BoardState board;
+    public CompactBoard compact;
+    // full and pseudo moves of white
+    public int[] moves, pseudoMoves;
+
+    // scratch space
+    public final BoardState target = new BoardState();
+    public final int[] buffer = new int[PackedMove.MAX_MOVES], senses = new int[64];
+
+    @Setup
+    public void setup() {
+        board = new BoardState(fen);
+        compact = board.compact();
+        moves = Arrays.copyOf(buffer, board.whiteMoves(buffer));
+        pseudoMoves = Arrays.copyOf(buffer, board.whitePseudoMoves(buffer));
+    }
+}
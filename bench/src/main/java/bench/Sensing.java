@@ -0,0 +1,38 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sense results of every square that can be sensed, square by square and all at once.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Sensing {
+    @Benchmark
+    public int sense(Position p) {
+        int sum = 0;
+        for (int i = 1; i <= 6; i++) {
+            for (int j = 1; j <= 6; j++) {
+                sum += p.board.sense(true, 8 * j + i);
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int[] senseAll(Position p) {
+        p.board.senseAll(true, p.senses);
+        return p.senses;
+    }
+}
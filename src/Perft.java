@@ -0,0 +1,399 @@
+import engine.BoardState;
+import engine.Move;
+import engine.PackedMove;
+import engine.Piece;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Perft and divide for engine.BoardState.
+ *
+ * Counts the leaves of either the full move tree (whiteMoves/blackMoves) or the RBMC pseudo move tree, where every move
+ * a player can request is identified against the board so its blocked and invalid outcomes are followed as well.
+ * Root moves can be searched in parallel on a fork join pool and subtree counts can be cached in a zobrist keyed table.
+ *
+ * Usage: java Perft [-d depth] [-pseudo] [-divide] [-threads n] [-hash mb] [-repeat n] [-suite [file]] [fen]
+ *        java Perft -jit [-pseudo] [-compare classpath]
+ * A suite file has one position per line as "fen ; depth ; nodes ; pseudo nodes", the built in suite is used if no file
+ * is given. The node counts are optional and only checked at the depth of the line, any mismatch exits with status 1.
+ * -repeat runs every position n times.
+ *
+ * -jit runs the built in suite in a child JVM with -XX:+PrintCompilation and checks that the generator driver and every
+ * kernel it calls get compiled by C2 (tier 4), either on their own or inlined into a C2 compiled caller. It exits with
+ * status 1 if one does not. It then compares the throughput of the last suite run with that of a child JVM without C2
+ * (-XX:TieredStopAtLevel=3), or with that of the engine classes in the -compare classpath, which are put before the
+ * classes of this build.
+ */
+public class Perft {
+    private static final String[] suite = {
+            // RBMC rules, so kings can be left in check and captured, and the counts differ from standard chess
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1 ; 5 ; 6027090 ; 49972627",
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1 ; 4 ; 4592307 ; 11331702",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1 ; 5 ; 2097684 ; 7630170",
+            "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1 ; 4 ; 3835104 ; 17228158",
+            "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8 ; 4 ; 2855679 ; 10150010",
+            "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10 ; 4 ; 4571058 ; 11774361",
+    };
+
+    // methods of engine.BoardState that -jit expects C2 to compile, for the full and the pseudo move tree
+    private static final String[] fullMethods = {"moves", "stepMoves", "slideMoves", "castlingMoves", "pawnCaptures", "pawnPushes"};
+    private static final String[] pseudoMethods = {"pseudoMoves", "stepMoves", "slidePseudoMoves", "rayMoves", "castlingMoves", "pawnCaptures", "pawnPushes"};
+    // suite runs of a -jit child JVM, enough for every method to reach C2
+    private static final int jitRepeats = 3;
+
+    private final boolean pseudo;
+    // transposition table, an entry is valid iff key ^ count matches the key of the position
+    private final long[] hashKeys, hashCounts;
+    private final int hashMask;
+
+    public Perft(boolean pseudo, int hashMb) {
+        this.pseudo = pseudo;
+        if (hashMb > 0) {
+            int size = Integer.highestOneBit((int) Math.min(1L << 30, (hashMb * (1L << 20)) / 16));
+            hashKeys = new long[size];
+            hashCounts = new long[size];
+            hashMask = size - 1;
+        }
+        else {
+            hashKeys = hashCounts = null;
+            hashMask = 0;
+        }
+    }
+
+    public long perft(BoardState bs, boolean white, int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+        return search(bs, white, depth, new int[depth + 1][PackedMove.MAX_MOVES]);
+    }
+
+    // returns the leaf count below each root move, in the order of moves
+    public long[] divide(BoardState bs, boolean white, int depth, int[] moves, int n, ForkJoinPool pool) {
+        long[] counts = new long[n];
+        if (pool == null) {
+            int[][] buffers = new int[depth][PackedMove.MAX_MOVES];
+            for (int i = 0; i < n; i++) {
+                counts[i] = subtree(bs, white, depth, moves[i], buffers);
+            }
+        }
+        else {
+            List<RecursiveTask<Long>> tasks = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                BoardState copy = bs.copy();
+                int m = moves[i];
+                tasks.add(new RecursiveTask<Long>() {
+                    protected Long compute() {
+                        return subtree(copy, white, depth, m, new int[depth][PackedMove.MAX_MOVES]);
+                    }
+                });
+            }
+            for (RecursiveTask<Long> task : tasks) {
+                pool.execute(task);
+            }
+            for (int i = 0; i < n; i++) {
+                counts[i] = tasks.get(i).join();
+            }
+        }
+        return counts;
+    }
+
+    // root moves of bs, identified in pseudo mode
+    public int rootMoves(BoardState bs, boolean white, int[] moves) {
+        return generate(bs, white, moves, true);
+    }
+
+    private long subtree(BoardState bs, boolean white, int depth, int m, int[][] buffers) {
+        if (white) {
+            bs.whiteMove(m);
+        }
+        else {
+            bs.blackMove(m);
+        }
+        long nodes = depth == 1 ? 1 : search(bs, !white, depth - 1, buffers);
+        if (white) {
+            bs.undoWhiteMove(m);
+        }
+        else {
+            bs.undoBlackMove(m);
+        }
+        return nodes;
+    }
+
+    private long search(BoardState bs, boolean white, int depth, int[][] buffers) {
+        long key = 0;
+        if (hashKeys != null && depth > 1) {
+            key = bs.zobrist() ^ (white ? 0 : 0x9E3779B97F4A7C15L) ^ (depth * 0xC2B2AE3D27D4EB4FL);
+            int i = (int) key & hashMask;
+            long count = hashCounts[i];
+            if ((hashKeys[i] ^ count) == key) {
+                return count;
+            }
+        }
+
+        int[] moves = buffers[depth];
+        // leaves are only counted, so pseudo moves do not need to be identified
+        int n = generate(bs, white, moves, depth > 1);
+        if (depth == 1) {
+            return n;
+        }
+        long nodes = 0;
+        for (int i = 0; i < n; i++) {
+            nodes += subtree(bs, white, depth, moves[i], buffers);
+        }
+
+        if (hashKeys != null) {
+            int i = (int) key & hashMask;
+            hashKeys[i] = key ^ nodes;
+            hashCounts[i] = nodes;
+        }
+        return nodes;
+    }
+
+    private int generate(BoardState bs, boolean white, int[] moves, boolean identify) {
+        if (!pseudo) {
+            return white ? bs.whiteMoves(moves) : bs.blackMoves(moves);
+        }
+        int n = white ? bs.whitePseudoMoves(moves) : bs.blackPseudoMoves(moves);
+        if (identify) {
+            for (int i = 0; i < n; i++) {
+                moves[i] = white ? bs.identifyWhiteMove(moves[i]) : bs.identifyBlackMove(moves[i]);
+            }
+        }
+        return n;
+    }
+
+    private static String moveString(int m) {
+        if (PackedMove.kind(m) == PackedMove.INVALID && PackedMove.from(m) == PackedMove.to(m)) {
+            return "invalid move";
+        }
+        Piece r = PackedMove.promotion(m);
+        return new Move(m) + (r == Piece.NONE ? "" : " " + r);
+    }
+
+    // prints the perft of fen and returns its node count
+    private static long run(String fen, int depth, boolean pseudo, boolean divide, int threads, int hashMb) {
+        BoardState bs = new BoardState(fen);
+        boolean white = fen.split(" ")[1].equals("w");
+        Perft perft = new Perft(pseudo, hashMb);
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+
+        long start = System.nanoTime(), nodes = 0;
+        if (depth > 0 && (divide || pool != null)) {
+            int[] moves = new int[PackedMove.MAX_MOVES];
+            int n = perft.rootMoves(bs, white, moves);
+            long[] counts = perft.divide(bs, white, depth, moves, n, pool);
+            for (int i = 0; i < n; i++) {
+                if (divide) {
+                    System.out.println(moveString(moves[i]) + ": " + counts[i]);
+                }
+                nodes += counts[i];
+            }
+        }
+        else {
+            nodes = perft.perft(bs, white, depth);
+        }
+        long time = System.nanoTime() - start;
+        if (pool != null) {
+            pool.shutdown();
+        }
+
+        System.out.println(fen);
+        System.out.println("Depth: " + depth + (pseudo ? " (pseudo)" : ""));
+        System.out.println("Nodes: " + nodes);
+        System.out.println("Time: " + time / 1000000000.0);
+        System.out.println("nps: " + (long) (nodes * 1000000000.0 / Math.max(time, 1)));
+        System.out.println();
+        return nodes;
+    }
+
+    // the output of the built in suite run jitRepeats times in a child JVM with classpath and the given JVM options
+    private static List<String> child(String classpath, boolean pseudo, String... options) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(List.of(options));
+        command.addAll(List.of("-cp", classpath, "Perft", "-suite", "-repeat", String.valueOf(jitRepeats)));
+        if (pseudo) {
+            command.add("-pseudo");
+        }
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                lines.add(line);
+            }
+        }
+        if (process.waitFor() != 0) {
+            lines.add("exit status " + process.exitValue());
+        }
+        return lines;
+    }
+
+    // nodes per second of the last suite run in the output of a child JVM
+    private static double nps(List<String> lines) {
+        List<Long> nodes = new ArrayList<>();
+        List<Double> times = new ArrayList<>();
+        for (String line : lines) {
+            if (line.startsWith("Nodes: ")) {
+                nodes.add(Long.parseLong(line.substring(7)));
+            }
+            else if (line.startsWith("Time: ")) {
+                times.add(Double.parseDouble(line.substring(6)));
+            }
+        }
+        long total = 0;
+        double time = 0;
+        for (int i = nodes.size() - suite.length; i < nodes.size(); i++) {
+            total += nodes.get(i);
+            time += times.get(i);
+        }
+        return total / time;
+    }
+
+    private static final Pattern compileLine = Pattern.compile("^\\s*(\\d+)\\s+\\d+\\s+([%sbn!]*)\\s*([0-4])\\s+engine\\.BoardState::(\\w+)");
+    private static final Pattern inlineLine = Pattern.compile("^\\s+@ \\d+\\s+engine\\.BoardState::(\\w+) .*inline \\(hot\\)");
+
+    // checks that C2 compiles the move generators and compares the throughput, returns false if a method is not compiled
+    private static boolean jit(boolean pseudo, String compare) throws IOException, InterruptedException {
+        String classpath = System.getProperty("java.class.path");
+        List<String> lines = child(classpath, pseudo, "-XX:+UnlockDiagnosticVMOptions", "-XX:+PrintCompilation", "-XX:+PrintInlining");
+        if (!lines.isEmpty() && lines.get(lines.size() - 1).startsWith("exit status")) {
+            lines.forEach(System.out::println);
+            return false;
+        }
+
+        // how each method got compiled by C2 first, OSR compiles of a loop do not count
+        // inlining is printed when a compile ends rather than under its line, but only C2 inlines "(hot)"
+        Map<String, String> compiled = new LinkedHashMap<>();
+        for (String line : lines) {
+            Matcher m = compileLine.matcher(line);
+            if (m.find() && m.group(3).equals("4") && !m.group(2).contains("%") && !line.endsWith("made not entrant")) {
+                compiled.putIfAbsent(m.group(4), "compiled at " + m.group(1) + " ms");
+            }
+            m = inlineLine.matcher(line);
+            if (m.find()) {
+                compiled.putIfAbsent(m.group(1), "inlined into a C2 compiled caller");
+            }
+        }
+
+        boolean ok = true;
+        System.out.println("C2 compilation over " + jitRepeats + " suite runs" + (pseudo ? " (pseudo)" : ""));
+        for (String method : pseudo ? pseudoMethods : fullMethods) {
+            String how = compiled.get(method);
+            System.out.printf("  %-18s %s%n", method, how != null ? how : "NOT COMPILED BY C2");
+            ok &= how != null;
+        }
+
+        double nps = nps(lines);
+        List<String> other = compare != null
+                ? child(compare + File.pathSeparator + classpath, pseudo)
+                : child(classpath, pseudo, "-XX:TieredStopAtLevel=3");
+        double otherNps = nps(other);
+        System.out.println("Throughput of the last suite run");
+        System.out.printf("  %-18s %.0f nps%n", "this build", nps);
+        System.out.printf("  %-18s %.0f nps (%.2fx)%n", compare != null ? compare : "without C2", otherNps, nps / otherNps);
+        return ok;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int depth = -1, threads = 1, hashMb = 0, repeat = 1;
+        boolean pseudo = false, divide = false, jit = false;
+        String compare = null;
+        List<String> positions = new ArrayList<>();
+        StringBuilder fen = new StringBuilder();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-d":
+                    depth = Integer.parseInt(args[++i]);
+                    break;
+                case "-pseudo":
+                    pseudo = true;
+                    break;
+                case "-divide":
+                    divide = true;
+                    break;
+                case "-threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "-hash":
+                    hashMb = Integer.parseInt(args[++i]);
+                    break;
+                case "-repeat":
+                    repeat = Integer.parseInt(args[++i]);
+                    break;
+                case "-jit":
+                    jit = true;
+                    break;
+                case "-compare":
+                    compare = args[++i];
+                    break;
+                case "-suite":
+                    if (i + 1 < args.length && !args[i + 1].startsWith("-")) {
+                        for (String line : Files.readAllLines(Paths.get(args[++i]))) {
+                            if (!line.isBlank()) {
+                                positions.add(line.trim());
+                            }
+                        }
+                    }
+                    else {
+                        positions.addAll(List.of(suite));
+                    }
+                    break;
+                default:
+                    fen.append(fen.length() == 0 ? "" : " ").append(args[i]);
+            }
+        }
+        if (jit) {
+            if (!jit(pseudo, compare)) {
+                System.exit(1);
+            }
+            return;
+        }
+        if (fen.length() > 0) {
+            positions.add(fen.toString());
+        }
+        if (positions.isEmpty()) {
+            positions.add(suite[0]);
+        }
+
+        List<String> runs = new ArrayList<>();
+        for (int r = 0; r < repeat; r++) {
+            runs.addAll(positions);
+        }
+        int checked = 0, failed = 0;
+        for (String position : runs) {
+            String[] s = position.split(";");
+            int d = depth >= 0 ? depth : s.length > 1 ? Integer.parseInt(s[1].trim()) : 4;
+            long nodes = run(s[0].trim(), d, pseudo, divide, threads, hashMb);
+            // expected counts are at index 2, or 3 for pseudo, and only hold at the depth of the line
+            int e = pseudo ? 3 : 2;
+            if (s.length > e && d == Integer.parseInt(s[1].trim())) {
+                long expected = Long.parseLong(s[e].trim());
+                checked++;
+                if (nodes != expected) {
+                    System.out.println("Mismatch: expected " + expected + " nodes, got " + nodes);
+                    System.out.println();
+                    failed++;
+                }
+            }
+        }
+        if (checked > 0) {
+            System.out.println(failed == 0 ? "All " + checked + " counts match" : failed + " of " + checked + " counts do not match");
+        }
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+}
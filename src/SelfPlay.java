@@ -0,0 +1,53 @@
+import bots.AndyNewman;
+import game.LocalGame;
+
+/**
+ * Seeded self play check for the particle filter mode of bots.AndyNewman.
+ *
+ * Plays games between bots that keep only a few hypotheses, so samples often run empty and have to be rebuilt. Game i
+ * is played by white seed + i against black seed + 100 + i, which makes every run repeatable. Exits with status 1 if a
+ * game throws.
+ *
+ * Usage: java SelfPlay [-limit particles] [-moves n] [-games n] [seed]
+ */
+public class SelfPlay {
+    public static void main(String[] args) {
+        int limit = 5, moves = 50, games = 8;
+        long seed = 4;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-limit":
+                    limit = Integer.parseInt(args[++i]);
+                    break;
+                case "-moves":
+                    moves = Integer.parseInt(args[++i]);
+                    break;
+                case "-games":
+                    games = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    seed = Long.parseLong(args[i]);
+            }
+        }
+
+        int failed = 0;
+        for (int i = 0; i < games; i++) {
+            AndyNewman white = new AndyNewman(seed + i), black = new AndyNewman(seed + 100 + i);
+            white.setParticleLimit(limit);
+            black.setParticleLimit(limit);
+            try {
+                int result = new LocalGame(white, black).run(moves, false, false);
+                System.out.println("seeds " + (seed + i) + " " + (seed + 100 + i) + ": result " + result);
+            }
+            catch (RuntimeException e) {
+                System.out.println("seeds " + (seed + i) + " " + (seed + 100 + i) + ": " + e);
+                e.printStackTrace();
+                failed++;
+            }
+        }
+        System.out.println(failed == 0 ? "ok" : failed + " of " + games + " games failed");
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -1,10 +1,20 @@
 package bots;
 
 import engine.BoardState;
+import engine.ChildSet;
+import engine.HypothesisSet;
 import engine.Move;
+import engine.PackedMove;
 import engine.Piece;
+import engine.TranspositionTable;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 // TODO: consider:
 // utilizing clock
@@ -14,9 +24,31 @@ public class AndyNewman implements Bot {
     private long seed;
     private boolean color; // color of our player, true for white, false for black
     private int moveCount; // fullmove number
-    private Set<BoardState> hypotheses; // set of all possible board states
+    private HypothesisSet hypotheses; // set of all possible board states, with our pieces shared
+    private ChildSet children; // set of all possible board states after turnStart, until they are built, see materialize
     private int sense; // sense we made
+    private SenseIndex senseIndex; // hypotheses grouped by the result of sense, null if hypotheses changed since
     private Move move; // move we made
+    private final long[] ownPieces = new long[6]; // our pieces indexed by Piece ordinal, known from our observations
+
+    // particle filter mode, see setParticleLimit
+    private int particleLimit; // most hypotheses kept after an observation, 0 to keep all of them
+    private Random particleRng;
+    private final List<Turn> turns = new ArrayList<>(); // the last particleTurns turns, oldest first
+
+    // successive halving mode, see setMoveBudget
+    private long moveBudget; // nanoseconds movePhase may take, 0 to score every move on every hypothesis
+    private double evalNanos = 500; // running estimate of the time to score one move on one hypothesis
+    private double catalogNanos = 200; // running estimate of the time to catalog one hypothesis, see MoveSelection
+    private Random sampleRng;
+
+    private int searchDepth; // plies searched after each of our moves, see setSearchDepth
+    private TranspositionTable table; // shared by all searches, null if there is none
+
+    // reusable packed move buffers, one per search depth
+    private int[][] moveBuffers = new int[1][PackedMove.MAX_MOVES];
+    // reusable board that hypotheses are loaded into
+    private final BoardState board = new BoardState();
 
     public AndyNewman() {
         seed = System.currentTimeMillis();
@@ -26,115 +58,636 @@ public class AndyNewman implements Bot {
         this.seed = seed;
     }
 
+    /**
+     * Caps the belief state at limit hypotheses, 0 (the default) keeps every hypothesis.
+     * After each sense and move result the hypotheses are resampled uniformly, so the real board can be dropped. If no
+     * hypothesis is left, they are rebuilt from the samples kept at the start of the last few turns, and from the exact
+     * expansion of the oldest one if no sample explains every observation. Only boards with both kings and our own
+     * pieces where we know them are kept. If none are left, movePhase plays the first move of our pieces.
+     *
+     * @param limit most hypotheses kept, 0 for no limit
+     */
+    public void setParticleLimit(int limit) {
+        particleLimit = limit;
+    }
+
+    /**
+     * Bounds the time movePhase spends scoring moves, 0 (the default) scores every move on every hypothesis.
+     * When that is estimated to take longer than the budget, every move is scored on a random sample of the hypotheses
+     * and the worse half is dropped, doubling the sample each round until one move is left or every hypothesis has been
+     * used. The first sample is sized so that all rounds fit in the budget. Moves are only collected from a random
+     * sample of the hypotheses as well if collecting them from all would take more than a quarter of the budget.
+     *
+     * @param millis time movePhase may take in milliseconds, 0 for no limit
+     */
+    public void setMoveBudget(long millis) {
+        moveBudget = 1000000 * millis;
+    }
+
+    /**
+     * Sets the number of plies searched after each of our moves on every hypothesis, 0 (the default) only evaluates
+     * the board after the move.
+     *
+     * @param depth plies searched
+     */
+    public void setSearchDepth(int depth) {
+        searchDepth = depth;
+    }
+
+    /**
+     * Gives the search a transposition table of the given size, shared by all hypotheses and threads, 0 (the default)
+     * searches without one. Positions repeat both within a search and across hypotheses, which makes deeper searches
+     * affordable, see setSearchDepth.
+     *
+     * @param megabytes size of the table, 0 for none
+     */
+    public void setTranspositionTableSize(int megabytes) {
+        table = megabytes > 0 ? new TranspositionTable(megabytes) : null;
+    }
+
     public void gameStart(boolean color) {
         this.color = color;
         moveCount = 0;
-        hypotheses = new HashSet<>();
-        hypotheses.add(new BoardState());
+        hypotheses = new HypothesisSet(color);
+        hypotheses.add(new BoardState().compact());
+        setOwnPieces(new BoardState());
+        particleRng = new Random(seed);
+        sampleRng = new Random(seed);
+        turns.clear();
+        if (table != null) {
+            table.clear();
+        }
     }
 
     public void gameStart(boolean color, BoardState bs) {
         this.color = color;
         moveCount = 0;
-        hypotheses = new HashSet<>();
-        hypotheses.add(bs.copy());
+        hypotheses = new HypothesisSet(color);
+        hypotheses.add(bs.compact());
+        setOwnPieces(bs);
+        particleRng = new Random(seed);
+        sampleRng = new Random(seed);
+        turns.clear();
+        if (table != null) {
+            table.clear();
+        }
     }
 
     public void turnStart(boolean capture, int sq) {
         moveCount++;
+        if (capture) {
+            for (int i = 0; i < 6; i++) {
+                ownPieces[i] &= ~(1L << sq);
+            }
+        }
+        if (particleLimit > 0) {
+            recordTurn(!(color && moveCount == 1), capture, sq);
+        }
         if (color && moveCount == 1) {
             return;
         }
 
-        Set<BoardState> newHypotheses = new HashSet<>();
-        // no pieces got captured
-        if (!capture) {
-            for (BoardState bs : hypotheses) {
-                List<Move> moveList = color ? bs.blackMoves() : bs.whiteMoves();
-                for (Move m : moveList) {
-                    if (!m.isCapture) {
-                        if (color) {
-                            bs.blackMove(m);
-                            newHypotheses.add(bs.copy());
-                            bs.undoBlackMove(m);
-                        }
-                        else {
-                            bs.whiteMove(m);
-                            newHypotheses.add(bs.copy());
-                            bs.undoWhiteMove(m);
-                        }
-                    }
+        // most children are discarded by the sense, so they are only built in senseResults
+        children = children(hypotheses, capture, sq);
+        hypotheses = null;
+    }
+
+    // builds the boards of children if turnStart left them unbuilt
+    private void materialize() {
+        if (children != null) {
+            hypotheses = children.materialize(board);
+            children = null;
+        }
+    }
+
+    // every position the enemy could have moved to from boards
+    private HypothesisSet expanded(HypothesisSet boards, boolean capture, int sq) {
+        return children(boards, capture, sq).materialize(board);
+    }
+
+    private ChildSet children(HypothesisSet boards, boolean capture, int sq) {
+        if (!parallel(boards.size(), expansionGrain)) {
+            ChildSet successors = new ChildSet(boards, !color, boards.size());
+            expand(boards, 0, boards.size(), capture, sq, board, moveBuffer(0), successors);
+            return successors;
+        }
+        // tasks expand their boards into chunks without deduplicating, the children of every key partition are then
+        // deduplicated by their own task, first in chunk order kept, and the children kept are copied out in chunk
+        // order, so the set (and its iteration order) is the same as after a serial expansion
+        ExpansionChunk[] chunks = new ExpansionChunk[(boards.size() + expansionGrain - 1) / expansionGrain];
+        ForkJoinPool.commonPool().invoke(new Expansion(boards, chunks, 0, chunks.length, capture, sq));
+        int[] kept = new int[partitions];
+        ForkJoinPool.commonPool().invoke(new Deduplication(chunks, 0, partitions, kept));
+
+        int size = 0;
+        for (int count : kept) {
+            size += count;
+        }
+        int[] parentIds = new int[size], moves = new int[size];
+        long[] keys = new long[size];
+        int n = 0;
+        for (ExpansionChunk chunk : chunks) {
+            for (int i = 0; i < chunk.size; i++) {
+                if (chunk.kept[i]) {
+                    parentIds[n] = chunk.parents[i];
+                    moves[n] = chunk.moves[i];
+                    keys[n++] = chunk.keys[i];
                 }
             }
         }
-        // piece got captured
-        else {
-            for (BoardState bs : hypotheses) {
-                List<Move> moveList = color ? bs.blackCaptureMoves() : bs.whiteCaptureMoves();
-                for (Move m : moveList) {
-                    if ((m.isBlockedMove && m.block == sq) || (!m.isBlockedMove && m.to == sq) || (move.isDPMove && m.isEPCapture && m.to % 8 == move.to % 8)) {
-                        if (color) {
-                            bs.blackMove(m);
-                            newHypotheses.add(bs.copy());
-                            bs.undoBlackMove(m);
-                        }
-                        else {
-                            bs.whiteMove(m);
-                            newHypotheses.add(bs.copy());
-                            bs.undoWhiteMove(m);
-                        }
+        return new ChildSet(boards, !color, parentIds, moves, keys);
+    }
+
+    // whether n items are worth splitting into tasks of grain items on the common pool
+    private static boolean parallel(int n, int grain) {
+        return n > grain && ForkJoinPool.getCommonPoolParallelism() > 1;
+    }
+
+    // scratch space of one worker thread, tasks only use it while they do not fork
+    private static final class Scratch {
+        final BoardState board = new BoardState();
+        final int[] moves = new int[PackedMove.MAX_MOVES];
+        final int[] senses = new int[64], parentSenses = new int[64]; // see senseAll
+        private int[][] buffers = new int[1][PackedMove.MAX_MOVES]; // move buffers for search depths 0 to searchDepth
+        MoveScores scores = new MoveScores(true); // scores of the leaves of one sweep run on this thread, see Sweep
+
+        // move buffers for search depths 0 to depth
+        int[][] buffers(int depth) {
+            if (depth >= buffers.length) {
+                int[][] grown = Arrays.copyOf(buffers, depth + 1);
+                for (int i = buffers.length; i <= depth; i++) {
+                    grown[i] = new int[PackedMove.MAX_MOVES];
+                }
+                buffers = grown;
+            }
+            return buffers;
+        }
+    }
+
+    private static final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    // hypotheses expanded by one task before it stops splitting
+    private static final int expansionGrain = 64;
+    // children are deduplicated in 1 << partitionBits partitions by the top bits of their keys
+    private static final int partitionBits = 6, partitions = 1 << partitionBits;
+
+    // expands boards into chunks[lo] to chunks[hi - 1], chunk c holds the children of boards c * expansionGrain onwards
+    @SuppressWarnings("serial")
+    private class Expansion extends RecursiveAction {
+        private final HypothesisSet boards;
+        private final ExpansionChunk[] chunks;
+        private final int lo, hi;
+        private final boolean capture;
+        private final int sq;
+
+        Expansion(HypothesisSet boards, ExpansionChunk[] chunks, int lo, int hi, boolean capture, int sq) {
+            this.boards = boards;
+            this.chunks = chunks;
+            this.lo = lo;
+            this.hi = hi;
+            this.capture = capture;
+            this.sq = sq;
+        }
+
+        protected void compute() {
+            if (hi - lo == 1) {
+                int from = lo * expansionGrain, to = Math.min(from + expansionGrain, boards.size());
+                ExpansionChunk chunk = new ExpansionChunk(32 * (to - from));
+                Scratch s = scratch.get();
+                for (int k = from; k < to; k++) {
+                    boards.load(k, s.board);
+                    int n = enemyMoves(s.board, capture, sq, s.moves);
+                    for (int i = 0; i < n; i++) {
+                        chunk.add(k, s.moves[i], childKey(s.board, s.moves[i]));
                     }
                 }
+                chunk.partition();
+                chunks[lo] = chunk;
+                return;
             }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new Expansion(boards, chunks, lo, mid, capture, sq), new Expansion(boards, chunks, mid, hi, capture, sq));
         }
-        hypotheses = newHypotheses;
     }
 
-    public int sensePhase() {
-        List<Map<Integer, Integer>> counts = new ArrayList<>();
-        for (int i = 0; i < 55; i++) {
-            counts.add(new HashMap<>());
+    // children in the order they were generated, duplicates included, with their indices grouped by key partition
+    private static final class ExpansionChunk {
+        private int[] parents, moves;
+        private long[] keys;
+        private int size;
+        private int[] starts; // partition p holds order[starts[p]] to order[starts[p + 1] - 1]
+        private int[] order; // in increasing order within each partition
+        private boolean[] kept; // true for the first child of each key over all chunks, see Deduplication
+
+        ExpansionChunk(int capacity) {
+            parents = new int[capacity];
+            moves = new int[capacity];
+            keys = new long[capacity];
+        }
+
+        void add(int parent, int move, long key) {
+            if (size == keys.length) {
+                parents = Arrays.copyOf(parents, 2 * size + 16);
+                moves = Arrays.copyOf(moves, 2 * size + 16);
+                keys = Arrays.copyOf(keys, 2 * size + 16);
+            }
+            parents[size] = parent;
+            moves[size] = move;
+            keys[size++] = key;
         }
-        for (BoardState bs : hypotheses) {
-            for (int i = 1; i <= 6; i++) {
-                for (int j = 1; j <= 6; j++) {
-                    int x = 8 * j + i, s = bs.sense(color, x);
-                    counts.get(x).put(s, counts.get(x).getOrDefault(s, 0) + 1);
+
+        // groups the children by partition, has to be called once all of them are added
+        void partition() {
+            starts = new int[partitions + 1];
+            for (int i = 0; i < size; i++) {
+                starts[partition(keys[i]) + 1]++;
+            }
+            for (int p = 0; p < partitions; p++) {
+                starts[p + 1] += starts[p];
+            }
+            int[] next = Arrays.copyOf(starts, partitions);
+            order = new int[size];
+            for (int i = 0; i < size; i++) {
+                order[next[partition(keys[i])]++] = i;
+            }
+            kept = new boolean[size];
+        }
+
+        static int partition(long key) {
+            return (int) (key >>> (64 - partitionBits));
+        }
+    }
+
+    // marks the first child of every key over all chunks as kept, for partitions lo to hi - 1
+    // kept[p] is set to the number of children kept in partition p
+    @SuppressWarnings("serial")
+    private static class Deduplication extends RecursiveAction {
+        private final ExpansionChunk[] chunks;
+        private final int lo, hi;
+        private final int[] kept;
+
+        Deduplication(ExpansionChunk[] chunks, int lo, int hi, int[] kept) {
+            this.chunks = chunks;
+            this.lo = lo;
+            this.hi = hi;
+            this.kept = kept;
+        }
+
+        protected void compute() {
+            if (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new Deduplication(chunks, lo, mid, kept), new Deduplication(chunks, mid, hi, kept));
+                return;
+            }
+            int count = 0;
+            for (ExpansionChunk chunk : chunks) {
+                count += chunk.starts[lo + 1] - chunk.starts[lo];
+            }
+            // open addressing on the keys kept, child number + 1 per slot, at most half full
+            long[] keys = new long[count];
+            int[] slots = new int[Integer.highestOneBit(Math.max(count, 16) - 1) << 2];
+            int mask = slots.length - 1, n = 0;
+            for (ExpansionChunk chunk : chunks) {
+                for (int j = chunk.starts[lo]; j < chunk.starts[lo + 1]; j++) {
+                    int i = chunk.order[j];
+                    long key = chunk.keys[i], h = key * 0x9E3779B97F4A7C15L;
+                    int slot = (int) (h ^ (h >>> 32)) & mask;
+                    while (slots[slot] != 0 && keys[slots[slot] - 1] != key) {
+                        slot = (slot + 1) & mask;
+                    }
+                    if (slots[slot] == 0) {
+                        keys[n] = key;
+                        slots[slot] = ++n;
+                        chunk.kept[i] = true;
+                    }
                 }
             }
+            kept[lo] = n;
+        }
+    }
+
+    // adds every position the enemy could have moved to from boards lo to hi - 1 to successors, using bs and moves as scratch space
+    private void expand(HypothesisSet boards, int lo, int hi, boolean capture, int sq, BoardState bs, int[] moves, ChildSet successors) {
+        for (int k = lo; k < hi; k++) {
+            boards.load(k, bs);
+            int n = enemyMoves(bs, capture, sq, moves);
+            for (int i = 0; i < n; i++) {
+                successors.add(k, moves[i], childKey(bs, moves[i]));
+            }
+        }
+    }
+
+    // writes the moves the enemy could have made on bs into moves and returns how many there are
+    private int enemyMoves(BoardState bs, boolean capture, int sq, int[] moves) {
+        // no pieces got captured
+        if (!capture) {
+            return color ? bs.blackQuietMoves(moves) : bs.whiteQuietMoves(moves);
+        }
+        // piece got captured
+        return color ? bs.blackCaptureMovesOn(moves, sq) : bs.whiteCaptureMovesOn(moves, sq);
+    }
+
+    // zobrist key of the board after the enemy makes move m on bs
+    private long childKey(BoardState bs, int m) {
+        return color ? bs.blackChildKey(m) : bs.whiteChildKey(m);
+    }
+
+    // squares that can be sensed without the window leaving the board, in the order they are scored
+    private static final int[] senseSquares = new int[36];
+
+    static {
+        for (int i = 1, k = 0; i <= 6; i++) {
+            for (int j = 1; j <= 6; j++) {
+                senseSquares[k++] = 8 * j + i;
+            }
         }
+    }
+
+    // hypotheses sensed by one task before it stops splitting
+    private static final int senseGrain = 512;
+
+    public int sensePhase() {
+        int n = numHypotheses();
+        // only the histograms are kept for every square, the results of single hypotheses only for the square picked
+        SenseHistogram[] histograms;
+        if (!parallel(n, senseGrain)) {
+            histograms = newHistograms();
+            senseAll(0, n, scratch.get(), histograms);
+        }
+        else {
+            histograms = ForkJoinPool.commonPool().invoke(new SenseScan(0, n, 0, null));
+        }
+
         int pos = 0;
         double maxScore = 0;
-        for (int i = 1; i <= 6; i++) {
-            for (int j = 1; j <= 6; j++) {
-                int x = 8 * j + i;
-                double expectedValue = 0;
-                int minimum = 0;
-                for (int c : counts.get(x).values()) {
-                    expectedValue += c * c;
-                    minimum = Math.max(minimum, c);
+        for (int x : senseSquares) {
+            // expected number of hypotheses left after sensing x
+            double score = (double) histograms[x].sumOfSquares() / n;
+            if (maxScore < score) {
+                maxScore = score;
+                pos = x;
+            }
+        }
+        sense = pos;
+        // no square is picked if there are no hypotheses
+        senseIndex = pos != 0 ? new SenseIndex(senseResults(pos, n), n, histograms[pos]) : null;
+        return sense;
+    }
+
+    // results[k] is the result of sensing x on hypothesis k
+    private int[] senseResults(int x, int n) {
+        int[] results = new int[n];
+        if (!parallel(n, senseGrain)) {
+            sense(0, n, board, x, results);
+        }
+        else {
+            ForkJoinPool.commonPool().invoke(new SenseScan(0, n, x, results));
+        }
+        return results;
+    }
+
+    private static SenseHistogram[] newHistograms() {
+        SenseHistogram[] histograms = new SenseHistogram[64];
+        for (int x : senseSquares) {
+            histograms[x] = new SenseHistogram();
+        }
+        return histograms;
+    }
+
+    // senses every square on hypotheses lo to hi - 1 and counts the results into histograms, using s as scratch space
+    private void senseAll(int lo, int hi, Scratch s, SenseHistogram[] histograms) {
+        int[] senses = s.senses, parentSenses = s.parentSenses;
+        if (children == null) {
+            for (int k = lo; k < hi; k++) {
+                hypotheses.load(k, s.board);
+                s.board.senseAll(color, senses);
+                for (int y : senseSquares) {
+                    histograms[y].add(senses[y], 1);
                 }
-                expectedValue /= hypotheses.size();
+            }
+            return;
+        }
+        // the results of a child are the results of its parent updated by its move, and the children of a parent are
+        // next to each other. The parent's results are counted once for all of its children, and each child only
+        // moves its count for the few windows its move changes
+        int parent = -1;
+        for (int k = lo; k < hi; k++) {
+            if (children.parent(k) != parent) {
+                parent = children.parent(k);
+                children.parents().load(parent, s.board);
+                s.board.senseAll(color, parentSenses);
+                System.arraycopy(parentSenses, 0, senses, 0, 64);
+                int run = 1;
+                while (k + run < hi && children.parent(k + run) == parent) {
+                    run++;
+                }
+                for (int y : senseSquares) {
+                    histograms[y].add(parentSenses[y], run);
+                }
+            }
+            // senses is parentSenses again outside the changed windows
+            for (long b = BoardState.senseAfter(!color, children.move(k), senses); b != 0; b &= b - 1) {
+                int y = Long.numberOfTrailingZeros(b);
+                if (senses[y] != parentSenses[y]) {
+                    histograms[y].add(parentSenses[y], -1);
+                    histograms[y].add(senses[y], 1);
+                    senses[y] = parentSenses[y];
+                }
+            }
+        }
+    }
 
-                double score = expectedValue;
+    // writes the result of sensing x on hypothesis k into results[k] for hypotheses lo to hi - 1, using bs as scratch
+    // space. Only the window around x is sensed
+    private void sense(int lo, int hi, BoardState bs, int x, int[] results) {
+        int parent = -1, parentResult = 0;
+        for (int k = lo; k < hi; k++) {
+            if (children == null) {
+                hypotheses.load(k, bs);
+                results[k] = bs.sense(color, x);
+            }
+            else {
+                if (children.parent(k) != parent) {
+                    parent = children.parent(k);
+                    children.parents().load(parent, bs);
+                    parentResult = bs.sense(color, x);
+                }
+                results[k] = BoardState.senseAfter(!color, children.move(k), x, parentResult);
+            }
+        }
+    }
+
+    // senses hypotheses lo to hi - 1 like senseAll if x is 0, returning the histograms of every square, and like sense
+    // otherwise
+    @SuppressWarnings("serial")
+    private class SenseScan extends RecursiveTask<SenseHistogram[]> {
+        private final int lo, hi;
+        private final int x;
+        private final int[] results;
+
+        SenseScan(int lo, int hi, int x, int[] results) {
+            this.lo = lo;
+            this.hi = hi;
+            this.x = x;
+            this.results = results;
+        }
 
-                if (maxScore < score) {
-                    maxScore = score;
-                    pos = x;
+        protected SenseHistogram[] compute() {
+            if (hi - lo <= senseGrain) {
+                if (x != 0) {
+                    sense(lo, hi, scratch.get().board, x, results);
+                    return null;
                 }
+                SenseHistogram[] histograms = newHistograms();
+                senseAll(lo, hi, scratch.get(), histograms);
+                return histograms;
             }
+            int mid = (lo + hi) >>> 1;
+            SenseScan left = new SenseScan(lo, mid, x, results);
+            left.fork();
+            SenseHistogram[] right = new SenseScan(mid, hi, x, results).compute();
+            SenseHistogram[] histograms = left.join();
+            if (histograms != null) {
+                for (int y : senseSquares) {
+                    histograms[y].addAll(right[y]);
+                }
+            }
+            return histograms;
+        }
+    }
+
+    // counts of each sense result, open addressing on result + 1 with 0 marking an empty slot
+    private static final class SenseHistogram {
+        private int[] keys = new int[64], counts = new int[64];
+        private int size;
+
+        // count may be negative as long as no count ends up negative, a result whose count drops to 0 keeps its slot
+        void add(int result, int count) {
+            int i = slot(result);
+            if (keys[i] == 0) {
+                keys[i] = result + 1;
+                counts[i] = count;
+                if (2 * ++size > keys.length) {
+                    rehash();
+                }
+            }
+            else {
+                counts[i] += count;
+            }
+        }
+
+        // adds the counts of other
+        void addAll(SenseHistogram other) {
+            for (int i = 0; i < other.keys.length; i++) {
+                if (other.keys[i] != 0) {
+                    add(other.keys[i] - 1, other.counts[i]);
+                }
+            }
+        }
+
+        // slot holding result, or the empty slot where it would go
+        int slot(int result) {
+            int mask = keys.length - 1, i = (result * 0x9E3779B9) >>> 7 & mask;
+            while (keys[i] != 0 && keys[i] != result + 1) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        int length() {
+            return keys.length;
+        }
+
+        int count(int slot) {
+            return counts[slot];
+        }
+
+        private void rehash() {
+            int[] oldKeys = keys, oldCounts = counts;
+            keys = new int[2 * oldKeys.length];
+            counts = new int[2 * oldKeys.length];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    int j = slot(oldKeys[i] - 1);
+                    keys[j] = oldKeys[i];
+                    counts[j] = oldCounts[i];
+                }
+            }
+        }
+
+        // sum of the squared counts, the number of hypotheses left summed over every hypothesis being the real board
+        long sumOfSquares() {
+            long sum = 0;
+            for (int c : counts) {
+                sum += (long) c * c;
+            }
+            return sum;
         }
-        sense = pos;
-        return sense;
     }
 
     public void senseResults(int results) {
-        for (Iterator<BoardState> it = hypotheses.iterator(); it.hasNext(); ) {
-            BoardState bs = it.next();
-            if (results != bs.sense(color, sense)) {
-                it.remove();
+        if (senseIndex != null && children != null) {
+            hypotheses = senseIndex.materialize(children, results, board);
+            children = null;
+            senseIndex = null;
+        }
+        else if (senseIndex != null) {
+            senseIndex.retain(hypotheses, results);
+            senseIndex = null;
+        }
+        else {
+            materialize();
+            filterSense(hypotheses, sense, results);
+        }
+
+        if (particleLimit > 0) {
+            Turn turn = turns.get(turns.size() - 1);
+            turn.sense = sense;
+            turn.senseResults = results;
+            settle();
+        }
+    }
+
+    // keeps only the boards where sensing x gives results
+    private void filterSense(HypothesisSet boards, int x, int results) {
+        boards.retain(k -> {
+            boards.load(k, board);
+            return results == board.sense(color, x);
+        });
+    }
+
+    // hypotheses ids grouped by sense result, so filtering only touches the hypotheses that survive
+    private static final class SenseIndex {
+        private final SenseHistogram histogram; // the bucket of a sense result is its slot
+        private final int[] starts; // bucket b holds ids[starts[b]] to ids[starts[b + 1] - 1]
+        private final int[] ids; // in increasing order within each bucket
+
+        // results[k] is the sense result of hypothesis k and histogram counts results[0] to results[n - 1]
+        SenseIndex(int[] results, int n, SenseHistogram histogram) {
+            this.histogram = histogram;
+            int buckets = histogram.length();
+            starts = new int[buckets + 1];
+            for (int b = 0; b < buckets; b++) {
+                starts[b + 1] = starts[b] + histogram.count(b);
+            }
+            ids = new int[n];
+            int[] next = Arrays.copyOf(starts, buckets);
+            for (int k = 0; k < n; k++) {
+                ids[next[histogram.slot(results[k])]++] = k;
             }
         }
+
+        // keeps only the hypotheses whose sense result is results
+        void retain(HypothesisSet hypotheses, int results) {
+            int b = histogram.slot(results);
+            hypotheses.retain(ids, starts[b], starts[b + 1]);
+        }
+
+        // the boards of the children whose sense result is results, using bs as scratch space
+        HypothesisSet materialize(ChildSet children, int results, BoardState bs) {
+            int b = histogram.slot(results);
+            return children.materialize(ids, starts[b], starts[b + 1], bs);
+        }
     }
 
     private static final int maxScore = 1000, minScore = -1000;
@@ -155,16 +708,63 @@ public class AndyNewman implements Bot {
         return sc;
     }
 
-    private int alphaBeta(BoardState bs, boolean player, int alpha, int beta, int depth) {
+    // buffers[depth] is used as the move buffer at each depth
+    private int alphaBeta(BoardState bs, boolean player, int alpha, int beta, int depth, int[][] buffers) {
         if (depth == 0) {
             return staticEvaluate(bs);
         }
+        long key = 0, entry = 0;
+        if (table != null) {
+            key = TranspositionTable.key(bs.zobrist(), player);
+            entry = table.probe(key);
+            if (entry != 0) {
+                // only entries of the same depth are used, so the score at the root does not depend on what is in the
+                // table and stays the same as without one
+                if (TranspositionTable.depth(entry) == depth) {
+                    int score = TranspositionTable.score(entry);
+                    switch (TranspositionTable.bound(entry)) {
+                        case TranspositionTable.EXACT:
+                            return score;
+                        case TranspositionTable.LOWER:
+                            alpha = Math.max(alpha, score);
+                            break;
+                        case TranspositionTable.UPPER:
+                            beta = Math.min(beta, score);
+                            break;
+                    }
+                    if (beta <= alpha) {
+                        return score;
+                    }
+                }
+            }
+        }
+
+        int[] moves = buffers[depth];
+        int n = player ? bs.whiteMoves(moves) : bs.blackMoves(moves);
+        if (entry != 0) {
+            // search the best move found before first
+            int best = TranspositionTable.move(entry);
+            for (int i = 1; i < n; i++) {
+                if (moves[i] == best) {
+                    moves[i] = moves[0];
+                    moves[0] = best;
+                    break;
+                }
+            }
+        }
+
+        int lo = alpha, hi = beta, best = 0, v;
         if (player) {
-            int v = minScore;
-            for (Move m : bs.whiteMoves()) {
+            v = minScore;
+            for (int i = 0; i < n; i++) {
+                int m = moves[i];
                 bs.whiteMove(m);
 
-                v = Math.max(v, alphaBeta(bs, false, alpha, beta, depth - 1));
+                int score = alphaBeta(bs, false, alpha, beta, depth - 1, buffers);
+                if (score > v || i == 0) {
+                    v = Math.max(v, score);
+                    best = m;
+                }
                 alpha = Math.max(alpha, v);
 
                 bs.undoWhiteMove(m);
@@ -173,14 +773,18 @@ public class AndyNewman implements Bot {
                     break;
                 }
             }
-            return v;
         }
         else {
-            int v = maxScore;
-            for (Move m : bs.blackMoves()) {
+            v = maxScore;
+            for (int i = 0; i < n; i++) {
+                int m = moves[i];
                 bs.blackMove(m);
 
-                v = Math.min(v, alphaBeta(bs, true, alpha, beta, depth - 1));
+                int score = alphaBeta(bs, true, alpha, beta, depth - 1, buffers);
+                if (score < v || i == 0) {
+                    v = Math.min(v, score);
+                    best = m;
+                }
                 beta = Math.min(beta, v);
 
                 bs.undoBlackMove(m);
@@ -189,66 +793,482 @@ public class AndyNewman implements Bot {
                     break;
                 }
             }
-            return v;
         }
+
+        if (table != null) {
+            int bound = v <= lo ? TranspositionTable.UPPER : v >= hi ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+            table.store(key, best, v, depth, bound);
+        }
+        return v;
     }
 
+    // returns the move buffer reserved for the given search depth
+    private int[] moveBuffer(int depth) {
+        if (depth >= moveBuffers.length) {
+            int[][] buffers = Arrays.copyOf(moveBuffers, depth + 1);
+            for (int i = moveBuffers.length; i <= depth; i++) {
+                buffers[i] = new int[PackedMove.MAX_MOVES];
+            }
+            moveBuffers = buffers;
+        }
+        return moveBuffers[depth];
+    }
+
+    // hypotheses scored by one task before it stops splitting
+    private static final int scoreGrain = 256;
+    // number of parallel sweeps started so far, identifies the scores of their workers
+    private static final AtomicLong sweeps = new AtomicLong();
+    // least number of hypotheses every candidate is scored on before candidates are ranked, see MoveSelection
+    private static final int minProbes = 64;
+    // least number of hypotheses in the first sample of successive halving, see setMoveBudget
+    private static final int minSample = 32;
+
     public Move movePhase() {
-        Map<Move, Integer> scores = new HashMap<>(); // contains scores of each move
+        long start = System.nanoTime();
+        materialize();
+        MoveSelection selection = new MoveSelection();
+        // cataloging loads every hypothesis, so with a budget it may take a quarter of it and only a sample is
+        // cataloged if all would take longer
+        long catalogStart = System.nanoTime();
+        int n = hypotheses.size();
+        double catalogable = moveBudget / 4.0 / catalogNanos;
+        if (moveBudget > 0 && catalogable < n) {
+            selection.catalog(sample(n, (int) Math.max(minSample, catalogable)));
+        }
+        else {
+            selection.catalog(null);
+        }
+        if (selection.cataloged >= 1000) {
+            catalogNanos = (catalogNanos + (double) (System.nanoTime() - catalogStart) / selection.cataloged) / 2;
+        }
+        if (moveBudget > 0 && (selection.cataloged < n
+                || evalNanos * selection.scores.size * selection.order.length > moveBudget)) {
+            selection.halve(start + moveBudget);
+        }
+        else {
+            selection.search();
+        }
+        long evaluations = selection.evaluations.sum();
+        if (evaluations >= 1000) {
+            evalNanos = (evalNanos + (double) selection.sweepNanos / evaluations) / 2;
+        }
+        MoveScores scores = selection.scores;
 
-        BoardState tmp = hypotheses.iterator().next();
-        for (Move pm : color ? tmp.whitePseudoMoves() : tmp.blackPseudoMoves()) {
-            scores.put(pm.copy(), color ? maxScore : minScore);
+        int[] bestMoves = new int[scores.size];
+        int count = 0;
+        int bestScore = color ? minScore : maxScore;
+        for (int j = 0; j < scores.size; j++) {
+            if (selection.pruned[j]) {
+                continue;
+            }
+            int i = scores.order[j], score = scores.scores[i];
+            if ((color && bestScore < score) || (!color && bestScore > score)) {
+                count = 0;
+                bestMoves[count++] = i;
+                bestScore = score;
+            }
+            else if (bestScore == score) {
+                bestMoves[count++] = i;
+            }
+        }
+        if (count == 0) {
+            // no hypothesis is left, see settle
+            move = fallbackMove();
+            return move;
         }
+        Random rand = new Random(seed);
+        move = MoveScores.move(bestMoves[rand.nextInt(count)]);
+        return move;
+    }
 
-        for (BoardState bs : hypotheses) {
-            List<Move> moveList = color ? bs.whitePseudoMoves() : bs.blackPseudoMoves();
-            for (Move pm : moveList) {
-                Move m = color ? bs.identifyWhiteMove(pm.copy()) : bs.identifyBlackMove(pm.copy());
-                if (color) {
-                    bs.whiteMove(m);
+    // about m distinct indices below n in increasing order, drawn uniformly with sampleRng
+    private int[] sample(int n, int m) {
+        int[] ids = new int[m];
+        for (int k = 0; k < m; k++) {
+            ids[k] = sampleRng.nextInt(n);
+        }
+        Arrays.sort(ids);
+        int count = 0;
+        for (int k = 0; k < m; k++) {
+            if (count == 0 || ids[k] != ids[count - 1]) {
+                ids[count++] = ids[k];
+            }
+        }
+        return Arrays.copyOf(ids, count);
+    }
+
+    // true if score a is strictly better than score b for us
+    private boolean better(int a, int b) {
+        return color ? a > b : a < b;
+    }
+
+    // score of packed pseudo move pm on the board in bs, using buffers as scratch space
+    private int score(BoardState bs, int pm, int[][] buffers) {
+        int m = color ? bs.identifyWhiteMove(pm) : bs.identifyBlackMove(pm);
+        if (color) {
+            bs.whiteMove(m);
+        }
+        else {
+            bs.blackMove(m);
+        }
+
+        int score = alphaBeta(bs, !color, minScore, maxScore, searchDepth, buffers);
+        if (PackedMove.isInvalid(m)) {
+            score += color ? -100 : 100;
+        }
+
+        if (color) {
+            bs.undoWhiteMove(m);
+        }
+        else {
+            bs.undoBlackMove(m);
+        }
+        return score;
+    }
+
+    /**
+     * Finds the moves with the best worst case score over all hypotheses without scoring every move on every
+     * hypothesis.
+     *
+     * Every candidate is scored on a few hypotheses first, and the one with the best score so far is scored on all of
+     * them. Its score is a bound: any other candidate that some hypothesis scores strictly worse cannot be a best move,
+     * so it is dropped and not scored on the remaining hypotheses. Ties are never dropped, so the best moves left are
+     * exactly those of scoring every candidate on every hypothesis. Hypotheses are scanned worst static evaluation for
+     * us first so candidates are dropped early.
+     */
+    private final class MoveSelection {
+        final MoveScores scores = new MoveScores(color); // candidates in the order they were first generated
+        boolean[] pruned; // per candidate in scores.order, true if it was dropped
+
+        private int[] packed = new int[PackedMove.MAX_MOVES]; // packed move per candidate in scores.order
+        // pseudo moves only depend on our pieces and castling rights, so they are generated once per group of
+        // hypotheses that agree on them and only identified against each hypothesis
+        private int[][] catalogs;
+        private long[][] catalogSets; // MoveScores.index of the moves of every catalog
+        private int[] ids; // hypotheses that were cataloged, null if all were
+        int cataloged; // number of them
+        private int[] catalogIds; // catalog of every hypothesis cataloged
+        // hypotheses with both kings by their position among those cataloged, worst static evaluation for us first,
+        // shuffled by halve
+        private int[] order;
+        private int bound = color ? Integer.MIN_VALUE : Integer.MAX_VALUE; // score of a candidate scored on all hypotheses
+        final LongAdder evaluations = new LongAdder(); // moves scored on a hypothesis so far
+        long sweepNanos; // time spent scoring them
+
+        void search() {
+            if (scores.size == 0) {
+                return;
+            }
+            int[] candidates = new int[scores.size];
+            for (int j = 0; j < scores.size; j++) {
+                candidates[j] = j;
+            }
+            int probes = Math.min(order.length, Math.max(minProbes, order.length / 16));
+            sweep(candidates, 0, probes);
+
+            int top = 0;
+            for (int j = 1; j < scores.size; j++) {
+                if (better(scores.scores[scores.order[j]], scores.scores[scores.order[top]])) {
+                    top = j;
+                }
+            }
+            sweep(new int[]{top}, probes, order.length);
+            bound = scores.scores[scores.order[top]];
+
+            int count = 0;
+            for (int j = 0; j < scores.size; j++) {
+                if (j == top) {
+                    continue;
+                }
+                if (better(bound, scores.scores[scores.order[j]])) {
+                    pruned[j] = true;
                 }
                 else {
-                    bs.blackMove(m);
+                    candidates[count++] = j;
                 }
+            }
+            sweep(Arrays.copyOf(candidates, count), probes, order.length);
+        }
 
-                int depth = 0;
-                int score = alphaBeta(bs, !color, minScore, maxScore, depth);
-                if (m.isInvalidMove) {
-                    score += color ? -100 : 100;
+        // builds the catalogs of hypotheses ids, or of every hypothesis if ids is null, adds their moves as candidates
+        // and orders the hypotheses, has to be called first
+        void catalog(int[] ids) {
+            this.ids = ids;
+            int n = ids == null ? hypotheses.size() : ids.length, live = 0;
+            cataloged = n;
+            catalogIds = new int[n];
+            // static evaluation for us and index of every hypothesis with both kings
+            long[] keyed = new long[n];
+            Map<Integer, Integer> keyIds = new HashMap<>();
+            List<int[]> moves = new ArrayList<>();
+            int[] buffer = moveBuffer(0);
+            int catalogKey = -1, catalogId = -1;
+            for (int k = 0; k < n; k++) {
+                int h = ids == null ? k : ids[k];
+                hypotheses.load(h, board);
+                int state = hypotheses.state(h), key = 4 * hypotheses.group(h) + (color ? state & 3 : (state >>> 2) & 3);
+                if (key != catalogKey) {
+                    Integer id = keyIds.get(key);
+                    if (id == null) {
+                        id = moves.size();
+                        keyIds.put(key, id);
+                        int count = color ? board.whitePseudoMoves(buffer) : board.blackPseudoMoves(buffer);
+                        moves.add(Arrays.copyOf(buffer, count));
+                        for (int j = 0; j < count; j++) {
+                            if (scores.add(buffer[j])) {
+                                if (scores.size > packed.length) {
+                                    packed = Arrays.copyOf(packed, 2 * packed.length);
+                                }
+                                packed[scores.size - 1] = buffer[j];
+                            }
+                        }
+                    }
+                    catalogKey = key;
+                    catalogId = id;
+                }
+                catalogIds[k] = catalogId;
+                // no pseudo moves without both kings
+                if (board.getWhiteKing() != 0 && board.getBlackKing() != 0) {
+                    int score = staticEvaluate(board);
+                    keyed[live++] = ((long) (color ? score : -score) << 32) | k;
                 }
-                scores.put(pm, color ? Math.min(scores.get(pm), score) : Math.max(scores.get(pm), score)); // scores of worst possible scenarios are taken for each move
+            }
 
-                if (color) {
-                    bs.undoWhiteMove(m);
+            catalogs = moves.toArray(new int[0][]);
+            catalogSets = new long[catalogs.length][64 * 64 * 8 / 64];
+            for (int c = 0; c < catalogs.length; c++) {
+                for (int pm : catalogs[c]) {
+                    int i = MoveScores.index(pm);
+                    catalogSets[c][i >>> 6] |= 1L << i;
                 }
-                else {
-                    bs.undoBlackMove(m);
+            }
+            Arrays.sort(keyed, 0, live);
+            order = new int[live];
+            for (int k = 0; k < live; k++) {
+                order[k] = (int) keyed[k];
+            }
+            pruned = new boolean[scores.size];
+        }
+
+        /**
+         * Successive halving: scores the candidates on a random sample of the hypotheses, drops the worse half and
+         * doubles the sample until one candidate is left, every hypothesis cataloged has been used or the deadline has
+         * passed. The candidates left are scored on the same sample, so the best of them is picked as usual.
+         */
+        void halve(long deadline) {
+            int count = scores.size, n = order.length;
+            int[] candidates = new int[count];
+            for (int j = 0; j < count; j++) {
+                candidates[j] = j;
+            }
+            // halving takes rounds rounds and count * sample * (rounds + 1) / 2 scores in total
+            int rounds = 32 - Integer.numberOfLeadingZeros(Math.max(count - 1, 1));
+            double affordable = (deadline - System.nanoTime()) / evalNanos;
+            int sample = (int) Math.min(n, Math.max(minSample, 2 * affordable / ((double) count * (rounds + 1))));
+
+            // order[0] to order[used - 1] is a uniform sample, shuffled in as it grows
+            int used = 0;
+            while (count > 1) {
+                for (int k = used; k < sample; k++) {
+                    int r = k + sampleRng.nextInt(n - k), h = order[r];
+                    order[r] = order[k];
+                    order[k] = h;
+                }
+                sweep(Arrays.copyOf(candidates, count), used, sample);
+                used = sample;
+                if (used == n || System.nanoTime() > deadline) {
+                    break;
+                }
+
+                // best first, ties in random order since scores are coarse and most candidates tie
+                long[] keyed = new long[count];
+                for (int t = 0; t < count; t++) {
+                    int score = scores.scores[scores.order[candidates[t]]];
+                    keyed[t] = ((long) (color ? -score : score) << 32) | ((long) sampleRng.nextInt(1 << 15) << 16)
+                            | candidates[t];
+                }
+                Arrays.sort(keyed);
+                int kept = (count + 1) / 2;
+                for (int t = 0; t < count; t++) {
+                    int j = (int) keyed[t] & 0xFFFF;
+                    if (t < kept) {
+                        candidates[t] = j;
+                    }
+                    else {
+                        pruned[j] = true;
+                    }
                 }
+                count = kept;
+                sample = (int) Math.min(n, 2L * sample);
             }
         }
 
-        List<Move> bestMoves = new ArrayList<>();
-        int bestScore = color ? minScore : maxScore;
-        for (Map.Entry<Move, Integer> entry : scores.entrySet()) {
-            Move cur = entry.getKey();
-            int score = entry.getValue();
-            if ((color && bestScore < score) || (!color && bestScore > score)) {
-                bestMoves = new ArrayList<>();
-                bestMoves.add(cur);
-                bestScore = score;
+        // scores the candidates (positions in scores.order) that are not dropped on hypotheses order[lo] to order[hi - 1]
+        private void sweep(int[] candidates, int lo, int hi) {
+            long start = System.nanoTime();
+            if (!parallel(hi - lo, scoreGrain)) {
+                moveBuffer(searchDepth);
+                sweep(candidates, lo, hi, board, moveBuffers, scores);
             }
-            else if (bestScore == score) {
-                bestMoves.add(cur);
+            else {
+                Queue<MoveScores> workers = new ConcurrentLinkedQueue<>();
+                ForkJoinPool.commonPool().invoke(new Sweep(candidates, lo, hi, sweeps.incrementAndGet(), workers));
+                for (MoveScores s : workers) {
+                    scores.merge(s);
+                    s.sweep = 0;
+                }
+            }
+            sweepNanos += System.nanoTime() - start;
+        }
+
+        // adds the scores to s, using bs and buffers as scratch space
+        // s is either scores itself or the set of one worker thread that is merged into scores afterwards
+        private void sweep(int[] candidates, int lo, int hi, BoardState bs, int[][] buffers, MoveScores s) {
+            long count = 0;
+            for (int k = lo; k < hi; k++) {
+                int h = order[k];
+                hypotheses.load(ids == null ? h : ids[h], bs);
+                long[] requestable = catalogSets[catalogIds[h]];
+                for (int j : candidates) {
+                    int i = scores.order[j];
+                    // pruned is shared by all tasks, a stale false only costs time
+                    if (pruned[j] || (requestable[i >>> 6] & (1L << i)) == 0) {
+                        continue;
+                    }
+                    s.reduce(i, score(bs, packed[j], buffers));
+                    count++;
+                    if (better(bound, worse(s.scores[i], scores.scores[i]))) {
+                        pruned[j] = true;
+                    }
+                }
+            }
+            evaluations.add(count);
+        }
+
+        private int worse(int a, int b) {
+            return color ? Math.min(a, b) : Math.max(a, b);
+        }
+
+        // scores candidates on hypotheses order[lo] to order[hi - 1], every worker thread reduces into the scores in
+        // its Scratch, which join workers the first time the thread runs a leaf of this sweep
+        @SuppressWarnings("serial")
+        private class Sweep extends RecursiveAction {
+            private final int[] candidates;
+            private final int lo, hi;
+            private final long id;
+            private final Queue<MoveScores> workers;
+
+            Sweep(int[] candidates, int lo, int hi, long id, Queue<MoveScores> workers) {
+                this.candidates = candidates;
+                this.lo = lo;
+                this.hi = hi;
+                this.id = id;
+                this.workers = workers;
+            }
+
+            protected void compute() {
+                if (hi - lo <= scoreGrain) {
+                    Scratch s = scratch.get();
+                    if (s.scores.sweep != id) {
+                        // still owned by a sweep of another bot that has not merged it yet
+                        if (s.scores.sweep != 0) {
+                            s.scores = new MoveScores(color);
+                        }
+                        s.scores.reset(color);
+                        s.scores.sweep = id;
+                        workers.add(s.scores);
+                    }
+                    sweep(candidates, lo, hi, s.board, s.buffers(searchDepth), s.scores);
+                    return;
+                }
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new Sweep(candidates, lo, mid, id, workers), new Sweep(candidates, mid, hi, id, workers));
+            }
+        }
+    }
+
+    // scores of the worst possible scenario for each move we can request, indexed by from, to and promotion
+    private static final class MoveScores {
+        private boolean white; // scores are minimized for white and maximized for black
+        private final int[] scores = new int[64 * 64 * 8];
+        private final long[] candidates = new long[64 * 64 * 8 / 64]; // moves that have a score
+        private int[] order = new int[PackedMove.MAX_MOVES]; // candidates in the order they were first generated
+        private int size;
+        volatile long sweep; // sweep that a worker's scores are part of until they are merged, 0 if none
+
+        MoveScores(boolean white) {
+            this.white = white;
+        }
+
+        // drops every candidate, only clearing the entries that were used
+        void reset(boolean white) {
+            this.white = white;
+            for (int j = 0; j < size; j++) {
+                candidates[order[j] >>> 6] = 0;
+            }
+            size = 0;
+        }
+
+        private static int index(int m) {
+            return (PackedMove.from(m) << 9) | (PackedMove.to(m) << 3) | PackedMove.promotion(m).ordinal();
+        }
+
+        static Move move(int i) {
+            return new Move(i >>> 9, (i >>> 3) & 63, Piece.values()[i & 7]);
+        }
+
+        // adds packed move m as a candidate with the best possible score, returns false if it is one already
+        boolean add(int m) {
+            return insert(index(m), white ? maxScore : minScore);
+        }
+
+        private boolean insert(int i, int score) {
+            if ((candidates[i >>> 6] & (1L << i)) != 0) {
+                return false;
+            }
+            candidates[i >>> 6] |= 1L << i;
+            scores[i] = score;
+            if (size == order.length) {
+                order = Arrays.copyOf(order, 2 * size);
+            }
+            order[size++] = i;
+            return true;
+        }
+
+        // lowers the score of the candidate with index i to score if that is worse for us, adds it if it is none
+        void reduce(int i, int score) {
+            if (!insert(i, score)) {
+                scores[i] = white ? Math.min(scores[i], score) : Math.max(scores[i], score);
+            }
+        }
+
+        // takes the worse score of both for every move, candidates only in other are added after those of this
+        void merge(MoveScores other) {
+            for (int j = 0; j < other.size; j++) {
+                int i = other.order[j];
+                reduce(i, other.scores[i]);
             }
         }
-        Random rand = new Random(seed);
-        move = bestMoves.get(rand.nextInt(bestMoves.size()));
-        return move;
     }
 
     public void moveResults(int end, boolean capture) {
-        Set<BoardState> newHypotheses = new HashSet<>();
+        materialize();
+        hypotheses = afterMove(hypotheses, move, end, capture);
+        senseIndex = null;
+        moveOwnPieces(move, end);
+
+        if (particleLimit > 0) {
+            Turn turn = turns.get(turns.size() - 1);
+            turn.move = move.copy();
+            turn.end = end;
+            turn.moveCapture = capture;
+            settle();
+        }
+    }
+
+    // boards after move on every board of boards where it ends on end and captures iff capture
+    private HypothesisSet afterMove(HypothesisSet boards, Move move, int end, boolean capture) {
+        HypothesisSet newHypotheses = new HypothesisSet(color, boards.size());
         boolean isInvalid, isBlocked;
 
         // move successful
@@ -267,21 +1287,202 @@ public class AndyNewman implements Bot {
             isBlocked = true;
         }
 
-        for (BoardState bs : hypotheses) {
-            Move m = color ? bs.identifyWhiteMove(move.copy()) : bs.identifyBlackMove(move.copy());
+        for (int k = 0; k < boards.size(); k++) {
+            boards.load(k, board);
+            Move m = color ? board.identifyWhiteMove(move.copy()) : board.identifyBlackMove(move.copy());
             if (m.isCapture == capture && m.isInvalidMove == isInvalid && m.isBlockedMove == isBlocked && m.isBlockedMove == (m.block == end)) {
-                if (color) {
-                    bs.whiteMove(m);
+                newHypotheses.add(color ? board.whiteChildAfter(m) : board.blackChildAfter(m));
+            }
+        }
+
+        return newHypotheses;
+    }
+
+    private void setOwnPieces(BoardState bs) {
+        ownPieces[Piece.PAWN.ordinal()] = color ? bs.getWhitePawns() : bs.getBlackPawns();
+        ownPieces[Piece.ROOK.ordinal()] = color ? bs.getWhiteRooks() : bs.getBlackRooks();
+        ownPieces[Piece.BISHOP.ordinal()] = color ? bs.getWhiteBishops() : bs.getBlackBishops();
+        ownPieces[Piece.QUEEN.ordinal()] = color ? bs.getWhiteQueens() : bs.getBlackQueens();
+        ownPieces[Piece.KING.ordinal()] = color ? bs.getWhiteKing() : bs.getBlackKing();
+        ownPieces[Piece.KNIGHT.ordinal()] = color ? bs.getWhiteKnights() : bs.getBlackKnights();
+    }
+
+    // true if bs has both kings and our pieces are where we know they are
+    private boolean plausible(BoardState bs) {
+        return bs.getWhiteKing() != 0 && bs.getBlackKing() != 0
+                && ownPieces[Piece.PAWN.ordinal()] == (color ? bs.getWhitePawns() : bs.getBlackPawns())
+                && ownPieces[Piece.ROOK.ordinal()] == (color ? bs.getWhiteRooks() : bs.getBlackRooks())
+                && ownPieces[Piece.BISHOP.ordinal()] == (color ? bs.getWhiteBishops() : bs.getBlackBishops())
+                && ownPieces[Piece.QUEEN.ordinal()] == (color ? bs.getWhiteQueens() : bs.getBlackQueens())
+                && ownPieces[Piece.KING.ordinal()] == (color ? bs.getWhiteKing() : bs.getBlackKing())
+                && ownPieces[Piece.KNIGHT.ordinal()] == (color ? bs.getWhiteKnights() : bs.getBlackKnights());
+    }
+
+    // moves our piece on move.from to end, where the move results say it ended
+    private void moveOwnPieces(Move move, int end) {
+        if (end == move.from) {
+            return;
+        }
+        int p = 0;
+        while (p < 6 && (ownPieces[p] & (1L << move.from)) == 0) {
+            p++;
+        }
+        if (p == 6) {
+            return;
+        }
+        ownPieces[p] &= ~(1L << move.from);
+        if (p == Piece.PAWN.ordinal() && (end < 8 || end >= 56)) {
+            p = (move.r == Piece.NONE ? Piece.QUEEN : move.r).ordinal();
+        }
+        ownPieces[p] |= 1L << end;
+        // castling, the rook jumps over the king
+        if (p == Piece.KING.ordinal() && Math.abs(end - move.from) == 2) {
+            int rook = end > move.from ? end + 1 : end - 2, to = end > move.from ? end - 1 : end + 1;
+            ownPieces[Piece.ROOK.ordinal()] ^= 1L << rook | 1L << to;
+        }
+    }
+
+    // first move we can request with our pieces alone, for when no hypothesis is left to score moves on
+    private Move fallbackMove() {
+        StringBuilder fen = new StringBuilder();
+        for (int j = 7; j >= 0; j--) {
+            int empty = 0;
+            for (int i = 0; i < 8; i++) {
+                int p = 0;
+                while (p < 6 && (ownPieces[p] & (1L << (8 * j + i))) == 0) {
+                    p++;
                 }
-                else {
-                    bs.blackMove(m);
+                if (p == 6) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    fen.append(empty);
+                    empty = 0;
                 }
-                bs.clearCache();
-                newHypotheses.add(bs);
+                char c = "prbqkn".charAt(p);
+                fen.append(color ? Character.toUpperCase(c) : c);
             }
+            if (empty > 0) {
+                fen.append(empty);
+            }
+            fen.append(j > 0 ? "/" : color ? " w - - 0 1" : " b - - 0 1");
+        }
+        BoardState bs = new BoardState(fen.toString());
+        int[] moves = moveBuffer(0);
+        int n = color ? bs.whiteMoves(moves) : bs.blackMoves(moves);
+        if (n == 0) {
+            // every piece is stuck, so the king asks to stay where it is and the move is invalid
+            int king = Long.numberOfTrailingZeros(ownPieces[Piece.KING.ordinal()]);
+            return new Move(king, king, Piece.NONE);
         }
+        return new Move(PackedMove.from(moves[0]), PackedMove.to(moves[0]), PackedMove.promotion(moves[0]));
+    }
+
+    // turns kept for rebuilding a sample that ran empty
+    private static final int particleTurns = 4;
+
+    // observations of one turn in particle filter mode
+    private static final class Turn {
+        private final HypothesisSet ancestors; // sample at the start of the turn
+        private final boolean expand; // false if the enemy did not move before the turn
+        private final boolean capture;
+        private final int sq;
+        private int sense = -1, senseResults; // sense is -1 until the sense results are in
+        private Move move; // null until the move results are in
+        private int end;
+        private boolean moveCapture;
+
+        Turn(HypothesisSet ancestors, boolean expand, boolean capture, int sq) {
+            this.ancestors = ancestors;
+            this.expand = expand;
+            this.capture = capture;
+            this.sq = sq;
+        }
+    }
 
-        hypotheses = newHypotheses;
+    private void recordTurn(boolean expand, boolean capture, int sq) {
+        turns.add(new Turn(hypotheses.copy(), expand, capture, sq));
+        if (turns.size() > particleTurns) {
+            turns.remove(0);
+        }
+    }
+
+    // resamples the hypotheses after an observation, rebuilding them from older samples if none are left
+    // only boards with both kings and our pieces where we know them are kept
+    private void settle() {
+        keepPlausible(hypotheses);
+        for (int t = turns.size() - 1; t >= 0 && hypotheses.isEmpty(); t--) {
+            hypotheses = replay(t, false, true);
+        }
+        if (hypotheses.isEmpty()) {
+            // no kept sample explains every observation, so the oldest one is expanded without sampling
+            hypotheses = replay(0, false, false);
+        }
+        if (hypotheses.isEmpty()) {
+            // the real board was dropped before the oldest kept turn
+            hypotheses = replay(turns.size() - 1, true, true);
+        }
+        resample(hypotheses);
+    }
+
+    // hypotheses rebuilt from the ancestors of turns.get(first) and every observation since, resampled as they were live
+    // if sample is set. If lenient, observations that would leave no hypotheses are skipped
+    private HypothesisSet replay(int first, boolean lenient, boolean sample) {
+        HypothesisSet boards = turns.get(first).ancestors.copy();
+        for (int t = first; t < turns.size() && !boards.isEmpty(); t++) {
+            Turn turn = turns.get(t);
+            HypothesisSet next = boards;
+            if (turn.expand) {
+                next = expanded(next, turn.capture, turn.sq);
+                boards = lenient && next.isEmpty() ? boards : next;
+            }
+            if (turn.sense >= 0) {
+                next = boards.copy();
+                filterSense(next, turn.sense, turn.senseResults);
+                boards = lenient && next.isEmpty() ? boards : next;
+                if (sample) {
+                    resample(boards);
+                }
+            }
+            if (turn.move != null) {
+                next = afterMove(boards, turn.move, turn.end, turn.moveCapture);
+                boards = lenient && next.isEmpty() ? boards : next;
+                if (sample) {
+                    resample(boards);
+                }
+            }
+        }
+        keepPlausible(boards);
+        return boards;
+    }
+
+    private void keepPlausible(HypothesisSet boards) {
+        boards.retain(k -> {
+            boards.load(k, board);
+            return plausible(board);
+        });
+    }
+
+    // keeps a uniform sample of particleLimit boards, in their original order
+    private void resample(HypothesisSet boards) {
+        int n = boards.size();
+        if (n <= particleLimit) {
+            return;
+        }
+        int[] ids = new int[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = i;
+        }
+        // the first particleLimit ids of a partial Fisher-Yates shuffle
+        for (int i = 0; i < particleLimit; i++) {
+            int j = i + particleRng.nextInt(n - i);
+            int id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+        }
+        Arrays.sort(ids, 0, particleLimit);
+        boards.retain(ids, 0, particleLimit);
     }
 
     public Piece promotePhase() {
@@ -295,21 +1496,25 @@ public class AndyNewman implements Bot {
         color = false;
         moveCount = -1;
         hypotheses = null;
+        children = null;
         sense = -1;
+        senseIndex = null;
         move = null;
+        turns.clear();
     }
 
     public boolean checkHypotheses(BoardState bs) {
-        return hypotheses.contains(bs);
+        return children != null ? children.contains(bs.compact()) : hypotheses.contains(bs.compact());
     }
 
     public int numHypotheses() {
-        return hypotheses.size();
+        return children != null ? children.size() : hypotheses.size();
     }
 
     public void printHypotheses() {
-        for (BoardState bs : hypotheses) {
-            System.out.println(bs);
+        materialize();
+        for (int k = 0; k < hypotheses.size(); k++) {
+            System.out.println(hypotheses.get(k));
         }
     }
 }
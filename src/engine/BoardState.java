@@ -16,90 +16,39 @@ public class BoardState {
     private boolean whiteKingside, whiteQueenside, blackKingside, blackQueenside;
     private boolean ep;
     private int eps;
-    // previous values
-    private ArrayDeque<Boolean> prevWhiteKingside, prevWhiteQueenside, prevBlackKingside, prevBlackQueenside;
-    private ArrayDeque<Boolean> prevEp;
-    private ArrayDeque<Integer> prevEps;
+    // previous values, one packed int per ply (see packState)
+    private int[] history;
+    private int ply;
 
     // end game
     private boolean hasWhiteKing, hasBlackKing;
 
     // zobrist hashing
-//	private int hc;
-//	private static final long seed = 0;
+    private long hc;
+    private static final long seed = 0;
 
     // pre-calculated bitboards
-    private static final long[] sq;
-    private static final Map<Long, Integer> convert;
-    private static final long[] rankMask, fileMask, diagonalMask, antiDiagonalMask;
     private static final long[] kingMoves, knightMoves;
-    private static final long[] northMask, eastMask, southMask, westMask, northEastMask, southEastMask, southWestMask, northWestMask;
     private static final long[][] slide;
-//    private static final Map<Piece, List<Integer>> wt, bt;
+    private static final long fileA, fileH, rank1, rank4, rank5, rank8;
+    private static final long kingsidePath, queensidePath;
+    private static final long[][] whiteKeys, blackKeys;
+    private static final long[] castlingKeys, epKeys;
 
     // piece order
-    private static final Map<Piece, Integer> str;
+    // base 7 sense value of each 3x3 window occupancy (9 bits, bottom row first) if every occupied square has code 1
+    private static final int[] senseCodes;
+    private static final int[] senseWeights;
+    private static final long senseWindow, senseCenters;
 
     static {
-        sq = new long[64];
-        convert = new HashMap<>();
-        sq[0] = Long.MIN_VALUE; // square 0 must be separately initialized because Math.pow(2, 63) returns 2^63-1
-        convert.put(Long.MIN_VALUE, 0);
-        for (int i = 1; i < 64; i++) {
-            sq[i] = (long) Math.pow(2, 63 - i);
-            convert.put((long) Math.pow(2, 63 - i), i);
-        }
-
-        rankMask = new long[64];
-        for (int j = 0; j < 8; j++) {
-            long x = 0;
-            for (int i = 0; i < 8; i++) {
-                x += sq[8 * j + i];
-            }
-            for (int i = 0; i < 8; i++) {
-                rankMask[8 * j + i] += x - sq[8 * j + i];
-            }
-        }
-
-        fileMask = new long[64];
-        for (int i = 0; i < 64; i++) {
-            for (int j = 0; j < 8; j++) {
-                fileMask[i] += sq[8 * j + (i % 8)];
-            }
-            fileMask[i] -= sq[i];
-        }
-
-        diagonalMask = new long[64];
-        for (int j = 0; j < 8; j++) {
-            for (int i = 0; i < 8; i++) {
-                for (int dx = 1; i + dx < 8 && j + dx < 8; dx++) {
-                    diagonalMask[8 * j + i] += sq[8 * (j + dx) + i + dx];
-                }
-                for (int dx = -1; i + dx >= 0 && j + dx >= 0; dx--) {
-                    diagonalMask[8 * j + i] += sq[8 * (j + dx) + i + dx];
-                }
-            }
-        }
-
-        antiDiagonalMask = new long[64];
-        for (int j = 0; j < 8; j++) {
-            for (int i = 0; i < 8; i++) {
-                for (int dx = 1; i + dx < 8 && j - dx >= 0; dx++) {
-                    antiDiagonalMask[8 * j + i] += sq[8 * (j - dx) + i + dx];
-                }
-                for (int dx = -1; i + dx >= 0 && j - dx < 8; dx--) {
-                    antiDiagonalMask[8 * j + i] += sq[8 * (j - dx) + i + dx];
-                }
-            }
-        }
-
         kingMoves = new long[64];
         for (int j = 0; j < 8; j++) {
             for (int i = 0; i < 8; i++) {
                 for (int y = j - 1; y <= j + 1; y++) {
                     for (int x = i - 1; x <= i + 1; x++) {
                         if (0 <= x && x < 8 && 0 <= y && y < 8 && (x != i || y != j)) {
-                            kingMoves[8 * j + i] += sq[8 * y + x];
+                            kingMoves[8 * j + i] += 1L << (8 * y + x);
                         }
                     }
                 }
@@ -113,148 +62,103 @@ public class BoardState {
                 for (int k = 0; k < 8; k++) {
                     int x = i + dx[k], y = j + dy[k];
                     if (0 <= x && x < 8 && 0 <= y && y < 8) {
-                        knightMoves[8 * j + i] += sq[8 * y + x];
+                        knightMoves[8 * j + i] += 1L << (8 * y + x);
                     }
                 }
             }
         }
 
-        northMask = new long[64];
+        slide = new long[64][64];
         for (int i = 0; i < 64; i++) {
-            for (int x = i + 8; x < 64; x += 8) {
-                northMask[i] += sq[x];
+            for (int j = i + 16; j < 64; j += 8) {
+                slide[i][j] = slide[i][j - 8] + (1L << (j - 8));
             }
-        }
-
-        eastMask = new long[64];
-        for (int i = 0; i < 64; i++) {
-            for (int x = i + 1; x % 8 != 0; x++) {
-                eastMask[i] += sq[x];
+            for (int j = i + 2; j < 8 * (i / 8) + 8; j++) {
+                slide[i][j] = slide[i][j - 1] + (1L << (j - 1));
             }
-        }
-
-        southMask = new long[64];
-        for (int i = 0; i < 64; i++) {
-            for (int x = i - 8; x >= 0; x -= 8) {
-                southMask[i] += sq[x];
+            for (int j = i + 18; j < 64 && j % 8 != 0 && j % 8 != 1; j += 9) {
+                slide[i][j] = slide[i][j - 9] + (1L << (j - 9));
             }
-        }
-
-        westMask = new long[64];
-        for (int i = 0; i < 64; i++) {
-            for (int x = i - 1; x >= 0 && x % 8 != 7; x--) {
-                westMask[i] += sq[x];
+            for (int j = i + 14; j < 64 && j % 8 != 7 && j % 8 != 6; j += 7) {
+                slide[i][j] = slide[i][j - 7] + (1L << (j - 7));
             }
         }
-
-        northEastMask = new long[64];
-        for (int j = 0; j < 8; j++) {
-            for (int i = 0; i < 8; i++) {
-                for (int d = 1; i + d < 8 && j + d < 8; d++) {
-                    northEastMask[8 * j + i] += sq[8 * (j + d) + i + d];
-                }
+        for (int j = 0; j < 64; j++) {
+            for (int i = j; i < 64; i++) {
+                slide[i][j] = slide[j][i];
             }
         }
 
-        southWestMask = new long[64];
-        for (int j = 0; j < 8; j++) {
-            for (int i = 0; i < 8; i++) {
-                for (int d = -1; i + d >= 0 && j + d >= 0; d--) {
-                    southWestMask[8 * j + i] += sq[8 * (j + d) + i + d];
-                }
+        fileA = 0b0000000100000001000000010000000100000001000000010000000100000001L;
+        fileH = fileA << 7;
+        rank1 = 0b11111111L;
+        rank4 = rank1 << 24;
+        rank5 = rank1 << 32;
+        rank8 = rank1 << 56;
+
+        // squares between king and rook on the back rank of white
+        kingsidePath = 0b01100000L;
+        queensidePath = 0b00001110L;
+
+        // window around square 9, shifted by x - 9 for a window around x
+        senseWindow = 0b000001110000011100000111L;
+        senseCenters = ~(fileA | fileH | rank1 | rank8);
+        // senseWeights[y - x + 9] is the base 7 place value of square y in the window around x
+        senseWeights = new int[19];
+        for (int j = 0, w = 1; j < 3; j++) {
+            for (int i = 0; i < 3; i++, w *= 7) {
+                senseWeights[8 * j + i] = w;
             }
         }
-
-        southEastMask = new long[64];
-        for (int j = 0; j < 8; j++) {
-            for (int i = 0; i < 8; i++) {
-                for (int d = 1; i + d < 8 && j - d >= 0; d++) {
-                    southEastMask[8 * j + i] += sq[8 * (j - d) + i + d];
+        senseCodes = new int[512];
+        for (int i = 0; i < 512; i++) {
+            for (int k = 0; k < 9; k++) {
+                if ((i & (1 << k)) != 0) {
+                    senseCodes[i] += senseWeights[8 * (k / 3) + k % 3];
                 }
             }
         }
 
-        northWestMask = new long[64];
-        for (int j = 0; j < 8; j++) {
-            for (int i = 0; i < 8; i++) {
-                for (int d = -1; i + d >= 0 && j - d < 8; d--) {
-                    northWestMask[8 * j + i] += sq[8 * (j - d) + i + d];
-                }
+        // keys of Piece.NONE are left as 0
+        Random rng = new Random(seed);
+        whiteKeys = new long[7][64];
+        blackKeys = new long[7][64];
+        for (int i = 0; i < 6; i++) {
+            for (int j = 0; j < 64; j++) {
+                whiteKeys[i][j] = rng.nextLong();
+                blackKeys[i][j] = rng.nextLong();
             }
         }
-
-        slide = new long[64][64];
-        for (int i = 0; i < 64; i++) {
-            for (int j = i + 16; j < 64; j += 8) {
-                slide[i][j] = slide[i][j - 8] + sq[j - 8];
-            }
-            for (int j = i + 2; j < 8 * (i / 8) + 8; j++) {
-                slide[i][j] = slide[i][j - 1] + sq[j - 1];
-            }
-            for (int j = i + 18; j < 64 && j % 8 != 0 && j % 8 != 1; j += 9) {
-                slide[i][j] = slide[i][j - 9] + sq[j - 9];
-            }
-            for (int j = i + 14; j < 64 && j % 8 != 7 && j % 8 != 6; j += 7) {
-                slide[i][j] = slide[i][j - 7] + sq[j - 7];
-            }
+        castlingKeys = new long[4];
+        for (int i = 0; i < 4; i++) {
+            castlingKeys[i] = rng.nextLong();
         }
-        for (int j = 0; j < 64; j++) {
-            for (int i = j; i < 64; i++) {
-                slide[i][j] = slide[j][i];
-            }
+        epKeys = new long[64];
+        for (int i = 0; i < 64; i++) {
+            epKeys[i] = rng.nextLong();
         }
-
-        str = new HashMap<>();
-        str.put(Piece.NONE, 0);
-        str.put(Piece.PAWN, 1);
-        str.put(Piece.ROOK, 2);
-        str.put(Piece.BISHOP, 3);
-        str.put(Piece.QUEEN, 4);
-        str.put(Piece.KING, 5);
-        str.put(Piece.KNIGHT, 6);
-
-//        Random rng = new Random(seed);
-//        wt = new HashMap<>();
-//        bt = new HashMap<>();
-//        for (Piece p : Piece.values()) {
-//        	List<Integer> l = new ArrayList<>();
-//        	for (int i = 0; i < 64; i++) {
-//        		l.add(rng.nextInt());
-//			}
-//        	wt.put(p, l);
-//        	if (p == Piece.NONE) {
-//        		bt.put(p, l);
-//			}
-//			else {
-//				List<Integer> m = new ArrayList<>();
-//				for (int i = 0; i < 64; i++) {
-//					m.add(rng.nextInt());
-//				}
-//				bt.put(p, m);
-//			}
-//		}
     }
     //endregion
 
     //region constructors
     public BoardState() {
         board = 0b1111111111111111000000000000000000000000000000001111111111111111L;
-        whiteBoard = 0b1111111111111111000000000000000000000000000000000000000000000000L;
-        blackBoard = 0b0000000000000000000000000000000000000000000000001111111111111111L;
-
-        whitePawns = 0b0000000011111111000000000000000000000000000000000000000000000000L;
-        whiteKnights = 0b0100001000000000000000000000000000000000000000000000000000000000L;
-        whiteBishops = 0b0010010000000000000000000000000000000000000000000000000000000000L;
-        whiteRooks = 0b1000000100000000000000000000000000000000000000000000000000000000L;
-        whiteQueens = 0b0001000000000000000000000000000000000000000000000000000000000000L;
-        whiteKing = 0b0000100000000000000000000000000000000000000000000000000000000000L;
-
-        blackPawns = 0b0000000000000000000000000000000000000000000000001111111100000000L;
-        blackKnights = 0b0000000000000000000000000000000000000000000000000000000001000010L;
-        blackBishops = 0b0000000000000000000000000000000000000000000000000000000000100100L;
-        blackRooks = 0b0000000000000000000000000000000000000000000000000000000010000001L;
-        blackQueens = 0b0000000000000000000000000000000000000000000000000000000000010000L;
-        blackKing = 0b0000000000000000000000000000000000000000000000000000000000001000L;
+        whiteBoard = 0b0000000000000000000000000000000000000000000000001111111111111111L;
+        blackBoard = 0b1111111111111111000000000000000000000000000000000000000000000000L;
+
+        whitePawns = 0b0000000000000000000000000000000000000000000000001111111100000000L;
+        whiteKnights = 0b0000000000000000000000000000000000000000000000000000000001000010L;
+        whiteBishops = 0b0000000000000000000000000000000000000000000000000000000000100100L;
+        whiteRooks = 0b0000000000000000000000000000000000000000000000000000000010000001L;
+        whiteQueens = 0b0000000000000000000000000000000000000000000000000000000000001000L;
+        whiteKing = 0b0000000000000000000000000000000000000000000000000000000000010000L;
+
+        blackPawns = 0b0000000011111111000000000000000000000000000000000000000000000000L;
+        blackKnights = 0b0100001000000000000000000000000000000000000000000000000000000000L;
+        blackBishops = 0b0010010000000000000000000000000000000000000000000000000000000000L;
+        blackRooks = 0b1000000100000000000000000000000000000000000000000000000000000000L;
+        blackQueens = 0b0000100000000000000000000000000000000000000000000000000000000000L;
+        blackKing = 0b0001000000000000000000000000000000000000000000000000000000000000L;
 
         whiteMailbox = new Piece[] {
                 Piece.ROOK, Piece.KNIGHT, Piece.BISHOP, Piece.QUEEN, Piece.KING, Piece.BISHOP, Piece.KNIGHT, Piece.ROOK,
@@ -281,20 +185,15 @@ public class BoardState {
         whiteQueenside = true;
         blackKingside = true;
         blackQueenside = true;
-        prevWhiteKingside = new ArrayDeque<>();
-        prevWhiteQueenside = new ArrayDeque<>();
-        prevBlackKingside = new ArrayDeque<>();
-        prevBlackQueenside = new ArrayDeque<>();
 
         ep = false;
 
-        prevEp = new ArrayDeque<>();
-        prevEps = new ArrayDeque<>();
+        history = new int[16];
 
         hasWhiteKing = true;
         hasBlackKing = true;
 
-//		hc = 0;
+        hc = computeHash();
     }
 
     public BoardState(String fen) {
@@ -312,72 +211,72 @@ public class BoardState {
             for (int i = 0; i < t[7 - j].length(); i++) {
                 char c = t[7 - j].charAt(i);
                 if ('A' <= c && c <= 'Z') {
-                    whiteBoard += sq[cur];
-                    board += sq[cur];
+                    whiteBoard += 1L << cur;
+                    board += 1L << cur;
                 }
                 else if ('a' <= c && c <= 'z') {
-                    blackBoard += sq[cur];
-                    board += sq[cur];
+                    blackBoard += 1L << cur;
+                    board += 1L << cur;
                 }
                 switch (c) {
                     case 'P':
-                        whitePawns = whitePawns + sq[cur];
+                        whitePawns = whitePawns + (1L << cur);
                         whiteMailbox[cur] = Piece.PAWN;
                         cur++;
                         break;
                     case 'N':
-                        whiteKnights = whiteKnights + sq[cur];
+                        whiteKnights = whiteKnights + (1L << cur);
                         whiteMailbox[cur] = Piece.KNIGHT;
                         cur++;
                         break;
                     case 'B':
-                        whiteBishops = whiteBishops + sq[cur];
+                        whiteBishops = whiteBishops + (1L << cur);
                         whiteMailbox[cur] = Piece.BISHOP;
                         cur++;
                         break;
                     case 'R':
-                        whiteRooks = whiteRooks + sq[cur];
+                        whiteRooks = whiteRooks + (1L << cur);
                         whiteMailbox[cur] = Piece.ROOK;
                         cur++;
                         break;
                     case 'Q':
-                        whiteQueens = whiteQueens + sq[cur];
+                        whiteQueens = whiteQueens + (1L << cur);
                         whiteMailbox[cur] = Piece.QUEEN;
                         cur++;
                         break;
                     case 'K':
-                        whiteKing = whiteKing + sq[cur];
+                        whiteKing = whiteKing + (1L << cur);
                         whiteMailbox[cur] = Piece.KING;
                         hasWhiteKing = true;
                         cur++;
                         break;
                     case 'p':
-                        blackPawns = blackPawns + sq[cur];
+                        blackPawns = blackPawns + (1L << cur);
                         blackMailbox[cur] = Piece.PAWN;
                         cur++;
                         break;
                     case 'n':
-                        blackKnights = blackKnights + sq[cur];
+                        blackKnights = blackKnights + (1L << cur);
                         blackMailbox[cur] = Piece.KNIGHT;
                         cur++;
                         break;
                     case 'b':
-                        blackBishops = blackBishops + sq[cur];
+                        blackBishops = blackBishops + (1L << cur);
                         blackMailbox[cur] = Piece.BISHOP;
                         cur++;
                         break;
                     case 'r':
-                        blackRooks = blackRooks + sq[cur];
+                        blackRooks = blackRooks + (1L << cur);
                         blackMailbox[cur] = Piece.ROOK;
                         cur++;
                         break;
                     case 'q':
-                        blackQueens = blackQueens + sq[cur];
+                        blackQueens = blackQueens + (1L << cur);
                         blackMailbox[cur] = Piece.QUEEN;
                         cur++;
                         break;
                     case 'k':
-                        blackKing = blackKing + sq[cur];
+                        blackKing = blackKing + (1L << cur);
                         blackMailbox[cur] = Piece.KING;
                         hasBlackKing = true;
                         cur++;
@@ -393,16 +292,6 @@ public class BoardState {
         blackKingside = s[2].contains("k");
         blackQueenside = s[2].contains("q");
 
-        ep = !s[3].equals("-");
-        if (ep) {
-            eps = 8 * (s[3].charAt(1) - '1') + s[3].charAt(0) - 'a';
-        }
-
-        prevWhiteKingside = new ArrayDeque<>();
-        prevWhiteQueenside = new ArrayDeque<>();
-        prevBlackKingside = new ArrayDeque<>();
-        prevBlackQueenside = new ArrayDeque<>();
-
         ep = !s[3].equals("-");
         if (ep) {
             eps = 8 * (s[3].charAt(1) - '1') + s[3].charAt(0) - 'a';
@@ -410,8 +299,10 @@ public class BoardState {
         else {
             eps = 0;
         }
-        prevEp = new ArrayDeque<>();
-        prevEps = new ArrayDeque<>();
+
+        history = new int[16];
+
+        hc = computeHash();
     }
 
     public BoardState(BoardState bs) {
@@ -444,18 +335,20 @@ public class BoardState {
         ep = bs.ep;
         eps = bs.eps;
 
-        prevWhiteKingside = bs.prevWhiteKingside.clone();
-        prevWhiteQueenside = bs.prevWhiteQueenside.clone();
-        prevBlackKingside = bs.prevBlackKingside.clone();
-        prevBlackQueenside = bs.prevBlackQueenside.clone();
-
-        prevEp = bs.prevEp.clone();
-        prevEps = bs.prevEps.clone();
+        history = Arrays.copyOf(bs.history, bs.ply);
+        ply = bs.ply;
 
         hasWhiteKing = bs.hasWhiteKing;
         hasBlackKing = bs.hasBlackKing;
 
-//		hc = bs.hc;
+        hc = bs.hc;
+    }
+
+    public BoardState(CompactBoard cb) {
+        whiteMailbox = new Piece[64];
+        blackMailbox = new Piece[64];
+        history = new int[16];
+        load(cb);
     }
     //endregion
 
@@ -510,2901 +403,1180 @@ public class BoardState {
     //endregion
 
     //region move generation methods
-    private long slideAttacks(int x, long mask) {
-        long forward = board & mask, reverse = Long.reverse(forward);
-        forward -= sq[x];
-        reverse -= sq[x ^ 63];
-        forward ^= Long.reverse(reverse);
-        forward &= mask;
-        return forward;
-    }
-
-    private long pseudoWhiteSlideAttacks(int x, long mask) {
-        long forward = whiteBoard & mask, reverse = Long.reverse(forward);
-        forward -= sq[x];
-        reverse -= sq[x ^ 63];
-        forward ^= Long.reverse(reverse);
-        forward &= mask;
-        return forward;
-    }
-
-    private long pseudoBlackSlideAttacks(int x, long mask) {
-        long forward = blackBoard & mask, reverse = Long.reverse(forward);
-        forward -= sq[x];
-        reverse -= sq[x ^ 63];
-        forward ^= Long.reverse(reverse);
-        forward &= mask;
-        return forward;
-    }
-
     // identifies if white minimal move is invalid, blocked, dp push, etc.
     // defines all instance variables of move
     // assumes move is already valid (move would be valid on board without enemy pieces)
     // warning: will edit move
     public Move identifyWhiteMove(Move move) {
-        move.p = whiteMailbox[move.from];
-
-        switch (move.p) {
-            case PAWN:
-                // attempted capture
-                if (move.to - move.from == 7 || move.to - move.from == 9) {
-                    // successful no en passant capture
-                    if (blackMailbox[move.to] != Piece.NONE) {
-                        move.q = blackMailbox[move.to];
-                        move.isCapture = true;
-                        // promotion
-                        if (move.to >= 56) {
-                            move.isPromotion = true;
-                        }
-                    }
-                    // en passant capture
-                    else if (ep && move.to == eps) {
-                        move.q = Piece.PAWN;
-                        move.isCapture = true;
-                        move.isEPCapture = true;
-                    }
-                    // invalid capture
-                    else {
-                        move.isInvalidMove = true;
-                    }
-                }
-                // attempted single push
-                else if (move.to - move.from == 8) {
-                    // invalid single push
-                    if (blackMailbox[move.to] != Piece.NONE) {
-                        move.isInvalidMove = true;
-                    }
-                    // successful single push
-                    else {
-                        // promotion
-                        if (move.to >= 56) {
-                            move.isPromotion = true;
-                        }
-                    }
-                }
-                // attempted double push
-                else {
-                    // invalid double push
-                    if (blackMailbox[move.from + 8] != Piece.NONE) {
-                        move.isInvalidMove = true;
-                    }
-                    // blocked double push
-                    else if (blackMailbox[move.to] != Piece.NONE) {
-                        move.block = move.from + 8;
-                        move.isBlockedMove = true;
-                    }
-                    // successful double push
-                    else {
-                        move.isDPMove = true;
-                    }
-                }
-                break;
-            case KNIGHT:
-                // capture
-                if (blackMailbox[move.to] != Piece.NONE) {
-                    move.q = blackMailbox[move.to];
-                    move.isCapture = true;
-                }
-                // quiet
-                break;
-            case ROOK:
-            case BISHOP:
-            case QUEEN:
-                long slideMap = slide[move.from][move.to];
-                // successful move
-                if ((slideMap & blackBoard) == 0) {
-                    // capture
-                    if (blackMailbox[move.to] != Piece.NONE) {
-                        move.q = blackMailbox[move.to];
-                        move.isCapture = true;
-                    }
-                    // quiet
-                }
-                // blocked move
-                else {
-                    long blockMap = slideMap & blackBoard;
-                    // north, northeast, east, northwest: least significant bit
-                    if (move.to > move.from) {
-                        move.block = convert.get(Long.highestOneBit(blockMap));
-                    }
-                    // southeast, south, southwest, west: most significant bit
-                    else {
-                        move.block = convert.get(Long.lowestOneBit(blockMap));
-                    }
-                    move.q = blackMailbox[move.block];
-                    move.isCapture = true;
-                    move.isBlockedMove = true;
-                }
-                break;
-            case KING:
-                // attempted kingside castle
-                if (move.to - move.from == 2) {
-                    // successful kingside castle
-                    if (blackMailbox[5] == Piece.NONE && blackMailbox[6] == Piece.NONE) {
-                        move.isKingsideCastle = true;
-                    }
-                    // invalid kingside castle
-                    else {
-                        move.isInvalidMove = true;
-                    }
-                }
-                // attempted queenside castle
-                else if (move.from - move.to == 2) {
-                    // successful queenside castle
-                    if (blackMailbox[1] == Piece.NONE && blackMailbox[2] == Piece.NONE && blackMailbox[3] == Piece.NONE) {
-                        move.isQueensideCastle = true;
-                    }
-                    // invalid queenside castle
-                    else {
-                        move.isInvalidMove = true;
-                    }
-                }
-                // capture
-                else if (blackMailbox[move.to] != Piece.NONE) {
-                    move.q = blackMailbox[move.to];
-                    move.isCapture = true;
-                }
-                // quiet
-                break;
-        }
-
+        move.load(identifyWhiteMove(move.pack()));
         return move;
     }
 
     public Move identifyBlackMove(Move move) {
-        move.p = blackMailbox[move.from];
+        move.load(identifyBlackMove(move.pack()));
+        return move;
+    }
+
+    // packed equivalent, only the from square, to square and promotion piece of move are read
+    public int identifyWhiteMove(int move) {
+        return identifyMove(move, whiteMailbox, blackMailbox, blackBoard, 8, 0);
+    }
 
-        switch (move.p) {
+    public int identifyBlackMove(int move) {
+        return identifyMove(move, blackMailbox, whiteMailbox, whiteBoard, -8, 56);
+    }
+
+    // forward is the direction our pawns push in and home is the first square of our back rank
+    private int identifyMove(int move, Piece[] ownMailbox, Piece[] enemyMailbox, long enemyBoard, int forward, int home) {
+        int from = PackedMove.from(move), to = PackedMove.to(move);
+        Piece p = ownMailbox[from];
+
+        switch (p) {
             case PAWN:
+                Piece r = Piece.NONE;
+                // promotion
+                if ((to & 56) == (home ^ 56)) {
+                    r = PackedMove.promotion(move) == Piece.NONE ? Piece.QUEEN : PackedMove.promotion(move);
+                }
                 // attempted capture
-                if (move.from - move.to == 7 || move.from - move.to == 9) {
+                if (to - from == forward - 1 || to - from == forward + 1) {
                     // successful no en passant capture
-                    if (whiteMailbox[move.to] != Piece.NONE) {
-                        move.q = whiteMailbox[move.to];
-                        move.isCapture = true;
-                        // promotion
-                        if (move.to <= 7) {
-                            move.isPromotion = true;
-                        }
+                    if (enemyMailbox[to] != Piece.NONE) {
+                        return PackedMove.of(p, r, from, to, enemyMailbox[to]);
                     }
                     // en passant capture
-                    else if (ep && move.to == eps) {
-                        move.q = Piece.PAWN;
-                        move.isCapture = true;
-                        move.isEPCapture = true;
+                    else if (ep && to == eps) {
+                        return PackedMove.of(p, from, to, Piece.PAWN) | PackedMove.EN_PASSANT;
                     }
                     // invalid capture
                     else {
-                        move.isInvalidMove = true;
+                        return PackedMove.of(p, r, from, to) | PackedMove.INVALID;
                     }
                 }
                 // attempted single push
-                else if (move.from - move.to == 8) {
+                else if (to - from == forward) {
                     // invalid single push
-                    if (whiteMailbox[move.to] != Piece.NONE) {
-                        move.isInvalidMove = true;
+                    if (enemyMailbox[to] != Piece.NONE) {
+                        return PackedMove.of(p, r, from, to) | PackedMove.INVALID;
                     }
                     // successful single push
                     else {
-                        // promotion
-                        if (move.to <= 7) {
-                            move.isPromotion = true;
-                        }
+                        return PackedMove.of(p, r, from, to);
                     }
                 }
                 // attempted double push
                 else {
                     // invalid double push
-                    if (whiteMailbox[move.from - 8] != Piece.NONE) {
-                        move.isInvalidMove = true;
+                    if (enemyMailbox[from + forward] != Piece.NONE) {
+                        return PackedMove.of(p, from, to) | PackedMove.INVALID;
                     }
                     // blocked double push
-                    else if (whiteMailbox[move.to] != Piece.NONE) {
-                        move.block = move.from - 8;
-                        move.isBlockedMove = true;
+                    else if (enemyMailbox[to] != Piece.NONE) {
+                        return PackedMove.of(p, from, to, from + forward);
                     }
                     // successful double push
                     else {
-                        move.isDPMove = true;
+                        return PackedMove.of(p, from, to) | PackedMove.DOUBLE_PUSH;
                     }
                 }
-                break;
-            case KNIGHT:
-                // capture
-                if (whiteMailbox[move.to] != Piece.NONE) {
-                    move.q = whiteMailbox[move.to];
-                    move.isCapture = true;
-                }
-                // quiet
-                break;
             case ROOK:
             case BISHOP:
             case QUEEN:
-                long slideMap = slide[move.from][move.to];
-                // successful move
-                if ((slideMap & whiteBoard) == 0) {
-                    // capture
-                    if (whiteMailbox[move.to] != Piece.NONE) {
-                        move.q = whiteMailbox[move.to];
-                        move.isCapture = true;
-                    }
-                    // quiet
-                }
+                long blockMap = slide[from][to] & enemyBoard;
                 // blocked move
-                else {
-                    long blockMap = slideMap & whiteBoard;
+                if (blockMap != 0) {
+                    int block;
                     // north, northeast, east, northwest: least significant bit
-                    if (move.to > move.from) {
-                        move.block = convert.get(Long.highestOneBit(blockMap));
+                    if (to > from) {
+                        block = Long.numberOfTrailingZeros(blockMap);
                     }
                     // southeast, south, southwest, west: most significant bit
                     else {
-                        move.block = convert.get(Long.lowestOneBit(blockMap));
+                        block = 63 - Long.numberOfLeadingZeros(blockMap);
                     }
-                    move.q = whiteMailbox[move.block];
-                    move.isCapture = true;
-                    move.isBlockedMove = true;
+                    return PackedMove.of(p, from, to, block, enemyMailbox[block]);
                 }
+                // successful move
                 break;
             case KING:
                 // attempted kingside castle
-                if (move.to - move.from == 2) {
+                if (to - from == 2) {
                     // successful kingside castle
-                    if (whiteMailbox[61] == Piece.NONE && whiteMailbox[62] == Piece.NONE) {
-                        move.isKingsideCastle = true;
+                    if (enemyMailbox[home + 5] == Piece.NONE && enemyMailbox[home + 6] == Piece.NONE) {
+                        return PackedMove.of(p, from, to) | PackedMove.KINGSIDE_CASTLE;
                     }
                     // invalid kingside castle
                     else {
-                        move.isInvalidMove = true;
+                        return PackedMove.of(p, from, to) | PackedMove.INVALID;
                     }
                 }
                 // attempted queenside castle
-                else if (move.from - move.to == 2) {
+                else if (from - to == 2) {
                     // successful queenside castle
-                    if (whiteMailbox[57] == Piece.NONE && whiteMailbox[58] == Piece.NONE && whiteMailbox[59] == Piece.NONE) {
-                        move.isQueensideCastle = true;
+                    if (enemyMailbox[home + 1] == Piece.NONE && enemyMailbox[home + 2] == Piece.NONE && enemyMailbox[home + 3] == Piece.NONE) {
+                        return PackedMove.of(p, from, to) | PackedMove.QUEENSIDE_CASTLE;
                     }
                     // invalid queenside castle
                     else {
-                        move.isInvalidMove = true;
+                        return PackedMove.of(p, from, to) | PackedMove.INVALID;
                     }
                 }
-                // capture
-                else if (whiteMailbox[move.to] != Piece.NONE) {
-                    move.q = whiteMailbox[move.to];
-                    move.isCapture = true;
-                }
-                // quiet
                 break;
         }
 
-        return move;
+        // capture or quiet
+        return PackedMove.of(p, from, to, enemyMailbox[to]);
     }
 
-    public List<Move> whiteMoves() {
-        List<Move> moves = new ArrayList<>();
-        if (!hasWhiteKing || !hasBlackKing) {
-            return moves;
-        }
-        boolean possibleInvalidMove = false;
-        for (long b = whiteBoard; b != 0; b &= b - 1) {
-            int from = convert.get(b & -b);
-            switch (whiteMailbox[from]) {
-                case KNIGHT:
-                    long knightMap = knightMoves[from] & ~whiteBoard;
-                    // quiet moves
-                    for (long nb = knightMap & ~blackBoard; nb != 0; nb &= nb - 1) {
-                        int to = convert.get(nb & -nb);
-                        moves.add(new Move(Piece.KNIGHT, from, to));
-                    }
-                    // captures
-                    for (long nb = knightMap & blackBoard; nb != 0; nb &= nb - 1) {
-                        int to = convert.get(nb & -nb);
-                        moves.add(new Move(Piece.KNIGHT, from, to, blackMailbox[to]));
-                    }
-                    break;
-                case ROOK:
-                    long rookMap = (slideAttacks(from, rankMask[from]) ^ slideAttacks(from, fileMask[from])) & ~whiteBoard;
-                    // quiet moves
-                    for (long rb = rookMap & ~blackBoard; rb != 0; rb &= rb - 1) {
-                        int to = convert.get(rb & -rb);
-                        moves.add(new Move(Piece.ROOK, from, to));
-                    }
-                    // captures
-                    for (long rb = rookMap & blackBoard; rb != 0; rb &= rb - 1) {
-                        int to = convert.get(rb & -rb);
-                        moves.add(new Move(Piece.ROOK, from, to, blackMailbox[to]));
-                    }
-                    break;
-                case BISHOP:
-                    long bishopMap = (slideAttacks(from, diagonalMask[from]) ^ slideAttacks(from, antiDiagonalMask[from])) & ~whiteBoard;
-                    // quiet moves
-                    for (long bb = bishopMap & ~blackBoard; bb != 0; bb &= bb - 1) {
-                        int to = convert.get(bb & -bb);
-                        moves.add(new Move(Piece.BISHOP, from, to));
-                    }
-                    // captures
-                    for (long bb = bishopMap & blackBoard; bb != 0; bb &= bb - 1) {
-                        int to = convert.get(bb & -bb);
-                        moves.add(new Move(Piece.BISHOP, from, to, blackMailbox[to]));
-                    }
-                    break;
-                case QUEEN:
-                    long queenMap = (slideAttacks(from, rankMask[from]) ^ slideAttacks(from, fileMask[from]) ^ slideAttacks(from, diagonalMask[from]) ^ slideAttacks(from, antiDiagonalMask[from])) & ~whiteBoard;
-                    // quiet moves
-                    for (long qb = queenMap & ~blackBoard; qb != 0; qb &= qb - 1) {
-                        int to = convert.get(qb & -qb);
-                        moves.add(new Move(Piece.QUEEN, from, to));
-                    }
-                    // captures
-                    for (long qb = queenMap & blackBoard; qb != 0; qb &= qb - 1) {
-                        int to = convert.get(qb & -qb);
-                        moves.add(new Move(Piece.QUEEN, from, to, blackMailbox[to]));
-                    }
-                    break;
-                case KING:
-                    long kingMap = kingMoves[from] & ~whiteBoard;
-                    // quiet moves
-                    for (long kb = kingMap & ~blackBoard; kb != 0; kb &= kb - 1) {
-                        int to = convert.get(kb & -kb);
-                        moves.add(new Move(Piece.KING, from, to));
-                    }
-                    // captures
-                    for (long kb = kingMap & blackBoard; kb != 0; kb &= kb - 1) {
-                        int to = convert.get(kb & -kb);
-                        moves.add(new Move(Piece.KING, from, to, blackMailbox[to]));
-                    }
-                    // castling
-                    if (whiteKingside && whiteMailbox[5] == Piece.NONE && whiteMailbox[6] == Piece.NONE) {
-                        if (blackMailbox[5] == Piece.NONE && blackMailbox[6] == Piece.NONE) {
-                            Move move = new Move(Piece.KING, 4, 6);
-                            move.isKingsideCastle = true;
-                            moves.add(move);
-                        }
-                        else {
-                            possibleInvalidMove = true;
-                        }
-                    }
-                    if (whiteQueenside && whiteMailbox[3] == Piece.NONE && whiteMailbox[2] == Piece.NONE && whiteMailbox[1] == Piece.NONE) {
-                        if (blackMailbox[3] == Piece.NONE && blackMailbox[2] == Piece.NONE && blackMailbox[1] == Piece.NONE) {
-                            Move move = new Move(Piece.KING, 4, 2);
-                            move.isQueensideCastle = true;
-                            moves.add(move);
-                        }
-                        else {
-                            possibleInvalidMove = true;
-                        }
-                    }
-                    break;
-            }
-        }
-        // pawns moves are handled separately
-        // left captures
-        long a = whitePawns >>> 7;
-        long b = a & 0b0000000000000000000000000000000000000000000000000000000011111110L;
-        long c = a & 0b1111111011111110111111101111111011111110111111101111111000000000L;
-        long d = a & 0b1111111011111110111111101111111011111110111111101111111011111110L;
-        // left captures, no promotion, no en passant
-        for (long lb = c & blackBoard; lb != 0; lb &= lb - 1) {
-            int to = convert.get(lb & -lb);
-            moves.add(new Move(Piece.PAWN, to - 7, to, blackMailbox[to]));
-        }
-        // left captures, promotion
-        for (long lb = b & blackBoard; lb != 0; lb &= lb - 1) {
-            int to = convert.get(lb & -lb);
-            moves.add(new Move(Piece.PAWN, Piece.QUEEN,to - 7, to, blackMailbox[to]));
-            moves.add(new Move(Piece.PAWN, Piece.KNIGHT,to - 7, to, blackMailbox[to]));
-            moves.add(new Move(Piece.PAWN, Piece.ROOK,to - 7, to, blackMailbox[to]));
-            moves.add(new Move(Piece.PAWN, Piece.BISHOP,to - 7, to, blackMailbox[to]));
-        }
-        // left captures, en passant
-        if (ep && (d & sq[eps]) != 0) {
-            Move move = new Move(Piece.PAWN, eps - 7, eps, Piece.PAWN);
-            move.isEPCapture = true;
-            moves.add(move);
-        }
-        // left invalid moves
-        else if ((d & ~board) != 0) {
-            possibleInvalidMove = true;
-        }
-        // right captures
-        a = whitePawns >>> 9;
-        b = a & 0b0000000000000000000000000000000000000000000000000000000001111111L;
-        c = a & 0b0111111101111111011111110111111101111111011111110111111100000000L;
-        d = a & 0b0111111101111111011111110111111101111111011111110111111101111111L;
-        // right captures, no promotion, no en passant
-        for (long lb = c & blackBoard; lb != 0; lb &= lb - 1) {
-            int to = convert.get(lb & -lb);
-            moves.add(new Move(Piece.PAWN, to - 9, to, blackMailbox[to]));
-        }
-        // right captures, promotion
-        for (long lb = b & blackBoard; lb != 0; lb &= lb - 1) {
-            int to = convert.get(lb & -lb);
-            moves.add(new Move(Piece.PAWN, Piece.QUEEN,to - 9, to, blackMailbox[to]));
-            moves.add(new Move(Piece.PAWN, Piece.KNIGHT,to - 9, to, blackMailbox[to]));
-            moves.add(new Move(Piece.PAWN, Piece.ROOK,to - 9, to, blackMailbox[to]));
-            moves.add(new Move(Piece.PAWN, Piece.BISHOP,to - 9, to, blackMailbox[to]));
-        }
-        // right captures, en passant
-        if (ep && (d & sq[eps]) != 0) {
-            Move move = new Move(Piece.PAWN, eps - 9, eps, Piece.PAWN);
-            move.isEPCapture = true;
-            moves.add(move);
-        }
-        // right invalid moves
-        else if ((d & ~board) != 0) {
-            possibleInvalidMove = true;
-        }
-        // single push
-        long singleMap = whitePawns >>> 8;
-        for (long sb = singleMap & ~board; sb != 0; sb &= sb - 1) {
-            int to = convert.get(sb & -sb);
-            moves.add(new Move(Piece.PAWN, to - 8, to));
-        }
-        // single push invalid
-        if ((singleMap & blackBoard) != 0) {
-            possibleInvalidMove = true;
-        }
-        // double push
-        long doubleMap = (whitePawns >>> 16) & 0b0000000000000000000000001111111100000000000000000000000000000000L & ((singleMap & ~board) >>> 8);
-        for (long db = doubleMap & ~board; db != 0; db &= db - 1) {
-            int to = convert.get(db & -db);
-            Move move = new Move(Piece.PAWN, to - 16, to);
-            move.isDPMove = true;
-            moves.add(move);
-        }
-        // invalid move
-        if (possibleInvalidMove) {
-            Move move = new Move();
-            move.isInvalidMove = true;
-            moves.add(move);
+    private static List<Move> toMoveList(int[] moves, int n) {
+        List<Move> list = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            list.add(new Move(moves[i]));
         }
-        return moves;
+        return list;
+    }
+
+    public List<Move> whiteMoves() {
+        int[] moves = new int[PackedMove.MAX_MOVES];
+        return toMoveList(moves, whiteMoves(moves));
     }
 
     public List<Move> blackMoves() {
-        List<Move> moves = new ArrayList<>();
-        if (!hasWhiteKing || !hasBlackKing) {
-            return moves;
-        }
-        boolean possibleInvalidMove = false;
-        for (long b = blackBoard; b != 0; b &= b - 1) {
-            int from = convert.get(b & -b);
-            switch (blackMailbox[from]) {
-                case KNIGHT:
-                    long knightMap = knightMoves[from] & ~blackBoard;
-                    // quiet moves
-                    for (long nb = knightMap & ~whiteBoard; nb != 0; nb &= nb - 1) {
-                        int to = convert.get(nb & -nb);
-                        moves.add(new Move(Piece.KNIGHT, from, to));
-                    }
-                    // captures
-                    for (long nb = knightMap & whiteBoard; nb != 0; nb &= nb - 1) {
-                        int to = convert.get(nb & -nb);
-                        moves.add(new Move(Piece.KNIGHT, from, to, whiteMailbox[to]));
-                    }
-                    break;
-                case ROOK:
-                    long rookMap = (slideAttacks(from, rankMask[from]) ^ slideAttacks(from, fileMask[from])) & ~blackBoard;
-                    // quiet moves
-                    for (long rb = rookMap & ~whiteBoard; rb != 0; rb &= rb - 1) {
-                        int to = convert.get(rb & -rb);
-                        moves.add(new Move(Piece.ROOK, from, to));
-                    }
-                    // captures
-                    for (long rb = rookMap & whiteBoard; rb != 0; rb &= rb - 1) {
-                        int to = convert.get(rb & -rb);
-                        moves.add(new Move(Piece.ROOK, from, to, whiteMailbox[to]));
-                    }
-                    break;
-                case BISHOP:
-                    long bishopMap = (slideAttacks(from, diagonalMask[from]) ^ slideAttacks(from, antiDiagonalMask[from])) & ~blackBoard;
-                    // quiet moves
-                    for (long bb = bishopMap & ~whiteBoard; bb != 0; bb &= bb - 1) {
-                        int to = convert.get(bb & -bb);
-                        moves.add(new Move(Piece.BISHOP, from, to));
-                    }
-                    // captures
-                    for (long bb = bishopMap & whiteBoard; bb != 0; bb &= bb - 1) {
-                        int to = convert.get(bb & -bb);
-                        moves.add(new Move(Piece.BISHOP, from, to, whiteMailbox[to]));
-                    }
-                    break;
-                case QUEEN:
-                    long queenMap = (slideAttacks(from, rankMask[from]) ^ slideAttacks(from, fileMask[from]) ^ slideAttacks(from, diagonalMask[from]) ^ slideAttacks(from, antiDiagonalMask[from])) & ~blackBoard;
-                    // quiet moves
-                    for (long qb = queenMap & ~whiteBoard; qb != 0; qb &= qb - 1) {
-                        int to = convert.get(qb & -qb);
-                        moves.add(new Move(Piece.QUEEN, from, to));
-                    }
-                    // captures
-                    for (long qb = queenMap & whiteBoard; qb != 0; qb &= qb - 1) {
-                        int to = convert.get(qb & -qb);
-                        moves.add(new Move(Piece.QUEEN, from, to, whiteMailbox[to]));
-                    }
-                    break;
-                case KING:
-                    long kingMap = kingMoves[from] & ~blackBoard;
-                    // quiet moves
-                    for (long kb = kingMap & ~whiteBoard; kb != 0; kb &= kb - 1) {
-                        int to = convert.get(kb & -kb);
-                        moves.add(new Move(Piece.KING, from, to));
-                    }
-                    // captures
-                    for (long kb = kingMap & whiteBoard; kb != 0; kb &= kb - 1) {
-                        int to = convert.get(kb & -kb);
-                        moves.add(new Move(Piece.KING, from, to, whiteMailbox[to]));
-                    }
-                    // castling
-                    if (blackKingside && blackMailbox[61] == Piece.NONE && blackMailbox[62] == Piece.NONE) {
-                        if (whiteMailbox[61] == Piece.NONE && whiteMailbox[62] == Piece.NONE) {
-                            Move move = new Move(Piece.KING, 60, 62);
-                            move.isKingsideCastle = true;
-                            moves.add(move);
-                        }
-                        else {
-                            possibleInvalidMove = true;
-                        }
-                    }
-                    if (blackQueenside && blackMailbox[59] == Piece.NONE && blackMailbox[58] == Piece.NONE && blackMailbox[57] == Piece.NONE) {
-                        if (whiteMailbox[59] == Piece.NONE && whiteMailbox[58] == Piece.NONE && whiteMailbox[57] == Piece.NONE) {
-                            Move move = new Move(Piece.KING, 60, 58);
-                            move.isQueensideCastle = true;
-                            moves.add(move);
-                        }
-                        else {
-                            possibleInvalidMove = true;
-                        }
-                    }
-                    break;
-            }
-        }
-        // pawns moves are handled separately
-        // left captures
-        long a = blackPawns << 9;
-        long b = a & 0b1111111000000000000000000000000000000000000000000000000000000000L;
-        long c = a & 0b0000000011111110111111101111111011111110111111101111111011111110L;
-        long d = a & 0b1111111011111110111111101111111011111110111111101111111011111110L;
-        // left captures, no promotion, no en passant
-        for (long lb = c & whiteBoard; lb != 0; lb &= lb - 1) {
-            int to = convert.get(lb & -lb);
-            moves.add(new Move(Piece.PAWN, to + 9, to, whiteMailbox[to]));
-        }
-        // left captures, promotion
-        for (long lb = b & whiteBoard; lb != 0; lb &= lb - 1) {
-            int to = convert.get(lb & -lb);
-            moves.add(new Move(Piece.PAWN, Piece.QUEEN,to + 9, to, whiteMailbox[to]));
-            moves.add(new Move(Piece.PAWN, Piece.KNIGHT,to + 9, to, whiteMailbox[to]));
-            moves.add(new Move(Piece.PAWN, Piece.ROOK,to + 9, to, whiteMailbox[to]));
-            moves.add(new Move(Piece.PAWN, Piece.BISHOP,to + 9, to, whiteMailbox[to]));
-        }
-        // left captures, en passant
-        if (ep && (d & sq[eps]) != 0) {
-            Move move = new Move(Piece.PAWN, eps + 9, eps, Piece.PAWN);
-            move.isEPCapture = true;
-            moves.add(move);
-        }
-        // left invalid moves
-        else if ((d & ~board) != 0) {
-            possibleInvalidMove = true;
-        }
-        // right captures
-        a = blackPawns << 7;
-        b = a & 0b0111111100000000000000000000000000000000000000000000000000000000L;
-        c = a & 0b0000000001111111011111110111111101111111011111110111111101111111L;
-        d = a & 0b0111111101111111011111110111111101111111011111110111111101111111L;
-        // right captures, no promotion, no en passant
-        for (long lb = c & whiteBoard; lb != 0; lb &= lb - 1) {
-            int to = convert.get(lb & -lb);
-            moves.add(new Move(Piece.PAWN, to + 7, to, whiteMailbox[to]));
-        }
-        // right captures, promotion
-        for (long lb = b & whiteBoard; lb != 0; lb &= lb - 1) {
-            int to = convert.get(lb & -lb);
-            moves.add(new Move(Piece.PAWN, Piece.QUEEN,to + 7, to, whiteMailbox[to]));
-            moves.add(new Move(Piece.PAWN, Piece.KNIGHT,to + 7, to, whiteMailbox[to]));
-            moves.add(new Move(Piece.PAWN, Piece.ROOK,to + 7, to, whiteMailbox[to]));
-            moves.add(new Move(Piece.PAWN, Piece.BISHOP,to + 7, to, whiteMailbox[to]));
-        }
-        // right captures, en passant
-        if (ep && (d & sq[eps]) != 0) {
-            Move move = new Move(Piece.PAWN, eps + 7, eps, Piece.PAWN);
-            move.isEPCapture = true;
-            moves.add(move);
-        }
-        // right invalid moves
-        else if ((d & ~board) != 0) {
-            possibleInvalidMove = true;
-        }
-        // single push
-        long singleMap = blackPawns << 8;
-        for (long sb = singleMap & ~board; sb != 0; sb &= sb - 1) {
-            int to = convert.get(sb & -sb);
-            moves.add(new Move(Piece.PAWN, to + 8, to));
-        }
-        // single push invalid
-        if ((singleMap & whiteBoard) != 0) {
-            possibleInvalidMove = true;
-        }
-        // double push
-        long doubleMap = (blackPawns << 16) & 0b0000000000000000000000000000000011111111000000000000000000000000L & ((singleMap & ~board) << 8);
-        for (long db = doubleMap & ~board; db != 0; db &= db - 1) {
-            int to = convert.get(db & -db);
-            Move move = new Move(Piece.PAWN, to + 16, to);
-            move.isDPMove = true;
-            moves.add(move);
-        }
-        // invalid move
-        if (possibleInvalidMove) {
-            Move move = new Move();
-            move.isInvalidMove = true;
-            moves.add(move);
-        }
-        return moves;
+        int[] moves = new int[PackedMove.MAX_MOVES];
+        return toMoveList(moves, blackMoves(moves));
     }
 
     public List<Move> whitePseudoMoves() {
-        List<Move> moves = new ArrayList<>();
-        if (!hasWhiteKing || !hasBlackKing) {
-            return moves;
-        }
-        for (long b = whiteBoard; b != 0; b &= b - 1) {
-            int from = convert.get(b & -b);
-            switch (whiteMailbox[from]) {
-                case KNIGHT:
-                    long knightMap = knightMoves[from] & ~whiteBoard;
-                    // quiet moves
-                    for (long nb = knightMap & ~blackBoard; nb != 0; nb &= nb - 1) {
-                        int to = convert.get(nb & -nb);
-                        moves.add(new Move(Piece.KNIGHT, from, to));
-                    }
-                    // captures
-                    for (long nb = knightMap & blackBoard; nb != 0; nb &= nb - 1) {
-                        int to = convert.get(nb & -nb);
-                        moves.add(new Move(Piece.KNIGHT, from, to, blackMailbox[to]));
-                    }
-                    break;
-                case ROOK:
-                    // north moves
-                    long rookNorthMap = slideAttacks(from, northMask[from]) & ~whiteBoard;
-                    // quiet moves
-                    for (long rb = rookNorthMap & ~blackBoard; rb != 0; rb &= rb - 1) {
-                        int to = convert.get(rb & -rb);
-                        moves.add(new Move(Piece.ROOK, from, to));
-                    }
-                    // capture moves
-                    long rookNorthCaptureMap = rookNorthMap & blackBoard;
-                    if (rookNorthCaptureMap != 0) {
-                        int cap = convert.get(Long.highestOneBit(rookNorthCaptureMap));
-                        moves.add(new Move(Piece.ROOK, from, cap, blackMailbox[cap]));
-                        // blocked moves
-                        long rookNorthPseudoMap = pseudoWhiteSlideAttacks(from, northMask[from]) & ~whiteBoard;
-                        for (long rb = rookNorthPseudoMap ^ rookNorthMap; rb != 0; rb &= rb - 1) {
-                            int to = convert.get(rb & -rb);
-                            Move move = new Move(Piece.ROOK, from, to, cap, blackMailbox[cap]);
-                            moves.add(move);
-                        }
-                    }
-
-                    // south moves
-                    long rookSouthMap = slideAttacks(from, southMask[from]) & ~whiteBoard;
-                    // quiet moves
-                    for (long rb = rookSouthMap & ~blackBoard; rb != 0; rb &= rb - 1) {
-                        int to = convert.get(rb & -rb);
-                        moves.add(new Move(Piece.ROOK, from, to));
-                    }
-                    // capture moves
-                    long rookSouthCaptureMap = rookSouthMap & blackBoard;
-                    if (rookSouthCaptureMap != 0) {
-                        int cap = convert.get(rookSouthCaptureMap & -rookSouthCaptureMap);
-                        moves.add(new Move(Piece.ROOK, from, cap, blackMailbox[cap]));
-                        // blocked moves
-                        long rookSouthPseudoMap = pseudoWhiteSlideAttacks(from, southMask[from]) & ~whiteBoard;
-                        for (long rb = rookSouthPseudoMap ^ rookSouthMap; rb != 0; rb &= rb - 1) {
-                            int to = convert.get(rb & -rb);
-                            Move move = new Move(Piece.ROOK, from, to, cap, blackMailbox[cap]);
-                            moves.add(move);
-                        }
-                    }
-
-                    // east moves
-                    long rookEastMap = slideAttacks(from, eastMask[from]) & ~whiteBoard;
-                    // quiet moves
-                    for (long rb = rookEastMap & ~blackBoard; rb != 0; rb &= rb - 1) {
-                        int to = convert.get(rb & -rb);
-                        moves.add(new Move(Piece.ROOK, from, to));
-                    }
-                    // capture moves
-                    long rookEastCaptureMap = rookEastMap & blackBoard;
-                    if (rookEastCaptureMap != 0) {
-                        int cap = convert.get(Long.highestOneBit(rookEastCaptureMap));
-                        moves.add(new Move(Piece.ROOK, from, cap, blackMailbox[cap]));
-                        // blocked moves
-                        long rookEastPseudoMap = pseudoWhiteSlideAttacks(from, eastMask[from]) & ~whiteBoard;
-                        for (long rb = rookEastPseudoMap ^ rookEastMap; rb != 0; rb &= rb - 1) {
-                            int to = convert.get(rb & -rb);
-                            Move move = new Move(Piece.ROOK, from, to, cap, blackMailbox[cap]);
-                            moves.add(move);
-                        }
-                    }
-
-                    // west moves
-                    long rookWestMap = slideAttacks(from, westMask[from]) & ~whiteBoard;
-                    // quiet moves
-                    for (long rb = rookWestMap & ~blackBoard; rb != 0; rb &= rb - 1) {
-                        int to = convert.get(rb & -rb);
-                        moves.add(new Move(Piece.ROOK, from, to));
-                    }
-                    // capture moves
-                    long rookWestCaptureMap = rookWestMap & blackBoard;
-                    if (rookWestCaptureMap != 0) {
-                        int cap = convert.get(rookWestCaptureMap & -rookWestCaptureMap);
-                        moves.add(new Move(Piece.ROOK, from, cap, blackMailbox[cap]));
-                        // blocked moves
-                        long rookWestPseudoMap = pseudoWhiteSlideAttacks(from, westMask[from]) & ~whiteBoard;
-                        for (long rb = rookWestPseudoMap ^ rookWestMap; rb != 0; rb &= rb - 1) {
-                            int to = convert.get(rb & -rb);
-                            Move move = new Move(Piece.ROOK, from, to, cap, blackMailbox[cap]);
-                            moves.add(move);
-                        }
-                    }
-                    break;
-                case BISHOP:
-                    // northEast moves
-                    long bishopNorthEastMap = slideAttacks(from, northEastMask[from]) & ~whiteBoard;
-                    // quiet moves
-                    for (long bb = bishopNorthEastMap & ~blackBoard; bb != 0; bb &= bb - 1) {
-                        int to = convert.get(bb & -bb);
-                        moves.add(new Move(Piece.BISHOP, from, to));
-                    }
-                    // capture moves
-                    long bishopNorthEastCaptureMap = bishopNorthEastMap & blackBoard;
-                    if (bishopNorthEastCaptureMap != 0) {
-                        int cap = convert.get(Long.highestOneBit(bishopNorthEastCaptureMap));
-                        moves.add(new Move(Piece.BISHOP, from, cap, blackMailbox[cap]));
-                        // blocked moves
-                        long bishopNorthEastPseudoMap = pseudoWhiteSlideAttacks(from, northEastMask[from]) & ~whiteBoard;
-                        for (long bb = bishopNorthEastPseudoMap ^ bishopNorthEastMap; bb != 0; bb &= bb - 1) {
-                            int to = convert.get(bb & -bb);
-                            Move move = new Move(Piece.BISHOP, from, to, cap, blackMailbox[cap]);
-                            moves.add(move);
-                        }
-                    }
-
-                    // southEast moves
-                    long bishopSouthEastMap = slideAttacks(from, southEastMask[from]) & ~whiteBoard;
-                    // quiet moves
-                    for (long bb = bishopSouthEastMap & ~blackBoard; bb != 0; bb &= bb - 1) {
-                        int to = convert.get(bb & -bb);
-                        moves.add(new Move(Piece.BISHOP, from, to));
-                    }
-                    // capture moves
-                    long bishopSouthEastCaptureMap = bishopSouthEastMap & blackBoard;
-                    if (bishopSouthEastCaptureMap != 0) {
-                        int cap = convert.get(bishopSouthEastCaptureMap & -bishopSouthEastCaptureMap);
-                        moves.add(new Move(Piece.BISHOP, from, cap, blackMailbox[cap]));
-                        // blocked moves
-                        long bishopSouthEastPseudoMap = pseudoWhiteSlideAttacks(from, southEastMask[from]) & ~whiteBoard;
-                        for (long bb = bishopSouthEastPseudoMap ^ bishopSouthEastMap; bb != 0; bb &= bb - 1) {
-                            int to = convert.get(bb & -bb);
-                            Move move = new Move(Piece.BISHOP, from, to, cap, blackMailbox[cap]);
-                            moves.add(move);
-                        }
-                    }
-
-                    // southWest moves
-                    long bishopSouthWestMap = slideAttacks(from, southWestMask[from]) & ~whiteBoard;
-                    // quiet moves
-                    for (long bb = bishopSouthWestMap & ~blackBoard; bb != 0; bb &= bb - 1) {
-                        int to = convert.get(bb & -bb);
-                        moves.add(new Move(Piece.BISHOP, from, to));
-                    }
-                    // capture moves
-                    long bishopSouthWestCaptureMap = bishopSouthWestMap & blackBoard;
-                    if (bishopSouthWestCaptureMap != 0) {
-                        int cap = convert.get(bishopSouthWestCaptureMap & -bishopSouthWestCaptureMap);
-                        moves.add(new Move(Piece.BISHOP, from, cap, blackMailbox[cap]));
-                        // blocked moves
-                        long bishopSouthWestPseudoMap = pseudoWhiteSlideAttacks(from, southWestMask[from]) & ~whiteBoard;
-                        for (long bb = bishopSouthWestPseudoMap ^ bishopSouthWestMap; bb != 0; bb &= bb - 1) {
-                            int to = convert.get(bb & -bb);
-                            Move move = new Move(Piece.BISHOP, from, to, cap, blackMailbox[cap]);
-                            moves.add(move);
-                        }
-                    }
-
-                    // northWest moves
-                    long bishopNorthWestMap = slideAttacks(from, northWestMask[from]) & ~whiteBoard;
-                    // quiet moves
-                    for (long bb = bishopNorthWestMap & ~blackBoard; bb != 0; bb &= bb - 1) {
-                        int to = convert.get(bb & -bb);
-                        moves.add(new Move(Piece.BISHOP, from, to));
-                    }
-                    // capture moves
-                    long bishopNorthWestCaptureMap = bishopNorthWestMap & blackBoard;
-                    if (bishopNorthWestCaptureMap != 0) {
-                        int cap = convert.get(Long.highestOneBit(bishopNorthWestCaptureMap));
-                        moves.add(new Move(Piece.BISHOP, from, cap, blackMailbox[cap]));
-                        // blocked moves
-                        long bishopNorthWestPseudoMap = pseudoWhiteSlideAttacks(from, northWestMask[from]) & ~whiteBoard;
-                        for (long bb = bishopNorthWestPseudoMap ^ bishopNorthWestMap; bb != 0; bb &= bb - 1) {
-                            int to = convert.get(bb & -bb);
-                            Move move = new Move(Piece.BISHOP, from, to, cap, blackMailbox[cap]);
-                            moves.add(move);
-                        }
-                    }
-                    break;
-                case QUEEN:
-                    // north moves
-                    long queenNorthMap = slideAttacks(from, northMask[from]) & ~whiteBoard;
-                    // quiet moves
-                    for (long qb = queenNorthMap & ~blackBoard; qb != 0; qb &= qb - 1) {
-                        int to = convert.get(qb & -qb);
-                        moves.add(new Move(Piece.QUEEN, from, to));
-                    }
-                    // capture moves
-                    long queenNorthCaptureMap = queenNorthMap & blackBoard;
-                    if (queenNorthCaptureMap != 0) {
-                        int cap = convert.get(Long.highestOneBit(queenNorthCaptureMap));
-                        moves.add(new Move(Piece.QUEEN, from, cap, blackMailbox[cap]));
-                        // blocked moves
-                        long queenNorthPseudoMap = pseudoWhiteSlideAttacks(from, northMask[from]) & ~whiteBoard;
-                        for (long qb = queenNorthPseudoMap ^ queenNorthMap; qb != 0; qb &= qb - 1) {
-                            int to = convert.get(qb & -qb);
-                            Move move = new Move(Piece.QUEEN, from, to, cap, blackMailbox[cap]);
-                            moves.add(move);
-                        }
-                    }
-
-                    // south moves
-                    long queenSouthMap = slideAttacks(from, southMask[from]) & ~whiteBoard;
-                    // quiet moves
-                    for (long qb = queenSouthMap & ~blackBoard; qb != 0; qb &= qb - 1) {
-                        int to = convert.get(qb & -qb);
-                        moves.add(new Move(Piece.QUEEN, from, to));
-                    }
-                    // capture moves
-                    long queenSouthCaptureMap = queenSouthMap & blackBoard;
-                    if (queenSouthCaptureMap != 0) {
-                        int cap = convert.get(queenSouthCaptureMap & -queenSouthCaptureMap);
-                        moves.add(new Move(Piece.QUEEN, from, cap, blackMailbox[cap]));
-                        // blocked moves
-                        long queenSouthPseudoMap = pseudoWhiteSlideAttacks(from, southMask[from]) & ~whiteBoard;
-                        for (long qb = queenSouthPseudoMap ^ queenSouthMap; qb != 0; qb &= qb - 1) {
-                            int to = convert.get(qb & -qb);
-                            Move move = new Move(Piece.QUEEN, from, to, cap, blackMailbox[cap]);
-                            moves.add(move);
-                        }
-                    }
-
-                    // east moves
-                    long queenEastMap = slideAttacks(from, eastMask[from]) & ~whiteBoard;
-                    // quiet moves
-                    for (long qb = queenEastMap & ~blackBoard; qb != 0; qb &= qb - 1) {
-                        int to = convert.get(qb & -qb);
-                        moves.add(new Move(Piece.QUEEN, from, to));
-                    }
-                    // capture moves
-                    long queenEastCaptureMap = queenEastMap & blackBoard;
-                    if (queenEastCaptureMap != 0) {
-                        int cap = convert.get(Long.highestOneBit(queenEastCaptureMap));
-                        moves.add(new Move(Piece.QUEEN, from, cap, blackMailbox[cap]));
-                        // blocked moves
-                        long queenEastPseudoMap = pseudoWhiteSlideAttacks(from, eastMask[from]) & ~whiteBoard;
-                        for (long qb = queenEastPseudoMap ^ queenEastMap; qb != 0; qb &= qb - 1) {
-                            int to = convert.get(qb & -qb);
-                            Move move = new Move(Piece.QUEEN, from, to, cap, blackMailbox[cap]);
-                            moves.add(move);
-                        }
-                    }
-
-                    // west moves
-                    long queenWestMap = slideAttacks(from, westMask[from]) & ~whiteBoard;
-                    // quiet moves
-                    for (long qb = queenWestMap & ~blackBoard; qb != 0; qb &= qb - 1) {
-                        int to = convert.get(qb & -qb);
-                        moves.add(new Move(Piece.QUEEN, from, to));
-                    }
-                    // capture moves
-                    long queenWestCaptureMap = queenWestMap & blackBoard;
-                    if (queenWestCaptureMap != 0) {
-                        int cap = convert.get(queenWestCaptureMap & -queenWestCaptureMap);
-                        moves.add(new Move(Piece.QUEEN, from, cap, blackMailbox[cap]));
-                        // blocked moves
-                        long queenWestPseudoMap = pseudoWhiteSlideAttacks(from, westMask[from]) & ~whiteBoard;
-                        for (long qb = queenWestPseudoMap ^ queenWestMap; qb != 0; qb &= qb - 1) {
-                            int to = convert.get(qb & -qb);
-                            Move move = new Move(Piece.QUEEN, from, to, cap, blackMailbox[cap]);
-                            moves.add(move);
-                        }
-                    }
+        int[] moves = new int[PackedMove.MAX_MOVES];
+        return toMoveList(moves, whitePseudoMoves(moves));
+    }
 
-                    // northEast moves
-                    long queenNorthEastMap = slideAttacks(from, northEastMask[from]) & ~whiteBoard;
-                    // quiet moves
-                    for (long qb = queenNorthEastMap & ~blackBoard; qb != 0; qb &= qb - 1) {
-                        int to = convert.get(qb & -qb);
-                        moves.add(new Move(Piece.QUEEN, from, to));
-                    }
-                    // capture moves
-                    long queenNorthEastCaptureMap = queenNorthEastMap & blackBoard;
-                    if (queenNorthEastCaptureMap != 0) {
-                        int cap = convert.get(Long.highestOneBit(queenNorthEastCaptureMap));
-                        moves.add(new Move(Piece.QUEEN, from, cap, blackMailbox[cap]));
-                        // blocked moves
-                        long queenNorthEastPseudoMap = pseudoWhiteSlideAttacks(from, northEastMask[from]) & ~whiteBoard;
-                        for (long qb = queenNorthEastPseudoMap ^ queenNorthEastMap; qb != 0; qb &= qb - 1) {
-                            int to = convert.get(qb & -qb);
-                            Move move = new Move(Piece.QUEEN, from, to, cap, blackMailbox[cap]);
-                            moves.add(move);
-                        }
-                    }
+    public List<Move> blackPseudoMoves() {
+        int[] moves = new int[PackedMove.MAX_MOVES];
+        return toMoveList(moves, blackPseudoMoves(moves));
+    }
 
-                    // southEast moves
-                    long queenSouthEastMap = slideAttacks(from, southEastMask[from]) & ~whiteBoard;
-                    // quiet moves
-                    for (long qb = queenSouthEastMap & ~blackBoard; qb != 0; qb &= qb - 1) {
-                        int to = convert.get(qb & -qb);
-                        moves.add(new Move(Piece.QUEEN, from, to));
-                    }
-                    // capture moves
-                    long queenSouthEastCaptureMap = queenSouthEastMap & blackBoard;
-                    if (queenSouthEastCaptureMap != 0) {
-                        int cap = convert.get(queenSouthEastCaptureMap & -queenSouthEastCaptureMap);
-                        moves.add(new Move(Piece.QUEEN, from, cap, blackMailbox[cap]));
-                        // blocked moves
-                        long queenSouthEastPseudoMap = pseudoWhiteSlideAttacks(from, southEastMask[from]) & ~whiteBoard;
-                        for (long qb = queenSouthEastPseudoMap ^ queenSouthEastMap; qb != 0; qb &= qb - 1) {
-                            int to = convert.get(qb & -qb);
-                            Move move = new Move(Piece.QUEEN, from, to, cap, blackMailbox[cap]);
-                            moves.add(move);
-                        }
-                    }
+    public List<Move> whiteQuietMoves() {
+        int[] moves = new int[PackedMove.MAX_MOVES];
+        return toMoveList(moves, whiteQuietMoves(moves));
+    }
 
-                    // southWest moves
-                    long queenSouthWestMap = slideAttacks(from, southWestMask[from]) & ~whiteBoard;
-                    // quiet moves
-                    for (long qb = queenSouthWestMap & ~blackBoard; qb != 0; qb &= qb - 1) {
-                        int to = convert.get(qb & -qb);
-                        moves.add(new Move(Piece.QUEEN, from, to));
-                    }
-                    // capture moves
-                    long queenSouthWestCaptureMap = queenSouthWestMap & blackBoard;
-                    if (queenSouthWestCaptureMap != 0) {
-                        int cap = convert.get(queenSouthWestCaptureMap & -queenSouthWestCaptureMap);
-                        moves.add(new Move(Piece.QUEEN, from, cap, blackMailbox[cap]));
-                        // blocked moves
-                        long queenSouthWestPseudoMap = pseudoWhiteSlideAttacks(from, southWestMask[from]) & ~whiteBoard;
-                        for (long qb = queenSouthWestPseudoMap ^ queenSouthWestMap; qb != 0; qb &= qb - 1) {
-                            int to = convert.get(qb & -qb);
-                            Move move = new Move(Piece.QUEEN, from, to, cap, blackMailbox[cap]);
-                            moves.add(move);
-                        }
-                    }
+    public List<Move> blackQuietMoves() {
+        int[] moves = new int[PackedMove.MAX_MOVES];
+        return toMoveList(moves, blackQuietMoves(moves));
+    }
 
-                    // northWest moves
-                    long queenNorthWestMap = slideAttacks(from, northWestMask[from]) & ~whiteBoard;
-                    // quiet moves
-                    for (long qb = queenNorthWestMap & ~blackBoard; qb != 0; qb &= qb - 1) {
-                        int to = convert.get(qb & -qb);
-                        moves.add(new Move(Piece.QUEEN, from, to));
-                    }
-                    // capture moves
-                    long queenNorthWestCaptureMap = queenNorthWestMap & blackBoard;
-                    if (queenNorthWestCaptureMap != 0) {
-                        int cap = convert.get(Long.highestOneBit(queenNorthWestCaptureMap));
-                        moves.add(new Move(Piece.QUEEN, from, cap, blackMailbox[cap]));
-                        // blocked moves
-                        long queenNorthWestPseudoMap = pseudoWhiteSlideAttacks(from, northWestMask[from]) & ~whiteBoard;
-                        for (long qb = queenNorthWestPseudoMap ^ queenNorthWestMap; qb != 0; qb &= qb - 1) {
-                            int to = convert.get(qb & -qb);
-                            Move move = new Move(Piece.QUEEN, from, to, cap, blackMailbox[cap]);
-                            moves.add(move);
-                        }
-                    }
-                    break;
-                case KING:
-                    long kingMap = kingMoves[from] & ~whiteBoard;
-                    // quiet moves
-                    for (long kb = kingMap & ~blackBoard; kb != 0; kb &= kb - 1) {
-                        int to = convert.get(kb & -kb);
-                        moves.add(new Move(Piece.KING, from, to));
-                    }
-                    // captures
-                    for (long kb = kingMap & blackBoard; kb != 0; kb &= kb - 1) {
-                        int to = convert.get(kb & -kb);
-                        moves.add(new Move(Piece.KING, from, to, blackMailbox[to]));
-                    }
-                    // castling
-                    if (whiteKingside && whiteMailbox[5] == Piece.NONE && whiteMailbox[6] == Piece.NONE) {
-                        if (blackMailbox[5] == Piece.NONE && blackMailbox[6] == Piece.NONE) {
-                            Move move = new Move(Piece.KING, 4, 6);
-                            move.isKingsideCastle = true;
-                            moves.add(move);
-                        }
-                        else {
-                            Move move = new Move(Piece.KING, 4, 6);
-                            move.isInvalidMove = true;
-                            moves.add(move);
-                        }
-                    }
-                    if (whiteQueenside && whiteMailbox[3] == Piece.NONE && whiteMailbox[2] == Piece.NONE && whiteMailbox[1] == Piece.NONE) {
-                        if (blackMailbox[3] == Piece.NONE && blackMailbox[2] == Piece.NONE && blackMailbox[1] == Piece.NONE) {
-                            Move move = new Move(Piece.KING, 4, 2);
-                            move.isQueensideCastle = true;
-                            moves.add(move);
-                        }
-                        else {
-                            Move move = new Move(Piece.KING, 4, 2);
-                            move.isInvalidMove = true;
-                            moves.add(move);
-                        }
-                    }
-                    break;
-            }
-        }
-        // pawns moves are handled separately
-        // left captures
-        long a = whitePawns >>> 7;
-        long b = a & 0b0000000000000000000000000000000000000000000000000000000011111110L;
-        long c = a & 0b1111111011111110111111101111111011111110111111101111111000000000L;
-        // left captures, no promotion, no en passant
-        for (long lb = c & blackBoard; lb != 0; lb &= lb - 1) {
-            int to = convert.get(lb & -lb);
-            moves.add(new Move(Piece.PAWN, to - 7, to, blackMailbox[to]));
-        }
-        // invalid left captures, no promotion, no en passant
-        long invalidLeft = c & ~board;
-        if (ep) {
-            invalidLeft = (invalidLeft | sq[eps]) ^ sq[eps];
-        }
-        for (long lb = invalidLeft; lb != 0; lb &= lb - 1) {
-            int to = convert.get(lb & -lb);
-            Move move = new Move(Piece.PAWN, to - 7, to);
-            move.isInvalidMove = true;
-            moves.add(move);
-        }
-        // left captures, promotion
-        for (long lb = b & blackBoard; lb != 0; lb &= lb - 1) {
-            int to = convert.get(lb & -lb);
-            moves.add(new Move(Piece.PAWN, Piece.QUEEN,to - 7, to, blackMailbox[to]));
-            moves.add(new Move(Piece.PAWN, Piece.KNIGHT,to - 7, to, blackMailbox[to]));
-            moves.add(new Move(Piece.PAWN, Piece.ROOK,to - 7, to, blackMailbox[to]));
-            moves.add(new Move(Piece.PAWN, Piece.BISHOP,to - 7, to, blackMailbox[to]));
-        }
-        // invalid left captures, promotion
-        for (long lb = b & ~board; lb != 0; lb &= lb - 1) {
-            int to = convert.get(lb & -lb);
-            Move move = new Move(Piece.PAWN, Piece.QUEEN,to - 7, to);
-            move.isInvalidMove = true;
-            moves.add(move);
-            move = new Move(Piece.PAWN, Piece.KNIGHT,to - 7, to);
-            move.isInvalidMove = true;
-            moves.add(move);
-            move = new Move(Piece.PAWN, Piece.ROOK,to - 7, to);
-            move.isInvalidMove = true;
-            moves.add(move);
-            move = new Move(Piece.PAWN, Piece.BISHOP,to - 7, to);
-            move.isInvalidMove = true;
-            moves.add(move);
-        }
-        // left captures, en passant
-        if (ep && (c & sq[eps]) != 0) {
-            Move move = new Move(Piece.PAWN, eps - 7, eps, Piece.PAWN);
-            move.isEPCapture = true;
-            moves.add(move);
-        }
-        // right captures
-        a = whitePawns >>> 9;
-        b = a & 0b0000000000000000000000000000000000000000000000000000000001111111L;
-        c = a & 0b0111111101111111011111110111111101111111011111110111111100000000L;
-        // right captures, no promotion, no en passant
-        for (long lb = c & blackBoard; lb != 0; lb &= lb - 1) {
-            int to = convert.get(lb & -lb);
-            moves.add(new Move(Piece.PAWN, to - 9, to, blackMailbox[to]));
-        }
-        // invalid right captures, no promotion, no en passant
-        long invalidRight = c & ~board;
-        if (ep) {
-            invalidRight = (invalidRight | sq[eps]) ^ sq[eps];
-        }
-        for (long lb = invalidRight; lb != 0; lb &= lb - 1) {
-            int to = convert.get(lb & -lb);
-            Move move = new Move(Piece.PAWN, to - 9, to);
-            move.isInvalidMove = true;
-            moves.add(move);
-        }
-        // right captures, promotion
-        for (long lb = b & blackBoard; lb != 0; lb &= lb - 1) {
-            int to = convert.get(lb & -lb);
-            moves.add(new Move(Piece.PAWN, Piece.QUEEN,to - 9, to, blackMailbox[to]));
-            moves.add(new Move(Piece.PAWN, Piece.KNIGHT,to - 9, to, blackMailbox[to]));
-            moves.add(new Move(Piece.PAWN, Piece.ROOK,to - 9, to, blackMailbox[to]));
-            moves.add(new Move(Piece.PAWN, Piece.BISHOP,to - 9, to, blackMailbox[to]));
-        }
-        // invalid right captures, promotion
-        for (long lb = b & ~board; lb != 0; lb &= lb - 1) {
-            int to = convert.get(lb & -lb);
-            Move move = new Move(Piece.PAWN, Piece.QUEEN,to - 9, to);
-            move.isInvalidMove = true;
-            moves.add(move);
-            move = new Move(Piece.PAWN, Piece.KNIGHT,to - 9, to);
-            move.isInvalidMove = true;
-            moves.add(move);
-            move = new Move(Piece.PAWN, Piece.ROOK,to - 9, to);
-            move.isInvalidMove = true;
-            moves.add(move);
-            move = new Move(Piece.PAWN, Piece.BISHOP,to - 9, to);
-            move.isInvalidMove = true;
-            moves.add(move);
-        }
-        // right captures, en passant
-        if (ep && (c & sq[eps]) != 0) {
-            Move move = new Move(Piece.PAWN, eps - 9, eps, Piece.PAWN);
-            move.isEPCapture = true;
-            moves.add(move);
-        }
-        // single push
-        long singleMap = whitePawns >>> 8;
-        for (long sb = singleMap & ~board; sb != 0; sb &= sb - 1) {
-            int to = convert.get(sb & -sb);
-            moves.add(new Move(Piece.PAWN, to - 8, to));
-        }
-        // single push invalid
-        for (long sb = singleMap & blackBoard; sb != 0; sb &= sb - 1) {
-            int to = convert.get(sb & -sb);
-            Move move = new Move(Piece.PAWN, to - 8, to);
-            move.isInvalidMove = true;
-            moves.add(move);
-        }
-        // double push
-        long doubleMap = (whitePawns >>> 16) & 0b0000000000000000000000001111111100000000000000000000000000000000L;
-        for (long db = doubleMap & ~board & ((singleMap & ~board) >>> 8); db != 0; db &= db - 1) {
-            int to = convert.get(db & -db);
-            Move move = new Move(Piece.PAWN, to - 16, to);
-            move.isDPMove = true;
-            moves.add(move);
-        }
-        // double push blocked
-        for (long db = doubleMap & blackBoard & ((singleMap & ~board) >>> 8); db != 0; db &= db - 1) {
-            int to = convert.get(db & -db);
-            Move move = new Move(Piece.PAWN, to - 16, to, to - 8);
-            moves.add(move);
-        }
-        // double push invalid
-        for (long db = doubleMap & ~whiteBoard & ((singleMap & blackBoard) >>> 8); db != 0; db &= db - 1) {
-            int to = convert.get(db & -db);
-            Move move = new Move(Piece.PAWN, to - 16, to);
-            move.isInvalidMove = true;
-            moves.add(move);
-        }
-        return moves;
+    public List<Move> whiteCaptureMoves() {
+        int[] moves = new int[PackedMove.MAX_MOVES];
+        return toMoveList(moves, whiteCaptureMoves(moves));
     }
 
-    public List<Move> blackPseudoMoves() {
-        List<Move> moves = new ArrayList<>();
-        if (!hasWhiteKing || !hasBlackKing) {
-            return moves;
-        }
-        for (long b = blackBoard; b != 0; b &= b - 1) {
-            int from = convert.get(b & -b);
-            switch (blackMailbox[from]) {
-                case KNIGHT:
-                    long knightMap = knightMoves[from] & ~blackBoard;
-                    // quiet moves
-                    for (long nb = knightMap & ~whiteBoard; nb != 0; nb &= nb - 1) {
-                        int to = convert.get(nb & -nb);
-                        moves.add(new Move(Piece.KNIGHT, from, to));
-                    }
-                    // captures
-                    for (long nb = knightMap & whiteBoard; nb != 0; nb &= nb - 1) {
-                        int to = convert.get(nb & -nb);
-                        moves.add(new Move(Piece.KNIGHT, from, to, whiteMailbox[to]));
-                    }
-                    break;
-                case ROOK:
-                    // north moves
-                    long rookNorthMap = slideAttacks(from, northMask[from]) & ~blackBoard;
-                    // quiet moves
-                    for (long rb = rookNorthMap & ~whiteBoard; rb != 0; rb &= rb - 1) {
-                        int to = convert.get(rb & -rb);
-                        moves.add(new Move(Piece.ROOK, from, to));
-                    }
-                    // capture moves
-                    long rookNorthCaptureMap = rookNorthMap & whiteBoard;
-                    if (rookNorthCaptureMap != 0) {
-                        int cap = convert.get(Long.highestOneBit(rookNorthCaptureMap));
-                        moves.add(new Move(Piece.ROOK, from, cap, whiteMailbox[cap]));
-                        // blocked moves
-                        long rookNorthPseudoMap = pseudoBlackSlideAttacks(from, northMask[from]) & ~blackBoard;
-                        for (long rb = rookNorthPseudoMap ^ rookNorthMap; rb != 0; rb &= rb - 1) {
-                            int to = convert.get(rb & -rb);
-                            Move move = new Move(Piece.ROOK, from, to, cap, whiteMailbox[cap]);
-                            moves.add(move);
-                        }
-                    }
+    public List<Move> blackCaptureMoves() {
+        int[] moves = new int[PackedMove.MAX_MOVES];
+        return toMoveList(moves, blackCaptureMoves(moves));
+    }
 
-                    // south moves
-                    long rookSouthMap = slideAttacks(from, southMask[from]) & ~blackBoard;
-                    // quiet moves
-                    for (long rb = rookSouthMap & ~whiteBoard; rb != 0; rb &= rb - 1) {
-                        int to = convert.get(rb & -rb);
-                        moves.add(new Move(Piece.ROOK, from, to));
-                    }
-                    // capture moves
-                    long rookSouthCaptureMap = rookSouthMap & whiteBoard;
-                    if (rookSouthCaptureMap != 0) {
-                        int cap = convert.get(rookSouthCaptureMap & -rookSouthCaptureMap);
-                        moves.add(new Move(Piece.ROOK, from, cap, whiteMailbox[cap]));
-                        // blocked moves
-                        long rookSouthPseudoMap = pseudoBlackSlideAttacks(from, southMask[from]) & ~blackBoard;
-                        for (long rb = rookSouthPseudoMap ^ rookSouthMap; rb != 0; rb &= rb - 1) {
-                            int to = convert.get(rb & -rb);
-                            Move move = new Move(Piece.ROOK, from, to, cap, whiteMailbox[cap]);
-                            moves.add(move);
-                        }
-                    }
+    // packed move generators write into moves and return the number of moves written
+    public int whiteMoves(int[] moves) {
+        return moves(moves, true);
+    }
 
-                    // east moves
-                    long rookEastMap = slideAttacks(from, eastMask[from]) & ~blackBoard;
-                    // quiet moves
-                    for (long rb = rookEastMap & ~whiteBoard; rb != 0; rb &= rb - 1) {
-                        int to = convert.get(rb & -rb);
-                        moves.add(new Move(Piece.ROOK, from, to));
-                    }
-                    // capture moves
-                    long rookEastCaptureMap = rookEastMap & whiteBoard;
-                    if (rookEastCaptureMap != 0) {
-                        int cap = convert.get(Long.highestOneBit(rookEastCaptureMap));
-                        moves.add(new Move(Piece.ROOK, from, cap, whiteMailbox[cap]));
-                        // blocked moves
-                        long rookEastPseudoMap = pseudoBlackSlideAttacks(from, eastMask[from]) & ~blackBoard;
-                        for (long rb = rookEastPseudoMap ^ rookEastMap; rb != 0; rb &= rb - 1) {
-                            int to = convert.get(rb & -rb);
-                            Move move = new Move(Piece.ROOK, from, to, cap, whiteMailbox[cap]);
-                            moves.add(move);
-                        }
-                    }
+    public int blackMoves(int[] moves) {
+        return moves(moves, false);
+    }
 
-                    // west moves
-                    long rookWestMap = slideAttacks(from, westMask[from]) & ~blackBoard;
-                    // quiet moves
-                    for (long rb = rookWestMap & ~whiteBoard; rb != 0; rb &= rb - 1) {
-                        int to = convert.get(rb & -rb);
-                        moves.add(new Move(Piece.ROOK, from, to));
-                    }
-                    // capture moves
-                    long rookWestCaptureMap = rookWestMap & whiteBoard;
-                    if (rookWestCaptureMap != 0) {
-                        int cap = convert.get(rookWestCaptureMap & -rookWestCaptureMap);
-                        moves.add(new Move(Piece.ROOK, from, cap, whiteMailbox[cap]));
-                        // blocked moves
-                        long rookWestPseudoMap = pseudoBlackSlideAttacks(from, westMask[from]) & ~blackBoard;
-                        for (long rb = rookWestPseudoMap ^ rookWestMap; rb != 0; rb &= rb - 1) {
-                            int to = convert.get(rb & -rb);
-                            Move move = new Move(Piece.ROOK, from, to, cap, whiteMailbox[cap]);
-                            moves.add(move);
-                        }
-                    }
-                    break;
-                case BISHOP:
-                    // northEast moves
-                    long bishopNorthEastMap = slideAttacks(from, northEastMask[from]) & ~blackBoard;
-                    // quiet moves
-                    for (long bb = bishopNorthEastMap & ~whiteBoard; bb != 0; bb &= bb - 1) {
-                        int to = convert.get(bb & -bb);
-                        moves.add(new Move(Piece.BISHOP, from, to));
-                    }
-                    // capture moves
-                    long bishopNorthEastCaptureMap = bishopNorthEastMap & whiteBoard;
-                    if (bishopNorthEastCaptureMap != 0) {
-                        int cap = convert.get(Long.highestOneBit(bishopNorthEastCaptureMap));
-                        moves.add(new Move(Piece.BISHOP, from, cap, whiteMailbox[cap]));
-                        // blocked moves
-                        long bishopNorthEastPseudoMap = pseudoBlackSlideAttacks(from, northEastMask[from]) & ~blackBoard;
-                        for (long bb = bishopNorthEastPseudoMap ^ bishopNorthEastMap; bb != 0; bb &= bb - 1) {
-                            int to = convert.get(bb & -bb);
-                            Move move = new Move(Piece.BISHOP, from, to, cap, whiteMailbox[cap]);
-                            moves.add(move);
-                        }
-                    }
+    public int whitePseudoMoves(int[] moves) {
+        return pseudoMoves(moves, true);
+    }
 
-                    // southEast moves
-                    long bishopSouthEastMap = slideAttacks(from, southEastMask[from]) & ~blackBoard;
-                    // quiet moves
-                    for (long bb = bishopSouthEastMap & ~whiteBoard; bb != 0; bb &= bb - 1) {
-                        int to = convert.get(bb & -bb);
-                        moves.add(new Move(Piece.BISHOP, from, to));
-                    }
-                    // capture moves
-                    long bishopSouthEastCaptureMap = bishopSouthEastMap & whiteBoard;
-                    if (bishopSouthEastCaptureMap != 0) {
-                        int cap = convert.get(bishopSouthEastCaptureMap & -bishopSouthEastCaptureMap);
-                        moves.add(new Move(Piece.BISHOP, from, cap, whiteMailbox[cap]));
-                        // blocked moves
-                        long bishopSouthEastPseudoMap = pseudoBlackSlideAttacks(from, southEastMask[from]) & ~blackBoard;
-                        for (long bb = bishopSouthEastPseudoMap ^ bishopSouthEastMap; bb != 0; bb &= bb - 1) {
-                            int to = convert.get(bb & -bb);
-                            Move move = new Move(Piece.BISHOP, from, to, cap, whiteMailbox[cap]);
-                            moves.add(move);
-                        }
-                    }
+    public int blackPseudoMoves(int[] moves) {
+        return pseudoMoves(moves, false);
+    }
 
-                    // southWest moves
-                    long bishopSouthWestMap = slideAttacks(from, southWestMask[from]) & ~blackBoard;
-                    // quiet moves
-                    for (long bb = bishopSouthWestMap & ~whiteBoard; bb != 0; bb &= bb - 1) {
-                        int to = convert.get(bb & -bb);
-                        moves.add(new Move(Piece.BISHOP, from, to));
-                    }
-                    // capture moves
-                    long bishopSouthWestCaptureMap = bishopSouthWestMap & whiteBoard;
-                    if (bishopSouthWestCaptureMap != 0) {
-                        int cap = convert.get(bishopSouthWestCaptureMap & -bishopSouthWestCaptureMap);
-                        moves.add(new Move(Piece.BISHOP, from, cap, whiteMailbox[cap]));
-                        // blocked moves
-                        long bishopSouthWestPseudoMap = pseudoBlackSlideAttacks(from, southWestMask[from]) & ~blackBoard;
-                        for (long bb = bishopSouthWestPseudoMap ^ bishopSouthWestMap; bb != 0; bb &= bb - 1) {
-                            int to = convert.get(bb & -bb);
-                            Move move = new Move(Piece.BISHOP, from, to, cap, whiteMailbox[cap]);
-                            moves.add(move);
-                        }
-                    }
+    // moves which do not capture anything, including the invalid move, in the same order as the full generators
+    public int whiteQuietMoves(int[] moves) {
+        return quietMoves(moves, true);
+    }
 
-                    // northWest moves
-                    long bishopNorthWestMap = slideAttacks(from, northWestMask[from]) & ~blackBoard;
-                    // quiet moves
-                    for (long bb = bishopNorthWestMap & ~whiteBoard; bb != 0; bb &= bb - 1) {
-                        int to = convert.get(bb & -bb);
-                        moves.add(new Move(Piece.BISHOP, from, to));
-                    }
-                    // capture moves
-                    long bishopNorthWestCaptureMap = bishopNorthWestMap & whiteBoard;
-                    if (bishopNorthWestCaptureMap != 0) {
-                        int cap = convert.get(Long.highestOneBit(bishopNorthWestCaptureMap));
-                        moves.add(new Move(Piece.BISHOP, from, cap, whiteMailbox[cap]));
-                        // blocked moves
-                        long bishopNorthWestPseudoMap = pseudoBlackSlideAttacks(from, northWestMask[from]) & ~blackBoard;
-                        for (long bb = bishopNorthWestPseudoMap ^ bishopNorthWestMap; bb != 0; bb &= bb - 1) {
-                            int to = convert.get(bb & -bb);
-                            Move move = new Move(Piece.BISHOP, from, to, cap, whiteMailbox[cap]);
-                            moves.add(move);
-                        }
-                    }
-                    break;
-                case QUEEN:
-                    // north moves
-                    long queenNorthMap = slideAttacks(from, northMask[from]) & ~blackBoard;
-                    // quiet moves
-                    for (long qb = queenNorthMap & ~whiteBoard; qb != 0; qb &= qb - 1) {
-                        int to = convert.get(qb & -qb);
-                        moves.add(new Move(Piece.QUEEN, from, to));
-                    }
-                    // capture moves
-                    long queenNorthCaptureMap = queenNorthMap & whiteBoard;
-                    if (queenNorthCaptureMap != 0) {
-                        int cap = convert.get(Long.highestOneBit(queenNorthCaptureMap));
-                        moves.add(new Move(Piece.QUEEN, from, cap, whiteMailbox[cap]));
-                        // blocked moves
-                        long queenNorthPseudoMap = pseudoBlackSlideAttacks(from, northMask[from]) & ~blackBoard;
-                        for (long qb = queenNorthPseudoMap ^ queenNorthMap; qb != 0; qb &= qb - 1) {
-                            int to = convert.get(qb & -qb);
-                            Move move = new Move(Piece.QUEEN, from, to, cap, whiteMailbox[cap]);
-                            moves.add(move);
-                        }
-                    }
+    public int blackQuietMoves(int[] moves) {
+        return quietMoves(moves, false);
+    }
 
-                    // south moves
-                    long queenSouthMap = slideAttacks(from, southMask[from]) & ~blackBoard;
-                    // quiet moves
-                    for (long qb = queenSouthMap & ~whiteBoard; qb != 0; qb &= qb - 1) {
-                        int to = convert.get(qb & -qb);
-                        moves.add(new Move(Piece.QUEEN, from, to));
-                    }
-                    // capture moves
-                    long queenSouthCaptureMap = queenSouthMap & whiteBoard;
-                    if (queenSouthCaptureMap != 0) {
-                        int cap = convert.get(queenSouthCaptureMap & -queenSouthCaptureMap);
-                        moves.add(new Move(Piece.QUEEN, from, cap, whiteMailbox[cap]));
-                        // blocked moves
-                        long queenSouthPseudoMap = pseudoBlackSlideAttacks(from, southMask[from]) & ~blackBoard;
-                        for (long qb = queenSouthPseudoMap ^ queenSouthMap; qb != 0; qb &= qb - 1) {
-                            int to = convert.get(qb & -qb);
-                            Move move = new Move(Piece.QUEEN, from, to, cap, whiteMailbox[cap]);
-                            moves.add(move);
-                        }
-                    }
+    public int whiteCaptureMoves(int[] moves) {
+        return captureMoves(moves, true);
+    }
 
-                    // east moves
-                    long queenEastMap = slideAttacks(from, eastMask[from]) & ~blackBoard;
-                    // quiet moves
-                    for (long qb = queenEastMap & ~whiteBoard; qb != 0; qb &= qb - 1) {
-                        int to = convert.get(qb & -qb);
-                        moves.add(new Move(Piece.QUEEN, from, to));
-                    }
-                    // capture moves
-                    long queenEastCaptureMap = queenEastMap & whiteBoard;
-                    if (queenEastCaptureMap != 0) {
-                        int cap = convert.get(Long.highestOneBit(queenEastCaptureMap));
-                        moves.add(new Move(Piece.QUEEN, from, cap, whiteMailbox[cap]));
-                        // blocked moves
-                        long queenEastPseudoMap = pseudoBlackSlideAttacks(from, eastMask[from]) & ~blackBoard;
-                        for (long qb = queenEastPseudoMap ^ queenEastMap; qb != 0; qb &= qb - 1) {
-                            int to = convert.get(qb & -qb);
-                            Move move = new Move(Piece.QUEEN, from, to, cap, whiteMailbox[cap]);
-                            moves.add(move);
-                        }
-                    }
+    public int blackCaptureMoves(int[] moves) {
+        return captureMoves(moves, false);
+    }
 
-                    // west moves
-                    long queenWestMap = slideAttacks(from, westMask[from]) & ~blackBoard;
-                    // quiet moves
-                    for (long qb = queenWestMap & ~whiteBoard; qb != 0; qb &= qb - 1) {
-                        int to = convert.get(qb & -qb);
-                        moves.add(new Move(Piece.QUEEN, from, to));
-                    }
-                    // capture moves
-                    long queenWestCaptureMap = queenWestMap & whiteBoard;
-                    if (queenWestCaptureMap != 0) {
-                        int cap = convert.get(queenWestCaptureMap & -queenWestCaptureMap);
-                        moves.add(new Move(Piece.QUEEN, from, cap, whiteMailbox[cap]));
-                        // blocked moves
-                        long queenWestPseudoMap = pseudoBlackSlideAttacks(from, westMask[from]) & ~blackBoard;
-                        for (long qb = queenWestPseudoMap ^ queenWestMap; qb != 0; qb &= qb - 1) {
-                            int to = convert.get(qb & -qb);
-                            Move move = new Move(Piece.QUEEN, from, to, cap, whiteMailbox[cap]);
-                            moves.add(move);
-                        }
-                    }
+    // captures of the piece on sq, in the same order as the capture generators
+    // a blocked move that ends on sq captures the same piece as the capture itself, so it is covered as well
+    public int whiteCaptureMovesOn(int[] moves, int sq) {
+        return captureMovesOn(moves, sq, true);
+    }
 
-                    // northEast moves
-                    long queenNorthEastMap = slideAttacks(from, northEastMask[from]) & ~blackBoard;
-                    // quiet moves
-                    for (long qb = queenNorthEastMap & ~whiteBoard; qb != 0; qb &= qb - 1) {
-                        int to = convert.get(qb & -qb);
-                        moves.add(new Move(Piece.QUEEN, from, to));
-                    }
-                    // capture moves
-                    long queenNorthEastCaptureMap = queenNorthEastMap & whiteBoard;
-                    if (queenNorthEastCaptureMap != 0) {
-                        int cap = convert.get(Long.highestOneBit(queenNorthEastCaptureMap));
-                        moves.add(new Move(Piece.QUEEN, from, cap, whiteMailbox[cap]));
-                        // blocked moves
-                        long queenNorthEastPseudoMap = pseudoBlackSlideAttacks(from, northEastMask[from]) & ~blackBoard;
-                        for (long qb = queenNorthEastPseudoMap ^ queenNorthEastMap; qb != 0; qb &= qb - 1) {
-                            int to = convert.get(qb & -qb);
-                            Move move = new Move(Piece.QUEEN, from, to, cap, whiteMailbox[cap]);
-                            moves.add(move);
-                        }
-                    }
+    public int blackCaptureMovesOn(int[] moves, int sq) {
+        return captureMovesOn(moves, sq, false);
+    }
 
-                    // southEast moves
-                    long queenSouthEastMap = slideAttacks(from, southEastMask[from]) & ~blackBoard;
-                    // quiet moves
-                    for (long qb = queenSouthEastMap & ~whiteBoard; qb != 0; qb &= qb - 1) {
-                        int to = convert.get(qb & -qb);
-                        moves.add(new Move(Piece.QUEEN, from, to));
-                    }
-                    // capture moves
-                    long queenSouthEastCaptureMap = queenSouthEastMap & whiteBoard;
-                    if (queenSouthEastCaptureMap != 0) {
-                        int cap = convert.get(queenSouthEastCaptureMap & -queenSouthEastCaptureMap);
-                        moves.add(new Move(Piece.QUEEN, from, cap, whiteMailbox[cap]));
-                        // blocked moves
-                        long queenSouthEastPseudoMap = pseudoBlackSlideAttacks(from, southEastMask[from]) & ~blackBoard;
-                        for (long qb = queenSouthEastPseudoMap ^ queenSouthEastMap; qb != 0; qb &= qb - 1) {
-                            int to = convert.get(qb & -qb);
-                            Move move = new Move(Piece.QUEEN, from, to, cap, whiteMailbox[cap]);
-                            moves.add(move);
-                        }
-                    }
+    // the generators below are split into small color generic kernels, one per piece type, so that each stays well
+    // within the size the jit is willing to compile and inline
+    private int moves(int[] moves, boolean white) {
+        int n = 0;
+        if (!hasWhiteKing || !hasBlackKing) {
+            return n;
+        }
+        long own = white ? whiteBoard : blackBoard;
+        n = stepMoves(moves, n, Piece.KNIGHT, white ? whiteKnights : blackKnights, knightMoves, ~own, white);
+        n = slideMoves(moves, n, Piece.ROOK, white ? whiteRooks : blackRooks, ~own, white);
+        n = slideMoves(moves, n, Piece.BISHOP, white ? whiteBishops : blackBishops, ~own, white);
+        n = slideMoves(moves, n, Piece.QUEEN, white ? whiteQueens : blackQueens, ~own, white);
+        n = stepMoves(moves, n, Piece.KING, white ? whiteKing : blackKing, kingMoves, ~own, white);
+        n = castlingMoves(moves, n, white, false);
+        n = pawnCaptures(moves, n, white, false);
+        n = pawnPushes(moves, n, white, false);
+        // invalid move
+        if (hasInvalidMove(white)) {
+            moves[n++] = PackedMove.INVALID_MOVE;
+        }
+        return n;
+    }
 
-                    // southWest moves
-                    long queenSouthWestMap = slideAttacks(from, southWestMask[from]) & ~blackBoard;
-                    // quiet moves
-                    for (long qb = queenSouthWestMap & ~whiteBoard; qb != 0; qb &= qb - 1) {
-                        int to = convert.get(qb & -qb);
-                        moves.add(new Move(Piece.QUEEN, from, to));
-                    }
-                    // capture moves
-                    long queenSouthWestCaptureMap = queenSouthWestMap & whiteBoard;
-                    if (queenSouthWestCaptureMap != 0) {
-                        int cap = convert.get(queenSouthWestCaptureMap & -queenSouthWestCaptureMap);
-                        moves.add(new Move(Piece.QUEEN, from, cap, whiteMailbox[cap]));
-                        // blocked moves
-                        long queenSouthWestPseudoMap = pseudoBlackSlideAttacks(from, southWestMask[from]) & ~blackBoard;
-                        for (long qb = queenSouthWestPseudoMap ^ queenSouthWestMap; qb != 0; qb &= qb - 1) {
-                            int to = convert.get(qb & -qb);
-                            Move move = new Move(Piece.QUEEN, from, to, cap, whiteMailbox[cap]);
-                            moves.add(move);
-                        }
-                    }
+    private int pseudoMoves(int[] moves, boolean white) {
+        int n = 0;
+        if (!hasWhiteKing || !hasBlackKing) {
+            return n;
+        }
+        long own = white ? whiteBoard : blackBoard;
+        n = stepMoves(moves, n, Piece.KNIGHT, white ? whiteKnights : blackKnights, knightMoves, ~own, white);
+        n = slidePseudoMoves(moves, n, Piece.ROOK, white ? whiteRooks : blackRooks, white);
+        n = slidePseudoMoves(moves, n, Piece.BISHOP, white ? whiteBishops : blackBishops, white);
+        n = slidePseudoMoves(moves, n, Piece.QUEEN, white ? whiteQueens : blackQueens, white);
+        n = stepMoves(moves, n, Piece.KING, white ? whiteKing : blackKing, kingMoves, ~own, white);
+        n = castlingMoves(moves, n, white, true);
+        n = pawnCaptures(moves, n, white, true);
+        n = pawnPushes(moves, n, white, true);
+        return n;
+    }
+
+    private int quietMoves(int[] moves, boolean white) {
+        int n = 0;
+        if (!hasWhiteKing || !hasBlackKing) {
+            return n;
+        }
+        n = stepMoves(moves, n, Piece.KNIGHT, white ? whiteKnights : blackKnights, knightMoves, ~board, white);
+        n = slideMoves(moves, n, Piece.ROOK, white ? whiteRooks : blackRooks, ~board, white);
+        n = slideMoves(moves, n, Piece.BISHOP, white ? whiteBishops : blackBishops, ~board, white);
+        n = slideMoves(moves, n, Piece.QUEEN, white ? whiteQueens : blackQueens, ~board, white);
+        n = stepMoves(moves, n, Piece.KING, white ? whiteKing : blackKing, kingMoves, ~board, white);
+        n = castlingMoves(moves, n, white, false);
+        n = pawnPushes(moves, n, white, false);
+        // invalid move
+        if (hasInvalidMove(white)) {
+            moves[n++] = PackedMove.INVALID_MOVE;
+        }
+        return n;
+    }
 
-                    // northWest moves
-                    long queenNorthWestMap = slideAttacks(from, northWestMask[from]) & ~blackBoard;
-                    // quiet moves
-                    for (long qb = queenNorthWestMap & ~whiteBoard; qb != 0; qb &= qb - 1) {
-                        int to = convert.get(qb & -qb);
-                        moves.add(new Move(Piece.QUEEN, from, to));
-                    }
-                    // capture moves
-                    long queenNorthWestCaptureMap = queenNorthWestMap & whiteBoard;
-                    if (queenNorthWestCaptureMap != 0) {
-                        int cap = convert.get(Long.highestOneBit(queenNorthWestCaptureMap));
-                        moves.add(new Move(Piece.QUEEN, from, cap, whiteMailbox[cap]));
-                        // blocked moves
-                        long queenNorthWestPseudoMap = pseudoBlackSlideAttacks(from, northWestMask[from]) & ~blackBoard;
-                        for (long qb = queenNorthWestPseudoMap ^ queenNorthWestMap; qb != 0; qb &= qb - 1) {
-                            int to = convert.get(qb & -qb);
-                            Move move = new Move(Piece.QUEEN, from, to, cap, whiteMailbox[cap]);
-                            moves.add(move);
-                        }
-                    }
-                    break;
-                case KING:
-                    long kingMap = kingMoves[from] & ~blackBoard;
-                    // quiet moves
-                    for (long kb = kingMap & ~whiteBoard; kb != 0; kb &= kb - 1) {
-                        int to = convert.get(kb & -kb);
-                        moves.add(new Move(Piece.KING, from, to));
-                    }
-                    // captures
-                    for (long kb = kingMap & whiteBoard; kb != 0; kb &= kb - 1) {
-                        int to = convert.get(kb & -kb);
-                        moves.add(new Move(Piece.KING, from, to, whiteMailbox[to]));
-                    }
-                    // castling
-                    if (blackKingside && blackMailbox[61] == Piece.NONE && blackMailbox[62] == Piece.NONE) {
-                        if (whiteMailbox[61] == Piece.NONE && whiteMailbox[62] == Piece.NONE) {
-                            Move move = new Move(Piece.KING, 60, 62);
-                            move.isKingsideCastle = true;
-                            moves.add(move);
-                        }
-                        else {
-                            Move move = new Move(Piece.KING, 60, 62);
-                            move.isInvalidMove = true;
-                            moves.add(move);
-                        }
-                    }
-                    if (blackQueenside && blackMailbox[59] == Piece.NONE && blackMailbox[58] == Piece.NONE && blackMailbox[57] == Piece.NONE) {
-                        if (whiteMailbox[59] == Piece.NONE && whiteMailbox[58] == Piece.NONE && whiteMailbox[57] == Piece.NONE) {
-                            Move move = new Move(Piece.KING, 60, 58);
-                            move.isQueensideCastle = true;
-                            moves.add(move);
-                        }
-                        else {
-                            Move move = new Move(Piece.KING, 60, 58);
-                            move.isInvalidMove = true;
-                            moves.add(move);
-                        }
-                    }
+    private int captureMoves(int[] moves, boolean white) {
+        int n = 0;
+        if (!hasWhiteKing || !hasBlackKing) {
+            return n;
+        }
+        long enemy = white ? blackBoard : whiteBoard;
+        n = stepMoves(moves, n, Piece.KNIGHT, white ? whiteKnights : blackKnights, knightMoves, enemy, white);
+        n = slideMoves(moves, n, Piece.ROOK, white ? whiteRooks : blackRooks, enemy, white);
+        n = slideMoves(moves, n, Piece.BISHOP, white ? whiteBishops : blackBishops, enemy, white);
+        n = slideMoves(moves, n, Piece.QUEEN, white ? whiteQueens : blackQueens, enemy, white);
+        n = stepMoves(moves, n, Piece.KING, white ? whiteKing : blackKing, kingMoves, enemy, white);
+        n = pawnCaptures(moves, n, white, false);
+        return n;
+    }
 
-                    break;
+    // looks up the pieces attacking sq instead of generating every capture
+    private int captureMovesOn(int[] moves, int sq, boolean white) {
+        int n = 0;
+        if (!hasWhiteKing || !hasBlackKing) {
+            return n;
+        }
+        long enemy = white ? blackBoard : whiteBoard;
+        int forward = white ? 8 : -8;
+        if ((enemy & (1L << sq)) != 0) {
+            Piece q = white ? blackMailbox[sq] : whiteMailbox[sq];
+            long orthogonal = Magic.rookAttacks(sq, board), diagonal = Magic.bishopAttacks(sq, board);
+            n = attackerMoves(moves, n, Piece.KNIGHT, (white ? whiteKnights : blackKnights) & knightMoves[sq], sq, q);
+            n = attackerMoves(moves, n, Piece.ROOK, (white ? whiteRooks : blackRooks) & orthogonal, sq, q);
+            n = attackerMoves(moves, n, Piece.BISHOP, (white ? whiteBishops : blackBishops) & diagonal, sq, q);
+            n = attackerMoves(moves, n, Piece.QUEEN, (white ? whiteQueens : blackQueens) & (orthogonal | diagonal), sq, q);
+            n = attackerMoves(moves, n, Piece.KING, (white ? whiteKing : blackKing) & kingMoves[sq], sq, q);
+        }
+        // towards the a file, then towards the h file
+        n = pawnCapturesOn(moves, n, sq, forward - 1, fileH, white);
+        n = pawnCapturesOn(moves, n, sq, forward + 1, fileA, white);
+        return n;
+    }
+
+    private static int attackerMoves(int[] moves, int n, Piece p, long attackers, int sq, Piece q) {
+        for (long b = attackers; b != 0; b &= b - 1) {
+            moves[n++] = PackedMove.of(p, Long.numberOfTrailingZeros(b), sq, q);
+        }
+        return n;
+    }
+
+    // pawn captures in direction dir onto sq, then en passant onto the square behind a pawn on sq
+    // edge is the file that captures in direction dir cannot land on
+    private int pawnCapturesOn(int[] moves, int n, int sq, int dir, long edge, boolean white) {
+        long pawns = white ? whitePawns : blackPawns, enemy = white ? blackBoard : whiteBoard;
+        long last = white ? rank8 : rank1, target = 1L << sq;
+        if ((target & enemy & ~edge) != 0 && (pawns & shift(target, -dir)) != 0) {
+            Piece q = white ? blackMailbox[sq] : whiteMailbox[sq];
+            if ((target & last) != 0) {
+                n = promotions(moves, n, sq - dir, sq, q, PackedMove.NORMAL);
+            }
+            else {
+                moves[n++] = PackedMove.of(Piece.PAWN, sq - dir, sq, q);
             }
         }
-        // pawns moves are handled separately
-        // left captures
-        long a = blackPawns << 9;
-        long b = a & 0b1111111000000000000000000000000000000000000000000000000000000000L;
-        long c = a & 0b0000000011111110111111101111111011111110111111101111111011111110L;
-        // left captures, no promotion, no en passant
-        for (long lb = c & whiteBoard; lb != 0; lb &= lb - 1) {
-            int to = convert.get(lb & -lb);
-            moves.add(new Move(Piece.PAWN, to + 9, to, whiteMailbox[to]));
-        }
-        // invalid left captures, no promotion, no en passant
-        long invalidLeft = c & ~board;
-        if (ep) {
-            invalidLeft = (invalidLeft | sq[eps]) ^ sq[eps];
-        }
-        for (long lb = invalidLeft; lb != 0; lb &= lb - 1) {
-            int to = convert.get(lb & -lb);
-            Move move = new Move(Piece.PAWN, to + 9, to);
-            move.isInvalidMove = true;
-            moves.add(move);
-        }
-        // left captures, promotion
-        for (long lb = b & whiteBoard; lb != 0; lb &= lb - 1) {
-            int to = convert.get(lb & -lb);
-            moves.add(new Move(Piece.PAWN, Piece.QUEEN, to + 9, to, whiteMailbox[to]));
-            moves.add(new Move(Piece.PAWN, Piece.KNIGHT, to + 9, to, whiteMailbox[to]));
-            moves.add(new Move(Piece.PAWN, Piece.ROOK, to + 9, to, whiteMailbox[to]));
-            moves.add(new Move(Piece.PAWN, Piece.BISHOP, to + 9, to, whiteMailbox[to]));
-        }
-        // invalid left captures, promotion
-        for (long lb = b & ~board; lb != 0; lb &= lb - 1) {
-            int to = convert.get(lb & -lb);
-            Move move = new Move(Piece.PAWN, Piece.QUEEN, to + 9, to);
-            move.isInvalidMove = true;
-            moves.add(move);
-            move = new Move(Piece.PAWN, Piece.KNIGHT, to + 9, to);
-            move.isInvalidMove = true;
-            moves.add(move);
-            move = new Move(Piece.PAWN, Piece.ROOK, to + 9, to);
-            move.isInvalidMove = true;
-            moves.add(move);
-            move = new Move(Piece.PAWN, Piece.BISHOP, to + 9, to);
-            move.isInvalidMove = true;
-            moves.add(move);
-        }
-        // left captures, en passant
-        if (ep && (c & sq[eps]) != 0) {
-            Move move = new Move(Piece.PAWN, eps + 9, eps, Piece.PAWN);
-            move.isEPCapture = true;
-            moves.add(move);
-        }
-        // right captures
-        a = blackPawns << 7;
-        b = a & 0b0111111100000000000000000000000000000000000000000000000000000000L;
-        c = a & 0b0000000001111111011111110111111101111111011111110111111101111111L;
-        // right captures, no promotion, no en passant
-        for (long lb = c & whiteBoard; lb != 0; lb &= lb - 1) {
-            int to = convert.get(lb & -lb);
-            moves.add(new Move(Piece.PAWN, to + 7, to, whiteMailbox[to]));
-        }
-        // invalid right captures, no promotion, no en passant
-        long invalidRight = c & ~board;
-        if (ep) {
-            invalidRight = (invalidRight | sq[eps]) ^ sq[eps];
-        }
-        for (long lb = invalidRight; lb != 0; lb &= lb - 1) {
-            int to = convert.get(lb & -lb);
-            Move move = new Move(Piece.PAWN, to + 7, to);
-            move.isInvalidMove = true;
-            moves.add(move);
-        }
-        // right captures, promotion
-        for (long lb = b & whiteBoard; lb != 0; lb &= lb - 1) {
-            int to = convert.get(lb & -lb);
-            moves.add(new Move(Piece.PAWN, Piece.QUEEN, to + 7, to, whiteMailbox[to]));
-            moves.add(new Move(Piece.PAWN, Piece.KNIGHT, to + 7, to, whiteMailbox[to]));
-            moves.add(new Move(Piece.PAWN, Piece.ROOK, to + 7, to, whiteMailbox[to]));
-            moves.add(new Move(Piece.PAWN, Piece.BISHOP, to + 7, to, whiteMailbox[to]));
-        }
-        // invalid right captures, promotion
-        for (long lb = b & ~board; lb != 0; lb &= lb - 1) {
-            int to = convert.get(lb & -lb);
-            Move move = new Move(Piece.PAWN, Piece.QUEEN, to + 7, to);
-            move.isInvalidMove = true;
-            moves.add(move);
-            move = new Move(Piece.PAWN, Piece.KNIGHT, to + 7, to);
-            move.isInvalidMove = true;
-            moves.add(move);
-            move = new Move(Piece.PAWN, Piece.ROOK, to + 7, to);
-            move.isInvalidMove = true;
-            moves.add(move);
-            move = new Move(Piece.PAWN, Piece.BISHOP, to + 7, to);
-            move.isInvalidMove = true;
-            moves.add(move);
-        }
-        // right captures, en passant
-        if (ep && (c & sq[eps]) != 0) {
-            Move move = new Move(Piece.PAWN, eps + 7, eps, Piece.PAWN);
-            move.isEPCapture = true;
-            moves.add(move);
-        }
-        // single push
-        long singleMap = blackPawns << 8;
-        for (long sb = singleMap & ~board; sb != 0; sb &= sb - 1) {
-            int to = convert.get(sb & -sb);
-            moves.add(new Move(Piece.PAWN, to + 8, to));
-        }
-        // single push invalid
-        for (long sb = singleMap & whiteBoard; sb != 0; sb &= sb - 1) {
-            int to = convert.get(sb & -sb);
-            Move move = new Move(Piece.PAWN, to + 8, to);
-            move.isInvalidMove = true;
-            moves.add(move);
+        int forward = white ? 8 : -8;
+        long epMap = 1L << eps;
+        if (ep && eps - forward == sq && (epMap & ~edge) != 0 && (pawns & shift(epMap, -dir)) != 0) {
+            moves[n++] = PackedMove.of(Piece.PAWN, eps - dir, eps, Piece.PAWN) | PackedMove.EN_PASSANT;
         }
-        // double push
-        long doubleMap = (blackPawns << 16) & 0b0000000000000000000000000000000011111111000000000000000000000000L;
-        for (long db = doubleMap & ~board & ((singleMap & ~board) << 8); db != 0; db &= db - 1) {
-            int to = convert.get(db & -db);
-            Move move = new Move(Piece.PAWN, to + 16, to);
-            move.isDPMove = true;
-            moves.add(move);
-        }
-        // double push blocked
-        for (long db = doubleMap & whiteBoard & ((singleMap & ~board) << 8); db != 0; db &= db - 1) {
-            int to = convert.get(db & -db);
-            Move move = new Move(Piece.PAWN, to + 16, to, to + 8);
-            moves.add(move);
-        }
-        // double push invalid
-        for (long db = doubleMap & ~blackBoard & ((singleMap & whiteBoard) << 8); db != 0; db &= db - 1) {
-            int to = convert.get(db & -db);
-            Move move = new Move(Piece.PAWN, to + 16, to);
-            move.isInvalidMove = true;
-            moves.add(move);
-        }
-        return moves;
-    }
-
-    // TODO: create quite move generator and square attacked by move generator
-    public List<Move> whiteCaptureMoves() {
-        List<Move> moves = new ArrayList<>();
-        if (!hasWhiteKing || !hasBlackKing) {
-            return moves;
+        return n;
+    }
+
+    // quiet moves and captures from a bitboard of attacked squares, restricted to targets
+    private int targetMoves(int[] moves, int n, Piece p, int from, long targets, boolean white) {
+        long enemy = white ? blackBoard : whiteBoard;
+        Piece[] enemyMailbox = white ? blackMailbox : whiteMailbox;
+        // quiet moves
+        for (long b = targets & ~enemy; b != 0; b &= b - 1) {
+            int to = Long.numberOfTrailingZeros(b);
+            moves[n++] = PackedMove.of(p, from, to);
         }
-        for (long b = whiteBoard; b != 0; b &= b - 1) {
-            int from = convert.get(b & -b);
-            switch (whiteMailbox[from]) {
-                case KNIGHT:
-                    long knightMap = knightMoves[from] & ~whiteBoard;
-                    // captures
-                    for (long nb = knightMap & blackBoard; nb != 0; nb &= nb - 1) {
-                        int to = convert.get(nb & -nb);
-                        moves.add(new Move(Piece.KNIGHT, from, to, blackMailbox[to]));
-                    }
-                    break;
-                case ROOK:
-                    long rookMap = (slideAttacks(from, rankMask[from]) ^ slideAttacks(from, fileMask[from])) & ~whiteBoard;
-                    // captures
-                    for (long rb = rookMap & blackBoard; rb != 0; rb &= rb - 1) {
-                        int to = convert.get(rb & -rb);
-                        moves.add(new Move(Piece.ROOK, from, to, blackMailbox[to]));
-                    }
-                    break;
-                case BISHOP:
-                    long bishopMap = (slideAttacks(from, diagonalMask[from]) ^ slideAttacks(from, antiDiagonalMask[from])) & ~whiteBoard;
-                    // captures
-                    for (long bb = bishopMap & blackBoard; bb != 0; bb &= bb - 1) {
-                        int to = convert.get(bb & -bb);
-                        moves.add(new Move(Piece.BISHOP, from, to, blackMailbox[to]));
-                    }
-                    break;
-                case QUEEN:
-                    long queenMap = (slideAttacks(from, rankMask[from]) ^ slideAttacks(from, fileMask[from]) ^ slideAttacks(from, diagonalMask[from]) ^ slideAttacks(from, antiDiagonalMask[from])) & ~whiteBoard;
-                    // captures
-                    for (long qb = queenMap & blackBoard; qb != 0; qb &= qb - 1) {
-                        int to = convert.get(qb & -qb);
-                        moves.add(new Move(Piece.QUEEN, from, to, blackMailbox[to]));
-                    }
-                    break;
-                case KING:
-                    long kingMap = kingMoves[from] & ~whiteBoard;
-                    // captures
-                    for (long kb = kingMap & blackBoard; kb != 0; kb &= kb - 1) {
-                        int to = convert.get(kb & -kb);
-                        moves.add(new Move(Piece.KING, from, to, blackMailbox[to]));
-                    }
-                    break;
-            }
+        // captures
+        for (long b = targets & enemy; b != 0; b &= b - 1) {
+            int to = Long.numberOfTrailingZeros(b);
+            moves[n++] = PackedMove.of(p, from, to, enemyMailbox[to]);
         }
-        // pawns moves are handled separately
-        // left captures
-        long a = whitePawns >>> 7;
-        long b = a & 0b0000000000000000000000000000000000000000000000000000000011111110L;
-        long c = a & 0b1111111011111110111111101111111011111110111111101111111000000000L;
-        long d = a & 0b1111111011111110111111101111111011111110111111101111111011111110L;
-        // left captures, no promotion, no en passant
-        for (long lb = c & blackBoard; lb != 0; lb &= lb - 1) {
-            int to = convert.get(lb & -lb);
-            moves.add(new Move(Piece.PAWN, to - 7, to, blackMailbox[to]));
-        }
-        // left captures, promotion
-        for (long lb = b & blackBoard; lb != 0; lb &= lb - 1) {
-            int to = convert.get(lb & -lb);
-            moves.add(new Move(Piece.PAWN, Piece.QUEEN, to - 7, to, blackMailbox[to]));
-            moves.add(new Move(Piece.PAWN, Piece.KNIGHT, to - 7, to, blackMailbox[to]));
-            moves.add(new Move(Piece.PAWN, Piece.ROOK, to - 7, to, blackMailbox[to]));
-            moves.add(new Move(Piece.PAWN, Piece.BISHOP, to - 7, to, blackMailbox[to]));
-        }
-        // left captures, en passant
-        if (ep && (d & sq[eps]) != 0) {
-            Move move = new Move(Piece.PAWN, eps - 7, eps, Piece.PAWN);
-            move.isEPCapture = true;
-            moves.add(move);
-        }
-        // right captures
-        a = whitePawns >>> 9;
-        b = a & 0b0000000000000000000000000000000000000000000000000000000001111111L;
-        c = a & 0b0111111101111111011111110111111101111111011111110111111100000000L;
-        d = a & 0b0111111101111111011111110111111101111111011111110111111101111111L;
-        // right captures, no promotion, no en passant
-        for (long lb = c & blackBoard; lb != 0; lb &= lb - 1) {
-            int to = convert.get(lb & -lb);
-            moves.add(new Move(Piece.PAWN, to - 9, to, blackMailbox[to]));
-        }
-        // right captures, promotion
-        for (long lb = b & blackBoard; lb != 0; lb &= lb - 1) {
-            int to = convert.get(lb & -lb);
-            moves.add(new Move(Piece.PAWN, Piece.QUEEN, to - 9, to, blackMailbox[to]));
-            moves.add(new Move(Piece.PAWN, Piece.KNIGHT, to - 9, to, blackMailbox[to]));
-            moves.add(new Move(Piece.PAWN, Piece.ROOK, to - 9, to, blackMailbox[to]));
-            moves.add(new Move(Piece.PAWN, Piece.BISHOP, to - 9, to, blackMailbox[to]));
-        }
-        // right captures, en passant
-        if (ep && (d & sq[eps]) != 0) {
-            Move move = new Move(Piece.PAWN, eps - 9, eps, Piece.PAWN);
-            move.isEPCapture = true;
-            moves.add(move);
-        }
-        return moves;
+        return n;
     }
 
-    public List<Move> blackCaptureMoves() {
-        List<Move> moves = new ArrayList<>();
-        if (!hasWhiteKing || !hasBlackKing) {
-            return moves;
+    // knights and kings
+    private int stepMoves(int[] moves, int n, Piece p, long pieces, long[] attacks, long targets, boolean white) {
+        for (long b = pieces; b != 0; b &= b - 1) {
+            int from = Long.numberOfTrailingZeros(b);
+            n = targetMoves(moves, n, p, from, attacks[from] & targets, white);
         }
-        for (long b = blackBoard; b != 0; b &= b - 1) {
-            int from = convert.get(b & -b);
-            switch (blackMailbox[from]) {
-                case KNIGHT:
-                    long knightMap = knightMoves[from] & ~blackBoard;
-                    // captures
-                    for (long nb = knightMap & whiteBoard; nb != 0; nb &= nb - 1) {
-                        int to = convert.get(nb & -nb);
-                        moves.add(new Move(Piece.KNIGHT, from, to, whiteMailbox[to]));
-                    }
-                    break;
+        return n;
+    }
+
+    // rooks, bishops and queens, stopping at the first piece of either side
+    private int slideMoves(int[] moves, int n, Piece p, long pieces, long targets, boolean white) {
+        for (long b = pieces; b != 0; b &= b - 1) {
+            int from = Long.numberOfTrailingZeros(b);
+            long attacks;
+            switch (p) {
                 case ROOK:
-                    long rookMap = (slideAttacks(from, rankMask[from]) ^ slideAttacks(from, fileMask[from])) & ~blackBoard;
-                    // captures
-                    for (long rb = rookMap & whiteBoard; rb != 0; rb &= rb - 1) {
-                        int to = convert.get(rb & -rb);
-                        moves.add(new Move(Piece.ROOK, from, to, whiteMailbox[to]));
-                    }
+                    attacks = Magic.rookAttacks(from, board);
                     break;
                 case BISHOP:
-                    long bishopMap = (slideAttacks(from, diagonalMask[from]) ^ slideAttacks(from, antiDiagonalMask[from])) & ~blackBoard;
-                    // captures
-                    for (long bb = bishopMap & whiteBoard; bb != 0; bb &= bb - 1) {
-                        int to = convert.get(bb & -bb);
-                        moves.add(new Move(Piece.BISHOP, from, to, whiteMailbox[to]));
-                    }
-                    break;
-                case QUEEN:
-                    long queenMap = (slideAttacks(from, rankMask[from]) ^ slideAttacks(from, fileMask[from]) ^ slideAttacks(from, diagonalMask[from]) ^ slideAttacks(from, antiDiagonalMask[from])) & ~blackBoard;
-                    // captures
-                    for (long qb = queenMap & whiteBoard; qb != 0; qb &= qb - 1) {
-                        int to = convert.get(qb & -qb);
-                        moves.add(new Move(Piece.QUEEN, from, to, whiteMailbox[to]));
-                    }
+                    attacks = Magic.bishopAttacks(from, board);
                     break;
-                case KING:
-                    long kingMap = kingMoves[from] & ~blackBoard;
-                    // captures
-                    for (long kb = kingMap & whiteBoard; kb != 0; kb &= kb - 1) {
-                        int to = convert.get(kb & -kb);
-                        moves.add(new Move(Piece.KING, from, to, whiteMailbox[to]));
-                    }
+                default:
+                    attacks = Magic.queenAttacks(from, board);
                     break;
             }
+            n = targetMoves(moves, n, p, from, attacks & targets, white);
         }
-        // pawns moves are handled separately
-        // left captures
-        long a = blackPawns << 9;
-        long b = a & 0b1111111000000000000000000000000000000000000000000000000000000000L;
-        long c = a & 0b0000000011111110111111101111111011111110111111101111111011111110L;
-        long d = a & 0b1111111011111110111111101111111011111110111111101111111011111110L;
-        // left captures, no promotion, no en passant
-        for (long lb = c & whiteBoard; lb != 0; lb &= lb - 1) {
-            int to = convert.get(lb & -lb);
-            moves.add(new Move(Piece.PAWN, to + 9, to, whiteMailbox[to]));
-        }
-        // left captures, promotion
-        for (long lb = b & whiteBoard; lb != 0; lb &= lb - 1) {
-            int to = convert.get(lb & -lb);
-            moves.add(new Move(Piece.PAWN, Piece.QUEEN, to + 9, to, whiteMailbox[to]));
-            moves.add(new Move(Piece.PAWN, Piece.KNIGHT, to + 9, to, whiteMailbox[to]));
-            moves.add(new Move(Piece.PAWN, Piece.ROOK, to + 9, to, whiteMailbox[to]));
-            moves.add(new Move(Piece.PAWN, Piece.BISHOP, to + 9, to, whiteMailbox[to]));
-        }
-        // left captures, en passant
-        if (ep && (d & sq[eps]) != 0) {
-            Move move = new Move(Piece.PAWN, eps + 9, eps, Piece.PAWN);
-            move.isEPCapture = true;
-            moves.add(move);
-        }
-        // right captures
-        a = blackPawns << 7;
-        b = a & 0b0111111100000000000000000000000000000000000000000000000000000000L;
-        c = a & 0b0000000001111111011111110111111101111111011111110111111101111111L;
-        d = a & 0b0111111101111111011111110111111101111111011111110111111101111111L;
-        // right captures, no promotion, no en passant
-        for (long lb = c & whiteBoard; lb != 0; lb &= lb - 1) {
-            int to = convert.get(lb & -lb);
-            moves.add(new Move(Piece.PAWN, to + 7, to, whiteMailbox[to]));
-        }
-        // right captures, promotion
-        for (long lb = b & whiteBoard; lb != 0; lb &= lb - 1) {
-            int to = convert.get(lb & -lb);
-            moves.add(new Move(Piece.PAWN, Piece.QUEEN, to + 7, to, whiteMailbox[to]));
-            moves.add(new Move(Piece.PAWN, Piece.KNIGHT, to + 7, to, whiteMailbox[to]));
-            moves.add(new Move(Piece.PAWN, Piece.ROOK, to + 7, to, whiteMailbox[to]));
-            moves.add(new Move(Piece.PAWN, Piece.BISHOP, to + 7, to, whiteMailbox[to]));
-        }
-        // right captures, en passant
-        if (ep && (d & sq[eps]) != 0) {
-            Move move = new Move(Piece.PAWN, eps + 7, eps, Piece.PAWN);
-            move.isEPCapture = true;
-            moves.add(move);
-        }
-        return moves;
+        return n;
     }
-    //endregion
 
-    //region make move methods
-    private void whiteMoveQuiet(Move m) {
-        long fromBB = sq[m.from], toBB = sq[m.to], fromToBB = fromBB ^ toBB;
-        switch (m.p) {
-            case KNIGHT:
-                whiteKnights = whiteKnights ^ fromToBB;
-                break;
-            case ROOK:
-                whiteRooks = whiteRooks ^ fromToBB;
-                if (whiteKingside && m.from == 7) {
-                    whiteKingside = false;
-                }
-                if (whiteQueenside && m.from == 0) {
-                    whiteQueenside = false;
-                }
-                break;
-            case BISHOP:
-                whiteBishops = whiteBishops ^ fromToBB;
-                break;
-            case QUEEN:
-                whiteQueens = whiteQueens ^ fromToBB;
-                break;
-            case KING:
-                whiteKing = whiteKing ^ fromToBB;
-                whiteKingside = false;
-                whiteQueenside = false;
-                break;
-            case PAWN:
-                whitePawns = whitePawns ^ fromToBB;
-                break;
+    // rooks, bishops and queens, including moves blocked by the first enemy piece along each ray
+    private int slidePseudoMoves(int[] moves, int n, Piece p, long pieces, boolean white) {
+        // rays 0-3 are orthogonal, rays 4-7 are diagonal
+        int first = p == Piece.BISHOP ? Magic.NORTH_EAST : Magic.NORTH, last = p == Piece.ROOK ? Magic.NORTH_EAST : 8;
+        for (long b = pieces; b != 0; b &= b - 1) {
+            int from = Long.numberOfTrailingZeros(b);
+            for (int d = first; d < last; d++) {
+                n = rayMoves(moves, n, p, from, d, white);
+            }
         }
-        whiteBoard ^= fromToBB;
-        board ^= fromToBB;
-
-//        hc ^= wt.get(whiteMailbox[m.from]).get(m.from);
-//        hc ^= wt.get(Piece.NONE).get(m.from);
-        whiteMailbox[m.from] = Piece.NONE;
-
-//        hc ^= wt.get(whiteMailbox[m.to]).get(m.to);
-//        hc ^= wt.get(m.p).get(m.to);
-        whiteMailbox[m.to] = m.p;
-    }
-
-    private void blackMoveQuiet(Move m) {
-        long fromBB = sq[m.from], toBB = sq[m.to], fromToBB = fromBB ^ toBB;
-        switch (m.p) {
-            case KNIGHT:
-                blackKnights = blackKnights ^ fromToBB;
-                break;
-            case ROOK:
-                blackRooks = blackRooks ^ fromToBB;
-                if (blackKingside && m.from == 63) {
-                    blackKingside = false;
-                }
-                if (blackQueenside && m.from == 56) {
-                    blackQueenside = false;
-                }
-                break;
-            case BISHOP:
-                blackBishops = blackBishops ^ fromToBB;
-                break;
-            case QUEEN:
-                blackQueens = blackQueens ^ fromToBB;
-                break;
-            case KING:
-                blackKing = blackKing ^ fromToBB;
-                blackKingside = false;
-                blackQueenside = false;
-                break;
-            case PAWN:
-                blackPawns = blackPawns ^ fromToBB;
-                break;
+        return n;
+    }
+
+    private int rayMoves(int[] moves, int n, Piece p, int from, int d, boolean white) {
+        long own = white ? whiteBoard : blackBoard, enemy = white ? blackBoard : whiteBoard;
+        Piece[] enemyMailbox = white ? blackMailbox : whiteMailbox;
+        long map = Magic.rayAttacks(d, from, board) & ~own;
+        // quiet moves
+        for (long b = map & ~enemy; b != 0; b &= b - 1) {
+            int to = Long.numberOfTrailingZeros(b);
+            moves[n++] = PackedMove.of(p, from, to);
+        }
+        // capture moves
+        long captureMap = map & enemy;
+        if (captureMap != 0) {
+            int cap = Magic.first(d, captureMap);
+            moves[n++] = PackedMove.of(p, from, cap, enemyMailbox[cap]);
+            // blocked moves
+            for (long b = (Magic.rayAttacks(d, from, own) & ~own) ^ map; b != 0; b &= b - 1) {
+                int to = Long.numberOfTrailingZeros(b);
+                moves[n++] = PackedMove.of(p, from, to, cap, enemyMailbox[cap]);
+            }
         }
-        blackBoard ^= fromToBB;
-        board ^= fromToBB;
-
-//        hc ^= bt.get(blackMailbox[m.from]).get(m.from);
-//        hc ^= bt.get(Piece.NONE).get(m.from);
-        blackMailbox[m.from] = Piece.NONE;
-
-//        hc ^= bt.get(blackMailbox[m.to]).get(m.to);
-//        hc ^= bt.get(m.p).get(m.to);
-        blackMailbox[m.to] = m.p;
+        return n;
     }
 
-    private void whiteMoveCapture(Move m) {
-        long fromBB = sq[m.from], toBB = sq[m.to], fromToBB = fromBB ^ toBB;
-        switch (m.p) {
-            case KNIGHT:
-                whiteKnights = whiteKnights ^ fromToBB;
-                break;
-            case ROOK:
-                whiteRooks = whiteRooks ^ fromToBB;
-                if (whiteKingside && m.from == 63) {
-                    whiteKingside = false;
-                }
-                if (whiteQueenside && m.from == 56) {
-                    whiteQueenside = false;
-                }
-                break;
-            case BISHOP:
-                whiteBishops = whiteBishops ^ fromToBB;
-                break;
-            case QUEEN:
-                whiteQueens = whiteQueens ^ fromToBB;
-                break;
-            case KING:
-                whiteKing = whiteKing ^ fromToBB;
-                whiteKingside = false;
-                whiteQueenside = false;
-                break;
-            case PAWN:
-                whitePawns = whitePawns ^ fromToBB;
-                break;
+    // pseudo generation also writes the castles which are invalid due to enemy pieces in the way
+    private int castlingMoves(int[] moves, int n, boolean white, boolean pseudo) {
+        long own = white ? whiteBoard : blackBoard, enemy = white ? blackBoard : whiteBoard;
+        int home = white ? 0 : 56;
+        if ((white ? whiteKingside : blackKingside) && (own & (kingsidePath << home)) == 0) {
+            if ((enemy & (kingsidePath << home)) == 0) {
+                moves[n++] = PackedMove.of(Piece.KING, home + 4, home + 6) | PackedMove.KINGSIDE_CASTLE;
+            }
+            else if (pseudo) {
+                moves[n++] = PackedMove.of(Piece.KING, home + 4, home + 6) | PackedMove.INVALID;
+            }
         }
-        whiteBoard ^= fromToBB;
-        switch (m.q) {
-            case KNIGHT:
-                blackKnights = blackKnights ^ toBB;
-                break;
-            case ROOK:
-                blackRooks = blackRooks ^ toBB;
-                break;
-            case BISHOP:
-                blackBishops = blackBishops ^ toBB;
-                break;
-            case QUEEN:
-                blackQueens = blackQueens ^ toBB;
-                break;
-            case KING:
-                blackKing = blackKing ^ toBB;
-                hasBlackKing = false;
-                break;
-            case PAWN:
-                blackPawns = blackPawns ^ toBB;
-                break;
+        if ((white ? whiteQueenside : blackQueenside) && (own & (queensidePath << home)) == 0) {
+            if ((enemy & (queensidePath << home)) == 0) {
+                moves[n++] = PackedMove.of(Piece.KING, home + 4, home + 2) | PackedMove.QUEENSIDE_CASTLE;
+            }
+            else if (pseudo) {
+                moves[n++] = PackedMove.of(Piece.KING, home + 4, home + 2) | PackedMove.INVALID;
+            }
         }
-        blackBoard ^= toBB;
-        board ^= fromBB;
-
-//		hc ^= wt.get(whiteMailbox[m.from]).get(m.from);
-//		hc ^= wt.get(Piece.NONE).get(m.from);
-        whiteMailbox[m.from] = Piece.NONE;
-
-//		hc ^= wt.get(whiteMailbox[m.to]).get(m.to);
-//		hc ^= wt.get(m.p).get(m.to);
-        whiteMailbox[m.to] = m.p;
-
-//		hc ^= bt.get(blackMailbox[m.to]).get(m.to);
-//		hc ^= bt.get(Piece.NONE).get(m.to);
-        blackMailbox[m.to] = Piece.NONE;
+        return n;
+    }
+
+    // pseudo generation also writes the captures onto empty squares
+    private int pawnCaptures(int[] moves, int n, boolean white, boolean pseudo) {
+        long pawns = white ? whitePawns : blackPawns;
+        int forward = white ? 8 : -8;
+        // towards the a file, then towards the h file
+        n = pawnCaptures(moves, n, shift(pawns, forward - 1) & ~fileH, forward - 1, white, pseudo);
+        n = pawnCaptures(moves, n, shift(pawns, forward + 1) & ~fileA, forward + 1, white, pseudo);
+        return n;
+    }
+
+    private int pawnCaptures(int[] moves, int n, long map, int dir, boolean white, boolean pseudo) {
+        long enemy = white ? blackBoard : whiteBoard;
+        Piece[] enemyMailbox = white ? blackMailbox : whiteMailbox;
+        long last = white ? rank8 : rank1;
+        long epMap = ep ? 1L << eps : 0;
+        // captures, no promotion, no en passant
+        for (long b = map & enemy & ~last; b != 0; b &= b - 1) {
+            int to = Long.numberOfTrailingZeros(b);
+            moves[n++] = PackedMove.of(Piece.PAWN, to - dir, to, enemyMailbox[to]);
+        }
+        // captures, promotion
+        for (long b = map & enemy & last; b != 0; b &= b - 1) {
+            int to = Long.numberOfTrailingZeros(b);
+            n = promotions(moves, n, to - dir, to, enemyMailbox[to], PackedMove.NORMAL);
+        }
+        // captures, en passant
+        if ((map & epMap) != 0) {
+            moves[n++] = PackedMove.of(Piece.PAWN, eps - dir, eps, Piece.PAWN) | PackedMove.EN_PASSANT;
+        }
+        if (pseudo) {
+            // invalid captures, no promotion
+            for (long b = map & ~board & ~last & ~epMap; b != 0; b &= b - 1) {
+                int to = Long.numberOfTrailingZeros(b);
+                moves[n++] = PackedMove.of(Piece.PAWN, to - dir, to) | PackedMove.INVALID;
+            }
+            // invalid captures, promotion
+            for (long b = map & ~board & last; b != 0; b &= b - 1) {
+                int to = Long.numberOfTrailingZeros(b);
+                n = promotions(moves, n, to - dir, to, Piece.NONE, PackedMove.INVALID);
+            }
+        }
+        return n;
     }
 
-    private void blackMoveCapture(Move m) {
-        long fromBB = sq[m.from], toBB = sq[m.to], fromToBB = fromBB ^ toBB;
-        switch (m.p) {
-            case KNIGHT:
-                blackKnights = blackKnights ^ fromToBB;
-                break;
-            case ROOK:
-                blackRooks = blackRooks ^ fromToBB;
-                if (blackKingside && m.from == 63) {
-                    blackKingside = false;
-                }
-                if (blackQueenside && m.from == 56) {
-                    blackQueenside = false;
-                }
-                break;
-            case BISHOP:
-                blackBishops = blackBishops ^ fromToBB;
-                break;
-            case QUEEN:
-                blackQueens = blackQueens ^ fromToBB;
-                break;
-            case KING:
-                blackKing = blackKing ^ fromToBB;
-                blackKingside = false;
-                blackQueenside = false;
-                break;
-            case PAWN:
-                blackPawns = blackPawns ^ fromToBB;
-                break;
+    // pseudo generation also writes the pushes which are invalid or blocked due to enemy pieces
+    private int pawnPushes(int[] moves, int n, boolean white, boolean pseudo) {
+        long own = white ? whiteBoard : blackBoard, enemy = white ? blackBoard : whiteBoard;
+        long last = white ? rank8 : rank1, fourth = white ? rank4 : rank5;
+        int forward = white ? 8 : -8;
+        long singleMap = shift(white ? whitePawns : blackPawns, forward);
+        // single push, no promotion
+        for (long b = singleMap & ~board & ~last; b != 0; b &= b - 1) {
+            int to = Long.numberOfTrailingZeros(b);
+            moves[n++] = PackedMove.of(Piece.PAWN, to - forward, to);
         }
-        blackBoard ^= fromToBB;
-        switch (m.q) {
-            case KNIGHT:
-                whiteKnights = whiteKnights ^ toBB;
-                break;
-            case ROOK:
-                whiteRooks = whiteRooks ^ toBB;
-                break;
-            case BISHOP:
-                whiteBishops = whiteBishops ^ toBB;
-                break;
-            case QUEEN:
-                whiteQueens = whiteQueens ^ toBB;
-                break;
-            case KING:
-                whiteKing = whiteKing ^ toBB;
-                hasWhiteKing = false;
-                break;
-            case PAWN:
-                whitePawns = whitePawns ^ toBB;
-                break;
+        // single push, promotion
+        for (long b = singleMap & ~board & last; b != 0; b &= b - 1) {
+            int to = Long.numberOfTrailingZeros(b);
+            n = promotions(moves, n, to - forward, to, Piece.NONE, PackedMove.NORMAL);
         }
-        whiteBoard ^= toBB;
-        board ^= fromBB;
-
-//		hc ^= bt.get(blackMailbox[m.from]).get(m.from);
-//		hc ^= bt.get(Piece.NONE).get(m.from);
-        blackMailbox[m.from] = Piece.NONE;
-
-//		hc ^= bt.get(blackMailbox[m.to]).get(m.to);
-//		hc ^= bt.get(m.p).get(m.to);
-        blackMailbox[m.to] = m.p;
-
-//		hc ^= wt.get(whiteMailbox[m.to]).get(m.to);
-//		hc ^= wt.get(Piece.NONE).get(m.to);
-        whiteMailbox[m.to] = Piece.NONE;
-    }
-
-    private void whiteKingsideCastle() {
-        whiteMoveQuiet(new Move(Piece.KING, 4, 6));
-        whiteMoveQuiet(new Move(Piece.ROOK, 7, 5));
-    }
-
-    private void blackKingsideCastle() {
-        blackMoveQuiet(new Move(Piece.KING, 60, 62));
-        blackMoveQuiet(new Move(Piece.ROOK, 63, 61));
-    }
-
-    private void whiteQueensideCastle() {
-        whiteMoveQuiet(new Move(Piece.KING, 4, 2));
-        whiteMoveQuiet(new Move(Piece.ROOK, 0, 3));
+        // double push
+        long doubleMap = shift(singleMap & ~board, forward) & fourth;
+        for (long b = doubleMap & ~board; b != 0; b &= b - 1) {
+            int to = Long.numberOfTrailingZeros(b);
+            moves[n++] = PackedMove.of(Piece.PAWN, to - 2 * forward, to) | PackedMove.DOUBLE_PUSH;
+        }
+        if (pseudo) {
+            // single push invalid, no promotion
+            for (long b = singleMap & enemy & ~last; b != 0; b &= b - 1) {
+                int to = Long.numberOfTrailingZeros(b);
+                moves[n++] = PackedMove.of(Piece.PAWN, to - forward, to) | PackedMove.INVALID;
+            }
+            // single push invalid, promotion
+            for (long b = singleMap & enemy & last; b != 0; b &= b - 1) {
+                int to = Long.numberOfTrailingZeros(b);
+                n = promotions(moves, n, to - forward, to, Piece.NONE, PackedMove.INVALID);
+            }
+            // double push blocked
+            for (long b = doubleMap & enemy; b != 0; b &= b - 1) {
+                int to = Long.numberOfTrailingZeros(b);
+                moves[n++] = PackedMove.of(Piece.PAWN, to - 2 * forward, to, to - forward);
+            }
+            // double push invalid
+            for (long b = shift(singleMap & enemy, forward) & fourth & ~own; b != 0; b &= b - 1) {
+                int to = Long.numberOfTrailingZeros(b);
+                moves[n++] = PackedMove.of(Piece.PAWN, to - 2 * forward, to) | PackedMove.INVALID;
+            }
+        }
+        return n;
     }
 
-    private void blackQueensideCastle() {
-        blackMoveQuiet(new Move(Piece.KING, 60, 58));
-        blackMoveQuiet(new Move(Piece.ROOK, 56, 59));
+    // the four promotions of a pawn move, queen first
+    private static int promotions(int[] moves, int n, int from, int to, Piece q, int kind) {
+        moves[n++] = PackedMove.of(from, to, 0, Piece.PAWN, q, Piece.QUEEN, kind);
+        moves[n++] = PackedMove.of(from, to, 0, Piece.PAWN, q, Piece.KNIGHT, kind);
+        moves[n++] = PackedMove.of(from, to, 0, Piece.PAWN, q, Piece.ROOK, kind);
+        moves[n++] = PackedMove.of(from, to, 0, Piece.PAWN, q, Piece.BISHOP, kind);
+        return n;
     }
 
-    private void whiteDPMove(Move m) {
-        whiteMoveQuiet(m);
-        ep = true;
-        eps = (m.from + m.to) / 2;
+    // whether at least one attempted move will result in no change in the board
+    private boolean hasInvalidMove(boolean white) {
+        long own = white ? whiteBoard : blackBoard, enemy = white ? blackBoard : whiteBoard;
+        long pawns = white ? whitePawns : blackPawns;
+        int forward = white ? 8 : -8, home = white ? 0 : 56;
+        long epMap = ep ? 1L << eps : 0;
+        // pawn capture onto an empty square
+        long left = shift(pawns, forward - 1) & ~fileH, right = shift(pawns, forward + 1) & ~fileA;
+        if (((left | right) & ~board & ~epMap) != 0) {
+            return true;
+        }
+        // pawn push into an enemy piece
+        if ((shift(pawns, forward) & enemy) != 0) {
+            return true;
+        }
+        // castling through an enemy piece
+        if ((white ? whiteKingside : blackKingside) && (own & (kingsidePath << home)) == 0 && (enemy & (kingsidePath << home)) != 0) {
+            return true;
+        }
+        return (white ? whiteQueenside : blackQueenside) && (own & (queensidePath << home)) == 0 && (enemy & (queensidePath << home)) != 0;
     }
 
-    private void blackDPMove(Move m) {
-        blackMoveQuiet(m);
-        ep = true;
-        eps = (m.from + m.to) / 2;
+    private static long shift(long x, int d) {
+        return d > 0 ? x << d : x >>> -d;
     }
+    //endregion
 
-    private void whitePromote(Move m) {
-        long fromBB = sq[m.from], toBB = sq[m.to], fromToBB = fromBB ^ toBB;
-        whitePawns = whitePawns ^ fromBB;
-        if (m.r == Piece.QUEEN) {
-            whiteQueens = whiteQueens ^ toBB;
-        }
-        else {
-            whiteBishops = whiteBishops ^ toBB;
-        }
-        if (m.isCapture) {
-            switch (m.q) {
-                case KNIGHT:
-                    blackKnights = blackKnights ^ toBB;
+    //region make move methods
+    private void togglePiece(boolean white, Piece p, long bb) {
+        if (white) {
+            switch (p) {
+                case PAWN:
+                    whitePawns ^= bb;
                     break;
-                case ROOK:
-                    blackRooks = blackRooks ^ toBB;
+                case KNIGHT:
+                    whiteKnights ^= bb;
                     break;
                 case BISHOP:
-                    blackBishops = blackBishops ^ toBB;
+                    whiteBishops ^= bb;
+                    break;
+                case ROOK:
+                    whiteRooks ^= bb;
                     break;
                 case QUEEN:
-                    blackQueens = blackQueens ^ toBB;
+                    whiteQueens ^= bb;
                     break;
                 case KING:
-                    blackKing = blackKing ^ toBB;
-                    hasBlackKing = false;
-                    break;
-                case PAWN:
-                    blackPawns = blackPawns ^ toBB;
+                    whiteKing ^= bb;
                     break;
             }
-
-//			hc ^= bt.get(blackMailbox[m.to]).get(m.to);
-//			hc ^= bt.get(Piece.NONE).get(m.to);
-            blackMailbox[m.to] = Piece.NONE;
-
-            blackBoard ^= toBB;
-            board ^= fromBB;
+            whiteBoard ^= bb;
         }
         else {
-            board ^= fromToBB;
-        }
-        whiteBoard ^= fromToBB;
-
-//		hc ^= wt.get(whiteMailbox[m.from]).get(m.from);
-//		hc ^= wt.get(Piece.NONE).get(m.from);
-        whiteMailbox[m.from] = Piece.NONE;
-
-//		hc ^= wt.get(whiteMailbox[m.to]).get(m.to);
-//		hc ^= wt.get(m.r).get(m.to);
-        whiteMailbox[m.to] = m.r;
-        ep = false;
-    }
-
-    private void blackPromote(Move m) {
-        long fromBB = sq[m.from], toBB = sq[m.to], fromToBB = fromBB ^ toBB;
-        blackPawns = blackPawns ^ fromBB;
-        if (m.r == Piece.QUEEN) {
-            blackQueens = blackQueens ^ toBB;
-        }
-        else {
-            blackBishops = blackBishops ^ toBB;
-        }
-        if (m.isCapture) {
-            switch (m.q) {
-                case KNIGHT:
-                    whiteKnights = whiteKnights ^ toBB;
+            switch (p) {
+                case PAWN:
+                    blackPawns ^= bb;
                     break;
-                case ROOK:
-                    whiteRooks = whiteRooks ^ toBB;
+                case KNIGHT:
+                    blackKnights ^= bb;
                     break;
                 case BISHOP:
-                    whiteBishops = whiteBishops ^ toBB;
-                    break;
-                case QUEEN:
-                    whiteQueens = whiteQueens ^ toBB;
+                    blackBishops ^= bb;
                     break;
-                case KING:
-                    whiteKing = whiteKing ^ toBB;
-                    hasWhiteKing = false;
+                case ROOK:
+                    blackRooks ^= bb;
                     break;
-                case PAWN:
-                    whitePawns = whitePawns ^ toBB;
+                case QUEEN:
+                    blackQueens ^= bb;
                     break;
-            }
-
-//			hc ^= wt.get(whiteMailbox[m.to]).get(m.to);
-//			hc ^= wt.get(Piece.NONE).get(m.to);
-            whiteMailbox[m.to] = Piece.NONE;
-
-            whiteBoard ^= toBB;
-            board ^= fromBB;
-        }
-        else {
-            board ^= fromToBB;
-        }
-        blackBoard ^= fromToBB;
-
-//		hc ^= bt.get(blackMailbox[m.from]).get(m.from);
-//		hc ^= bt.get(Piece.NONE).get(m.from);
-        blackMailbox[m.from] = Piece.NONE;
-
-//		hc ^= bt.get(blackMailbox[m.to]).get(m.to);
-//		hc ^= bt.get(m.r).get(m.to);
-        blackMailbox[m.to] = m.r;
-        ep = false;
-    }
-
-    private void whiteEPCapture(Move m) {
-        whiteMoveQuiet(m);
-        int cap = 8 * (m.from / 8) + (m.to % 8);
-        blackPawns = blackPawns ^ sq[cap];
-        blackBoard ^= sq[cap];
-        board ^= sq[cap];
-
-//        hc ^= bt.get(blackMailbox[cap]).get(cap);
-//        hc ^= bt.get(Piece.NONE).get(cap);
-        blackMailbox[cap] = Piece.NONE;
-    }
-
-    private void blackEPCapture(Move m) {
-        blackMoveQuiet(m);
-        int cap = 8 * (m.from / 8) + (m.to % 8);
-        whitePawns = whitePawns ^ sq[cap];
-        whiteBoard ^= sq[cap];
-        board ^= sq[cap];
-
-//        hc ^= wt.get(whiteMailbox[cap]).get(cap);
-//        hc ^= wt.get(Piece.NONE).get(cap);
-        whiteMailbox[cap] = Piece.NONE;
-    }
-
-    private void whiteInvalidMove() {
-
-    }
-
-    private void blackInvalidMove() {
-
+                case KING:
+                    blackKing ^= bb;
+                    break;
+            }
+            blackBoard ^= bb;
+        }
+        board ^= bb;
     }
 
-    private void whiteBlockedMove(Move m) {
-        if (m.p == Piece.PAWN) {
-            whiteMoveQuiet(new Move(m.p, m.from, m.block));
+    private void putPiece(boolean white, Piece p, int x) {
+        togglePiece(white, p, 1L << x);
+        if (white) {
+            whiteMailbox[x] = p;
+            hc ^= whiteKeys[p.ordinal()][x];
         }
         else {
-            whiteMoveCapture(new Move(m.p, m.from, m.block, m.q));
+            blackMailbox[x] = p;
+            hc ^= blackKeys[p.ordinal()][x];
         }
     }
 
-    private void blackBlockedMove(Move m) {
-        if (m.p == Piece.PAWN) {
-            blackMoveQuiet(new Move(m.p, m.from, m.block));
+    private void removePiece(boolean white, Piece p, int x) {
+        togglePiece(white, p, 1L << x);
+        if (white) {
+            whiteMailbox[x] = Piece.NONE;
+            hc ^= whiteKeys[p.ordinal()][x];
         }
         else {
-            blackMoveCapture(new Move(m.p, m.from, m.block, m.q));
+            blackMailbox[x] = Piece.NONE;
+            hc ^= blackKeys[p.ordinal()][x];
         }
     }
 
-    // assumes move is not minimal and has specifications about special moves
-    public void whiteMove(Move m) {
-        prevWhiteKingside.addLast(whiteKingside);
-        prevWhiteQueenside.addLast(whiteQueenside);
-        prevEp.addLast(ep);
-        prevEps.addLast(eps);
-        ep = false;
-        if (m.isInvalidMove) {
-            whiteInvalidMove();
-        }
-        else if (m.isBlockedMove) {
-            whiteBlockedMove(m);
-        }
-        else if (m.isEPCapture) {
-            whiteEPCapture(m);
-        }
-        else if (m.isPromotion) {
-            whitePromote(m);
-        }
-        else if (m.isCapture) {
-            whiteMoveCapture(m);
-        }
-        else if (m.isKingsideCastle) {
-            whiteKingsideCastle();
-        }
-        else if (m.isQueensideCastle) {
-            whiteQueensideCastle();
-        }
-        else if (m.isDPMove) {
-            whiteDPMove(m);
-        }
-        else {
-            whiteMoveQuiet(m);
-        }
+    private void updateCastlingRights(int from, int to) {
+        int lost = lostCastlingRights(from, to);
+        whiteKingside &= (lost & 1) == 0;
+        whiteQueenside &= (lost & 2) == 0;
+        blackKingside &= (lost & 4) == 0;
+        blackQueenside &= (lost & 8) == 0;
     }
 
-    // assumes move is not minimal and has specifications about special moves
-    public void blackMove(Move m) {
-        prevBlackKingside.addLast(blackKingside);
-        prevBlackQueenside.addLast(blackQueenside);
-        prevEp.addLast(ep);
-        prevEps.addLast(eps);
-        ep = false;
-        if (m.isInvalidMove) {
-            blackInvalidMove();
-        }
-        else if (m.isBlockedMove) {
-            blackBlockedMove(m);
-        }
-        else if (m.isEPCapture) {
-            blackEPCapture(m);
-        }
-        else if (m.isPromotion) {
-            blackPromote(m);
-        }
-        else if (m.isCapture) {
-            blackMoveCapture(m);
-        }
-        else if (m.isKingsideCastle) {
-            blackKingsideCastle();
-        }
-        else if (m.isQueensideCastle) {
-            blackQueensideCastle();
-        }
-        else if (m.isDPMove) {
-            blackDPMove(m);
-        }
-        else {
-            blackMoveQuiet(m);
-        }
+    // castling rights are lost once the king or rook leaves its starting square or the rook is captured there
+    // returned in the layout of packState
+    private static int lostCastlingRights(int from, int to) {
+        return (from == 4 || from == 7 || to == 7 ? 1 : 0) | (from == 4 || from == 0 || to == 0 ? 2 : 0)
+                | (from == 60 || from == 63 || to == 63 ? 4 : 0) | (from == 60 || from == 56 || to == 56 ? 8 : 0);
     }
-    //endregion
 
-    //region undo move methods
-    private void undoWhiteMoveQuiet(Move m) {
-        long fromBB = sq[m.from], toBB = sq[m.to], fromToBB = fromBB ^ toBB;
-        switch (m.p) {
-            case KNIGHT:
-                whiteKnights = whiteKnights ^ fromToBB;
+    // home is the first square of the mover's back rank
+    private void makeMove(int m, boolean white) {
+        int from = PackedMove.from(m), to = PackedMove.to(m), home = white ? 0 : 56;
+        Piece p = PackedMove.piece(m), q = PackedMove.captured(m), r = PackedMove.promotion(m);
+        switch (PackedMove.kind(m)) {
+            case PackedMove.INVALID:
+                return;
+            case PackedMove.BLOCKED:
+                to = PackedMove.block(m);
                 break;
-            case ROOK:
-                whiteRooks = whiteRooks ^ fromToBB;
-                break;
-            case BISHOP:
-                whiteBishops = whiteBishops ^ fromToBB;
+            case PackedMove.EN_PASSANT:
+                removePiece(!white, Piece.PAWN, 8 * (from / 8) + (to % 8));
+                q = Piece.NONE;
                 break;
-            case QUEEN:
-                whiteQueens = whiteQueens ^ fromToBB;
+            case PackedMove.KINGSIDE_CASTLE:
+                removePiece(white, Piece.ROOK, home + 7);
+                putPiece(white, Piece.ROOK, home + 5);
                 break;
-            case KING:
-                whiteKing = whiteKing ^ fromToBB;
+            case PackedMove.QUEENSIDE_CASTLE:
+                removePiece(white, Piece.ROOK, home);
+                putPiece(white, Piece.ROOK, home + 3);
                 break;
-            case PAWN:
-                whitePawns = whitePawns ^ fromToBB;
+            case PackedMove.DOUBLE_PUSH:
+                ep = true;
+                eps = (from + to) / 2;
                 break;
         }
-        whiteBoard ^= fromToBB;
-        board ^= fromToBB;
-
-//        hc ^= wt.get(whiteMailbox[m.from]).get(m.from);
-//        hc ^= wt.get(m.p).get(m.from);
-        whiteMailbox[m.from] = m.p;
+        if (q != Piece.NONE) {
+            removePiece(!white, q, to);
+            if (q == Piece.KING) {
+                if (white) {
+                    hasBlackKing = false;
+                }
+                else {
+                    hasWhiteKing = false;
+                }
+            }
+        }
+        removePiece(white, p, from);
+        putPiece(white, r == Piece.NONE ? p : r, to);
+        updateCastlingRights(from, to);
+    }
 
-//        hc ^= wt.get(whiteMailbox[m.to]).get(m.to);
-//        hc ^= wt.get(Piece.NONE).get(m.to);
-        whiteMailbox[m.to] = Piece.NONE;
+    // bits 0-3: castling rights, bit 4: en passant, bits 5-10: en passant square
+    private int packState() {
+        return (whiteKingside ? 1 : 0) | (whiteQueenside ? 2 : 0) | (blackKingside ? 4 : 0) | (blackQueenside ? 8 : 0) | (ep ? 16 : 0) | (eps << 5);
     }
 
-    private void undoBlackMoveQuiet(Move m) {
-        long fromBB = sq[m.from], toBB = sq[m.to], fromToBB = fromBB ^ toBB;
-        switch (m.p) {
-            case KNIGHT:
-                blackKnights = blackKnights ^ fromToBB;
-                break;
-            case ROOK:
-                blackRooks = blackRooks ^ fromToBB;
-                break;
-            case BISHOP:
-                blackBishops = blackBishops ^ fromToBB;
-                break;
-            case QUEEN:
-                blackQueens = blackQueens ^ fromToBB;
-                break;
-            case KING:
-                blackKing = blackKing ^ fromToBB;
-                break;
-            case PAWN:
-                blackPawns = blackPawns ^ fromToBB;
-                break;
+    private void saveState() {
+        if (ply == history.length) {
+            history = Arrays.copyOf(history, Math.max(16, 2 * ply));
         }
-        blackBoard ^= fromToBB;
-        board ^= fromToBB;
+        history[ply++] = packState();
+    }
 
-//        hc ^= bt.get(blackMailbox[m.from]).get(m.from);
-//        hc ^= bt.get(m.p).get(m.from);
-        blackMailbox[m.from] = m.p;
+    // assumes move is not minimal and has specifications about special moves
+    public void whiteMove(Move m) {
+        whiteMove(m.pack());
+    }
 
-//        hc ^= bt.get(blackMailbox[m.to]).get(m.to);
-//        hc ^= bt.get(Piece.NONE).get(m.to);
-        blackMailbox[m.to] = Piece.NONE;
+    public void blackMove(Move m) {
+        blackMove(m.pack());
     }
 
-    private void undoWhiteMoveCapture(Move m) {
-        long fromBB = sq[m.from], toBB = sq[m.to], fromToBB = fromBB ^ toBB;
-        switch (m.p) {
-            case KNIGHT:
-                whiteKnights = whiteKnights ^ fromToBB;
-                break;
-            case ROOK:
-                whiteRooks = whiteRooks ^ fromToBB;
+    public void whiteMove(int m) {
+        hc ^= stateHash();
+        saveState();
+        ep = false;
+        makeMove(m, true);
+        hc ^= stateHash();
+    }
+
+    public void blackMove(int m) {
+        hc ^= stateHash();
+        saveState();
+        ep = false;
+        makeMove(m, false);
+        hc ^= stateHash();
+    }
+
+    // the position after a move as a compact board, computed without changing this board
+    public CompactBoard whiteChildAfter(Move m) {
+        return whiteChildAfter(m.pack());
+    }
+
+    public CompactBoard blackChildAfter(Move m) {
+        return blackChildAfter(m.pack());
+    }
+
+    public CompactBoard whiteChildAfter(int m) {
+        return childAfter(m, true);
+    }
+
+    public CompactBoard blackChildAfter(int m) {
+        return childAfter(m, false);
+    }
+
+    // mirrors makeMove, toggling the squares of the moving piece, the captured piece and the castling rook in copies of
+    // the bitboards and the hash
+    private CompactBoard childAfter(int m, boolean white) {
+        int from = PackedMove.from(m), to = PackedMove.to(m), home = white ? 0 : 56;
+        Piece p = PackedMove.piece(m), q = PackedMove.captured(m), r = PackedMove.promotion(m);
+        int state = packState() & 15, captureSquare = to, rookFrom = home, rookTo = home;
+        long h = hc ^ stateHash(packState());
+        switch (PackedMove.kind(m)) {
+            case PackedMove.INVALID:
+                return new CompactBoard(whitePawns, whiteKnights, whiteBishops, whiteRooks, whiteQueens, whiteKing,
+                        blackPawns, blackKnights, blackBishops, blackRooks, blackQueens, blackKing, state, h ^ stateHash(state));
+            case PackedMove.BLOCKED:
+                to = PackedMove.block(m);
+                captureSquare = to;
                 break;
-            case BISHOP:
-                whiteBishops = whiteBishops ^ fromToBB;
+            case PackedMove.EN_PASSANT:
+                captureSquare = 8 * (from / 8) + (to % 8);
                 break;
-            case QUEEN:
-                whiteQueens = whiteQueens ^ fromToBB;
+            case PackedMove.KINGSIDE_CASTLE:
+                rookFrom = home + 7;
+                rookTo = home + 5;
                 break;
-            case KING:
-                whiteKing = whiteKing ^ fromToBB;
+            case PackedMove.QUEENSIDE_CASTLE:
+                rookTo = home + 3;
                 break;
-            case PAWN:
-                whitePawns = whitePawns ^ fromToBB;
+            case PackedMove.DOUBLE_PUSH:
+                state |= 16 | (((from + to) / 2) << 5);
                 break;
         }
-        whiteBoard ^= fromToBB;
-        switch (m.q) {
-            case KNIGHT:
-                blackKnights = blackKnights ^ toBB;
-                break;
-            case ROOK:
-                blackRooks = blackRooks ^ toBB;
-                break;
-            case BISHOP:
-                blackBishops = blackBishops ^ toBB;
-                break;
-            case QUEEN:
-                blackQueens = blackQueens ^ toBB;
-                break;
-            case KING:
-                blackKing = blackKing ^ toBB;
-                break;
-            case PAWN:
-                blackPawns = blackPawns ^ toBB;
-                break;
+        Piece s = r == Piece.NONE ? p : r;
+        long fromMask = 1L << from, toMask = 1L << to, rookMask = (1L << rookFrom) ^ (1L << rookTo);
+        long captureMask = q == Piece.NONE ? 0 : 1L << captureSquare;
+        state &= ~lostCastlingRights(from, to);
+
+        long[][] ownKeys = white ? whiteKeys : blackKeys, enemyKeys = white ? blackKeys : whiteKeys;
+        // keys of Piece.NONE are 0, and rookFrom == rookTo unless castling
+        h ^= ownKeys[p.ordinal()][from] ^ ownKeys[s.ordinal()][to] ^ enemyKeys[q.ordinal()][captureSquare] ^ stateHash(state);
+        if (rookMask != 0) {
+            h ^= ownKeys[Piece.ROOK.ordinal()][rookFrom] ^ ownKeys[Piece.ROOK.ordinal()][rookTo];
         }
-        blackBoard ^= toBB;
-        board ^= fromBB;
 
-//        hc ^= wt.get(whiteMailbox[m.from]).get(m.from);
-//        hc ^= wt.get(m.p).get(m.from);
-        whiteMailbox[m.from] = m.p;
+        if (white) {
+            return new CompactBoard(moved(whitePawns, Piece.PAWN, p, fromMask, s, toMask, 0),
+                    moved(whiteKnights, Piece.KNIGHT, p, fromMask, s, toMask, 0),
+                    moved(whiteBishops, Piece.BISHOP, p, fromMask, s, toMask, 0),
+                    moved(whiteRooks, Piece.ROOK, p, fromMask, s, toMask, rookMask),
+                    moved(whiteQueens, Piece.QUEEN, p, fromMask, s, toMask, 0),
+                    moved(whiteKing, Piece.KING, p, fromMask, s, toMask, 0),
+                    q == Piece.PAWN ? blackPawns ^ captureMask : blackPawns,
+                    q == Piece.KNIGHT ? blackKnights ^ captureMask : blackKnights,
+                    q == Piece.BISHOP ? blackBishops ^ captureMask : blackBishops,
+                    q == Piece.ROOK ? blackRooks ^ captureMask : blackRooks,
+                    q == Piece.QUEEN ? blackQueens ^ captureMask : blackQueens,
+                    q == Piece.KING ? blackKing ^ captureMask : blackKing,
+                    state, h);
+        }
+        else {
+            return new CompactBoard(q == Piece.PAWN ? whitePawns ^ captureMask : whitePawns,
+                    q == Piece.KNIGHT ? whiteKnights ^ captureMask : whiteKnights,
+                    q == Piece.BISHOP ? whiteBishops ^ captureMask : whiteBishops,
+                    q == Piece.ROOK ? whiteRooks ^ captureMask : whiteRooks,
+                    q == Piece.QUEEN ? whiteQueens ^ captureMask : whiteQueens,
+                    q == Piece.KING ? whiteKing ^ captureMask : whiteKing,
+                    moved(blackPawns, Piece.PAWN, p, fromMask, s, toMask, 0),
+                    moved(blackKnights, Piece.KNIGHT, p, fromMask, s, toMask, 0),
+                    moved(blackBishops, Piece.BISHOP, p, fromMask, s, toMask, 0),
+                    moved(blackRooks, Piece.ROOK, p, fromMask, s, toMask, rookMask),
+                    moved(blackQueens, Piece.QUEEN, p, fromMask, s, toMask, 0),
+                    moved(blackKing, Piece.KING, p, fromMask, s, toMask, 0),
+                    state, h);
+        }
+    }
 
-//        hc ^= wt.get(whiteMailbox[m.to]).get(m.to);
-//        hc ^= wt.get(Piece.NONE).get(m.to);
-        whiteMailbox[m.to] = Piece.NONE;
+    // same as whiteChildAfter(m).zobrist(), without building the board
+    public long whiteChildKey(int m) {
+        return childKey(m, true);
+    }
 
-//        hc ^= bt.get(blackMailbox[m.to]).get(m.to);
-//        hc ^= bt.get(m.q).get(m.to);
-        blackMailbox[m.to] = m.q;
+    public long blackChildKey(int m) {
+        return childKey(m, false);
     }
 
-    private void undoBlackMoveCapture(Move m) {
-        long fromBB = sq[m.from], toBB = sq[m.to], fromToBB = fromBB ^ toBB;
-        switch (m.p) {
-            case KNIGHT:
-                blackKnights = blackKnights ^ fromToBB;
+    // the hash computation of childAfter
+    private long childKey(int m, boolean white) {
+        int from = PackedMove.from(m), to = PackedMove.to(m), home = white ? 0 : 56;
+        Piece p = PackedMove.piece(m), q = PackedMove.captured(m), r = PackedMove.promotion(m);
+        int state = packState() & 15, captureSquare = to, rookFrom = home, rookTo = home;
+        long h = hc ^ stateHash(packState());
+        switch (PackedMove.kind(m)) {
+            case PackedMove.INVALID:
+                return h ^ stateHash(state);
+            case PackedMove.BLOCKED:
+                to = PackedMove.block(m);
+                captureSquare = to;
                 break;
-            case ROOK:
-                blackRooks = blackRooks ^ fromToBB;
-                break;
-            case BISHOP:
-                blackBishops = blackBishops ^ fromToBB;
+            case PackedMove.EN_PASSANT:
+                captureSquare = 8 * (from / 8) + (to % 8);
                 break;
-            case QUEEN:
-                blackQueens = blackQueens ^ fromToBB;
+            case PackedMove.KINGSIDE_CASTLE:
+                rookFrom = home + 7;
+                rookTo = home + 5;
                 break;
-            case KING:
-                blackKing = blackKing ^ fromToBB;
+            case PackedMove.QUEENSIDE_CASTLE:
+                rookTo = home + 3;
                 break;
-            case PAWN:
-                blackPawns = blackPawns ^ fromToBB;
+            case PackedMove.DOUBLE_PUSH:
+                state |= 16 | (((from + to) / 2) << 5);
                 break;
         }
-        blackBoard ^= fromToBB;
-        switch (m.q) {
-            case KNIGHT:
-                whiteKnights = whiteKnights ^ toBB;
-                break;
-            case ROOK:
-                whiteRooks = whiteRooks ^ toBB;
-                break;
-            case BISHOP:
-                whiteBishops = whiteBishops ^ toBB;
+        Piece s = r == Piece.NONE ? p : r;
+        state &= ~lostCastlingRights(from, to);
+
+        long[][] ownKeys = white ? whiteKeys : blackKeys, enemyKeys = white ? blackKeys : whiteKeys;
+        h ^= ownKeys[p.ordinal()][from] ^ ownKeys[s.ordinal()][to] ^ enemyKeys[q.ordinal()][captureSquare] ^ stateHash(state);
+        if (rookFrom != rookTo) {
+            h ^= ownKeys[Piece.ROOK.ordinal()][rookFrom] ^ ownKeys[Piece.ROOK.ordinal()][rookTo];
+        }
+        return h;
+    }
+
+    // pieces of type x after p leaves fromMask and s arrives on toMask, with the extra squares toggled
+    private static long moved(long pieces, Piece x, Piece p, long fromMask, Piece s, long toMask, long extra) {
+        if (x == p) {
+            pieces ^= fromMask;
+        }
+        if (x == s) {
+            pieces ^= toMask;
+        }
+        return pieces ^ extra;
+    }
+    //endregion
+
+    //region undo move methods
+    private void unmakeMove(int m, boolean white) {
+        int from = PackedMove.from(m), to = PackedMove.to(m), home = white ? 0 : 56;
+        Piece p = PackedMove.piece(m), q = PackedMove.captured(m), r = PackedMove.promotion(m);
+        switch (PackedMove.kind(m)) {
+            case PackedMove.INVALID:
+                return;
+            case PackedMove.BLOCKED:
+                to = PackedMove.block(m);
                 break;
-            case QUEEN:
-                whiteQueens = whiteQueens ^ toBB;
+            case PackedMove.EN_PASSANT:
+                putPiece(!white, Piece.PAWN, 8 * (from / 8) + (to % 8));
+                q = Piece.NONE;
                 break;
-            case KING:
-                whiteKing = whiteKing ^ toBB;
+            case PackedMove.KINGSIDE_CASTLE:
+                removePiece(white, Piece.ROOK, home + 5);
+                putPiece(white, Piece.ROOK, home + 7);
                 break;
-            case PAWN:
-                whitePawns = whitePawns ^ toBB;
+            case PackedMove.QUEENSIDE_CASTLE:
+                removePiece(white, Piece.ROOK, home + 3);
+                putPiece(white, Piece.ROOK, home);
                 break;
         }
-        whiteBoard ^= toBB;
-        board ^= fromBB;
-
-//        hc ^= bt.get(blackMailbox[m.from]).get(m.from);
-//        hc ^= bt.get(m.p).get(m.from);
-        blackMailbox[m.from] = m.p;
-
-//        hc ^= bt.get(blackMailbox[m.to]).get(m.to);
-//        hc ^= bt.get(Piece.NONE).get(m.to);
-        blackMailbox[m.to] = Piece.NONE;
-
-//        hc ^= wt.get(whiteMailbox[m.to]).get(m.to);
-//        hc ^= wt.get(m.q).get(m.to);
-        whiteMailbox[m.to] = m.q;
+        removePiece(white, r == Piece.NONE ? p : r, to);
+        putPiece(white, p, from);
+        if (q != Piece.NONE) {
+            putPiece(!white, q, to);
+        }
     }
 
-    private void undoWhiteKingsideCastle() {
-        undoWhiteMoveQuiet(new Move(Piece.KING, 4, 6));
-        undoWhiteMoveQuiet(new Move(Piece.ROOK, 7, 5));
+    private void restoreState() {
+        unpackState(history[--ply]);
+        hasBlackKing = true;
+        hasWhiteKing = true;
     }
 
-    private void undoBlackKingsideCastle() {
-        undoBlackMoveQuiet(new Move(Piece.KING, 60, 62));
-        undoBlackMoveQuiet(new Move(Piece.ROOK, 63, 61));
+    private void unpackState(int state) {
+        whiteKingside = (state & 1) != 0;
+        whiteQueenside = (state & 2) != 0;
+        blackKingside = (state & 4) != 0;
+        blackQueenside = (state & 8) != 0;
+        ep = (state & 16) != 0;
+        eps = state >>> 5;
     }
 
-    private void undoWhiteQueensideCastle() {
-        undoWhiteMoveQuiet(new Move(Piece.KING, 4, 2));
-        undoWhiteMoveQuiet(new Move(Piece.ROOK, 0, 3));
+    public void undoWhiteMove(Move m) {
+        undoWhiteMove(m.pack());
     }
 
-    private void undoBlackQueensideCastle() {
-        undoBlackMoveQuiet(new Move(Piece.KING, 60, 58));
-        undoBlackMoveQuiet(new Move(Piece.ROOK, 56, 59));
+    public void undoBlackMove(Move m) {
+        undoBlackMove(m.pack());
     }
 
-    private void undoWhiteDPMove(Move m) {
-        undoWhiteMoveQuiet(m);
+    public void undoWhiteMove(int m) {
+        unmakeMove(m, true);
+        hc ^= stateHash();
+        restoreState();
+        hc ^= stateHash();
     }
 
-    private void undoBlackDPMove(Move m) {
-        undoBlackMoveQuiet(m);
+    public void undoBlackMove(int m) {
+        unmakeMove(m, false);
+        hc ^= stateHash();
+        restoreState();
+        hc ^= stateHash();
     }
+    //endregion
 
-    private void undoWhitePromote(Move m) {
-        long fromBB = sq[m.from], toBB = sq[m.to], fromToBB = fromBB ^ toBB;
-        whitePawns = whitePawns ^ fromBB;
-        if (m.r == Piece.QUEEN) {
-            whiteQueens = whiteQueens ^ toBB;
+    //region utility methods
+    // sense values use piece codes none 0, pawn 1, rook 2, bishop 3, queen 4, king 5, knight 6
+    // and x must not be on the edge of the board
+    public int sense(boolean color, int x) {
+        if (color) {
+            return senseWindow(blackPawns, x) + 2 * senseWindow(blackRooks, x) + 3 * senseWindow(blackBishops, x)
+                    + 4 * senseWindow(blackQueens, x) + 5 * senseWindow(blackKing, x) + 6 * senseWindow(blackKnights, x);
         }
         else {
-            whiteBishops = whiteBishops ^ toBB;
+            return senseWindow(whitePawns, x) + 2 * senseWindow(whiteRooks, x) + 3 * senseWindow(whiteBishops, x)
+                    + 4 * senseWindow(whiteQueens, x) + 5 * senseWindow(whiteKing, x) + 6 * senseWindow(whiteKnights, x);
         }
-        if (m.isCapture) {
-            switch (m.q) {
-                case KNIGHT:
-                    blackKnights = blackKnights ^ toBB;
-                    break;
-                case ROOK:
-                    blackRooks = blackRooks ^ toBB;
-                    break;
-                case BISHOP:
-                    blackBishops = blackBishops ^ toBB;
-                    break;
-                case QUEEN:
-                    blackQueens = blackQueens ^ toBB;
-                    break;
-                case KING:
-                    blackKing = blackKing ^ toBB;
-                    break;
-                case PAWN:
-                    blackPawns = blackPawns ^ toBB;
-                    break;
-            }
+    }
 
-//            hc ^= bt.get(blackMailbox[m.to]).get(m.to);
-//            hc ^= bt.get(m.q).get(m.to);
-            blackMailbox[m.to] = m.q;
+    private static int senseWindow(long pieces, int x) {
+        long w = (pieces >>> (x - 9)) & senseWindow;
+        return senseCodes[(int) ((w & 7) | ((w >>> 5) & 0b111000) | ((w >>> 10) & 0b111000000))];
+    }
 
-            blackBoard ^= toBB;
-            board ^= fromBB;
+    // out[x] = sense(color, x) for every x not on the edge of the board, other entries are left untouched
+    public void senseAll(boolean color, int[] out) {
+        for (long b = senseCenters; b != 0; b &= b - 1) {
+            out[Long.numberOfTrailingZeros(b)] = 0;
+        }
+        if (color) {
+            senseAll(out, blackPawns, 1);
+            senseAll(out, blackRooks, 2);
+            senseAll(out, blackBishops, 3);
+            senseAll(out, blackQueens, 4);
+            senseAll(out, blackKing, 5);
+            senseAll(out, blackKnights, 6);
         }
         else {
-            board ^= fromToBB;
+            senseAll(out, whitePawns, 1);
+            senseAll(out, whiteRooks, 2);
+            senseAll(out, whiteBishops, 3);
+            senseAll(out, whiteQueens, 4);
+            senseAll(out, whiteKing, 5);
+            senseAll(out, whiteKnights, 6);
         }
-        whiteBoard ^= fromToBB;
-
-//        hc ^= wt.get(whiteMailbox[m.from]).get(m.from);
-//        hc ^= wt.get(m.p).get(m.from);
-        whiteMailbox[m.from] = m.p;
-
-//        hc ^= wt.get(whiteMailbox[m.to]).get(m.to);
-//        hc ^= wt.get(Piece.NONE).get(m.to);
-        whiteMailbox[m.to] = Piece.NONE;
     }
 
-    private void undoBlackPromote(Move m) {
-        long fromBB = sq[m.from], toBB = sq[m.to], fromToBB = fromBB ^ toBB;
-        blackPawns = blackPawns ^ fromBB;
-        if (m.r == Piece.QUEEN) {
-            blackQueens = blackQueens ^ toBB;
-        }
-        else {
-            blackBishops = blackBishops ^ toBB;
+    // adds each piece to the windows it lies in
+    private static void senseAll(int[] out, long pieces, int code) {
+        for (long b = pieces; b != 0; b &= b - 1) {
+            senseAdd(out, Long.numberOfTrailingZeros(b), code);
         }
-        if (m.isCapture) {
-            switch (m.q) {
-                case KNIGHT:
-                    whiteKnights = whiteKnights ^ toBB;
-                    break;
-                case ROOK:
-                    whiteRooks = whiteRooks ^ toBB;
-                    break;
-                case BISHOP:
-                    whiteBishops = whiteBishops ^ toBB;
-                    break;
-                case QUEEN:
-                    whiteQueens = whiteQueens ^ toBB;
-                    break;
-                case KING:
-                    whiteKing = whiteKing ^ toBB;
-                    break;
-                case PAWN:
-                    whitePawns = whitePawns ^ toBB;
-                    break;
-            }
+    }
 
-//            hc ^= wt.get(whiteMailbox[m.to]).get(m.to);
-//            hc ^= wt.get(m.q).get(m.to);
-            whiteMailbox[m.to] = m.q;
+    // returns the windows it added to
+    private static long senseAdd(int[] out, int y, int code) {
+        long windows = (kingMoves[y] | 1L << y) & senseCenters;
+        for (long c = windows; c != 0; c &= c - 1) {
+            int x = Long.numberOfTrailingZeros(c);
+            out[x] += code * senseWeights[y - x + 9];
+        }
+        return windows;
+    }
 
-            whiteBoard ^= toBB;
-            board ^= fromBB;
+    // updates out = senseAll(!white, out) of a board to the same on the board after white makes move m and returns the
+    // squares x whose out[x] may have changed
+    // only the mover's pieces are sensed, so captures do not change it
+    public static long senseAfter(boolean white, int m, int[] out) {
+        int from = PackedMove.from(m), to = PackedMove.to(m), home = white ? 0 : 56;
+        Piece p = PackedMove.piece(m), r = PackedMove.promotion(m);
+        long changed = 0;
+        switch (PackedMove.kind(m)) {
+            case PackedMove.INVALID:
+                return 0;
+            case PackedMove.BLOCKED:
+                to = PackedMove.block(m);
+                break;
+            case PackedMove.KINGSIDE_CASTLE:
+                changed |= senseAdd(out, home + 7, -Piece.ROOK.ordinal() - 1);
+                changed |= senseAdd(out, home + 5, Piece.ROOK.ordinal() + 1);
+                break;
+            case PackedMove.QUEENSIDE_CASTLE:
+                changed |= senseAdd(out, home, -Piece.ROOK.ordinal() - 1);
+                changed |= senseAdd(out, home + 3, Piece.ROOK.ordinal() + 1);
+                break;
         }
-        else {
-            board ^= fromToBB;
+        // sense codes are piece ordinals + 1
+        changed |= senseAdd(out, from, -p.ordinal() - 1);
+        changed |= senseAdd(out, to, (r == Piece.NONE ? p : r).ordinal() + 1);
+        return changed;
+    }
+
+    // senseAfter for the window around x alone: the result of sensing x after white makes move m, given the result
+    // before it
+    public static int senseAfter(boolean white, int m, int x, int result) {
+        int from = PackedMove.from(m), to = PackedMove.to(m), home = white ? 0 : 56;
+        Piece p = PackedMove.piece(m), r = PackedMove.promotion(m);
+        switch (PackedMove.kind(m)) {
+            case PackedMove.INVALID:
+                return result;
+            case PackedMove.BLOCKED:
+                to = PackedMove.block(m);
+                break;
+            case PackedMove.KINGSIDE_CASTLE:
+                result += senseDelta(x, home + 7, -Piece.ROOK.ordinal() - 1)
+                        + senseDelta(x, home + 5, Piece.ROOK.ordinal() + 1);
+                break;
+            case PackedMove.QUEENSIDE_CASTLE:
+                result += senseDelta(x, home, -Piece.ROOK.ordinal() - 1)
+                        + senseDelta(x, home + 3, Piece.ROOK.ordinal() + 1);
+                break;
         }
-        blackBoard ^= fromToBB;
+        return result + senseDelta(x, from, -p.ordinal() - 1)
+                + senseDelta(x, to, (r == Piece.NONE ? p : r).ordinal() + 1);
+    }
 
-//        hc ^= bt.get(blackMailbox[m.from]).get(m.from);
-//        hc ^= bt.get(m.p).get(m.from);
-        blackMailbox[m.from] = m.p;
+    // what senseAdd adds to the window around x
+    private static int senseDelta(int x, int y, int code) {
+        return ((kingMoves[y] | 1L << y) & 1L << x) != 0 ? code * senseWeights[y - x + 9] : 0;
+    }
 
-//        hc ^= bt.get(blackMailbox[m.to]).get(m.to);
-//        hc ^= bt.get(Piece.NONE).get(m.to);
-        blackMailbox[m.to] = Piece.NONE;
+    public void clearCache() {
+        ply = 0;
     }
 
-    private void undoWhiteEPCapture(Move m) {
-        undoWhiteMoveQuiet(m);
-        int cap = 8 * (m.from / 8) + (m.to % 8);
-        blackPawns = blackPawns ^ sq[cap];
-        blackBoard ^= sq[cap];
-        board ^= sq[cap];
+    public BoardState copy() {
+        return new BoardState(this);
+    }
 
-//        hc ^= bt.get(blackMailbox[cap]).get(cap);
-//        hc ^= bt.get(Piece.PAWN).get(cap);
-        blackMailbox[cap] = Piece.PAWN;
+    public CompactBoard compact() {
+        return new CompactBoard(whitePawns, whiteKnights, whiteBishops, whiteRooks, whiteQueens, whiteKing,
+                blackPawns, blackKnights, blackBishops, blackRooks, blackQueens, blackKing,
+                ep ? packState() : packState() & 15, hc);
     }
 
-    private void undoBlackEPCapture(Move m) {
-        undoBlackMoveQuiet(m);
-        int cap = 8 * (m.from / 8) + (m.to % 8);
-        whitePawns = whitePawns ^ sq[cap];
-        whiteBoard ^= sq[cap];
-        board ^= sq[cap];
+    // overwrites this board with cb, reusing its mailboxes, and clears the undo history
+    public void load(CompactBoard cb) {
+        whitePawns = cb.whitePawns;
+        whiteKnights = cb.whiteKnights;
+        whiteBishops = cb.whiteBishops;
+        whiteRooks = cb.whiteRooks;
+        whiteQueens = cb.whiteQueens;
+        whiteKing = cb.whiteKing;
+
+        blackPawns = cb.blackPawns;
+        blackKnights = cb.blackKnights;
+        blackBishops = cb.blackBishops;
+        blackRooks = cb.blackRooks;
+        blackQueens = cb.blackQueens;
+        blackKing = cb.blackKing;
 
-//        hc ^= wt.get(whiteMailbox[cap]).get(cap);
-//        hc ^= wt.get(Piece.PAWN).get(cap);
-        whiteMailbox[cap] = Piece.PAWN;
+        load(cb.flags, cb.hash);
     }
 
-    private void undoWhiteInvalidMove() {}
+    // same as load(CompactBoard) for the 6 bitboards of each side stored from white[whiteOffset] and black[blackOffset],
+    // in the order of the CompactBoard fields
+    void load(long[] white, int whiteOffset, long[] black, int blackOffset, int flags, long hash) {
+        whitePawns = white[whiteOffset];
+        whiteKnights = white[whiteOffset + 1];
+        whiteBishops = white[whiteOffset + 2];
+        whiteRooks = white[whiteOffset + 3];
+        whiteQueens = white[whiteOffset + 4];
+        whiteKing = white[whiteOffset + 5];
 
-    private void undoBlackInvalidMove() {}
+        blackPawns = black[blackOffset];
+        blackKnights = black[blackOffset + 1];
+        blackBishops = black[blackOffset + 2];
+        blackRooks = black[blackOffset + 3];
+        blackQueens = black[blackOffset + 4];
+        blackKing = black[blackOffset + 5];
 
-    private void undoWhiteBlockedMove(Move m) {
-        if (m.p == Piece.PAWN) {
-            undoWhiteMoveQuiet(new Move(m.p, m.from, m.block));
-        }
-        else {
-            undoWhiteMoveCapture(new Move(m.p, m.from, m.block, m.q));
-        }
+        load(flags, hash);
     }
 
-    private void undoBlackBlockedMove(Move m) {
-        if (m.p == Piece.PAWN) {
-            undoBlackMoveQuiet(new Move(m.p, m.from, m.block));
-        }
-        else {
-            undoBlackMoveCapture(new Move(m.p, m.from, m.block, m.q));
-        }
-    }
+    // rebuilds everything else from the bitboards
+    private void load(int flags, long hash) {
+        whiteBoard = whitePawns | whiteKnights | whiteBishops | whiteRooks | whiteQueens | whiteKing;
+        blackBoard = blackPawns | blackKnights | blackBishops | blackRooks | blackQueens | blackKing;
+        board = whiteBoard | blackBoard;
 
-    public void undoWhiteMove(Move m) {
-        if (m.isInvalidMove) {
-            undoWhiteInvalidMove();
-        }
-        else if (m.isBlockedMove) {
-            undoWhiteBlockedMove(m);
-        }
-        else if (m.isEPCapture) {
-            undoWhiteEPCapture(m);
-        }
-        else if (m.isPromotion) {
-            undoWhitePromote(m);
-        }
-        else if (m.isCapture) {
-            undoWhiteMoveCapture(m);
-        }
-        else if (m.isKingsideCastle) {
-            undoWhiteKingsideCastle();
-        }
-        else if (m.isQueensideCastle) {
-            undoWhiteQueensideCastle();
-        }
-        else if (m.isDPMove) {
-            undoWhiteDPMove(m);
-        }
-        else {
-            undoWhiteMoveQuiet(m);
-        }
-        whiteKingside = prevWhiteKingside.pollLast();
-        whiteQueenside = prevWhiteQueenside.pollLast();
-        ep = prevEp.pollLast();
-        eps = prevEps.pollLast();
-        hasBlackKing = true;
-        hasWhiteKing = true;
-    }
+        Arrays.fill(whiteMailbox, Piece.NONE);
+        fillMailbox(whiteMailbox, whitePawns, Piece.PAWN);
+        fillMailbox(whiteMailbox, whiteKnights, Piece.KNIGHT);
+        fillMailbox(whiteMailbox, whiteBishops, Piece.BISHOP);
+        fillMailbox(whiteMailbox, whiteRooks, Piece.ROOK);
+        fillMailbox(whiteMailbox, whiteQueens, Piece.QUEEN);
+        fillMailbox(whiteMailbox, whiteKing, Piece.KING);
 
-    public void undoBlackMove(Move m) {
-        if (m.isInvalidMove) {
-            undoBlackInvalidMove();
-        }
-        else if (m.isBlockedMove) {
-            undoBlackBlockedMove(m);
-        }
-        else if (m.isEPCapture) {
-            undoBlackEPCapture(m);
-        }
-        else if (m.isPromotion) {
-            undoBlackPromote(m);
-        }
-        else if (m.isCapture) {
-            undoBlackMoveCapture(m);
-        }
-        else if (m.isKingsideCastle) {
-            undoBlackKingsideCastle();
-        }
-        else if (m.isQueensideCastle) {
-            undoBlackQueensideCastle();
-        }
-        else if (m.isDPMove) {
-            undoBlackDPMove(m);
-        }
-        else {
-            undoBlackMoveQuiet(m);
-        }
-        blackKingside = prevBlackKingside.pollLast();
-        blackQueenside = prevBlackQueenside.pollLast();
-        ep = prevEp.pollLast();
-        eps = prevEps.pollLast();
-        hasBlackKing = true;
-        hasWhiteKing = true;
-    }
-    //endregion
+        Arrays.fill(blackMailbox, Piece.NONE);
+        fillMailbox(blackMailbox, blackPawns, Piece.PAWN);
+        fillMailbox(blackMailbox, blackKnights, Piece.KNIGHT);
+        fillMailbox(blackMailbox, blackBishops, Piece.BISHOP);
+        fillMailbox(blackMailbox, blackRooks, Piece.ROOK);
+        fillMailbox(blackMailbox, blackQueens, Piece.QUEEN);
+        fillMailbox(blackMailbox, blackKing, Piece.KING);
 
-    //region utility methods
-    public int sense(boolean color, int x) {
-        if (color) {
-            return str.get(blackMailbox[x - 9]) + 7 * str.get(blackMailbox[x - 8]) + 49 * str.get(blackMailbox[x - 7])
-                    + 343 * str.get(blackMailbox[x - 1]) + 2401 * str.get(blackMailbox[x]) + 16807 * str.get(blackMailbox[x + 1])
-                    + 117649 * str.get(blackMailbox[x + 7]) + 823543 * str.get(blackMailbox[x + 8]) + 5764801 * str.get(blackMailbox[x + 9]);
-        }
-        else {
-            return str.get(whiteMailbox[x - 9]) + 7 * str.get(whiteMailbox[x - 8]) + 49 * str.get(whiteMailbox[x - 7])
-                    + 343 * str.get(whiteMailbox[x - 1]) + 2401 * str.get(whiteMailbox[x]) + 16807 * str.get(whiteMailbox[x + 1])
-                    + 117649 * str.get(whiteMailbox[x + 7]) + 823543 * str.get(whiteMailbox[x + 8]) + 5764801 * str.get(whiteMailbox[x + 9]);
-        }
-    }
+        unpackState(flags);
+        ply = 0;
 
-    public void clearCache() {
-        prevWhiteKingside.clear();
-        prevWhiteQueenside.clear();
-        prevBlackKingside.clear();
-        prevBlackQueenside.clear();
-        prevEp.clear();
-        prevEps.clear();
+        hasWhiteKing = whiteKing != 0;
+        hasBlackKing = blackKing != 0;
+
+        hc = hash;
     }
 
-    public BoardState copy() {
-        return new BoardState(this);
+    private static void fillMailbox(Piece[] mailbox, long pieces, Piece p) {
+        for (long b = pieces; b != 0; b &= b - 1) {
+            mailbox[Long.numberOfTrailingZeros(b)] = p;
+        }
     }
 
     public static String bitBoardToString(long x) {
-        long k1 = 0x5555555555555555L, k2 = 0x3333333333333333L, k4 = 0x0f0f0f0f0f0f0f0fL;
-        x = ((x >>> 1) & k1) + 2 * (x & k1);
-        x = ((x >>> 2) & k2) + 4 * (x & k2);
-        x = ((x >>> 4) & k4) + 16 * (x & k4);
         StringBuilder sb = new StringBuilder();
         for (int j = 7; j >= 0; j--) {
             for (int i = 0; i < 8; i++) {
-                sb.append(x & 1);
-                x = x >>> 1;
+                sb.append((x >>> (8 * j + i)) & 1);
             }
             sb.append('\n');
         }
@@ -3624,10 +1796,49 @@ public class BoardState {
                 blackKingside == bs.blackKingside && blackQueenside == bs.blackQueenside && (ep ? (bs.ep && eps == bs.eps) : !bs.ep);
     }
 
-    // TODO: test good hash code functions
     public int hashCode() {
-//		return hc;
-        return (int) board;
+        return (int) (hc ^ (hc >>> 32));
+    }
+
+    // 64-bit zobrist key of the pieces, castling rights and en passant square, maintained incrementally
+    public long zobrist() {
+        return hc;
+    }
+
+    // castling rights and en passant part of the zobrist key
+    private long stateHash() {
+        long h = 0;
+        if (whiteKingside) {
+            h ^= castlingKeys[0];
+        }
+        if (whiteQueenside) {
+            h ^= castlingKeys[1];
+        }
+        if (blackKingside) {
+            h ^= castlingKeys[2];
+        }
+        if (blackQueenside) {
+            h ^= castlingKeys[3];
+        }
+        if (ep) {
+            h ^= epKeys[eps];
+        }
+        return h;
+    }
+
+    // same as stateHash for a state packed by packState
+    private static long stateHash(int state) {
+        return ((state & 1) != 0 ? castlingKeys[0] : 0) ^ ((state & 2) != 0 ? castlingKeys[1] : 0)
+                ^ ((state & 4) != 0 ? castlingKeys[2] : 0) ^ ((state & 8) != 0 ? castlingKeys[3] : 0)
+                ^ ((state & 16) != 0 ? epKeys[state >>> 5] : 0);
+    }
+
+    private long computeHash() {
+        long h = stateHash();
+        for (int i = 0; i < 64; i++) {
+            h ^= whiteKeys[whiteMailbox[i].ordinal()][i] ^ blackKeys[blackMailbox[i].ordinal()][i];
+        }
+        return h;
     }
     //endregion
 
@@ -3639,64 +1850,64 @@ public class BoardState {
 //        for (int i = 0; i < 64; i++) {
 //            switch (whiteMailbox[i]) {
 //                case PAWN:
-//                    if ((whitePawns & sq[i]) == 0) {
+//                    if ((whitePawns & (1L << i)) == 0) {
 //                        throw new RuntimeException();
 //                    }
 //                    break;
 //                case KNIGHT:
-//                    if ((whiteKnights & sq[i]) == 0) {
+//                    if ((whiteKnights & (1L << i)) == 0) {
 //                        throw new RuntimeException();
 //                    }
 //                    break;
 //                case BISHOP:
-//                    if ((whiteBishops & sq[i]) == 0) {
+//                    if ((whiteBishops & (1L << i)) == 0) {
 //                        throw new RuntimeException();
 //                    }
 //                    break;
 //                case ROOK:
-//                    if ((whiteRooks & sq[i]) == 0) {
+//                    if ((whiteRooks & (1L << i)) == 0) {
 //                        throw new RuntimeException();
 //                    }
 //                    break;
 //                case QUEEN:
-//                    if ((whiteQueens & sq[i]) == 0) {
+//                    if ((whiteQueens & (1L << i)) == 0) {
 //                        throw new RuntimeException();
 //                    }
 //                    break;
 //                case KING:
-//                    if ((whiteKing & sq[i]) == 0) {
+//                    if ((whiteKing & (1L << i)) == 0) {
 //                        throw new RuntimeException();
 //                    }
 //                    break;
 //            }
 //            switch (blackMailbox[i]) {
 //                case PAWN:
-//                    if ((blackPawns & sq[i]) == 0) {
+//                    if ((blackPawns & (1L << i)) == 0) {
 //                        throw new RuntimeException();
 //                    }
 //                    break;
 //                case KNIGHT:
-//                    if ((blackKnights & sq[i]) == 0) {
+//                    if ((blackKnights & (1L << i)) == 0) {
 //                        throw new RuntimeException();
 //                    }
 //                    break;
 //                case BISHOP:
-//                    if ((blackBishops & sq[i]) == 0) {
+//                    if ((blackBishops & (1L << i)) == 0) {
 //                        throw new RuntimeException();
 //                    }
 //                    break;
 //                case ROOK:
-//                    if ((blackRooks & sq[i]) == 0) {
+//                    if ((blackRooks & (1L << i)) == 0) {
 //                        throw new RuntimeException();
 //                    }
 //                    break;
 //                case QUEEN:
-//                    if ((blackQueens & sq[i]) == 0) {
+//                    if ((blackQueens & (1L << i)) == 0) {
 //                        throw new RuntimeException();
 //                    }
 //                    break;
 //                case KING:
-//                    if ((blackKing & sq[i]) == 0) {
+//                    if ((blackKing & (1L << i)) == 0) {
 //                        throw new RuntimeException();
 //                    }
 //                    break;
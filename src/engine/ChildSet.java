@@ -0,0 +1,156 @@
+package engine;
+
+import java.util.Arrays;
+
+/**
+ * Set of children of the boards in a HypothesisSet, each stored as the index of its parent and the packed move that
+ * leads to it instead of as a board. Children with the same zobrist key (see BoardState.whiteChildKey) are stored once.
+ *
+ * Children are kept in insertion order, so materializing all of them gives the same HypothesisSet as adding the
+ * children one by one with whiteChildAfter/blackChildAfter.
+ */
+public final class ChildSet {
+    private final HypothesisSet parents;
+    private final boolean white; // color of the player making the moves
+
+    private int[] parentIds, moves;
+    private long[] keys;
+    private int size;
+
+    // child index + 1 per slot, 0 if the slot is empty, null until a lookup needs it
+    private int[] slots;
+    private int mask;
+
+    public ChildSet(HypothesisSet parents, boolean white) {
+        this(parents, white, 16);
+    }
+
+    public ChildSet(HypothesisSet parents, boolean white, int capacity) {
+        this.parents = parents;
+        this.white = white;
+        capacity = Math.max(capacity, 16);
+        parentIds = new int[capacity];
+        moves = new int[capacity];
+        keys = new long[capacity];
+        // at most half full
+        slots = new int[Integer.highestOneBit(capacity - 1) << 2];
+        mask = slots.length - 1;
+    }
+
+    // set of the children parentIds[i], moves[i], keys[i], which must all have different keys, the arrays are not copied
+    // the lookup table is only built by the first add or contains
+    public ChildSet(HypothesisSet parents, boolean white, int[] parentIds, int[] moves, long[] keys) {
+        this.parents = parents;
+        this.white = white;
+        this.parentIds = parentIds;
+        this.moves = moves;
+        this.keys = keys;
+        size = keys.length;
+    }
+
+    public HypothesisSet parents() {
+        return parents;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int parent(int i) {
+        return parentIds[i];
+    }
+
+    public int move(int i) {
+        return moves[i];
+    }
+
+    public long key(int i) {
+        return keys[i];
+    }
+
+    private static int slot(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+
+    // slot holding key, or the empty slot where it would go
+    private int find(long key) {
+        if (slots == null) {
+            // at most half full
+            rehash(Integer.highestOneBit(Math.max(size, 16) - 1) << 2);
+        }
+        int i = slot(key) & mask;
+        while (slots[i] != 0 && keys[slots[i] - 1] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    public boolean contains(long key) {
+        int i = find(key);
+        return slots[i] != 0;
+    }
+
+    public boolean contains(CompactBoard cb) {
+        return contains(cb.hash);
+    }
+
+    // adds the child of parent after move, key has to be its zobrist key
+    public boolean add(int parent, int move, long key) {
+        int i = find(key);
+        if (slots[i] != 0) {
+            return false;
+        }
+        if (size == keys.length) {
+            parentIds = Arrays.copyOf(parentIds, Math.max(2 * size, 16));
+            moves = Arrays.copyOf(moves, Math.max(2 * size, 16));
+            keys = Arrays.copyOf(keys, Math.max(2 * size, 16));
+        }
+        parentIds[size] = parent;
+        moves[size] = move;
+        keys[size] = key;
+        slots[i] = ++size;
+        if (2 * size > slots.length) {
+            rehash(2 * slots.length);
+        }
+        return true;
+    }
+
+    private void rehash(int length) {
+        slots = new int[length];
+        mask = length - 1;
+        for (int e = 0; e < size; e++) {
+            slots[find(keys[e])] = e + 1;
+        }
+    }
+
+    // the boards of all children, using bs as scratch space
+    public HypothesisSet materialize(BoardState bs) {
+        HypothesisSet boards = new HypothesisSet(parents.sharedWhite(), size);
+        int loaded = -1;
+        for (int i = 0; i < size; i++) {
+            loaded = add(boards, i, loaded, bs);
+        }
+        return boards;
+    }
+
+    // the boards of children ids[lo] to ids[hi - 1], in that order, using bs as scratch space
+    public HypothesisSet materialize(int[] ids, int lo, int hi, BoardState bs) {
+        HypothesisSet boards = new HypothesisSet(parents.sharedWhite(), hi - lo);
+        int loaded = -1;
+        for (int j = lo; j < hi; j++) {
+            loaded = add(boards, ids[j], loaded, bs);
+        }
+        return boards;
+    }
+
+    // adds child i to boards and returns the parent now loaded in bs, children of one parent are mostly adjacent
+    private int add(HypothesisSet boards, int i, int loaded, BoardState bs) {
+        if (parentIds[i] != loaded) {
+            loaded = parentIds[i];
+            parents.load(loaded, bs);
+        }
+        boards.add(white ? bs.whiteChildAfter(moves[i]) : bs.blackChildAfter(moves[i]));
+        return loaded;
+    }
+}
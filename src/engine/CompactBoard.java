@@ -0,0 +1,65 @@
+package engine;
+
+/**
+ * Immutable, fixed size snapshot of a BoardState for storing large numbers of hypotheses.
+ * Holds only the 12 piece bitboards, the castling rights and en passant square packed into one int and the zobrist key
+ * (about 120 bytes per board instead of the ~800 bytes of a BoardState with its mailboxes and history).
+ *
+ * Use BoardState.compact() to create one and new BoardState(cb) or BoardState.load(cb) to get a full board back.
+ * Two compact boards are equal iff the boards they were created from are equal.
+ */
+public final class CompactBoard {
+    final long whitePawns, whiteKnights, whiteBishops, whiteRooks, whiteQueens, whiteKing;
+    final long blackPawns, blackKnights, blackBishops, blackRooks, blackQueens, blackKing;
+    // same layout as BoardState.packState, en passant square is 0 if there is no en passant
+    final int flags;
+    final long hash;
+
+    CompactBoard(long whitePawns, long whiteKnights, long whiteBishops, long whiteRooks, long whiteQueens, long whiteKing,
+                 long blackPawns, long blackKnights, long blackBishops, long blackRooks, long blackQueens, long blackKing,
+                 int flags, long hash) {
+        this.whitePawns = whitePawns;
+        this.whiteKnights = whiteKnights;
+        this.whiteBishops = whiteBishops;
+        this.whiteRooks = whiteRooks;
+        this.whiteQueens = whiteQueens;
+        this.whiteKing = whiteKing;
+        this.blackPawns = blackPawns;
+        this.blackKnights = blackKnights;
+        this.blackBishops = blackBishops;
+        this.blackRooks = blackRooks;
+        this.blackQueens = blackQueens;
+        this.blackKing = blackKing;
+        this.flags = flags;
+        this.hash = hash;
+    }
+
+    public BoardState toBoardState() {
+        return new BoardState(this);
+    }
+
+    public long zobrist() {
+        return hash;
+    }
+
+    public boolean equals(Object o) {
+        if (o instanceof CompactBoard) {
+            CompactBoard cb = (CompactBoard) o;
+            return whitePawns == cb.whitePawns && whiteKnights == cb.whiteKnights && whiteBishops == cb.whiteBishops &&
+                    whiteRooks == cb.whiteRooks && whiteQueens == cb.whiteQueens && whiteKing == cb.whiteKing &&
+                    blackPawns == cb.blackPawns && blackKnights == cb.blackKnights && blackBishops == cb.blackBishops &&
+                    blackRooks == cb.blackRooks && blackQueens == cb.blackQueens && blackKing == cb.blackKing &&
+                    flags == cb.flags;
+        }
+        return false;
+    }
+
+    // same as BoardState.hashCode
+    public int hashCode() {
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    public String toString() {
+        return toBoardState().toString();
+    }
+}
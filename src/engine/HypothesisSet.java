@@ -0,0 +1,302 @@
+package engine;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Set of boards for belief states, keyed by zobrist key.
+ *
+ * The pieces of one side (our own side, which we know up to the captures we could not place) are stored once per
+ * group of boards that share them. Per board only the other side's 6 bitboards, the packed state, the key and the group
+ * are stored, densely in insertion order in pages of parallel primitive arrays, so iterating is a scan over indices 0 to
+ * size() - 1. An open addressing table of board indices finds a key in one probe sequence without comparing any
+ * bitboards.
+ *
+ * Two boards with the same zobrist key are treated as equal. With 64-bit keys the chance of a false match among a
+ * million boards is below 1e-7.
+ *
+ * A set is not thread safe and every insert is serial. Callers that build sets in parallel deduplicate by key
+ * themselves before adding (bots.AndyNewman partitions the children of an expansion by key and deduplicates each
+ * partition in its own task, see ChildSet), so the set only ever sees distinct boards in their final order.
+ */
+public final class HypothesisSet {
+    // boards are stored in pages so that growing never copies more than one page
+    private static final int pageBits = 12, pageSize = 1 << pageBits, pageMask = pageSize - 1;
+
+    private final boolean sharedWhite; // true if the white pieces are stored per group, false for the black pieces
+
+    private long[][] keys;
+    private long[][] pieces; // 6 bitboards of the side that is not shared per board, in the order of the CompactBoard fields
+    private int[][] flags;
+    private int[][] groups;
+    private int size;
+
+    // 6 bitboards of the shared side per group
+    private long[] shared = new long[6];
+    private int groupCount, lastGroup;
+
+    // board index + 1 per slot, 0 if the slot is empty
+    private int[] slots;
+    private int mask;
+
+    public HypothesisSet(boolean sharedWhite) {
+        this(sharedWhite, 16);
+    }
+
+    public HypothesisSet(boolean sharedWhite, int capacity) {
+        this.sharedWhite = sharedWhite;
+        // the first page grows up to pageSize, later pages are allocated at full size
+        int first = Math.min(Math.max(capacity, 16), pageSize);
+        keys = new long[][]{new long[first]};
+        pieces = new long[][]{new long[6 * first]};
+        flags = new int[][]{new int[first]};
+        groups = new int[][]{new int[first]};
+        slots = new int[tableLength(capacity)];
+        mask = slots.length - 1;
+    }
+
+    // table length for capacity boards, at most half full
+    private static int tableLength(int capacity) {
+        return Integer.highestOneBit(Math.max(capacity, 16) - 1) << 2;
+    }
+
+    public boolean sharedWhite() {
+        return sharedWhite;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public HypothesisSet copy() {
+        HypothesisSet copy = new HypothesisSet(sharedWhite, size);
+        copy.addAll(this);
+        return copy;
+    }
+
+    private static int slot(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+
+    public long key(int i) {
+        return keys[i >>> pageBits][i & pageMask];
+    }
+
+    // boards in the same group have the same shared pieces
+    public int group(int i) {
+        return groups[i >>> pageBits][i & pageMask];
+    }
+
+    // packed castling rights and en passant square of board i, see BoardState.packState
+    public int state(int i) {
+        return flags[i >>> pageBits][i & pageMask];
+    }
+
+    // slot holding key, or the empty slot where it would go
+    private int find(long key) {
+        int i = slot(key) & mask;
+        while (slots[i] != 0 && key(slots[i] - 1) != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    public boolean contains(long key) {
+        return slots[find(key)] != 0;
+    }
+
+    public boolean contains(CompactBoard cb) {
+        return contains(cb.hash);
+    }
+
+    public boolean add(CompactBoard cb) {
+        int i = find(cb.hash);
+        if (slots[i] != 0) {
+            return false;
+        }
+        int e;
+        long[] page;
+        int o;
+        if (sharedWhite) {
+            e = append(cb.hash, cb.flags, group(cb.whitePawns, cb.whiteKnights, cb.whiteBishops, cb.whiteRooks, cb.whiteQueens, cb.whiteKing));
+            page = pieces[e >>> pageBits];
+            o = 6 * (e & pageMask);
+            page[o] = cb.blackPawns;
+            page[o + 1] = cb.blackKnights;
+            page[o + 2] = cb.blackBishops;
+            page[o + 3] = cb.blackRooks;
+            page[o + 4] = cb.blackQueens;
+            page[o + 5] = cb.blackKing;
+        }
+        else {
+            e = append(cb.hash, cb.flags, group(cb.blackPawns, cb.blackKnights, cb.blackBishops, cb.blackRooks, cb.blackQueens, cb.blackKing));
+            page = pieces[e >>> pageBits];
+            o = 6 * (e & pageMask);
+            page[o] = cb.whitePawns;
+            page[o + 1] = cb.whiteKnights;
+            page[o + 2] = cb.whiteBishops;
+            page[o + 3] = cb.whiteRooks;
+            page[o + 4] = cb.whiteQueens;
+            page[o + 5] = cb.whiteKing;
+        }
+        insert(i, e);
+        return true;
+    }
+
+    // group with the given shared pieces, added if there is none
+    // there is almost always a single group, so the last group found is tried first
+    private int group(long pawns, long knights, long bishops, long rooks, long queens, long king) {
+        for (int n = 0, g = lastGroup; n < groupCount; n++, g = g + 1 < groupCount ? g + 1 : 0) {
+            int o = 6 * g;
+            if (shared[o] == pawns && shared[o + 1] == knights && shared[o + 2] == bishops && shared[o + 3] == rooks
+                    && shared[o + 4] == queens && shared[o + 5] == king) {
+                return lastGroup = g;
+            }
+        }
+        if (6 * groupCount == shared.length) {
+            shared = Arrays.copyOf(shared, 2 * shared.length);
+        }
+        int o = 6 * groupCount;
+        shared[o] = pawns;
+        shared[o + 1] = knights;
+        shared[o + 2] = bishops;
+        shared[o + 3] = rooks;
+        shared[o + 4] = queens;
+        shared[o + 5] = king;
+        return lastGroup = groupCount++;
+    }
+
+    // adds the boards of other that are not in this set yet, keeping their order, both sets must share the same side
+    public void addAll(HypothesisSet other) {
+        // groups of other mapped to groups of this set, -1 if not looked up yet
+        int[] groupMap = new int[other.groupCount];
+        Arrays.fill(groupMap, -1);
+        for (int j = 0; j < other.size; j++) {
+            long key = other.key(j);
+            int i = find(key);
+            if (slots[i] == 0) {
+                int p = j >>> pageBits, o = j & pageMask, g = other.groups[p][o];
+                if (groupMap[g] < 0) {
+                    long[] s = other.shared;
+                    groupMap[g] = group(s[6 * g], s[6 * g + 1], s[6 * g + 2], s[6 * g + 3], s[6 * g + 4], s[6 * g + 5]);
+                }
+                int e = append(key, other.flags[p][o], groupMap[g]);
+                System.arraycopy(other.pieces[p], 6 * o, pieces[e >>> pageBits], 6 * (e & pageMask), 6);
+                insert(i, e);
+            }
+        }
+    }
+
+    // reserves storage for one more board and returns its index
+    private int append(long key, int state, int group) {
+        int p = size >>> pageBits, o = size & pageMask;
+        if (p == keys.length) {
+            keys = Arrays.copyOf(keys, 2 * p);
+            pieces = Arrays.copyOf(pieces, 2 * p);
+            flags = Arrays.copyOf(flags, 2 * p);
+            groups = Arrays.copyOf(groups, 2 * p);
+        }
+        if (keys[p] == null) {
+            keys[p] = new long[pageSize];
+            pieces[p] = new long[6 * pageSize];
+            flags[p] = new int[pageSize];
+            groups[p] = new int[pageSize];
+        }
+        else if (o == keys[p].length) {
+            int length = Math.min(2 * o, pageSize);
+            keys[p] = Arrays.copyOf(keys[p], length);
+            pieces[p] = Arrays.copyOf(pieces[p], 6 * length);
+            flags[p] = Arrays.copyOf(flags[p], length);
+            groups[p] = Arrays.copyOf(groups[p], length);
+        }
+        keys[p][o] = key;
+        flags[p][o] = state;
+        groups[p][o] = group;
+        return size++;
+    }
+
+    private void insert(int i, int e) {
+        slots[i] = e + 1;
+        if (2 * size > slots.length) {
+            rehash(2 * slots.length);
+        }
+    }
+
+    private void rehash(int length) {
+        slots = new int[length];
+        mask = length - 1;
+        for (int e = 0; e < size; e++) {
+            slots[find(key(e))] = e + 1;
+        }
+    }
+
+    // keeps only the boards i for which keep.test(i) holds, preserving their order
+    // keep is called once for every index in increasing order before any board is moved past it
+    public void retain(IntPredicate keep) {
+        int n = 0;
+        for (int e = 0; e < size; e++) {
+            if (keep.test(e)) {
+                if (n != e) {
+                    move(e, n);
+                }
+                n++;
+            }
+        }
+        if (n != size) {
+            size = n;
+            rehash(slots.length);
+        }
+    }
+
+    // keeps only the boards ids[lo] to ids[hi - 1], which must be in increasing order
+    // takes time proportional to hi - lo instead of size()
+    public void retain(int[] ids, int lo, int hi) {
+        int n = 0;
+        for (int j = lo; j < hi; j++, n++) {
+            if (ids[j] != n) {
+                move(ids[j], n);
+            }
+        }
+        size = n;
+        rehash(tableLength(n));
+    }
+
+    // copies board e to index n < e
+    private void move(int e, int n) {
+        int p = e >>> pageBits, o = e & pageMask, q = n >>> pageBits, r = n & pageMask;
+        keys[q][r] = keys[p][o];
+        flags[q][r] = flags[p][o];
+        groups[q][r] = groups[p][o];
+        System.arraycopy(pieces[p], 6 * o, pieces[q], 6 * r, 6);
+    }
+
+    // writes board i into bs, see BoardState.load
+    public void load(int i, BoardState bs) {
+        int p = i >>> pageBits, o = i & pageMask, g = groups[p][o];
+        if (sharedWhite) {
+            bs.load(shared, 6 * g, pieces[p], 6 * o, flags[p][o], keys[p][o]);
+        }
+        else {
+            bs.load(pieces[p], 6 * o, shared, 6 * g, flags[p][o], keys[p][o]);
+        }
+    }
+
+    public CompactBoard get(int i) {
+        int p = i >>> pageBits, o = i & pageMask;
+        long[] w = pieces[p], b = shared;
+        int wo = 6 * o, bo = 6 * groups[p][o];
+        if (sharedWhite) {
+            w = shared;
+            b = pieces[p];
+            wo = bo;
+            bo = 6 * o;
+        }
+        return new CompactBoard(w[wo], w[wo + 1], w[wo + 2], w[wo + 3], w[wo + 4], w[wo + 5],
+                b[bo], b[bo + 1], b[bo + 2], b[bo + 3], b[bo + 4], b[bo + 5], flags[p][o], key(i));
+    }
+}
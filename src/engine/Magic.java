@@ -0,0 +1,148 @@
+package engine;
+
+/**
+ * Fancy magic bitboard tables for sliding piece attacks, along with single direction ray tables.
+ *
+ * For a square x, the occupancy of the squares that can block a slider on x (rays without their edge square) is
+ * multiplied by a magic number so that the top bits form a collision free index into the attack sets of that square.
+ * The attack sets of all squares are packed into one table per piece type.
+ * Magic numbers were found by a seeded random search over sparse 64-bit numbers.
+ *
+ * All attack sets stop at, and include, the first occupied square in each direction.
+ */
+final class Magic {
+    // ray directions
+    // orthogonal rays first, rays pointing towards higher squares first
+    static final int NORTH = 0, EAST = 1, SOUTH = 2, WEST = 3, NORTH_EAST = 4, NORTH_WEST = 5, SOUTH_EAST = 6, SOUTH_WEST = 7;
+
+    // rays[d][x] contains every square in direction d from x, excluding x
+    static final long[][] rays;
+
+    private static final long[] rookMagics = {
+            0x0480053081214000L, 0x0040100040002001L, 0x6080200080100008L, 0x0200082004411200L,
+            0x0200102008040200L, 0x1100240028210012L, 0x1080008001000200L, 0x0100020028488100L,
+            0x0001800220400086L, 0x2488804000802004L, 0x0C00801000200081L, 0x201C801000080080L,
+            0x0441000800100500L, 0x00A0808002000400L, 0x0125000402000100L, 0x0001002200409100L,
+            0x0280004020004000L, 0x5110084020004000L, 0x0001050020024011L, 0x0002020020081040L,
+            0x0800050008010010L, 0x81C0808002000400L, 0x8010808001000200L, 0x000006000100408CL,
+            0x0280400080008020L, 0x3000500040002000L, 0x8400200080801000L, 0x80A01001000D0020L,
+            0x900C001101000800L, 0x0110040080800200L, 0x1001000100040200L, 0x0060040200008041L,
+            0x4480804000800038L, 0x0040002001804080L, 0x2010882000801000L, 0x0000080282801000L,
+            0x0200080080800400L, 0x0206000400808002L, 0x2000020001010004L, 0x1014042042000091L,
+            0x0200208040008000L, 0x0040201000404002L, 0x0244200100110041L, 0x0041019000090020L,
+            0x0A28001100850008L, 0x0020020004008080L, 0x1001220108140010L, 0x8A0400408106000CL,
+            0x0000220100508200L, 0x6040048049003100L, 0x0000200011024300L, 0x0000900100082500L,
+            0x0870040008008080L, 0x0850800600040180L, 0x0006008104480200L, 0x1800040108B04200L,
+            0xD12C201080010341L, 0x0101042040008013L, 0x2801004008200273L, 0x001900614C500009L,
+            0x0202004461500802L, 0x0002001008040102L, 0x10001028B1080604L, 0x000D000040803201L,
+    };
+
+    private static final long[] bishopMagics = {
+            0x6460220208002480L, 0x8308C80104002010L, 0xB408121042008000L, 0x0C48205040021000L,
+            0x1002021000020000L, 0x0840882440802010L, 0x0080809008204040L, 0x00001402011028A0L,
+            0x088EC002040400B0L, 0x0005500608087180L, 0x0000A20089020010L, 0x000010908602C060L,
+            0x2810420210014000L, 0x0040024802400080L, 0x0408484230100840L, 0x00020A08A4011800L,
+            0x0020003062062848L, 0x0002504510440102L, 0xA23005310C008810L, 0x0048000104110044L,
+            0x010A000422010008L, 0x2021000200A0A400L, 0x0004400208124801L, 0x8000280480841000L,
+            0x8110100206600229L, 0x0814204102080909L, 0x00A0300002040840L, 0x8808080000202020L,
+            0x04040400C0410040L, 0x108404200C101400L, 0x01C1012000480802L, 0xA020520040420200L,
+            0x2404100800062001L, 0x0002014400208804L, 0x0100805000410402L, 0x0241420080080080L,
+            0x8040040444030100L, 0x0F50064242020110L, 0x0001020200888818L, 0x0801021200018069L,
+            0x2803086094A01040L, 0x2440482804444800L, 0x0002002024200804L, 0x880101420800C084L,
+            0x40A4182008200900L, 0x8420008102041040L, 0x00901001304A0508L, 0x0450021448519100L,
+            0x0402021002080A10L, 0x000D01009084020CL, 0x20800A0046480040L, 0x0000083020880220L,
+            0x0001010803040142L, 0x0000081001520000L, 0x0040100420809000L, 0x0022900428808202L,
+            0x0000404044202010L, 0x1008004044108804L, 0x1008305509415000L, 0x1000840400208840L,
+            0x0810260A12020201L, 0x3000A04410020210L, 0x0903102082008204L, 0x490808088808C308L,
+    };
+
+    // relevant occupancy masks, index shifts and table offsets
+    private static final long[] rookMasks = new long[64], bishopMasks = new long[64];
+    private static final int[] rookShifts = new int[64], bishopShifts = new int[64];
+    private static final int[] rookOffsets = new int[64], bishopOffsets = new int[64];
+
+    private static final long[] rookTable, bishopTable;
+
+    static {
+        rays = new long[8][64];
+        int[] dx = {0, 1, 0, -1, 1, -1, 1, -1}, dy = {1, 0, -1, 0, 1, 1, -1, -1};
+        for (int d = 0; d < 8; d++) {
+            for (int j = 0; j < 8; j++) {
+                for (int i = 0; i < 8; i++) {
+                    for (int x = i + dx[d], y = j + dy[d]; 0 <= x && x < 8 && 0 <= y && y < 8; x += dx[d], y += dy[d]) {
+                        rays[d][8 * j + i] |= 1L << (8 * y + x);
+                    }
+                }
+            }
+        }
+
+        rookTable = init(NORTH, rookMagics, rookMasks, rookShifts, rookOffsets);
+        bishopTable = init(NORTH_EAST, bishopMagics, bishopMasks, bishopShifts, bishopOffsets);
+    }
+
+    private Magic() {}
+
+    // fills the masks, shifts and offsets of the four rays starting at first and returns the attack table
+    private static long[] init(int first, long[] magics, long[] masks, int[] shifts, int[] offsets) {
+        int size = 0;
+        for (int x = 0; x < 64; x++) {
+            for (int d = first; d < first + 4; d++) {
+                long ray = rays[d][x];
+                // the edge square never blocks anything behind it
+                if (ray != 0) {
+                    masks[x] |= ray & ~(1L << end(d, ray));
+                }
+            }
+            shifts[x] = 64 - Long.bitCount(masks[x]);
+            offsets[x] = size;
+            size += 1 << Long.bitCount(masks[x]);
+        }
+
+        long[] table = new long[size];
+        for (int x = 0; x < 64; x++) {
+            // iterate over every subset of the mask
+            long occupied = 0;
+            do {
+                long attacks = 0;
+                for (int d = first; d < first + 4; d++) {
+                    attacks |= rayAttacks(d, x, occupied);
+                }
+                table[offsets[x] + (int) ((occupied * magics[x]) >>> shifts[x])] = attacks;
+                occupied = (occupied - masks[x]) & masks[x];
+            } while (occupied != 0);
+        }
+        return table;
+    }
+
+    // square of b closest to the start of a ray in direction d
+    // north, east, northeast, northwest: least significant bit
+    // south, west, southeast, southwest: most significant bit
+    static int first(int d, long b) {
+        return (d & 2) == 0 ? Long.numberOfTrailingZeros(b) : 63 - Long.numberOfLeadingZeros(b);
+    }
+
+    // square of b furthest from the start of a ray in direction d
+    private static int end(int d, long b) {
+        return (d & 2) == 0 ? 63 - Long.numberOfLeadingZeros(b) : Long.numberOfTrailingZeros(b);
+    }
+
+    static long rayAttacks(int d, int x, long occupied) {
+        long ray = rays[d][x], blockers = ray & occupied;
+        if (blockers == 0) {
+            return ray;
+        }
+        return ray ^ rays[d][first(d, blockers)];
+    }
+
+    static long rookAttacks(int x, long occupied) {
+        return rookTable[rookOffsets[x] + (int) (((occupied & rookMasks[x]) * rookMagics[x]) >>> rookShifts[x])];
+    }
+
+    static long bishopAttacks(int x, long occupied) {
+        return bishopTable[bishopOffsets[x] + (int) (((occupied & bishopMasks[x]) * bishopMagics[x]) >>> bishopShifts[x])];
+    }
+
+    static long queenAttacks(int x, long occupied) {
+        return rookAttacks(x, occupied) | bishopAttacks(x, occupied);
+    }
+}
@@ -84,6 +84,67 @@ public class Move {
         this.r = r;
     }
 
+    // packed move constructor
+    public Move(int m) {
+        load(m);
+    }
+
+    // overwrites every field of this move with the packed move
+    void load(int m) {
+        p = PackedMove.piece(m);
+        q = PackedMove.captured(m);
+        r = PackedMove.promotion(m);
+        isCapture = q != Piece.NONE;
+        isPromotion = r != Piece.NONE;
+        isKingsideCastle = PackedMove.kind(m) == PackedMove.KINGSIDE_CASTLE;
+        isQueensideCastle = PackedMove.kind(m) == PackedMove.QUEENSIDE_CASTLE;
+        isDPMove = PackedMove.kind(m) == PackedMove.DOUBLE_PUSH;
+        isEPCapture = PackedMove.kind(m) == PackedMove.EN_PASSANT;
+        isInvalidMove = PackedMove.isInvalid(m);
+        isBlockedMove = PackedMove.isBlocked(m);
+        // the generic invalid move has no piece and no squares
+        if (isInvalidMove && p == Piece.NONE) {
+            from = -1;
+            to = -1;
+        }
+        else {
+            from = PackedMove.from(m);
+            to = PackedMove.to(m);
+        }
+        block = isBlockedMove ? PackedMove.block(m) : -1;
+    }
+
+    // returns this move packed into an int
+    public int pack() {
+        int kind;
+        if (isInvalidMove) {
+            kind = PackedMove.INVALID;
+        }
+        else if (isBlockedMove) {
+            kind = PackedMove.BLOCKED;
+        }
+        else if (isEPCapture) {
+            kind = PackedMove.EN_PASSANT;
+        }
+        else if (isPromotion || isCapture) {
+            kind = PackedMove.NORMAL;
+        }
+        else if (isKingsideCastle) {
+            kind = PackedMove.KINGSIDE_CASTLE;
+        }
+        else if (isQueensideCastle) {
+            kind = PackedMove.QUEENSIDE_CASTLE;
+        }
+        else if (isDPMove) {
+            kind = PackedMove.DOUBLE_PUSH;
+        }
+        else {
+            kind = PackedMove.NORMAL;
+        }
+        Piece promotion = isPromotion && r == Piece.NONE ? Piece.QUEEN : r;
+        return PackedMove.of(Math.max(from, 0), Math.max(to, 0), Math.max(block, 0), p, q, promotion, kind);
+    }
+
     // returns a minimal copy
     public Move copy() {
         return new Move(from, to, r);
@@ -0,0 +1,124 @@
+package engine;
+
+/**
+ * Helpers for moves packed into a single int.
+ * Move generators write these into caller-supplied buffers so that the hot paths never allocate.
+ *
+ * Bit layout:
+ * 0-5   from square
+ * 6-11  to square
+ * 12-17 block square (only meaningful for blocked moves)
+ * 18-20 piece to be moved
+ * 21-23 piece to be captured
+ * 24-26 piece to be promoted to
+ * 27-29 kind of move
+ *
+ * A move is a capture iff its captured piece is not NONE and a promotion iff its promotion piece is not NONE.
+ */
+public final class PackedMove {
+    // move kinds, already shifted into place
+    public static final int NORMAL = 0;
+    public static final int KINGSIDE_CASTLE = 1 << 27;
+    public static final int QUEENSIDE_CASTLE = 2 << 27;
+    public static final int DOUBLE_PUSH = 3 << 27;
+    public static final int EN_PASSANT = 4 << 27;
+    public static final int INVALID = 5 << 27;
+    public static final int BLOCKED = 6 << 27;
+    private static final int KIND_MASK = 7 << 27;
+
+    // upper bound on the number of moves any generator can write for a single position
+    public static final int MAX_MOVES = 512;
+
+    private static final int NONE = Piece.NONE.ordinal();
+    private static final Piece[] pieces = Piece.values();
+
+    // generic invalid move, used when at least one attempted move will result in no change in the board
+    public static final int INVALID_MOVE = encode(0, 0, 0, NONE, NONE, NONE) | INVALID;
+
+    private PackedMove() {}
+
+    private static int encode(int from, int to, int block, int p, int q, int r) {
+        return from | (to << 6) | (block << 12) | (p << 18) | (q << 21) | (r << 24);
+    }
+
+    // quiet move
+    public static int of(Piece p, int from, int to) {
+        return encode(from, to, 0, p.ordinal(), NONE, NONE);
+    }
+
+    // capture move
+    public static int of(Piece p, int from, int to, Piece q) {
+        return encode(from, to, 0, p.ordinal(), q.ordinal(), NONE);
+    }
+
+    // promotion quiet move
+    public static int of(Piece p, Piece r, int from, int to) {
+        return encode(from, to, 0, p.ordinal(), NONE, r.ordinal());
+    }
+
+    // promotion capture move
+    public static int of(Piece p, Piece r, int from, int to, Piece q) {
+        return encode(from, to, 0, p.ordinal(), q.ordinal(), r.ordinal());
+    }
+
+    // blocked move (pawns)
+    public static int of(Piece p, int from, int to, int block) {
+        return encode(from, to, block, p.ordinal(), NONE, NONE) | BLOCKED;
+    }
+
+    // blocked move (captures)
+    public static int of(Piece p, int from, int to, int block, Piece q) {
+        return encode(from, to, block, p.ordinal(), q.ordinal(), NONE) | BLOCKED;
+    }
+
+    // fully specified move
+    static int of(int from, int to, int block, Piece p, Piece q, Piece r, int kind) {
+        return encode(from, to, block, p.ordinal(), q.ordinal(), r.ordinal()) | kind;
+    }
+
+    // minimal move
+    // contains smallest amount of information needed to uniquely identify a move
+    public static int of(int from, int to, Piece r) {
+        return encode(from, to, 0, NONE, NONE, r.ordinal());
+    }
+
+    public static int from(int m) {
+        return m & 63;
+    }
+
+    public static int to(int m) {
+        return (m >>> 6) & 63;
+    }
+
+    public static int block(int m) {
+        return (m >>> 12) & 63;
+    }
+
+    public static Piece piece(int m) {
+        return pieces[(m >>> 18) & 7];
+    }
+
+    public static Piece captured(int m) {
+        return pieces[(m >>> 21) & 7];
+    }
+
+    public static Piece promotion(int m) {
+        return pieces[(m >>> 24) & 7];
+    }
+
+    public static int kind(int m) {
+        return m & KIND_MASK;
+    }
+
+    public static boolean isCapture(int m) {
+        return ((m >>> 21) & 7) != NONE;
+    }
+
+    public static boolean isInvalid(int m) {
+        return (m & KIND_MASK) == INVALID;
+    }
+
+    public static boolean isBlocked(int m) {
+        return (m & KIND_MASK) == BLOCKED;
+    }
+}
@@ -0,0 +1,99 @@
+package engine;
+
+import java.util.Arrays;
+
+/**
+ * Fixed size transposition table keyed by zobrist key, safe to share between threads without locks.
+ *
+ * Every entry is two longs: the key xor the data, and the data, which packs the best move, score, depth and bound of a
+ * search. Writes are two plain stores, so a reader racing with a writer can see the halves of two different entries;
+ * the key is only recovered by xoring the halves, so such a mix fails verification and reads as a miss instead of
+ * returning another position's data.
+ *
+ * Entries are grouped in buckets of 4 (64 bytes, one cache line). A store replaces the entry of the same key, otherwise
+ * the entry searched to the least depth.
+ *
+ * Data layout:
+ * 0-31  best move, packed
+ * 32-47 score
+ * 48-55 depth
+ * 56-57 bound, 0 for an empty entry
+ */
+public final class TranspositionTable {
+    // the score is exact, at least or at most the stored score
+    public static final int EXACT = 1, LOWER = 2, UPPER = 3;
+
+    private static final int bucketBits = 2, bucketSize = 1 << bucketBits;
+    // xored into the keys of positions with black to move, the zobrist key does not include the side to move
+    private static final long blackToMove = 0x8F3C5E71B2A9D465L;
+
+    private final long[] entries;
+    private final int mask; // bucket index mask
+
+    // table of at most megabytes megabytes, rounded down to a power of two
+    public TranspositionTable(int megabytes) {
+        long longs = Math.max((long) megabytes << 17, 2 * bucketSize);
+        entries = new long[(int) Math.min(Long.highestOneBit(longs), 1 << 30)];
+        mask = (entries.length >>> (bucketBits + 1)) - 1;
+    }
+
+    // key of a position with the given zobrist key and side to move
+    public static long key(long zobrist, boolean white) {
+        return white ? zobrist : zobrist ^ blackToMove;
+    }
+
+    private int bucket(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return ((int) (key ^ (key >>> 32)) & mask) << (bucketBits + 1);
+    }
+
+    // data of the entry with key, 0 if there is none
+    public long probe(long key) {
+        int b = bucket(key);
+        for (int i = b; i < b + 2 * bucketSize; i += 2) {
+            long data = entries[i + 1];
+            if ((entries[i] ^ data) == key && data != 0) {
+                return data;
+            }
+        }
+        return 0;
+    }
+
+    public void store(long key, int move, int score, int depth, int bound) {
+        long data = (move & 0xFFFFFFFFL) | ((long) (score & 0xFFFF) << 32) | ((long) depth << 48) | ((long) bound << 56);
+        int b = bucket(key), victim = b, victimDepth = Integer.MAX_VALUE;
+        for (int i = b; i < b + 2 * bucketSize; i += 2) {
+            long old = entries[i + 1];
+            if ((entries[i] ^ old) == key || old == 0) {
+                victim = i;
+                break;
+            }
+            if (depth(old) < victimDepth) {
+                victim = i;
+                victimDepth = depth(old);
+            }
+        }
+        entries[victim] = key ^ data;
+        entries[victim + 1] = data;
+    }
+
+    public void clear() {
+        Arrays.fill(entries, 0);
+    }
+
+    public static int move(long data) {
+        return (int) data;
+    }
+
+    public static int score(long data) {
+        return (short) (data >>> 32);
+    }
+
+    public static int depth(long data) {
+        return (int) (data >>> 48) & 0xFF;
+    }
+
+    public static int bound(long data) {
+        return (int) (data >>> 56) & 3;
+    }
+}
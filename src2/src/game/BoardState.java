@@ -28,54 +28,44 @@ public class BoardState {
 	private boolean hasWhiteKing, hasBlackKing;
 
 	// zobrist hashing
-	//	private int hc;
-	//	private static final long seed = 0;
+	private long hc;
+	private static final long seed = 0;
 
 	// pre-calculated bitboards
-	private static final long[] sq;
-	private static final Map<Long, Integer> convert;
 	private static final long[] rankMask, fileMask, diagonalMask, antiDiagonalMask;
 	private static final long[] kingMoves, knightMoves;
 	private static final long[] northMask, eastMask, southMask, westMask, northEastMask, southEastMask, southWestMask, northWestMask;
-	//    private static final Map<Piece, List<Integer>> wt, bt;
+	private static final long[][] whiteKeys, blackKeys;
+	private static final long[] castlingKeys, epKeys;
 
 	static {
-		sq = new long[64];
-		convert = new HashMap<>();
-		sq[0] = Long.MIN_VALUE; // square 0 must be separately initialized because Math.pow(2, 63) returns 2^63-1
-		convert.put(Long.MIN_VALUE, 0);
-		for (int i = 1; i < 64; i++) {
-			sq[i] = (long) Math.pow(2, 63 - i);
-			convert.put((long) Math.pow(2, 63 - i), i);
-		}
-
 		rankMask = new long[64];
 		for (int j = 0; j < 8; j++) {
 			long x = 0;
 			for (int i = 0; i < 8; i++) {
-				x += sq[8 * j + i];
+				x += 1L << (8 * j + i);
 			}
 			for (int i = 0; i < 8; i++) {
-				rankMask[8 * j + i] += x - sq[8 * j + i];
+				rankMask[8 * j + i] += x - (1L << (8 * j + i));
 			}
 		}
 
 		fileMask = new long[64];
 		for (int i = 0; i < 64; i++) {
 			for (int j = 0; j < 8; j++) {
-				fileMask[i] += sq[8 * j + (i % 8)];
+				fileMask[i] += 1L << (8 * j + (i % 8));
 			}
-			fileMask[i] -= sq[i];
+			fileMask[i] -= 1L << i;
 		}
 
 		diagonalMask = new long[64];
 		for (int j = 0; j < 8; j++) {
 			for (int i = 0; i < 8; i++) {
 				for (int dx = 1; i + dx < 8 && j + dx < 8; dx++) {
-					diagonalMask[8 * j + i] += sq[8 * (j + dx) + i + dx];
+					diagonalMask[8 * j + i] += 1L << (8 * (j + dx) + i + dx);
 				}
 				for (int dx = -1; i + dx >= 0 && j + dx >= 0; dx--) {
-					diagonalMask[8 * j + i] += sq[8 * (j + dx) + i + dx];
+					diagonalMask[8 * j + i] += 1L << (8 * (j + dx) + i + dx);
 				}
 			}
 		}
@@ -84,10 +74,10 @@ public class BoardState {
 		for (int j = 0; j < 8; j++) {
 			for (int i = 0; i < 8; i++) {
 				for (int dx = 1; i + dx < 8 && j - dx >= 0; dx++) {
-					antiDiagonalMask[8 * j + i] += sq[8 * (j - dx) + i + dx];
+					antiDiagonalMask[8 * j + i] += 1L << (8 * (j - dx) + i + dx);
 				}
 				for (int dx = -1; i + dx >= 0 && j - dx < 8; dx--) {
-					antiDiagonalMask[8 * j + i] += sq[8 * (j - dx) + i + dx];
+					antiDiagonalMask[8 * j + i] += 1L << (8 * (j - dx) + i + dx);
 				}
 			}
 		}
@@ -98,7 +88,7 @@ public class BoardState {
 				for (int y = j - 1; y <= j + 1; y++) {
 					for (int x = i - 1; x <= i + 1; x++) {
 						if (0 <= x && x < 8 && 0 <= y && y < 8 && (x != i || y != j)) {
-							kingMoves[8 * j + i] += sq[8 * y + x];
+							kingMoves[8 * j + i] += 1L << (8 * y + x);
 						}
 					}
 				}
@@ -112,7 +102,7 @@ public class BoardState {
 				for (int k = 0; k < 8; k++) {
 					int x = i + dx[k], y = j + dy[k];
 					if (0 <= x && x < 8 && 0 <= y && y < 8) {
-						knightMoves[8 * j + i] += sq[8 * y + x];
+						knightMoves[8 * j + i] += 1L << (8 * y + x);
 					}
 				}
 			}
@@ -121,28 +111,28 @@ public class BoardState {
 		northMask = new long[64];
 		for (int i = 0; i < 64; i++) {
 			for (int x = i + 8; x < 64; x += 8) {
-				northMask[i] += sq[x];
+				northMask[i] += 1L << x;
 			}
 		}
 
 		eastMask = new long[64];
 		for (int i = 0; i < 64; i++) {
 			for (int x = i + 1; x % 8 != 0; x++) {
-				eastMask[i] += sq[x];
+				eastMask[i] += 1L << x;
 			}
 		}
 
 		southMask = new long[64];
 		for (int i = 0; i < 64; i++) {
 			for (int x = i - 8; x >= 0; x -= 8) {
-				southMask[i] += sq[x];
+				southMask[i] += 1L << x;
 			}
 		}
 
 		westMask = new long[64];
 		for (int i = 0; i < 64; i++) {
 			for (int x = i - 1; x >= 0 && x % 8 != 7; x--) {
-				westMask[i] += sq[x];
+				westMask[i] += 1L << x;
 			}
 		}
 
@@ -150,7 +140,7 @@ public class BoardState {
 		for (int j = 0; j < 8; j++) {
 			for (int i = 0; i < 8; i++) {
 				for (int d = 1; i + d < 8 && j + d < 8; d++) {
-					northEastMask[8 * j + i] += sq[8 * (j + d) + i + d];
+					northEastMask[8 * j + i] += 1L << (8 * (j + d) + i + d);
 				}
 			}
 		}
@@ -159,7 +149,7 @@ public class BoardState {
 		for (int j = 0; j < 8; j++) {
 			for (int i = 0; i < 8; i++) {
 				for (int d = -1; i + d >= 0 && j + d >= 0; d--) {
-					southWestMask[8 * j + i] += sq[8 * (j + d) + i + d];
+					southWestMask[8 * j + i] += 1L << (8 * (j + d) + i + d);
 				}
 			}
 		}
@@ -168,7 +158,7 @@ public class BoardState {
 		for (int j = 0; j < 8; j++) {
 			for (int i = 0; i < 8; i++) {
 				for (int d = 1; i + d < 8 && j - d >= 0; d++) {
-					southEastMask[8 * j + i] += sq[8 * (j - d) + i + d];
+					southEastMask[8 * j + i] += 1L << (8 * (j - d) + i + d);
 				}
 			}
 		}
@@ -177,51 +167,49 @@ public class BoardState {
 		for (int j = 0; j < 8; j++) {
 			for (int i = 0; i < 8; i++) {
 				for (int d = -1; i + d >= 0 && j - d < 8; d--) {
-					northWestMask[8 * j + i] += sq[8 * (j - d) + i + d];
+					northWestMask[8 * j + i] += 1L << (8 * (j - d) + i + d);
 				}
 			}
 		}
 
-		//        Random rng = new Random(seed);
-		//        wt = new HashMap<>();
-		//        bt = new HashMap<>();
-		//        for (Piece p : Piece.values()) {
-		//        	List<Integer> l = new ArrayList<>();
-		//        	for (int i = 0; i < 64; i++) {
-		//        		l.add(rng.nextInt());
-		//			}
-		//        	wt.put(p, l);
-		//        	if (p == Piece.NONE) {
-		//        		bt.put(p, l);
-		//			}
-		//			else {
-		//				List<Integer> m = new ArrayList<>();
-		//				for (int i = 0; i < 64; i++) {
-		//					m.add(rng.nextInt());
-		//				}
-		//				bt.put(p, m);
-		//			}
-		//		}
+		// keys of Piece.NONE are left as 0
+		Random rng = new Random(seed);
+		whiteKeys = new long[7][64];
+		blackKeys = new long[7][64];
+		for (int i = 0; i < 6; i++) {
+			for (int j = 0; j < 64; j++) {
+				whiteKeys[i][j] = rng.nextLong();
+				blackKeys[i][j] = rng.nextLong();
+			}
+		}
+		castlingKeys = new long[4];
+		for (int i = 0; i < 4; i++) {
+			castlingKeys[i] = rng.nextLong();
+		}
+		epKeys = new long[64];
+		for (int i = 0; i < 64; i++) {
+			epKeys[i] = rng.nextLong();
+		}
 	}
 
 	public BoardState() {
 		board = 0b1111111111111111000000000000000000000000000000001111111111111111L;
-		whiteBoard = 0b1111111111111111000000000000000000000000000000000000000000000000L;
-		blackBoard = 0b0000000000000000000000000000000000000000000000001111111111111111L;
-
-		whitePawns = 0b0000000011111111000000000000000000000000000000000000000000000000L;
-		whiteKnights = 0b0100001000000000000000000000000000000000000000000000000000000000L;
-		whiteBishops = 0b0010010000000000000000000000000000000000000000000000000000000000L;
-		whiteRooks = 0b1000000100000000000000000000000000000000000000000000000000000000L;
-		whiteQueens = 0b0001000000000000000000000000000000000000000000000000000000000000L;
-		whiteKing = 0b0000100000000000000000000000000000000000000000000000000000000000L;
-
-		blackPawns = 0b0000000000000000000000000000000000000000000000001111111100000000L;
-		blackKnights = 0b0000000000000000000000000000000000000000000000000000000001000010L;
-		blackBishops = 0b0000000000000000000000000000000000000000000000000000000000100100L;
-		blackRooks = 0b0000000000000000000000000000000000000000000000000000000010000001L;
-		blackQueens = 0b0000000000000000000000000000000000000000000000000000000000010000L;
-		blackKing = 0b0000000000000000000000000000000000000000000000000000000000001000L;
+		whiteBoard = 0b0000000000000000000000000000000000000000000000001111111111111111L;
+		blackBoard = 0b1111111111111111000000000000000000000000000000000000000000000000L;
+
+		whitePawns = 0b0000000000000000000000000000000000000000000000001111111100000000L;
+		whiteKnights = 0b0000000000000000000000000000000000000000000000000000000001000010L;
+		whiteBishops = 0b0000000000000000000000000000000000000000000000000000000000100100L;
+		whiteRooks = 0b0000000000000000000000000000000000000000000000000000000010000001L;
+		whiteQueens = 0b0000000000000000000000000000000000000000000000000000000000001000L;
+		whiteKing = 0b0000000000000000000000000000000000000000000000000000000000010000L;
+
+		blackPawns = 0b0000000011111111000000000000000000000000000000000000000000000000L;
+		blackKnights = 0b0100001000000000000000000000000000000000000000000000000000000000L;
+		blackBishops = 0b0010010000000000000000000000000000000000000000000000000000000000L;
+		blackRooks = 0b1000000100000000000000000000000000000000000000000000000000000000L;
+		blackQueens = 0b0000100000000000000000000000000000000000000000000000000000000000L;
+		blackKing = 0b0001000000000000000000000000000000000000000000000000000000000000L;
 
 		whiteMailbox = new Piece[] { Piece.ROOK, Piece.KNIGHT, Piece.BISHOP, Piece.QUEEN, Piece.KING, Piece.BISHOP, Piece.KNIGHT, Piece.ROOK, Piece.PAWN, Piece.PAWN, Piece.PAWN, Piece.PAWN, Piece.PAWN, Piece.PAWN, Piece.PAWN, Piece.PAWN, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE };
 		blackMailbox = new Piece[] { Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.NONE, Piece.PAWN, Piece.PAWN, Piece.PAWN, Piece.PAWN, Piece.PAWN, Piece.PAWN, Piece.PAWN, Piece.PAWN, Piece.ROOK, Piece.KNIGHT, Piece.BISHOP, Piece.QUEEN, Piece.KING, Piece.BISHOP, Piece.KNIGHT, Piece.ROOK };
@@ -243,7 +231,7 @@ public class BoardState {
 
 		hasWhiteKing = hasBlackKing = true;
 
-		//		hc = 0;
+		hc = computeHash();
 	}
 
 	public BoardState(String fen) {
@@ -261,71 +249,71 @@ public class BoardState {
 			for (int i = 0; i < t[7 - j].length(); i++) {
 				char c = t[7 - j].charAt(i);
 				if ('A' <= c && c <= 'Z') {
-					whiteBoard += sq[cur];
-					board += sq[cur];
+					whiteBoard += 1L << cur;
+					board += 1L << cur;
 				} else if ('a' <= c && c <= 'z') {
-					blackBoard += sq[cur];
-					board += sq[cur];
+					blackBoard += 1L << cur;
+					board += 1L << cur;
 				}
 				switch (c) {
 				case 'P':
-					whitePawns += sq[cur];
+					whitePawns += 1L << cur;
 					whiteMailbox[cur] = Piece.PAWN;
 					cur++;
 					break;
 				case 'N':
-					whiteKnights += sq[cur];
+					whiteKnights += 1L << cur;
 					whiteMailbox[cur] = Piece.KNIGHT;
 					cur++;
 					break;
 				case 'B':
-					whiteBishops += sq[cur];
+					whiteBishops += 1L << cur;
 					whiteMailbox[cur] = Piece.BISHOP;
 					cur++;
 					break;
 				case 'R':
-					whiteRooks += sq[cur];
+					whiteRooks += 1L << cur;
 					whiteMailbox[cur] = Piece.ROOK;
 					cur++;
 					break;
 				case 'Q':
-					whiteQueens += sq[cur];
+					whiteQueens += 1L << cur;
 					whiteMailbox[cur] = Piece.QUEEN;
 					cur++;
 					break;
 				case 'K':
-					whiteKing += sq[cur];
+					whiteKing += 1L << cur;
 					whiteMailbox[cur] = Piece.KING;
 					hasWhiteKing = true;
 					cur++;
 					break;
 				case 'p':
-					blackPawns += sq[cur];
+					blackPawns += 1L << cur;
 					blackMailbox[cur] = Piece.PAWN;
 					cur++;
 					break;
 				case 'n':
-					blackKnights += sq[cur];
+					blackKnights += 1L << cur;
 					blackMailbox[cur] = Piece.KNIGHT;
 					cur++;
 					break;
 				case 'b':
-					blackBishops += sq[cur];
+					blackBishops += 1L << cur;
 					blackMailbox[cur] = Piece.BISHOP;
 					cur++;
 					break;
 				case 'r':
-					blackRooks += sq[cur];
+					blackRooks += 1L << cur;
 					blackMailbox[cur] = Piece.ROOK;
 					cur++;
 					break;
 				case 'q':
-					blackQueens += sq[cur];
+					blackQueens += 1L << cur;
 					blackMailbox[cur] = Piece.QUEEN;
 					cur++;
 					break;
 				case 'k':
-					blackKing += sq[cur];
+					blackKing += 1L << cur;
 					blackMailbox[cur] = Piece.KING;
 					hasBlackKing = true;
 					cur++;
@@ -361,6 +349,8 @@ public class BoardState {
 		prevEps = new ArrayDeque<>();
 
 		endGame = !(hasWhiteKing && hasBlackKing);
+
+		hc = computeHash();
 	}
 
 	// NOTE: square mappings of input and bitboards are different!
@@ -377,71 +367,71 @@ public class BoardState {
 			for (int i = 0; i < 8; i++) {
 				char ch = c[j][i];
 				if ('A' <= ch && ch <= 'Z') {
-					whiteBoard += sq[cur];
-					board += sq[cur];
+					whiteBoard += 1L << cur;
+					board += 1L << cur;
 				} else if ('a' <= ch && ch <= 'z') {
-					blackBoard += sq[cur];
-					board += sq[cur];
+					blackBoard += 1L << cur;
+					board += 1L << cur;
 				}
 				switch (ch) {
 				case 'P':
-					whitePawns += sq[cur];
+					whitePawns += 1L << cur;
 					whiteMailbox[cur] = Piece.PAWN;
 					cur++;
 					break;
 				case 'N':
-					whiteKnights += sq[cur];
+					whiteKnights += 1L << cur;
 					whiteMailbox[cur] = Piece.KNIGHT;
 					cur++;
 					break;
 				case 'B':
-					whiteBishops += sq[cur];
+					whiteBishops += 1L << cur;
 					whiteMailbox[cur] = Piece.BISHOP;
 					cur++;
 					break;
 				case 'R':
-					whiteRooks += sq[cur];
+					whiteRooks += 1L << cur;
 					whiteMailbox[cur] = Piece.ROOK;
 					cur++;
 					break;
 				case 'Q':
-					whiteQueens += sq[cur];
+					whiteQueens += 1L << cur;
 					whiteMailbox[cur] = Piece.QUEEN;
 					cur++;
 					break;
 				case 'K':
-					whiteKing += sq[cur];
+					whiteKing += 1L << cur;
 					whiteMailbox[cur] = Piece.KING;
 					hasWhiteKing = true;
 					cur++;
 					break;
 				case 'p':
-					blackPawns += sq[cur];
+					blackPawns += 1L << cur;
 					blackMailbox[cur] = Piece.PAWN;
 					cur++;
 					break;
 				case 'n':
-					blackKnights += sq[cur];
+					blackKnights += 1L << cur;
 					blackMailbox[cur] = Piece.KNIGHT;
 					cur++;
 					break;
 				case 'b':
-					blackBishops += sq[cur];
+					blackBishops += 1L << cur;
 					blackMailbox[cur] = Piece.BISHOP;
 					cur++;
 					break;
 				case 'r':
-					blackRooks += sq[cur];
+					blackRooks += 1L << cur;
 					blackMailbox[cur] = Piece.ROOK;
 					cur++;
 					break;
 				case 'q':
-					blackQueens += sq[cur];
+					blackQueens += 1L << cur;
 					blackMailbox[cur] = Piece.QUEEN;
 					cur++;
 					break;
 				case 'k':
-					blackKing += sq[cur];
+					blackKing += 1L << cur;
 					blackMailbox[cur] = Piece.KING;
 					hasBlackKing = true;
 					cur++;
@@ -479,6 +469,8 @@ public class BoardState {
 
 			endGame = !(hasWhiteKing && hasBlackKing);
 		}
+
+		hc = computeHash();
 	}
 
 	public BoardState(BoardState bs) {
@@ -524,13 +516,13 @@ public class BoardState {
 		hasWhiteKing = bs.hasWhiteKing;
 		hasBlackKing = bs.hasBlackKing;
 
-		//		hc = bs.hc;
+		hc = bs.hc;
 	}
 
 	private long slideAttacks(int x, long mask) {
 		long forward = board & mask, reverse = Long.reverse(forward);
-		forward -= sq[x];
-		reverse -= sq[x ^ 63];
+		forward -= 1L << x;
+		reverse -= 1L << (x ^ 63);
 		forward ^= Long.reverse(reverse);
 		forward &= mask;
 		return forward;
@@ -538,8 +530,8 @@ public class BoardState {
 
 	private long pseudoWhiteSlideAttacks(int x, long mask) {
 		long forward = whiteBoard & mask, reverse = Long.reverse(forward);
-		forward -= sq[x];
-		reverse -= sq[x ^ 63];
+		forward -= 1L << x;
+		reverse -= 1L << (x ^ 63);
 		forward ^= Long.reverse(reverse);
 		forward &= mask;
 		return forward;
@@ -547,8 +539,8 @@ public class BoardState {
 
 	private long pseudoBlackSlideAttacks(int x, long mask) {
 		long forward = blackBoard & mask, reverse = Long.reverse(forward);
-		forward -= sq[x];
-		reverse -= sq[x ^ 63];
+		forward -= 1L << x;
+		reverse -= 1L << (x ^ 63);
 		forward ^= Long.reverse(reverse);
 		forward &= mask;
 		return forward;
@@ -561,18 +553,18 @@ public class BoardState {
 		}
 		boolean possibleInvalidMove = false;
 		for (long b = whiteBoard; b != 0; b &= b - 1) {
-			int from = convert.get(b & -b);
+			int from = Long.numberOfTrailingZeros(b);
 			switch (whiteMailbox[from]) {
 			case KNIGHT:
 				long knightMap = knightMoves[from] & ~whiteBoard;
 				// quiet moves
 				for (long nb = knightMap & ~blackBoard; nb != 0; nb &= nb - 1) {
-					int to = convert.get(nb & -nb);
+					int to = Long.numberOfTrailingZeros(nb);
 					moves.add(new Move(Piece.KNIGHT, from, to));
 				}
 				// captures
 				for (long nb = knightMap & blackBoard; nb != 0; nb &= nb - 1) {
-					int to = convert.get(nb & -nb);
+					int to = Long.numberOfTrailingZeros(nb);
 					moves.add(new Move(Piece.KNIGHT, from, to, blackMailbox[to]));
 				}
 				break;
@@ -580,12 +572,12 @@ public class BoardState {
 				long rookMap = (slideAttacks(from, rankMask[from]) ^ slideAttacks(from, fileMask[from])) & ~whiteBoard;
 				// quiet moves
 				for (long rb = rookMap & ~blackBoard; rb != 0; rb &= rb - 1) {
-					int to = convert.get(rb & -rb);
+					int to = Long.numberOfTrailingZeros(rb);
 					moves.add(new Move(Piece.ROOK, from, to));
 				}
 				// captures
 				for (long rb = rookMap & blackBoard; rb != 0; rb &= rb - 1) {
-					int to = convert.get(rb & -rb);
+					int to = Long.numberOfTrailingZeros(rb);
 					moves.add(new Move(Piece.ROOK, from, to, blackMailbox[to]));
 				}
 				break;
@@ -593,12 +585,12 @@ public class BoardState {
 				long bishopMap = (slideAttacks(from, diagonalMask[from]) ^ slideAttacks(from, antiDiagonalMask[from])) & ~whiteBoard;
 				// quiet moves
 				for (long bb = bishopMap & ~blackBoard; bb != 0; bb &= bb - 1) {
-					int to = convert.get(bb & -bb);
+					int to = Long.numberOfTrailingZeros(bb);
 					moves.add(new Move(Piece.BISHOP, from, to));
 				}
 				// captures
 				for (long bb = bishopMap & blackBoard; bb != 0; bb &= bb - 1) {
-					int to = convert.get(bb & -bb);
+					int to = Long.numberOfTrailingZeros(bb);
 					moves.add(new Move(Piece.BISHOP, from, to, blackMailbox[to]));
 				}
 				break;
@@ -606,12 +598,12 @@ public class BoardState {
 				long queenMap = (slideAttacks(from, rankMask[from]) ^ slideAttacks(from, fileMask[from]) ^ slideAttacks(from, diagonalMask[from]) ^ slideAttacks(from, antiDiagonalMask[from])) & ~whiteBoard;
 				// quiet moves
 				for (long qb = queenMap & ~blackBoard; qb != 0; qb &= qb - 1) {
-					int to = convert.get(qb & -qb);
+					int to = Long.numberOfTrailingZeros(qb);
 					moves.add(new Move(Piece.QUEEN, from, to));
 				}
 				// captures
 				for (long qb = queenMap & blackBoard; qb != 0; qb &= qb - 1) {
-					int to = convert.get(qb & -qb);
+					int to = Long.numberOfTrailingZeros(qb);
 					moves.add(new Move(Piece.QUEEN, from, to, blackMailbox[to]));
 				}
 				break;
@@ -619,12 +611,12 @@ public class BoardState {
 				long kingMap = kingMoves[from] & ~whiteBoard;
 				// quiet moves
 				for (long kb = kingMap & ~blackBoard; kb != 0; kb &= kb - 1) {
-					int to = convert.get(kb & -kb);
+					int to = Long.numberOfTrailingZeros(kb);
 					moves.add(new Move(Piece.KING, from, to));
 				}
 				// captures
 				for (long kb = kingMap & blackBoard; kb != 0; kb &= kb - 1) {
-					int to = convert.get(kb & -kb);
+					int to = Long.numberOfTrailingZeros(kb);
 					moves.add(new Move(Piece.KING, from, to, blackMailbox[to]));
 				}
 				// castling
@@ -651,25 +643,25 @@ public class BoardState {
 		}
 		// pawns moves are handled separately
 		// left captures
-		long a = whitePawns >>> 7;
-		long b = a & 0b0000000000000000000000000000000000000000000000000000000011111110L;
-		long c = a & 0b1111111011111110111111101111111011111110111111101111111000000000L;
-		long d = a & 0b1111111011111110111111101111111011111110111111101111111011111110L;
+		long a = whitePawns << 7;
+		long b = a & 0b0111111100000000000000000000000000000000000000000000000000000000L;
+		long c = a & 0b0000000001111111011111110111111101111111011111110111111101111111L;
+		long d = a & 0b0111111101111111011111110111111101111111011111110111111101111111L;
 		// left captures, no promotion, no en passant
 		for (long lb = c & blackBoard; lb != 0; lb &= lb - 1) {
-			int to = convert.get(lb & -lb);
+			int to = Long.numberOfTrailingZeros(lb);
 			moves.add(new Move(Piece.PAWN, to - 7, to, blackMailbox[to]));
 		}
 		// left captures, promotion
 		for (long lb = b & blackBoard; lb != 0; lb &= lb - 1) {
-			int to = convert.get(lb & -lb);
+			int to = Long.numberOfTrailingZeros(lb);
 			moves.add(new Move(Piece.PAWN, Piece.QUEEN, to - 7, to, blackMailbox[to]));
 			moves.add(new Move(Piece.PAWN, Piece.KNIGHT, to - 7, to, blackMailbox[to]));
 			moves.add(new Move(Piece.PAWN, Piece.ROOK, to - 7, to, blackMailbox[to]));
 			moves.add(new Move(Piece.PAWN, Piece.BISHOP, to - 7, to, blackMailbox[to]));
 		}
 		// left captures, en passant
-		if (ep && (d & sq[eps]) != 0) {
+		if (ep && (d & (1L << eps)) != 0) {
 			Move move = new Move(Piece.PAWN, eps - 7, eps, Piece.PAWN);
 			move.isEPCapture = true;
 			moves.add(move);
@@ -679,25 +671,25 @@ public class BoardState {
 			possibleInvalidMove = true;
 		}
 		// right captures
-		a = whitePawns >>> 9;
-		b = a & 0b0000000000000000000000000000000000000000000000000000000001111111L;
-		c = a & 0b0111111101111111011111110111111101111111011111110111111100000000L;
-		d = a & 0b0111111101111111011111110111111101111111011111110111111101111111L;
+		a = whitePawns << 9;
+		b = a & 0b1111111000000000000000000000000000000000000000000000000000000000L;
+		c = a & 0b0000000011111110111111101111111011111110111111101111111011111110L;
+		d = a & 0b1111111011111110111111101111111011111110111111101111111011111110L;
 		// right captures, no promotion, no en passant
 		for (long lb = c & blackBoard; lb != 0; lb &= lb - 1) {
-			int to = convert.get(lb & -lb);
+			int to = Long.numberOfTrailingZeros(lb);
 			moves.add(new Move(Piece.PAWN, to - 9, to, blackMailbox[to]));
 		}
 		// right captures, promotion
 		for (long lb = b & blackBoard; lb != 0; lb &= lb - 1) {
-			int to = convert.get(lb & -lb);
+			int to = Long.numberOfTrailingZeros(lb);
 			moves.add(new Move(Piece.PAWN, Piece.QUEEN, to - 9, to, blackMailbox[to]));
 			moves.add(new Move(Piece.PAWN, Piece.KNIGHT, to - 9, to, blackMailbox[to]));
 			moves.add(new Move(Piece.PAWN, Piece.ROOK, to - 9, to, blackMailbox[to]));
 			moves.add(new Move(Piece.PAWN, Piece.BISHOP, to - 9, to, blackMailbox[to]));
 		}
 		// right captures, en passant
-		if (ep && (d & sq[eps]) != 0) {
+		if (ep && (d & (1L << eps)) != 0) {
 			Move move = new Move(Piece.PAWN, eps - 9, eps, Piece.PAWN);
 			move.isEPCapture = true;
 			moves.add(move);
@@ -707,9 +699,9 @@ public class BoardState {
 			possibleInvalidMove = true;
 		}
 		// single push
-		long singleMap = whitePawns >>> 8;
+		long singleMap = whitePawns << 8;
 		for (long sb = singleMap & ~board; sb != 0; sb &= sb - 1) {
-			int to = convert.get(sb & -sb);
+			int to = Long.numberOfTrailingZeros(sb);
 			moves.add(new Move(Piece.PAWN, to - 8, to));
 		}
 		// single push blocked
@@ -717,9 +709,9 @@ public class BoardState {
 			possibleInvalidMove = true;
 		}
 		// double push
-		long doubleMap = (whitePawns >>> 16) & 0b0000000000000000000000001111111100000000000000000000000000000000L & ((singleMap & ~board) >>> 8);
+		long doubleMap = (whitePawns << 16) & 0b0000000000000000000000000000000011111111000000000000000000000000L & ((singleMap & ~board) << 8);
 		for (long db = doubleMap & ~board; db != 0; db &= db - 1) {
-			int to = convert.get(db & -db);
+			int to = Long.numberOfTrailingZeros(db);
 			Move move = new Move(Piece.PAWN, to - 16, to);
 			move.isDPMove = true;
 			moves.add(move);
@@ -740,18 +732,18 @@ public class BoardState {
 		}
 		boolean possibleInvalidMove = false;
 		for (long b = blackBoard; b != 0; b &= b - 1) {
-			int from = convert.get(b & -b);
+			int from = Long.numberOfTrailingZeros(b);
 			switch (blackMailbox[from]) {
 			case KNIGHT:
 				long knightMap = knightMoves[from] & ~blackBoard;
 				// quiet moves
 				for (long nb = knightMap & ~whiteBoard; nb != 0; nb &= nb - 1) {
-					int to = convert.get(nb & -nb);
+					int to = Long.numberOfTrailingZeros(nb);
 					moves.add(new Move(Piece.KNIGHT, from, to));
 				}
 				// captures
 				for (long nb = knightMap & whiteBoard; nb != 0; nb &= nb - 1) {
-					int to = convert.get(nb & -nb);
+					int to = Long.numberOfTrailingZeros(nb);
 					moves.add(new Move(Piece.KNIGHT, from, to, whiteMailbox[to]));
 				}
 				break;
@@ -759,12 +751,12 @@ public class BoardState {
 				long rookMap = (slideAttacks(from, rankMask[from]) ^ slideAttacks(from, fileMask[from])) & ~blackBoard;
 				// quiet moves
 				for (long rb = rookMap & ~whiteBoard; rb != 0; rb &= rb - 1) {
-					int to = convert.get(rb & -rb);
+					int to = Long.numberOfTrailingZeros(rb);
 					moves.add(new Move(Piece.ROOK, from, to));
 				}
 				// captures
 				for (long rb = rookMap & whiteBoard; rb != 0; rb &= rb - 1) {
-					int to = convert.get(rb & -rb);
+					int to = Long.numberOfTrailingZeros(rb);
 					moves.add(new Move(Piece.ROOK, from, to, whiteMailbox[to]));
 				}
 				break;
@@ -772,12 +764,12 @@ public class BoardState {
 				long bishopMap = (slideAttacks(from, diagonalMask[from]) ^ slideAttacks(from, antiDiagonalMask[from])) & ~blackBoard;
 				// quiet moves
 				for (long bb = bishopMap & ~whiteBoard; bb != 0; bb &= bb - 1) {
-					int to = convert.get(bb & -bb);
+					int to = Long.numberOfTrailingZeros(bb);
 					moves.add(new Move(Piece.BISHOP, from, to));
 				}
 				// captures
 				for (long bb = bishopMap & whiteBoard; bb != 0; bb &= bb - 1) {
-					int to = convert.get(bb & -bb);
+					int to = Long.numberOfTrailingZeros(bb);
 					moves.add(new Move(Piece.BISHOP, from, to, whiteMailbox[to]));
 				}
 				break;
@@ -785,12 +777,12 @@ public class BoardState {
 				long queenMap = (slideAttacks(from, rankMask[from]) ^ slideAttacks(from, fileMask[from]) ^ slideAttacks(from, diagonalMask[from]) ^ slideAttacks(from, antiDiagonalMask[from])) & ~blackBoard;
 				// quiet moves
 				for (long qb = queenMap & ~whiteBoard; qb != 0; qb &= qb - 1) {
-					int to = convert.get(qb & -qb);
+					int to = Long.numberOfTrailingZeros(qb);
 					moves.add(new Move(Piece.QUEEN, from, to));
 				}
 				// captures
 				for (long qb = queenMap & whiteBoard; qb != 0; qb &= qb - 1) {
-					int to = convert.get(qb & -qb);
+					int to = Long.numberOfTrailingZeros(qb);
 					moves.add(new Move(Piece.QUEEN, from, to, whiteMailbox[to]));
 				}
 				break;
@@ -798,12 +790,12 @@ public class BoardState {
 				long kingMap = kingMoves[from] & ~blackBoard;
 				// quiet moves
 				for (long kb = kingMap & ~whiteBoard; kb != 0; kb &= kb - 1) {
-					int to = convert.get(kb & -kb);
+					int to = Long.numberOfTrailingZeros(kb);
 					moves.add(new Move(Piece.KING, from, to));
 				}
 				// captures
 				for (long kb = kingMap & whiteBoard; kb != 0; kb &= kb - 1) {
-					int to = convert.get(kb & -kb);
+					int to = Long.numberOfTrailingZeros(kb);
 					moves.add(new Move(Piece.KING, from, to, whiteMailbox[to]));
 				}
 				// castling
@@ -830,25 +822,25 @@ public class BoardState {
 		}
 		// pawns moves are handled separately
 		// left captures
-		long a = blackPawns << 9;
-		long b = a & 0b1111111000000000000000000000000000000000000000000000000000000000L;
-		long c = a & 0b0000000011111110111111101111111011111110111111101111111011111110L;
-		long d = a & 0b1111111011111110111111101111111011111110111111101111111011111110L;
+		long a = blackPawns >>> 9;
+		long b = a & 0b0000000000000000000000000000000000000000000000000000000001111111L;
+		long c = a & 0b0111111101111111011111110111111101111111011111110111111100000000L;
+		long d = a & 0b0111111101111111011111110111111101111111011111110111111101111111L;
 		// left captures, no promotion, no en passant
 		for (long lb = c & whiteBoard; lb != 0; lb &= lb - 1) {
-			int to = convert.get(lb & -lb);
+			int to = Long.numberOfTrailingZeros(lb);
 			moves.add(new Move(Piece.PAWN, to + 9, to, whiteMailbox[to]));
 		}
 		// left captures, promotion
 		for (long lb = b & whiteBoard; lb != 0; lb &= lb - 1) {
-			int to = convert.get(lb & -lb);
+			int to = Long.numberOfTrailingZeros(lb);
 			moves.add(new Move(Piece.PAWN, Piece.QUEEN, to + 9, to, whiteMailbox[to]));
 			moves.add(new Move(Piece.PAWN, Piece.KNIGHT, to + 9, to, whiteMailbox[to]));
 			moves.add(new Move(Piece.PAWN, Piece.ROOK, to + 9, to, whiteMailbox[to]));
 			moves.add(new Move(Piece.PAWN, Piece.BISHOP, to + 9, to, whiteMailbox[to]));
 		}
 		// left captures, en passant
-		if (ep && (d & sq[eps]) != 0) {
+		if (ep && (d & (1L << eps)) != 0) {
 			Move move = new Move(Piece.PAWN, eps + 9, eps, Piece.PAWN);
 			move.isEPCapture = true;
 			moves.add(move);
@@ -858,25 +850,25 @@ public class BoardState {
 			possibleInvalidMove = true;
 		}
 		// right captures
-		a = blackPawns << 7;
-		b = a & 0b0111111100000000000000000000000000000000000000000000000000000000L;
-		c = a & 0b0000000001111111011111110111111101111111011111110111111101111111L;
-		d = a & 0b0111111101111111011111110111111101111111011111110111111101111111L;
+		a = blackPawns >>> 7;
+		b = a & 0b0000000000000000000000000000000000000000000000000000000011111110L;
+		c = a & 0b1111111011111110111111101111111011111110111111101111111000000000L;
+		d = a & 0b1111111011111110111111101111111011111110111111101111111011111110L;
 		// right captures, no promotion, no en passant
 		for (long lb = c & whiteBoard; lb != 0; lb &= lb - 1) {
-			int to = convert.get(lb & -lb);
+			int to = Long.numberOfTrailingZeros(lb);
 			moves.add(new Move(Piece.PAWN, to + 7, to, whiteMailbox[to]));
 		}
 		// right captures, promotion
 		for (long lb = b & whiteBoard; lb != 0; lb &= lb - 1) {
-			int to = convert.get(lb & -lb);
+			int to = Long.numberOfTrailingZeros(lb);
 			moves.add(new Move(Piece.PAWN, Piece.QUEEN, to + 7, to, whiteMailbox[to]));
 			moves.add(new Move(Piece.PAWN, Piece.KNIGHT, to + 7, to, whiteMailbox[to]));
 			moves.add(new Move(Piece.PAWN, Piece.ROOK, to + 7, to, whiteMailbox[to]));
 			moves.add(new Move(Piece.PAWN, Piece.BISHOP, to + 7, to, whiteMailbox[to]));
 		}
 		// right captures, en passant
-		if (ep && (d & sq[eps]) != 0) {
+		if (ep && (d & (1L << eps)) != 0) {
 			Move move = new Move(Piece.PAWN, eps + 7, eps, Piece.PAWN);
 			move.isEPCapture = true;
 			moves.add(move);
@@ -886,9 +878,9 @@ public class BoardState {
 			possibleInvalidMove = true;
 		}
 		// single push
-		long singleMap = blackPawns << 8;
+		long singleMap = blackPawns >>> 8;
 		for (long sb = singleMap & ~board; sb != 0; sb &= sb - 1) {
-			int to = convert.get(sb & -sb);
+			int to = Long.numberOfTrailingZeros(sb);
 			moves.add(new Move(Piece.PAWN, to + 8, to));
 		}
 		// single push blocked
@@ -896,9 +888,9 @@ public class BoardState {
 			possibleInvalidMove = true;
 		}
 		// double push
-		long doubleMap = (blackPawns << 16) & 0b0000000000000000000000000000000011111111000000000000000000000000L & ((singleMap & ~board) << 8);
+		long doubleMap = (blackPawns >>> 16) & 0b0000000000000000000000001111111100000000000000000000000000000000L & ((singleMap & ~board) >>> 8);
 		for (long db = doubleMap & ~board; db != 0; db &= db - 1) {
-			int to = convert.get(db & -db);
+			int to = Long.numberOfTrailingZeros(db);
 			Move move = new Move(Piece.PAWN, to + 16, to);
 			move.isDPMove = true;
 			moves.add(move);
@@ -918,18 +910,18 @@ public class BoardState {
 			return moves;
 		}
 		for (long b = whiteBoard; b != 0; b &= b - 1) {
-			int from = convert.get(b & -b);
+			int from = Long.numberOfTrailingZeros(b);
 			switch (whiteMailbox[from]) {
 			case KNIGHT:
 				long knightMap = knightMoves[from] & ~whiteBoard;
 				// quiet moves
 				for (long nb = knightMap & ~blackBoard; nb != 0; nb &= nb - 1) {
-					int to = convert.get(nb & -nb);
+					int to = Long.numberOfTrailingZeros(nb);
 					moves.add(new Move(Piece.KNIGHT, from, to));
 				}
 				// captures
 				for (long nb = knightMap & blackBoard; nb != 0; nb &= nb - 1) {
-					int to = convert.get(nb & -nb);
+					int to = Long.numberOfTrailingZeros(nb);
 					moves.add(new Move(Piece.KNIGHT, from, to, blackMailbox[to]));
 				}
 				break;
@@ -938,18 +930,18 @@ public class BoardState {
 				long rookNorthMap = slideAttacks(from, northMask[from]) & ~whiteBoard;
 				// quiet moves
 				for (long rb = rookNorthMap & ~blackBoard; rb != 0; rb &= rb - 1) {
-					int to = convert.get(rb & -rb);
+					int to = Long.numberOfTrailingZeros(rb);
 					moves.add(new Move(Piece.ROOK, from, to));
 				}
 				// capture moves
 				long rookNorthCaptureMap = rookNorthMap & blackBoard;
 				if (rookNorthCaptureMap != 0) {
-					int cap = convert.get(Long.highestOneBit(rookNorthCaptureMap));
+					int cap = Long.numberOfTrailingZeros(rookNorthCaptureMap);
 					moves.add(new Move(Piece.ROOK, from, cap));
 					// blocked moves
 					long rookNorthPseudoMap = pseudoWhiteSlideAttacks(from, northMask[from]) & ~whiteBoard;
 					for (long rb = rookNorthPseudoMap ^ rookNorthMap; rb != 0; rb &= rb - 1) {
-						int to = convert.get(rb & -rb);
+						int to = Long.numberOfTrailingZeros(rb);
 						Move move = new Move(Piece.ROOK, from, to, cap);
 						moves.add(move);
 					}
@@ -959,18 +951,18 @@ public class BoardState {
 				long rookSouthMap = slideAttacks(from, southMask[from]) & ~whiteBoard;
 				// quiet moves
 				for (long rb = rookSouthMap & ~blackBoard; rb != 0; rb &= rb - 1) {
-					int to = convert.get(rb & -rb);
+					int to = Long.numberOfTrailingZeros(rb);
 					moves.add(new Move(Piece.ROOK, from, to));
 				}
 				// capture moves
 				long rookSouthCaptureMap = rookSouthMap & blackBoard;
 				if (rookSouthCaptureMap != 0) {
-					int cap = convert.get(rookSouthCaptureMap & -rookSouthCaptureMap);
+					int cap = 63 - Long.numberOfLeadingZeros(rookSouthCaptureMap);
 					moves.add(new Move(Piece.ROOK, from, cap));
 					// blocked moves
 					long rookSouthPseudoMap = pseudoWhiteSlideAttacks(from, southMask[from]) & ~whiteBoard;
 					for (long rb = rookSouthPseudoMap ^ rookSouthMap; rb != 0; rb &= rb - 1) {
-						int to = convert.get(rb & -rb);
+						int to = Long.numberOfTrailingZeros(rb);
 						Move move = new Move(Piece.ROOK, from, to, cap);
 						moves.add(move);
 					}
@@ -980,18 +972,18 @@ public class BoardState {
 				long rookEastMap = slideAttacks(from, eastMask[from]) & ~whiteBoard;
 				// quiet moves
 				for (long rb = rookEastMap & ~blackBoard; rb != 0; rb &= rb - 1) {
-					int to = convert.get(rb & -rb);
+					int to = Long.numberOfTrailingZeros(rb);
 					moves.add(new Move(Piece.ROOK, from, to));
 				}
 				// capture moves
 				long rookEastCaptureMap = rookEastMap & blackBoard;
 				if (rookEastCaptureMap != 0) {
-					int cap = convert.get(Long.highestOneBit(rookEastCaptureMap));
+					int cap = Long.numberOfTrailingZeros(rookEastCaptureMap);
 					moves.add(new Move(Piece.ROOK, from, cap));
 					// blocked moves
 					long rookEastPseudoMap = pseudoWhiteSlideAttacks(from, eastMask[from]) & ~whiteBoard;
 					for (long rb = rookEastPseudoMap ^ rookEastMap; rb != 0; rb &= rb - 1) {
-						int to = convert.get(rb & -rb);
+						int to = Long.numberOfTrailingZeros(rb);
 						Move move = new Move(Piece.ROOK, from, to, cap);
 						moves.add(move);
 					}
@@ -1001,18 +993,18 @@ public class BoardState {
 				long rookWestMap = slideAttacks(from, westMask[from]) & ~whiteBoard;
 				// quiet moves
 				for (long rb = rookWestMap & ~blackBoard; rb != 0; rb &= rb - 1) {
-					int to = convert.get(rb & -rb);
+					int to = Long.numberOfTrailingZeros(rb);
 					moves.add(new Move(Piece.ROOK, from, to));
 				}
 				// capture moves
 				long rookWestCaptureMap = rookWestMap & blackBoard;
 				if (rookWestCaptureMap != 0) {
-					int cap = convert.get(rookWestCaptureMap & -rookWestCaptureMap);
+					int cap = 63 - Long.numberOfLeadingZeros(rookWestCaptureMap);
 					moves.add(new Move(Piece.ROOK, from, cap));
 					// blocked moves
 					long rookWestPseudoMap = pseudoWhiteSlideAttacks(from, westMask[from]) & ~whiteBoard;
 					for (long rb = rookWestPseudoMap ^ rookWestMap; rb != 0; rb &= rb - 1) {
-						int to = convert.get(rb & -rb);
+						int to = Long.numberOfTrailingZeros(rb);
 						Move move = new Move(Piece.ROOK, from, to, cap);
 						moves.add(move);
 					}
@@ -1023,18 +1015,18 @@ public class BoardState {
 				long bishopNorthEastMap = slideAttacks(from, northEastMask[from]) & ~whiteBoard;
 				// quiet moves
 				for (long bb = bishopNorthEastMap & ~blackBoard; bb != 0; bb &= bb - 1) {
-					int to = convert.get(bb & -bb);
+					int to = Long.numberOfTrailingZeros(bb);
 					moves.add(new Move(Piece.BISHOP, from, to));
 				}
 				// capture moves
 				long bishopNorthEastCaptureMap = bishopNorthEastMap & blackBoard;
 				if (bishopNorthEastCaptureMap != 0) {
-					int cap = convert.get(Long.highestOneBit(bishopNorthEastCaptureMap));
+					int cap = Long.numberOfTrailingZeros(bishopNorthEastCaptureMap);
 					moves.add(new Move(Piece.BISHOP, from, cap));
 					// blocked moves
 					long bishopNorthEastPseudoMap = pseudoWhiteSlideAttacks(from, northEastMask[from]) & ~whiteBoard;
 					for (long bb = bishopNorthEastPseudoMap ^ bishopNorthEastMap; bb != 0; bb &= bb - 1) {
-						int to = convert.get(bb & -bb);
+						int to = Long.numberOfTrailingZeros(bb);
 						Move move = new Move(Piece.BISHOP, from, to, cap);
 						moves.add(move);
 					}
@@ -1044,18 +1036,18 @@ public class BoardState {
 				long bishopSouthEastMap = slideAttacks(from, southEastMask[from]) & ~whiteBoard;
 				// quiet moves
 				for (long bb = bishopSouthEastMap & ~blackBoard; bb != 0; bb &= bb - 1) {
-					int to = convert.get(bb & -bb);
+					int to = Long.numberOfTrailingZeros(bb);
 					moves.add(new Move(Piece.BISHOP, from, to));
 				}
 				// capture moves
 				long bishopSouthEastCaptureMap = bishopSouthEastMap & blackBoard;
 				if (bishopSouthEastCaptureMap != 0) {
-					int cap = convert.get(bishopSouthEastCaptureMap & -bishopSouthEastCaptureMap);
+					int cap = 63 - Long.numberOfLeadingZeros(bishopSouthEastCaptureMap);
 					moves.add(new Move(Piece.BISHOP, from, cap));
 					// blocked moves
 					long bishopSouthEastPseudoMap = pseudoWhiteSlideAttacks(from, southEastMask[from]) & ~whiteBoard;
 					for (long bb = bishopSouthEastPseudoMap ^ bishopSouthEastMap; bb != 0; bb &= bb - 1) {
-						int to = convert.get(bb & -bb);
+						int to = Long.numberOfTrailingZeros(bb);
 						Move move = new Move(Piece.BISHOP, from, to, cap);
 						moves.add(move);
 					}
@@ -1065,18 +1057,18 @@ public class BoardState {
 				long bishopSouthWestMap = slideAttacks(from, southWestMask[from]) & ~whiteBoard;
 				// quiet moves
 				for (long bb = bishopSouthWestMap & ~blackBoard; bb != 0; bb &= bb - 1) {
-					int to = convert.get(bb & -bb);
+					int to = Long.numberOfTrailingZeros(bb);
 					moves.add(new Move(Piece.BISHOP, from, to));
 				}
 				// capture moves
 				long bishopSouthWestCaptureMap = bishopSouthWestMap & blackBoard;
 				if (bishopSouthWestCaptureMap != 0) {
-					int cap = convert.get(bishopSouthWestCaptureMap & -bishopSouthWestCaptureMap);
+					int cap = 63 - Long.numberOfLeadingZeros(bishopSouthWestCaptureMap);
 					moves.add(new Move(Piece.BISHOP, from, cap));
 					// blocked moves
 					long bishopSouthWestPseudoMap = pseudoWhiteSlideAttacks(from, southWestMask[from]) & ~whiteBoard;
 					for (long bb = bishopSouthWestPseudoMap ^ bishopSouthWestMap; bb != 0; bb &= bb - 1) {
-						int to = convert.get(bb & -bb);
+						int to = Long.numberOfTrailingZeros(bb);
 						Move move = new Move(Piece.BISHOP, from, to, cap);
 						moves.add(move);
 					}
@@ -1086,18 +1078,18 @@ public class BoardState {
 				long bishopNorthWestMap = slideAttacks(from, northWestMask[from]) & ~whiteBoard;
 				// quiet moves
 				for (long bb = bishopNorthWestMap & ~blackBoard; bb != 0; bb &= bb - 1) {
-					int to = convert.get(bb & -bb);
+					int to = Long.numberOfTrailingZeros(bb);
 					moves.add(new Move(Piece.BISHOP, from, to));
 				}
 				// capture moves
 				long bishopNorthWestCaptureMap = bishopNorthWestMap & blackBoard;
 				if (bishopNorthWestCaptureMap != 0) {
-					int cap = convert.get(Long.highestOneBit(bishopNorthWestCaptureMap));
+					int cap = Long.numberOfTrailingZeros(bishopNorthWestCaptureMap);
 					moves.add(new Move(Piece.BISHOP, from, cap));
 					// blocked moves
 					long bishopNorthWestPseudoMap = pseudoWhiteSlideAttacks(from, northWestMask[from]) & ~whiteBoard;
 					for (long bb = bishopNorthWestPseudoMap ^ bishopNorthWestMap; bb != 0; bb &= bb - 1) {
-						int to = convert.get(bb & -bb);
+						int to = Long.numberOfTrailingZeros(bb);
 						Move move = new Move(Piece.BISHOP, from, to, cap);
 						moves.add(move);
 					}
@@ -1108,18 +1100,18 @@ public class BoardState {
 				long queenNorthMap = slideAttacks(from, northMask[from]) & ~whiteBoard;
 				// quiet moves
 				for (long qb = queenNorthMap & ~blackBoard; qb != 0; qb &= qb - 1) {
-					int to = convert.get(qb & -qb);
+					int to = Long.numberOfTrailingZeros(qb);
 					moves.add(new Move(Piece.QUEEN, from, to));
 				}
 				// capture moves
 				long queenNorthCaptureMap = queenNorthMap & blackBoard;
 				if (queenNorthCaptureMap != 0) {
-					int cap = convert.get(Long.highestOneBit(queenNorthCaptureMap));
+					int cap = Long.numberOfTrailingZeros(queenNorthCaptureMap);
 					moves.add(new Move(Piece.QUEEN, from, cap));
 					// blocked moves
 					long queenNorthPseudoMap = pseudoWhiteSlideAttacks(from, northMask[from]) & ~whiteBoard;
 					for (long qb = queenNorthPseudoMap ^ queenNorthMap; qb != 0; qb &= qb - 1) {
-						int to = convert.get(qb & -qb);
+						int to = Long.numberOfTrailingZeros(qb);
 						Move move = new Move(Piece.QUEEN, from, to, cap);
 						moves.add(move);
 					}
@@ -1129,18 +1121,18 @@ public class BoardState {
 				long queenSouthMap = slideAttacks(from, southMask[from]) & ~whiteBoard;
 				// quiet moves
 				for (long qb = queenSouthMap & ~blackBoard; qb != 0; qb &= qb - 1) {
-					int to = convert.get(qb & -qb);
+					int to = Long.numberOfTrailingZeros(qb);
 					moves.add(new Move(Piece.QUEEN, from, to));
 				}
 				// capture moves
 				long queenSouthCaptureMap = queenSouthMap & blackBoard;
 				if (queenSouthCaptureMap != 0) {
-					int cap = convert.get(queenSouthCaptureMap & -queenSouthCaptureMap);
+					int cap = 63 - Long.numberOfLeadingZeros(queenSouthCaptureMap);
 					moves.add(new Move(Piece.QUEEN, from, cap));
 					// blocked moves
 					long queenSouthPseudoMap = pseudoWhiteSlideAttacks(from, southMask[from]) & ~whiteBoard;
 					for (long qb = queenSouthPseudoMap ^ queenSouthMap; qb != 0; qb &= qb - 1) {
-						int to = convert.get(qb & -qb);
+						int to = Long.numberOfTrailingZeros(qb);
 						Move move = new Move(Piece.QUEEN, from, to, cap);
 						moves.add(move);
 					}
@@ -1150,18 +1142,18 @@ public class BoardState {
 				long queenEastMap = slideAttacks(from, eastMask[from]) & ~whiteBoard;
 				// quiet moves
 				for (long qb = queenEastMap & ~blackBoard; qb != 0; qb &= qb - 1) {
-					int to = convert.get(qb & -qb);
+					int to = Long.numberOfTrailingZeros(qb);
 					moves.add(new Move(Piece.QUEEN, from, to));
 				}
 				// capture moves
 				long queenEastCaptureMap = queenEastMap & blackBoard;
 				if (queenEastCaptureMap != 0) {
-					int cap = convert.get(Long.highestOneBit(queenEastCaptureMap));
+					int cap = Long.numberOfTrailingZeros(queenEastCaptureMap);
 					moves.add(new Move(Piece.QUEEN, from, cap));
 					// blocked moves
 					long queenEastPseudoMap = pseudoWhiteSlideAttacks(from, eastMask[from]) & ~whiteBoard;
 					for (long qb = queenEastPseudoMap ^ queenEastMap; qb != 0; qb &= qb - 1) {
-						int to = convert.get(qb & -qb);
+						int to = Long.numberOfTrailingZeros(qb);
 						Move move = new Move(Piece.QUEEN, from, to, cap);
 						moves.add(move);
 					}
@@ -1171,18 +1163,18 @@ public class BoardState {
 				long queenWestMap = slideAttacks(from, westMask[from]) & ~whiteBoard;
 				// quiet moves
 				for (long qb = queenWestMap & ~blackBoard; qb != 0; qb &= qb - 1) {
-					int to = convert.get(qb & -qb);
+					int to = Long.numberOfTrailingZeros(qb);
 					moves.add(new Move(Piece.QUEEN, from, to));
 				}
 				// capture moves
 				long queenWestCaptureMap = queenWestMap & blackBoard;
 				if (queenWestCaptureMap != 0) {
-					int cap = convert.get(queenWestCaptureMap & -queenWestCaptureMap);
+					int cap = 63 - Long.numberOfLeadingZeros(queenWestCaptureMap);
 					moves.add(new Move(Piece.QUEEN, from, cap));
 					// blocked moves
 					long queenWestPseudoMap = pseudoWhiteSlideAttacks(from, westMask[from]) & ~whiteBoard;
 					for (long qb = queenWestPseudoMap ^ queenWestMap; qb != 0; qb &= qb - 1) {
-						int to = convert.get(qb & -qb);
+						int to = Long.numberOfTrailingZeros(qb);
 						Move move = new Move(Piece.QUEEN, from, to, cap);
 						moves.add(move);
 					}
@@ -1191,18 +1183,18 @@ public class BoardState {
 				long queenNorthEastMap = slideAttacks(from, northEastMask[from]) & ~whiteBoard;
 				// quiet moves
 				for (long qb = queenNorthEastMap & ~blackBoard; qb != 0; qb &= qb - 1) {
-					int to = convert.get(qb & -qb);
+					int to = Long.numberOfTrailingZeros(qb);
 					moves.add(new Move(Piece.QUEEN, from, to));
 				}
 				// capture moves
 				long queenNorthEastCaptureMap = queenNorthEastMap & blackBoard;
 				if (queenNorthEastCaptureMap != 0) {
-					int cap = convert.get(Long.highestOneBit(queenNorthEastCaptureMap));
+					int cap = Long.numberOfTrailingZeros(queenNorthEastCaptureMap);
 					moves.add(new Move(Piece.QUEEN, from, cap));
 					// blocked moves
 					long queenNorthEastPseudoMap = pseudoWhiteSlideAttacks(from, northEastMask[from]) & ~whiteBoard;
 					for (long qb = queenNorthEastPseudoMap ^ queenNorthEastMap; qb != 0; qb &= qb - 1) {
-						int to = convert.get(qb & -qb);
+						int to = Long.numberOfTrailingZeros(qb);
 						Move move = new Move(Piece.QUEEN, from, to, cap);
 						moves.add(move);
 					}
@@ -1212,18 +1204,18 @@ public class BoardState {
 				long queenSouthEastMap = slideAttacks(from, southEastMask[from]) & ~whiteBoard;
 				// quiet moves
 				for (long qb = queenSouthEastMap & ~blackBoard; qb != 0; qb &= qb - 1) {
-					int to = convert.get(qb & -qb);
+					int to = Long.numberOfTrailingZeros(qb);
 					moves.add(new Move(Piece.QUEEN, from, to));
 				}
 				// capture moves
 				long queenSouthEastCaptureMap = queenSouthEastMap & blackBoard;
 				if (queenSouthEastCaptureMap != 0) {
-					int cap = convert.get(queenSouthEastCaptureMap & -queenSouthEastCaptureMap);
+					int cap = 63 - Long.numberOfLeadingZeros(queenSouthEastCaptureMap);
 					moves.add(new Move(Piece.QUEEN, from, cap));
 					// blocked moves
 					long queenSouthEastPseudoMap = pseudoWhiteSlideAttacks(from, southEastMask[from]) & ~whiteBoard;
 					for (long qb = queenSouthEastPseudoMap ^ queenSouthEastMap; qb != 0; qb &= qb - 1) {
-						int to = convert.get(qb & -qb);
+						int to = Long.numberOfTrailingZeros(qb);
 						Move move = new Move(Piece.QUEEN, from, to, cap);
 						moves.add(move);
 					}
@@ -1233,18 +1225,18 @@ public class BoardState {
 				long queenSouthWestMap = slideAttacks(from, southWestMask[from]) & ~whiteBoard;
 				// quiet moves
 				for (long qb = queenSouthWestMap & ~blackBoard; qb != 0; qb &= qb - 1) {
-					int to = convert.get(qb & -qb);
+					int to = Long.numberOfTrailingZeros(qb);
 					moves.add(new Move(Piece.QUEEN, from, to));
 				}
 				// capture moves
 				long queenSouthWestCaptureMap = queenSouthWestMap & blackBoard;
 				if (queenSouthWestCaptureMap != 0) {
-					int cap = convert.get(queenSouthWestCaptureMap & -queenSouthWestCaptureMap);
+					int cap = 63 - Long.numberOfLeadingZeros(queenSouthWestCaptureMap);
 					moves.add(new Move(Piece.QUEEN, from, cap));
 					// blocked moves
 					long queenSouthWestPseudoMap = pseudoWhiteSlideAttacks(from, southWestMask[from]) & ~whiteBoard;
 					for (long qb = queenSouthWestPseudoMap ^ queenSouthWestMap; qb != 0; qb &= qb - 1) {
-						int to = convert.get(qb & -qb);
+						int to = Long.numberOfTrailingZeros(qb);
 						Move move = new Move(Piece.QUEEN, from, to, cap);
 						moves.add(move);
 					}
@@ -1254,18 +1246,18 @@ public class BoardState {
 				long queenNorthWestMap = slideAttacks(from, northWestMask[from]) & ~whiteBoard;
 				// quiet moves
 				for (long qb = queenNorthWestMap & ~blackBoard; qb != 0; qb &= qb - 1) {
-					int to = convert.get(qb & -qb);
+					int to = Long.numberOfTrailingZeros(qb);
 					moves.add(new Move(Piece.QUEEN, from, to));
 				}
 				// capture moves
 				long queenNorthWestCaptureMap = queenNorthWestMap & blackBoard;
 				if (queenNorthWestCaptureMap != 0) {
-					int cap = convert.get(Long.highestOneBit(queenNorthWestCaptureMap));
+					int cap = Long.numberOfTrailingZeros(queenNorthWestCaptureMap);
 					moves.add(new Move(Piece.QUEEN, from, cap));
 					// blocked moves
 					long queenNorthWestPseudoMap = pseudoWhiteSlideAttacks(from, northWestMask[from]) & ~whiteBoard;
 					for (long qb = queenNorthWestPseudoMap ^ queenNorthWestMap; qb != 0; qb &= qb - 1) {
-						int to = convert.get(qb & -qb);
+						int to = Long.numberOfTrailingZeros(qb);
 						Move move = new Move(Piece.QUEEN, from, to, cap);
 						moves.add(move);
 					}
@@ -1275,12 +1267,12 @@ public class BoardState {
 				long kingMap = kingMoves[from] & ~whiteBoard;
 				// quiet moves
 				for (long kb = kingMap & ~blackBoard; kb != 0; kb &= kb - 1) {
-					int to = convert.get(kb & -kb);
+					int to = Long.numberOfTrailingZeros(kb);
 					moves.add(new Move(Piece.KING, from, to));
 				}
 				// captures
 				for (long kb = kingMap & blackBoard; kb != 0; kb &= kb - 1) {
-					int to = convert.get(kb & -kb);
+					int to = Long.numberOfTrailingZeros(kb);
 					moves.add(new Move(Piece.KING, from, to, blackMailbox[to]));
 				}
 				// castling
@@ -1311,28 +1303,28 @@ public class BoardState {
 		}
 		// pawns moves are handled separately
 		// left captures
-		long a = whitePawns >>> 7;
-		long b = a & 0b0000000000000000000000000000000000000000000000000000000011111110L;
-		long c = a & 0b1111111011111110111111101111111011111110111111101111111000000000L;
+		long a = whitePawns << 7;
+		long b = a & 0b0111111100000000000000000000000000000000000000000000000000000000L;
+		long c = a & 0b0000000001111111011111110111111101111111011111110111111101111111L;
 		// left captures, no promotion, no en passant
 		for (long lb = c & blackBoard; lb != 0; lb &= lb - 1) {
-			int to = convert.get(lb & -lb);
+			int to = Long.numberOfTrailingZeros(lb);
 			moves.add(new Move(Piece.PAWN, to - 7, to, blackMailbox[to]));
 		}
 		// invalid left captures, no promotion, no en passant
 		long invalidLeft = c & ~board;
 		if (ep) {
-			invalidLeft = (invalidLeft | sq[eps]) ^ sq[eps];
+			invalidLeft = (invalidLeft | (1L << eps)) ^ (1L << eps);
 		}
 		for (long lb = invalidLeft; lb != 0; lb &= lb - 1) {
-			int to = convert.get(lb & -lb);
+			int to = Long.numberOfTrailingZeros(lb);
 			Move move = new Move(Piece.PAWN, to - 7, to);
 			move.isInvalidMove = true;
 			moves.add(move);
 		}
 		// left captures, promotion
 		for (long lb = b & blackBoard; lb != 0; lb &= lb - 1) {
-			int to = convert.get(lb & -lb);
+			int to = Long.numberOfTrailingZeros(lb);
 			moves.add(new Move(Piece.PAWN, Piece.QUEEN, to - 7, to, blackMailbox[to]));
 			moves.add(new Move(Piece.PAWN, Piece.KNIGHT, to - 7, to, blackMailbox[to]));
 			moves.add(new Move(Piece.PAWN, Piece.ROOK, to - 7, to, blackMailbox[to]));
@@ -1340,7 +1332,7 @@ public class BoardState {
 		}
 		// invalid left captures, promotion
 		for (long lb = b & ~board; lb != 0; lb &= lb - 1) {
-			int to = convert.get(lb & -lb);
+			int to = Long.numberOfTrailingZeros(lb);
 			Move move = new Move(Piece.PAWN, Piece.QUEEN, to - 7, to);
 			move.isInvalidMove = true;
 			moves.add(move);
@@ -1355,34 +1347,34 @@ public class BoardState {
 			moves.add(move);
 		}
 		// left captures, en passant
-		if (ep && (c & sq[eps]) != 0) {
+		if (ep && (c & (1L << eps)) != 0) {
 			Move move = new Move(Piece.PAWN, eps - 7, eps, Piece.PAWN);
 			move.isEPCapture = true;
 			moves.add(move);
 		}
 		// right captures
-		a = whitePawns >>> 9;
-		b = a & 0b0000000000000000000000000000000000000000000000000000000001111111L;
-		c = a & 0b0111111101111111011111110111111101111111011111110111111100000000L;
+		a = whitePawns << 9;
+		b = a & 0b1111111000000000000000000000000000000000000000000000000000000000L;
+		c = a & 0b0000000011111110111111101111111011111110111111101111111011111110L;
 		// right captures, no promotion, no en passant
 		for (long lb = c & blackBoard; lb != 0; lb &= lb - 1) {
-			int to = convert.get(lb & -lb);
+			int to = Long.numberOfTrailingZeros(lb);
 			moves.add(new Move(Piece.PAWN, to - 9, to, blackMailbox[to]));
 		}
 		// invalid right captures, no promotion, no en passant
 		long invalidRight = c & ~board;
 		if (ep) {
-			invalidRight = (invalidRight | sq[eps]) ^ sq[eps];
+			invalidRight = (invalidRight | (1L << eps)) ^ (1L << eps);
 		}
 		for (long lb = invalidRight; lb != 0; lb &= lb - 1) {
-			int to = convert.get(lb & -lb);
+			int to = Long.numberOfTrailingZeros(lb);
 			Move move = new Move(Piece.PAWN, to - 9, to);
 			move.isInvalidMove = true;
 			moves.add(move);
 		}
 		// right captures, promotion
 		for (long lb = b & blackBoard; lb != 0; lb &= lb - 1) {
-			int to = convert.get(lb & -lb);
+			int to = Long.numberOfTrailingZeros(lb);
 			moves.add(new Move(Piece.PAWN, Piece.QUEEN, to - 9, to, blackMailbox[to]));
 			moves.add(new Move(Piece.PAWN, Piece.KNIGHT, to - 9, to, blackMailbox[to]));
 			moves.add(new Move(Piece.PAWN, Piece.ROOK, to - 9, to, blackMailbox[to]));
@@ -1390,7 +1382,7 @@ public class BoardState {
 		}
 		// invalid right captures, promotion
 		for (long lb = b & ~board; lb != 0; lb &= lb - 1) {
-			int to = convert.get(lb & -lb);
+			int to = Long.numberOfTrailingZeros(lb);
 			Move move = new Move(Piece.PAWN, Piece.QUEEN, to - 9, to);
 			move.isInvalidMove = true;
 			moves.add(move);
@@ -1405,35 +1397,35 @@ public class BoardState {
 			moves.add(move);
 		}
 		// right captures, en passant
-		if (ep && (c & sq[eps]) != 0) {
+		if (ep && (c & (1L << eps)) != 0) {
 			Move move = new Move(Piece.PAWN, eps - 9, eps, Piece.PAWN);
 			move.isEPCapture = true;
 			moves.add(move);
 		}
 		// single push
-		long singleMap = whitePawns >>> 8;
+		long singleMap = whitePawns << 8;
 		for (long sb = singleMap & ~board; sb != 0; sb &= sb - 1) {
-			int to = convert.get(sb & -sb);
+			int to = Long.numberOfTrailingZeros(sb);
 			moves.add(new Move(Piece.PAWN, to - 8, to));
 		}
 		// single push blocked
 		for (long sb = singleMap & blackBoard; sb != 0; sb &= sb - 1) {
-			int to = convert.get(sb & -sb);
+			int to = Long.numberOfTrailingZeros(sb);
 			Move move = new Move(Piece.PAWN, to - 8, to);
 			move.isInvalidMove = true;
 			moves.add(move);
 		}
 		// double push
-		long doubleMap = (whitePawns >>> 16) & 0b0000000000000000000000001111111100000000000000000000000000000000L & ((singleMap & ~board) >>> 8);
+		long doubleMap = (whitePawns << 16) & 0b0000000000000000000000000000000011111111000000000000000000000000L & ((singleMap & ~board) << 8);
 		for (long db = doubleMap & ~board; db != 0; db &= db - 1) {
-			int to = convert.get(db & -db);
+			int to = Long.numberOfTrailingZeros(db);
 			Move move = new Move(Piece.PAWN, to - 16, to);
 			move.isDPMove = true;
 			moves.add(move);
 		}
 		// double push blocked
 		for (long db = doubleMap & blackBoard; db != 0; db &= db - 1) {
-			int to = convert.get(db & -db);
+			int to = Long.numberOfTrailingZeros(db);
 			Move move = new Move(Piece.PAWN, to - 16, to, to - 8);
 			moves.add(move);
 		}
@@ -1446,18 +1438,18 @@ public class BoardState {
 			return moves;
 		}
 		for (long b = blackBoard; b != 0; b &= b - 1) {
-			int from = convert.get(b & -b);
+			int from = Long.numberOfTrailingZeros(b);
 			switch (blackMailbox[from]) {
 			case KNIGHT:
 				long knightMap = knightMoves[from] & ~blackBoard;
 				// quiet moves
 				for (long nb = knightMap & ~whiteBoard; nb != 0; nb &= nb - 1) {
-					int to = convert.get(nb & -nb);
+					int to = Long.numberOfTrailingZeros(nb);
 					moves.add(new Move(Piece.KNIGHT, from, to));
 				}
 				// captures
 				for (long nb = knightMap & whiteBoard; nb != 0; nb &= nb - 1) {
-					int to = convert.get(nb & -nb);
+					int to = Long.numberOfTrailingZeros(nb);
 					moves.add(new Move(Piece.KNIGHT, from, to, whiteMailbox[to]));
 				}
 				break;
@@ -1466,18 +1458,18 @@ public class BoardState {
 				long rookNorthMap = slideAttacks(from, northMask[from]) & ~blackBoard;
 				// quiet moves
 				for (long rb = rookNorthMap & ~whiteBoard; rb != 0; rb &= rb - 1) {
-					int to = convert.get(rb & -rb);
+					int to = Long.numberOfTrailingZeros(rb);
 					moves.add(new Move(Piece.ROOK, from, to));
 				}
 				// capture moves
 				long rookNorthCaptureMap = rookNorthMap & whiteBoard;
 				if (rookNorthCaptureMap != 0) {
-					int cap = convert.get(Long.highestOneBit(rookNorthCaptureMap));
+					int cap = Long.numberOfTrailingZeros(rookNorthCaptureMap);
 					moves.add(new Move(Piece.ROOK, from, cap));
 					// blocked moves
 					long rookNorthPseudoMap = pseudoBlackSlideAttacks(from, northMask[from]) & ~blackBoard;
 					for (long rb = rookNorthPseudoMap ^ rookNorthMap; rb != 0; rb &= rb - 1) {
-						int to = convert.get(rb & -rb);
+						int to = Long.numberOfTrailingZeros(rb);
 						Move move = new Move(Piece.ROOK, from, to, cap);
 						moves.add(move);
 					}
@@ -1487,18 +1479,18 @@ public class BoardState {
 				long rookSouthMap = slideAttacks(from, southMask[from]) & ~blackBoard;
 				// quiet moves
 				for (long rb = rookSouthMap & ~whiteBoard; rb != 0; rb &= rb - 1) {
-					int to = convert.get(rb & -rb);
+					int to = Long.numberOfTrailingZeros(rb);
 					moves.add(new Move(Piece.ROOK, from, to));
 				}
 				// capture moves
 				long rookSouthCaptureMap = rookSouthMap & whiteBoard;
 				if (rookSouthCaptureMap != 0) {
-					int cap = convert.get(rookSouthCaptureMap & -rookSouthCaptureMap);
+					int cap = 63 - Long.numberOfLeadingZeros(rookSouthCaptureMap);
 					moves.add(new Move(Piece.ROOK, from, cap));
 					// blocked moves
 					long rookSouthPseudoMap = pseudoBlackSlideAttacks(from, southMask[from]) & ~blackBoard;
 					for (long rb = rookSouthPseudoMap ^ rookSouthMap; rb != 0; rb &= rb - 1) {
-						int to = convert.get(rb & -rb);
+						int to = Long.numberOfTrailingZeros(rb);
 						Move move = new Move(Piece.ROOK, from, to, cap);
 						moves.add(move);
 					}
@@ -1508,18 +1500,18 @@ public class BoardState {
 				long rookEastMap = slideAttacks(from, eastMask[from]) & ~blackBoard;
 				// quiet moves
 				for (long rb = rookEastMap & ~whiteBoard; rb != 0; rb &= rb - 1) {
-					int to = convert.get(rb & -rb);
+					int to = Long.numberOfTrailingZeros(rb);
 					moves.add(new Move(Piece.ROOK, from, to));
 				}
 				// capture moves
 				long rookEastCaptureMap = rookEastMap & whiteBoard;
 				if (rookEastCaptureMap != 0) {
-					int cap = convert.get(Long.highestOneBit(rookEastCaptureMap));
+					int cap = Long.numberOfTrailingZeros(rookEastCaptureMap);
 					moves.add(new Move(Piece.ROOK, from, cap));
 					// blocked moves
 					long rookEastPseudoMap = pseudoBlackSlideAttacks(from, eastMask[from]) & ~blackBoard;
 					for (long rb = rookEastPseudoMap ^ rookEastMap; rb != 0; rb &= rb - 1) {
-						int to = convert.get(rb & -rb);
+						int to = Long.numberOfTrailingZeros(rb);
 						Move move = new Move(Piece.ROOK, from, to, cap);
 						moves.add(move);
 					}
@@ -1529,18 +1521,18 @@ public class BoardState {
 				long rookWestMap = slideAttacks(from, westMask[from]) & ~blackBoard;
 				// quiet moves
 				for (long rb = rookWestMap & ~whiteBoard; rb != 0; rb &= rb - 1) {
-					int to = convert.get(rb & -rb);
+					int to = Long.numberOfTrailingZeros(rb);
 					moves.add(new Move(Piece.ROOK, from, to));
 				}
 				// capture moves
 				long rookWestCaptureMap = rookWestMap & whiteBoard;
 				if (rookWestCaptureMap != 0) {
-					int cap = convert.get(rookWestCaptureMap & -rookWestCaptureMap);
+					int cap = 63 - Long.numberOfLeadingZeros(rookWestCaptureMap);
 					moves.add(new Move(Piece.ROOK, from, cap));
 					// blocked moves
 					long rookWestPseudoMap = pseudoBlackSlideAttacks(from, westMask[from]) & ~blackBoard;
 					for (long rb = rookWestPseudoMap ^ rookWestMap; rb != 0; rb &= rb - 1) {
-						int to = convert.get(rb & -rb);
+						int to = Long.numberOfTrailingZeros(rb);
 						Move move = new Move(Piece.ROOK, from, to, cap);
 						moves.add(move);
 					}
@@ -1551,18 +1543,18 @@ public class BoardState {
 				long bishopNorthEastMap = slideAttacks(from, northEastMask[from]) & ~blackBoard;
 				// quiet moves
 				for (long bb = bishopNorthEastMap & ~whiteBoard; bb != 0; bb &= bb - 1) {
-					int to = convert.get(bb & -bb);
+					int to = Long.numberOfTrailingZeros(bb);
 					moves.add(new Move(Piece.BISHOP, from, to));
 				}
 				// capture moves
 				long bishopNorthEastCaptureMap = bishopNorthEastMap & whiteBoard;
 				if (bishopNorthEastCaptureMap != 0) {
-					int cap = convert.get(Long.highestOneBit(bishopNorthEastCaptureMap));
+					int cap = Long.numberOfTrailingZeros(bishopNorthEastCaptureMap);
 					moves.add(new Move(Piece.BISHOP, from, cap));
 					// blocked moves
 					long bishopNorthEastPseudoMap = pseudoBlackSlideAttacks(from, northEastMask[from]) & ~blackBoard;
 					for (long bb = bishopNorthEastPseudoMap ^ bishopNorthEastMap; bb != 0; bb &= bb - 1) {
-						int to = convert.get(bb & -bb);
+						int to = Long.numberOfTrailingZeros(bb);
 						Move move = new Move(Piece.BISHOP, from, to, cap);
 						moves.add(move);
 					}
@@ -1572,18 +1564,18 @@ public class BoardState {
 				long bishopSouthEastMap = slideAttacks(from, southEastMask[from]) & ~blackBoard;
 				// quiet moves
 				for (long bb = bishopSouthEastMap & ~whiteBoard; bb != 0; bb &= bb - 1) {
-					int to = convert.get(bb & -bb);
+					int to = Long.numberOfTrailingZeros(bb);
 					moves.add(new Move(Piece.BISHOP, from, to));
 				}
 				// capture moves
 				long bishopSouthEastCaptureMap = bishopSouthEastMap & whiteBoard;
 				if (bishopSouthEastCaptureMap != 0) {
-					int cap = convert.get(bishopSouthEastCaptureMap & -bishopSouthEastCaptureMap);
+					int cap = 63 - Long.numberOfLeadingZeros(bishopSouthEastCaptureMap);
 					moves.add(new Move(Piece.BISHOP, from, cap));
 					// blocked moves
 					long bishopSouthEastPseudoMap = pseudoBlackSlideAttacks(from, southEastMask[from]) & ~blackBoard;
 					for (long bb = bishopSouthEastPseudoMap ^ bishopSouthEastMap; bb != 0; bb &= bb - 1) {
-						int to = convert.get(bb & -bb);
+						int to = Long.numberOfTrailingZeros(bb);
 						Move move = new Move(Piece.BISHOP, from, to, cap);
 						moves.add(move);
 					}
@@ -1593,18 +1585,18 @@ public class BoardState {
 				long bishopSouthWestMap = slideAttacks(from, southWestMask[from]) & ~blackBoard;
 				// quiet moves
 				for (long bb = bishopSouthWestMap & ~whiteBoard; bb != 0; bb &= bb - 1) {
-					int to = convert.get(bb & -bb);
+					int to = Long.numberOfTrailingZeros(bb);
 					moves.add(new Move(Piece.BISHOP, from, to));
 				}
 				// capture moves
 				long bishopSouthWestCaptureMap = bishopSouthWestMap & whiteBoard;
 				if (bishopSouthWestCaptureMap != 0) {
-					int cap = convert.get(bishopSouthWestCaptureMap & -bishopSouthWestCaptureMap);
+					int cap = 63 - Long.numberOfLeadingZeros(bishopSouthWestCaptureMap);
 					moves.add(new Move(Piece.BISHOP, from, cap));
 					// blocked moves
 					long bishopSouthWestPseudoMap = pseudoBlackSlideAttacks(from, southWestMask[from]) & ~blackBoard;
 					for (long bb = bishopSouthWestPseudoMap ^ bishopSouthWestMap; bb != 0; bb &= bb - 1) {
-						int to = convert.get(bb & -bb);
+						int to = Long.numberOfTrailingZeros(bb);
 						Move move = new Move(Piece.BISHOP, from, to, cap);
 						moves.add(move);
 					}
@@ -1614,18 +1606,18 @@ public class BoardState {
 				long bishopNorthWestMap = slideAttacks(from, northWestMask[from]) & ~blackBoard;
 				// quiet moves
 				for (long bb = bishopNorthWestMap & ~whiteBoard; bb != 0; bb &= bb - 1) {
-					int to = convert.get(bb & -bb);
+					int to = Long.numberOfTrailingZeros(bb);
 					moves.add(new Move(Piece.BISHOP, from, to));
 				}
 				// capture moves
 				long bishopNorthWestCaptureMap = bishopNorthWestMap & whiteBoard;
 				if (bishopNorthWestCaptureMap != 0) {
-					int cap = convert.get(Long.highestOneBit(bishopNorthWestCaptureMap));
+					int cap = Long.numberOfTrailingZeros(bishopNorthWestCaptureMap);
 					moves.add(new Move(Piece.BISHOP, from, cap));
 					// blocked moves
 					long bishopNorthWestPseudoMap = pseudoBlackSlideAttacks(from, northWestMask[from]) & ~blackBoard;
 					for (long bb = bishopNorthWestPseudoMap ^ bishopNorthWestMap; bb != 0; bb &= bb - 1) {
-						int to = convert.get(bb & -bb);
+						int to = Long.numberOfTrailingZeros(bb);
 						Move move = new Move(Piece.BISHOP, from, to, cap);
 						moves.add(move);
 					}
@@ -1636,18 +1628,18 @@ public class BoardState {
 				long queenNorthMap = slideAttacks(from, northMask[from]) & ~blackBoard;
 				// quiet moves
 				for (long qb = queenNorthMap & ~whiteBoard; qb != 0; qb &= qb - 1) {
-					int to = convert.get(qb & -qb);
+					int to = Long.numberOfTrailingZeros(qb);
 					moves.add(new Move(Piece.QUEEN, from, to));
 				}
 				// capture moves
 				long queenNorthCaptureMap = queenNorthMap & whiteBoard;
 				if (queenNorthCaptureMap != 0) {
-					int cap = convert.get(Long.highestOneBit(queenNorthCaptureMap));
+					int cap = Long.numberOfTrailingZeros(queenNorthCaptureMap);
 					moves.add(new Move(Piece.QUEEN, from, cap));
 					// blocked moves
 					long queenNorthPseudoMap = pseudoBlackSlideAttacks(from, northMask[from]) & ~blackBoard;
 					for (long qb = queenNorthPseudoMap ^ queenNorthMap; qb != 0; qb &= qb - 1) {
-						int to = convert.get(qb & -qb);
+						int to = Long.numberOfTrailingZeros(qb);
 						Move move = new Move(Piece.QUEEN, from, to, cap);
 						moves.add(move);
 					}
@@ -1657,18 +1649,18 @@ public class BoardState {
 				long queenSouthMap = slideAttacks(from, southMask[from]) & ~blackBoard;
 				// quiet moves
 				for (long qb = queenSouthMap & ~whiteBoard; qb != 0; qb &= qb - 1) {
-					int to = convert.get(qb & -qb);
+					int to = Long.numberOfTrailingZeros(qb);
 					moves.add(new Move(Piece.QUEEN, from, to));
 				}
 				// capture moves
 				long queenSouthCaptureMap = queenSouthMap & whiteBoard;
 				if (queenSouthCaptureMap != 0) {
-					int cap = convert.get(queenSouthCaptureMap & -queenSouthCaptureMap);
+					int cap = 63 - Long.numberOfLeadingZeros(queenSouthCaptureMap);
 					moves.add(new Move(Piece.QUEEN, from, cap));
 					// blocked moves
 					long queenSouthPseudoMap = pseudoBlackSlideAttacks(from, southMask[from]) & ~blackBoard;
 					for (long qb = queenSouthPseudoMap ^ queenSouthMap; qb != 0; qb &= qb - 1) {
-						int to = convert.get(qb & -qb);
+						int to = Long.numberOfTrailingZeros(qb);
 						Move move = new Move(Piece.QUEEN, from, to, cap);
 						moves.add(move);
 					}
@@ -1678,18 +1670,18 @@ public class BoardState {
 				long queenEastMap = slideAttacks(from, eastMask[from]) & ~blackBoard;
 				// quiet moves
 				for (long qb = queenEastMap & ~whiteBoard; qb != 0; qb &= qb - 1) {
-					int to = convert.get(qb & -qb);
+					int to = Long.numberOfTrailingZeros(qb);
 					moves.add(new Move(Piece.QUEEN, from, to));
 				}
 				// capture moves
 				long queenEastCaptureMap = queenEastMap & whiteBoard;
 				if (queenEastCaptureMap != 0) {
-					int cap = convert.get(Long.highestOneBit(queenEastCaptureMap));
+					int cap = Long.numberOfTrailingZeros(queenEastCaptureMap);
 					moves.add(new Move(Piece.QUEEN, from, cap));
 					// blocked moves
 					long queenEastPseudoMap = pseudoBlackSlideAttacks(from, eastMask[from]) & ~blackBoard;
 					for (long qb = queenEastPseudoMap ^ queenEastMap; qb != 0; qb &= qb - 1) {
-						int to = convert.get(qb & -qb);
+						int to = Long.numberOfTrailingZeros(qb);
 						Move move = new Move(Piece.QUEEN, from, to, cap);
 						moves.add(move);
 					}
@@ -1699,18 +1691,18 @@ public class BoardState {
 				long queenWestMap = slideAttacks(from, westMask[from]) & ~blackBoard;
 				// quiet moves
 				for (long qb = queenWestMap & ~whiteBoard; qb != 0; qb &= qb - 1) {
-					int to = convert.get(qb & -qb);
+					int to = Long.numberOfTrailingZeros(qb);
 					moves.add(new Move(Piece.QUEEN, from, to));
 				}
 				// capture moves
 				long queenWestCaptureMap = queenWestMap & whiteBoard;
 				if (queenWestCaptureMap != 0) {
-					int cap = convert.get(queenWestCaptureMap & -queenWestCaptureMap);
+					int cap = 63 - Long.numberOfLeadingZeros(queenWestCaptureMap);
 					moves.add(new Move(Piece.QUEEN, from, cap));
 					// blocked moves
 					long queenWestPseudoMap = pseudoBlackSlideAttacks(from, westMask[from]) & ~blackBoard;
 					for (long qb = queenWestPseudoMap ^ queenWestMap; qb != 0; qb &= qb - 1) {
-						int to = convert.get(qb & -qb);
+						int to = Long.numberOfTrailingZeros(qb);
 						Move move = new Move(Piece.QUEEN, from, to, cap);
 						moves.add(move);
 					}
@@ -1719,18 +1711,18 @@ public class BoardState {
 				long queenNorthEastMap = slideAttacks(from, northEastMask[from]) & ~blackBoard;
 				// quiet moves
 				for (long qb = queenNorthEastMap & ~whiteBoard; qb != 0; qb &= qb - 1) {
-					int to = convert.get(qb & -qb);
+					int to = Long.numberOfTrailingZeros(qb);
 					moves.add(new Move(Piece.QUEEN, from, to));
 				}
 				// capture moves
 				long queenNorthEastCaptureMap = queenNorthEastMap & whiteBoard;
 				if (queenNorthEastCaptureMap != 0) {
-					int cap = convert.get(Long.highestOneBit(queenNorthEastCaptureMap));
+					int cap = Long.numberOfTrailingZeros(queenNorthEastCaptureMap);
 					moves.add(new Move(Piece.QUEEN, from, cap));
 					// blocked moves
 					long queenNorthEastPseudoMap = pseudoBlackSlideAttacks(from, northEastMask[from]) & ~blackBoard;
 					for (long qb = queenNorthEastPseudoMap ^ queenNorthEastMap; qb != 0; qb &= qb - 1) {
-						int to = convert.get(qb & -qb);
+						int to = Long.numberOfTrailingZeros(qb);
 						Move move = new Move(Piece.QUEEN, from, to, cap);
 						moves.add(move);
 					}
@@ -1740,18 +1732,18 @@ public class BoardState {
 				long queenSouthEastMap = slideAttacks(from, southEastMask[from]) & ~blackBoard;
 				// quiet moves
 				for (long qb = queenSouthEastMap & ~whiteBoard; qb != 0; qb &= qb - 1) {
-					int to = convert.get(qb & -qb);
+					int to = Long.numberOfTrailingZeros(qb);
 					moves.add(new Move(Piece.QUEEN, from, to));
 				}
 				// capture moves
 				long queenSouthEastCaptureMap = queenSouthEastMap & whiteBoard;
 				if (queenSouthEastCaptureMap != 0) {
-					int cap = convert.get(queenSouthEastCaptureMap & -queenSouthEastCaptureMap);
+					int cap = 63 - Long.numberOfLeadingZeros(queenSouthEastCaptureMap);
 					moves.add(new Move(Piece.QUEEN, from, cap));
 					// blocked moves
 					long queenSouthEastPseudoMap = pseudoBlackSlideAttacks(from, southEastMask[from]) & ~blackBoard;
 					for (long qb = queenSouthEastPseudoMap ^ queenSouthEastMap; qb != 0; qb &= qb - 1) {
-						int to = convert.get(qb & -qb);
+						int to = Long.numberOfTrailingZeros(qb);
 						Move move = new Move(Piece.QUEEN, from, to, cap);
 						moves.add(move);
 					}
@@ -1761,18 +1753,18 @@ public class BoardState {
 				long queenSouthWestMap = slideAttacks(from, southWestMask[from]) & ~blackBoard;
 				// quiet moves
 				for (long qb = queenSouthWestMap & ~whiteBoard; qb != 0; qb &= qb - 1) {
-					int to = convert.get(qb & -qb);
+					int to = Long.numberOfTrailingZeros(qb);
 					moves.add(new Move(Piece.QUEEN, from, to));
 				}
 				// capture moves
 				long queenSouthWestCaptureMap = queenSouthWestMap & whiteBoard;
 				if (queenSouthWestCaptureMap != 0) {
-					int cap = convert.get(queenSouthWestCaptureMap & -queenSouthWestCaptureMap);
+					int cap = 63 - Long.numberOfLeadingZeros(queenSouthWestCaptureMap);
 					moves.add(new Move(Piece.QUEEN, from, cap));
 					// blocked moves
 					long queenSouthWestPseudoMap = pseudoBlackSlideAttacks(from, southWestMask[from]) & ~blackBoard;
 					for (long qb = queenSouthWestPseudoMap ^ queenSouthWestMap; qb != 0; qb &= qb - 1) {
-						int to = convert.get(qb & -qb);
+						int to = Long.numberOfTrailingZeros(qb);
 						Move move = new Move(Piece.QUEEN, from, to, cap);
 						moves.add(move);
 					}
@@ -1782,18 +1774,18 @@ public class BoardState {
 				long queenNorthWestMap = slideAttacks(from, northWestMask[from]) & ~blackBoard;
 				// quiet moves
 				for (long qb = queenNorthWestMap & ~whiteBoard; qb != 0; qb &= qb - 1) {
-					int to = convert.get(qb & -qb);
+					int to = Long.numberOfTrailingZeros(qb);
 					moves.add(new Move(Piece.QUEEN, from, to));
 				}
 				// capture moves
 				long queenNorthWestCaptureMap = queenNorthWestMap & whiteBoard;
 				if (queenNorthWestCaptureMap != 0) {
-					int cap = convert.get(Long.highestOneBit(queenNorthWestCaptureMap));
+					int cap = Long.numberOfTrailingZeros(queenNorthWestCaptureMap);
 					moves.add(new Move(Piece.QUEEN, from, cap));
 					// blocked moves
 					long queenNorthWestPseudoMap = pseudoBlackSlideAttacks(from, northWestMask[from]) & ~blackBoard;
 					for (long qb = queenNorthWestPseudoMap ^ queenNorthWestMap; qb != 0; qb &= qb - 1) {
-						int to = convert.get(qb & -qb);
+						int to = Long.numberOfTrailingZeros(qb);
 						Move move = new Move(Piece.QUEEN, from, to, cap);
 						moves.add(move);
 					}
@@ -1803,12 +1795,12 @@ public class BoardState {
 				long kingMap = kingMoves[from] & ~blackBoard;
 				// quiet moves
 				for (long kb = kingMap & ~whiteBoard; kb != 0; kb &= kb - 1) {
-					int to = convert.get(kb & -kb);
+					int to = Long.numberOfTrailingZeros(kb);
 					moves.add(new Move(Piece.KING, from, to));
 				}
 				// captures
 				for (long kb = kingMap & whiteBoard; kb != 0; kb &= kb - 1) {
-					int to = convert.get(kb & -kb);
+					int to = Long.numberOfTrailingZeros(kb);
 					moves.add(new Move(Piece.KING, from, to, whiteMailbox[to]));
 				}
 				// castling
@@ -1840,28 +1832,28 @@ public class BoardState {
 		}
 		// pawns moves are handled separately
 		// left captures
-		long a = blackPawns << 9;
-		long b = a & 0b1111111000000000000000000000000000000000000000000000000000000000L;
-		long c = a & 0b0000000011111110111111101111111011111110111111101111111011111110L;
+		long a = blackPawns >>> 9;
+		long b = a & 0b0000000000000000000000000000000000000000000000000000000001111111L;
+		long c = a & 0b0111111101111111011111110111111101111111011111110111111100000000L;
 		// left captures, no promotion, no en passant
 		for (long lb = c & whiteBoard; lb != 0; lb &= lb - 1) {
-			int to = convert.get(lb & -lb);
+			int to = Long.numberOfTrailingZeros(lb);
 			moves.add(new Move(Piece.PAWN, to + 9, to, whiteMailbox[to]));
 		}
 		// invalid left captures, no promotion, no en passant
 		long invalidLeft = c & ~board;
 		if (ep) {
-			invalidLeft = (invalidLeft | sq[eps]) ^ sq[eps];
+			invalidLeft = (invalidLeft | (1L << eps)) ^ (1L << eps);
 		}
 		for (long lb = invalidLeft; lb != 0; lb &= lb - 1) {
-			int to = convert.get(lb & -lb);
+			int to = Long.numberOfTrailingZeros(lb);
 			Move move = new Move(Piece.PAWN, to + 9, to);
 			move.isInvalidMove = true;
 			moves.add(move);
 		}
 		// left captures, promotion
 		for (long lb = b & whiteBoard; lb != 0; lb &= lb - 1) {
-			int to = convert.get(lb & -lb);
+			int to = Long.numberOfTrailingZeros(lb);
 			moves.add(new Move(Piece.PAWN, Piece.QUEEN, to + 9, to, whiteMailbox[to]));
 			moves.add(new Move(Piece.PAWN, Piece.KNIGHT, to + 9, to, whiteMailbox[to]));
 			moves.add(new Move(Piece.PAWN, Piece.ROOK, to + 9, to, whiteMailbox[to]));
@@ -1869,7 +1861,7 @@ public class BoardState {
 		}
 		// invalid left captures, promotion
 		for (long lb = b & ~board; lb != 0; lb &= lb - 1) {
-			int to = convert.get(lb & -lb);
+			int to = Long.numberOfTrailingZeros(lb);
 			Move move = new Move(Piece.PAWN, Piece.QUEEN, to + 9, to);
 			move.isInvalidMove = true;
 			moves.add(move);
@@ -1884,34 +1876,34 @@ public class BoardState {
 			moves.add(move);
 		}
 		// left captures, en passant
-		if (ep && (c & sq[eps]) != 0) {
+		if (ep && (c & (1L << eps)) != 0) {
 			Move move = new Move(Piece.PAWN, eps + 9, eps, Piece.PAWN);
 			move.isEPCapture = true;
 			moves.add(move);
 		}
 		// right captures
-		a = blackPawns << 7;
-		b = a & 0b0111111100000000000000000000000000000000000000000000000000000000L;
-		c = a & 0b0000000001111111011111110111111101111111011111110111111101111111L;
+		a = blackPawns >>> 7;
+		b = a & 0b0000000000000000000000000000000000000000000000000000000011111110L;
+		c = a & 0b1111111011111110111111101111111011111110111111101111111000000000L;
 		// right captures, no promotion, no en passant
 		for (long lb = c & whiteBoard; lb != 0; lb &= lb - 1) {
-			int to = convert.get(lb & -lb);
+			int to = Long.numberOfTrailingZeros(lb);
 			moves.add(new Move(Piece.PAWN, to + 7, to, whiteMailbox[to]));
 		}
 		// invalid right captures, no promotion, no en passant
 		long invalidRight = c & ~board;
 		if (ep) {
-			invalidRight = (invalidRight | sq[eps]) ^ sq[eps];
+			invalidRight = (invalidRight | (1L << eps)) ^ (1L << eps);
 		}
 		for (long lb = invalidRight; lb != 0; lb &= lb - 1) {
-			int to = convert.get(lb & -lb);
+			int to = Long.numberOfTrailingZeros(lb);
 			Move move = new Move(Piece.PAWN, to + 7, to);
 			move.isInvalidMove = true;
 			moves.add(move);
 		}
 		// right captures, promotion
 		for (long lb = b & whiteBoard; lb != 0; lb &= lb - 1) {
-			int to = convert.get(lb & -lb);
+			int to = Long.numberOfTrailingZeros(lb);
 			moves.add(new Move(Piece.PAWN, Piece.QUEEN, to + 7, to, whiteMailbox[to]));
 			moves.add(new Move(Piece.PAWN, Piece.KNIGHT, to + 7, to, whiteMailbox[to]));
 			moves.add(new Move(Piece.PAWN, Piece.ROOK, to + 7, to, whiteMailbox[to]));
@@ -1919,7 +1911,7 @@ public class BoardState {
 		}
 		// invalid right captures, promotion
 		for (long lb = b & ~board; lb != 0; lb &= lb - 1) {
-			int to = convert.get(lb & -lb);
+			int to = Long.numberOfTrailingZeros(lb);
 			Move move = new Move(Piece.PAWN, Piece.QUEEN, to + 7, to);
 			move.isInvalidMove = true;
 			moves.add(move);
@@ -1934,43 +1926,54 @@ public class BoardState {
 			moves.add(move);
 		}
 		// right captures, en passant
-		if (ep && (c & sq[eps]) != 0) {
+		if (ep && (c & (1L << eps)) != 0) {
 			Move move = new Move(Piece.PAWN, eps + 7, eps, Piece.PAWN);
 			move.isEPCapture = true;
 			moves.add(move);
 		}
 		// single push
-		long singleMap = blackPawns << 8;
+		long singleMap = blackPawns >>> 8;
 		for (long sb = singleMap & ~board; sb != 0; sb &= sb - 1) {
-			int to = convert.get(sb & -sb);
+			int to = Long.numberOfTrailingZeros(sb);
 			moves.add(new Move(Piece.PAWN, to + 8, to));
 		}
 		// single push blocked
 		for (long sb = singleMap & whiteBoard; sb != 0; sb &= sb - 1) {
-			int to = convert.get(sb & -sb);
+			int to = Long.numberOfTrailingZeros(sb);
 			Move move = new Move(Piece.PAWN, to + 8, to);
 			move.isInvalidMove = true;
 			moves.add(move);
 		}
 		// double push
-		long doubleMap = (blackPawns << 16) & 0b0000000000000000000000000000000011111111000000000000000000000000L & ((singleMap & ~board) << 8);
+		long doubleMap = (blackPawns >>> 16) & 0b0000000000000000000000001111111100000000000000000000000000000000L & ((singleMap & ~board) >>> 8);
 		for (long db = doubleMap & ~board; db != 0; db &= db - 1) {
-			int to = convert.get(db & -db);
+			int to = Long.numberOfTrailingZeros(db);
 			Move move = new Move(Piece.PAWN, to + 16, to);
 			move.isDPMove = true;
 			moves.add(move);
 		}
 		// double push blocked
 		for (long db = doubleMap & blackBoard; db != 0; db &= db - 1) {
-			int to = convert.get(db & -db);
+			int to = Long.numberOfTrailingZeros(db);
 			Move move = new Move(Piece.PAWN, to + 16, to, to + 8);
 			moves.add(move);
 		}
 		return moves;
 	}
 
+	// every mailbox write in make and undo goes through these so that the zobrist key stays up to date
+	private void setWhiteMailbox(int x, Piece p) {
+		hc ^= whiteKeys[whiteMailbox[x].ordinal()][x] ^ whiteKeys[p.ordinal()][x];
+		whiteMailbox[x] = p;
+	}
+
+	private void setBlackMailbox(int x, Piece p) {
+		hc ^= blackKeys[blackMailbox[x].ordinal()][x] ^ blackKeys[p.ordinal()][x];
+		blackMailbox[x] = p;
+	}
+
 	private void whiteMoveQuiet(Move m) {
-		long fromBB = sq[m.from], toBB = sq[m.to], fromToBB = fromBB ^ toBB;
+		long fromBB = (1L << (m.from)), toBB = (1L << (m.to)), fromToBB = fromBB ^ toBB;
 		switch (m.p) {
 		case KNIGHT:
 			whiteKnights ^= fromToBB;
@@ -2002,17 +2005,13 @@ public class BoardState {
 		whiteBoard ^= fromToBB;
 		board ^= fromToBB;
 
-		//        hc ^= wt.get(whiteMailbox[m.from]).get(m.from);
-		//        hc ^= wt.get(Piece.NONE).get(m.from);
-		whiteMailbox[m.from] = Piece.NONE;
+		setWhiteMailbox(m.from, Piece.NONE);
 
-		//        hc ^= wt.get(whiteMailbox[m.to]).get(m.to);
-		//        hc ^= wt.get(m.p).get(m.to);
-		whiteMailbox[m.to] = m.p;
+		setWhiteMailbox(m.to, m.p);
 	}
 
 	private void blackMoveQuiet(Move m) {
-		long fromBB = sq[m.from], toBB = sq[m.to], fromToBB = fromBB ^ toBB;
+		long fromBB = (1L << (m.from)), toBB = (1L << (m.to)), fromToBB = fromBB ^ toBB;
 		switch (m.p) {
 		case KNIGHT:
 			blackKnights ^= fromToBB;
@@ -2044,17 +2043,13 @@ public class BoardState {
 		blackBoard ^= fromToBB;
 		board ^= fromToBB;
 
-		//        hc ^= bt.get(blackMailbox[m.from]).get(m.from);
-		//        hc ^= bt.get(Piece.NONE).get(m.from);
-		blackMailbox[m.from] = Piece.NONE;
+		setBlackMailbox(m.from, Piece.NONE);
 
-		//        hc ^= bt.get(blackMailbox[m.to]).get(m.to);
-		//        hc ^= bt.get(m.p).get(m.to);
-		blackMailbox[m.to] = m.p;
+		setBlackMailbox(m.to, m.p);
 	}
 
 	private void whiteMoveCapture(Move m) {
-		long fromBB = sq[m.from], toBB = sq[m.to], fromToBB = fromBB ^ toBB;
+		long fromBB = (1L << (m.from)), toBB = (1L << (m.to)), fromToBB = fromBB ^ toBB;
 		switch (m.p) {
 		case KNIGHT:
 			whiteKnights ^= fromToBB;
@@ -2109,21 +2104,15 @@ public class BoardState {
 		blackBoard ^= toBB;
 		board ^= fromBB;
 
-		//		hc ^= wt.get(whiteMailbox[m.from]).get(m.from);
-		//		hc ^= wt.get(Piece.NONE).get(m.from);
-		whiteMailbox[m.from] = Piece.NONE;
+		setWhiteMailbox(m.from, Piece.NONE);
 
-		//		hc ^= wt.get(whiteMailbox[m.to]).get(m.to);
-		//		hc ^= wt.get(m.p).get(m.to);
-		whiteMailbox[m.to] = m.p;
+		setWhiteMailbox(m.to, m.p);
 
-		//		hc ^= bt.get(blackMailbox[m.to]).get(m.to);
-		//		hc ^= bt.get(Piece.NONE).get(m.to);
-		blackMailbox[m.to] = Piece.NONE;
+		setBlackMailbox(m.to, Piece.NONE);
 	}
 
 	private void blackMoveCapture(Move m) {
-		long fromBB = sq[m.from], toBB = sq[m.to], fromToBB = fromBB ^ toBB;
+		long fromBB = (1L << (m.from)), toBB = (1L << (m.to)), fromToBB = fromBB ^ toBB;
 		switch (m.p) {
 		case KNIGHT:
 			blackKnights ^= fromToBB;
@@ -2178,17 +2167,11 @@ public class BoardState {
 		whiteBoard ^= toBB;
 		board ^= fromBB;
 
-		//		hc ^= bt.get(blackMailbox[m.from]).get(m.from);
-		//		hc ^= bt.get(Piece.NONE).get(m.from);
-		blackMailbox[m.from] = Piece.NONE;
+		setBlackMailbox(m.from, Piece.NONE);
 
-		//		hc ^= bt.get(blackMailbox[m.to]).get(m.to);
-		//		hc ^= bt.get(m.p).get(m.to);
-		blackMailbox[m.to] = m.p;
+		setBlackMailbox(m.to, m.p);
 
-		//		hc ^= wt.get(whiteMailbox[m.to]).get(m.to);
-		//		hc ^= wt.get(Piece.NONE).get(m.to);
-		whiteMailbox[m.to] = Piece.NONE;
+		setWhiteMailbox(m.to, Piece.NONE);
 	}
 
 	private void whiteKingsideCastle() {
@@ -2224,7 +2207,7 @@ public class BoardState {
 	}
 
 	private void whitePromote(Move m) {
-		long fromBB = sq[m.from], toBB = sq[m.to], fromToBB = fromBB ^ toBB;
+		long fromBB = (1L << (m.from)), toBB = (1L << (m.to)), fromToBB = fromBB ^ toBB;
 		whitePawns ^= fromBB;
 		if (m.r == Piece.QUEEN) {
 			whiteQueens ^= toBB;
@@ -2255,9 +2238,7 @@ public class BoardState {
 				break;
 			}
 
-			//			hc ^= bt.get(blackMailbox[m.to]).get(m.to);
-			//			hc ^= bt.get(Piece.NONE).get(m.to);
-			blackMailbox[m.to] = Piece.NONE;
+			setBlackMailbox(m.to, Piece.NONE);
 
 			blackBoard ^= toBB;
 			board ^= fromBB;
@@ -2266,18 +2247,14 @@ public class BoardState {
 		}
 		whiteBoard ^= fromToBB;
 
-		//		hc ^= wt.get(whiteMailbox[m.from]).get(m.from);
-		//		hc ^= wt.get(Piece.NONE).get(m.from);
-		whiteMailbox[m.from] = Piece.NONE;
+		setWhiteMailbox(m.from, Piece.NONE);
 
-		//		hc ^= wt.get(whiteMailbox[m.to]).get(m.to);
-		//		hc ^= wt.get(m.r).get(m.to);
-		whiteMailbox[m.to] = m.r;
+		setWhiteMailbox(m.to, m.r);
 		ep = false;
 	}
 
 	private void blackPromote(Move m) {
-		long fromBB = sq[m.from], toBB = sq[m.to], fromToBB = fromBB ^ toBB;
+		long fromBB = (1L << (m.from)), toBB = (1L << (m.to)), fromToBB = fromBB ^ toBB;
 		blackPawns ^= fromBB;
 		if (m.r == Piece.QUEEN) {
 			blackQueens ^= toBB;
@@ -2308,9 +2285,7 @@ public class BoardState {
 				break;
 			}
 
-			//			hc ^= wt.get(whiteMailbox[m.to]).get(m.to);
-			//			hc ^= wt.get(Piece.NONE).get(m.to);
-			whiteMailbox[m.to] = Piece.NONE;
+			setWhiteMailbox(m.to, Piece.NONE);
 
 			whiteBoard ^= toBB;
 			board ^= fromBB;
@@ -2319,38 +2294,30 @@ public class BoardState {
 		}
 		blackBoard ^= fromToBB;
 
-		//		hc ^= bt.get(blackMailbox[m.from]).get(m.from);
-		//		hc ^= bt.get(Piece.NONE).get(m.from);
-		blackMailbox[m.from] = Piece.NONE;
+		setBlackMailbox(m.from, Piece.NONE);
 
-		//		hc ^= bt.get(blackMailbox[m.to]).get(m.to);
-		//		hc ^= bt.get(m.r).get(m.to);
-		blackMailbox[m.to] = m.r;
+		setBlackMailbox(m.to, m.r);
 		ep = false;
 	}
 
 	private void whiteEPCapture(Move m) {
 		whiteMoveQuiet(m);
 		int cap = 8 * (m.from / 8) + (m.to % 8);
-		blackPawns ^= sq[cap];
-		blackBoard ^= sq[cap];
-		board ^= sq[cap];
+		blackPawns ^= 1L << cap;
+		blackBoard ^= 1L << cap;
+		board ^= 1L << cap;
 
-		//        hc ^= bt.get(blackMailbox[cap]).get(cap);
-		//        hc ^= bt.get(Piece.NONE).get(cap);
-		blackMailbox[cap] = Piece.NONE;
+		setBlackMailbox(cap, Piece.NONE);
 	}
 
 	private void blackEPCapture(Move m) {
 		blackMoveQuiet(m);
 		int cap = 8 * (m.from / 8) + (m.to % 8);
-		whitePawns ^= sq[cap];
-		whiteBoard ^= sq[cap];
-		board ^= sq[cap];
+		whitePawns ^= 1L << cap;
+		whiteBoard ^= 1L << cap;
+		board ^= 1L << cap;
 
-		//        hc ^= wt.get(whiteMailbox[cap]).get(cap);
-		//        hc ^= wt.get(Piece.NONE).get(cap);
-		whiteMailbox[cap] = Piece.NONE;
+		setWhiteMailbox(cap, Piece.NONE);
 	}
 
 	private void whiteInvalidMove() {
@@ -2378,6 +2345,7 @@ public class BoardState {
 	}
 
 	public void whiteMove(Move m) {
+		hc ^= stateHash();
 		prevWhiteKingside.addLast(whiteKingside);
 		prevWhiteQueenside.addLast(whiteQueenside);
 		prevEp.addLast(ep);
@@ -2402,9 +2370,11 @@ public class BoardState {
 		} else {
 			whiteMoveQuiet(m);
 		}
+		hc ^= stateHash();
 	}
 
 	public void blackMove(Move m) {
+		hc ^= stateHash();
 		prevBlackKingside.addLast(blackKingside);
 		prevBlackQueenside.addLast(blackQueenside);
 		prevEp.addLast(ep);
@@ -2429,10 +2399,11 @@ public class BoardState {
 		} else {
 			blackMoveQuiet(m);
 		}
+		hc ^= stateHash();
 	}
 
 	private void undoWhiteMoveQuiet(Move m) {
-		long fromBB = sq[m.from], toBB = sq[m.to], fromToBB = fromBB ^ toBB;
+		long fromBB = (1L << (m.from)), toBB = (1L << (m.to)), fromToBB = fromBB ^ toBB;
 		switch (m.p) {
 		case KNIGHT:
 			whiteKnights ^= fromToBB;
@@ -2456,17 +2427,13 @@ public class BoardState {
 		whiteBoard ^= fromToBB;
 		board ^= fromToBB;
 
-		//        hc ^= wt.get(whiteMailbox[m.from]).get(m.from);
-		//        hc ^= wt.get(m.p).get(m.from);
-		whiteMailbox[m.from] = m.p;
+		setWhiteMailbox(m.from, m.p);
 
-		//        hc ^= wt.get(whiteMailbox[m.to]).get(m.to);
-		//        hc ^= wt.get(Piece.NONE).get(m.to);
-		whiteMailbox[m.to] = Piece.NONE;
+		setWhiteMailbox(m.to, Piece.NONE);
 	}
 
 	private void undoBlackMoveQuiet(Move m) {
-		long fromBB = sq[m.from], toBB = sq[m.to], fromToBB = fromBB ^ toBB;
+		long fromBB = (1L << (m.from)), toBB = (1L << (m.to)), fromToBB = fromBB ^ toBB;
 		switch (m.p) {
 		case KNIGHT:
 			blackKnights ^= fromToBB;
@@ -2490,17 +2457,13 @@ public class BoardState {
 		blackBoard ^= fromToBB;
 		board ^= fromToBB;
 
-		//        hc ^= bt.get(blackMailbox[m.from]).get(m.from);
-		//        hc ^= bt.get(m.p).get(m.from);
-		blackMailbox[m.from] = m.p;
+		setBlackMailbox(m.from, m.p);
 
-		//        hc ^= bt.get(blackMailbox[m.to]).get(m.to);
-		//        hc ^= bt.get(Piece.NONE).get(m.to);
-		blackMailbox[m.to] = Piece.NONE;
+		setBlackMailbox(m.to, Piece.NONE);
 	}
 
 	private void undoWhiteMoveCapture(Move m) {
-		long fromBB = sq[m.from], toBB = sq[m.to], fromToBB = fromBB ^ toBB;
+		long fromBB = (1L << (m.from)), toBB = (1L << (m.to)), fromToBB = fromBB ^ toBB;
 		switch (m.p) {
 		case KNIGHT:
 			whiteKnights ^= fromToBB;
@@ -2545,21 +2508,15 @@ public class BoardState {
 		blackBoard ^= toBB;
 		board ^= fromBB;
 
-		//        hc ^= wt.get(whiteMailbox[m.from]).get(m.from);
-		//        hc ^= wt.get(m.p).get(m.from);
-		whiteMailbox[m.from] = m.p;
+		setWhiteMailbox(m.from, m.p);
 
-		//        hc ^= wt.get(whiteMailbox[m.to]).get(m.to);
-		//        hc ^= wt.get(Piece.NONE).get(m.to);
-		whiteMailbox[m.to] = Piece.NONE;
+		setWhiteMailbox(m.to, Piece.NONE);
 
-		//        hc ^= bt.get(blackMailbox[m.to]).get(m.to);
-		//        hc ^= bt.get(m.q).get(m.to);
-		blackMailbox[m.to] = m.q;
+		setBlackMailbox(m.to, m.q);
 	}
 
 	private void undoBlackMoveCapture(Move m) {
-		long fromBB = sq[m.from], toBB = sq[m.to], fromToBB = fromBB ^ toBB;
+		long fromBB = (1L << (m.from)), toBB = (1L << (m.to)), fromToBB = fromBB ^ toBB;
 		switch (m.p) {
 		case KNIGHT:
 			blackKnights ^= fromToBB;
@@ -2604,17 +2561,11 @@ public class BoardState {
 		whiteBoard ^= toBB;
 		board ^= fromBB;
 
-		//        hc ^= bt.get(blackMailbox[m.from]).get(m.from);
-		//        hc ^= bt.get(m.p).get(m.from);
-		blackMailbox[m.from] = m.p;
+		setBlackMailbox(m.from, m.p);
 
-		//        hc ^= bt.get(blackMailbox[m.to]).get(m.to);
-		//        hc ^= bt.get(Piece.NONE).get(m.to);
-		blackMailbox[m.to] = Piece.NONE;
+		setBlackMailbox(m.to, Piece.NONE);
 
-		//        hc ^= wt.get(whiteMailbox[m.to]).get(m.to);
-		//        hc ^= wt.get(m.q).get(m.to);
-		whiteMailbox[m.to] = m.q;
+		setWhiteMailbox(m.to, m.q);
 	}
 
 	private void undoWhiteKingsideCastle() {
@@ -2646,7 +2597,7 @@ public class BoardState {
 	}
 
 	private void undoWhitePromote(Move m) {
-		long fromBB = sq[m.from], toBB = sq[m.to], fromToBB = fromBB ^ toBB;
+		long fromBB = (1L << (m.from)), toBB = (1L << (m.to)), fromToBB = fromBB ^ toBB;
 		whitePawns ^= fromBB;
 		if (m.r == Piece.QUEEN) {
 			whiteQueens ^= toBB;
@@ -2675,9 +2626,7 @@ public class BoardState {
 				break;
 			}
 
-			//            hc ^= bt.get(blackMailbox[m.to]).get(m.to);
-			//            hc ^= bt.get(m.q).get(m.to);
-			blackMailbox[m.to] = m.q;
+			setBlackMailbox(m.to, m.q);
 
 			blackBoard ^= toBB;
 			board ^= fromBB;
@@ -2686,17 +2635,13 @@ public class BoardState {
 		}
 		whiteBoard ^= fromToBB;
 
-		//        hc ^= wt.get(whiteMailbox[m.from]).get(m.from);
-		//        hc ^= wt.get(m.p).get(m.from);
-		whiteMailbox[m.from] = m.p;
+		setWhiteMailbox(m.from, m.p);
 
-		//        hc ^= wt.get(whiteMailbox[m.to]).get(m.to);
-		//        hc ^= wt.get(Piece.NONE).get(m.to);
-		whiteMailbox[m.to] = Piece.NONE;
+		setWhiteMailbox(m.to, Piece.NONE);
 	}
 
 	private void undoBlackPromote(Move m) {
-		long fromBB = sq[m.from], toBB = sq[m.to], fromToBB = fromBB ^ toBB;
+		long fromBB = (1L << (m.from)), toBB = (1L << (m.to)), fromToBB = fromBB ^ toBB;
 		blackPawns ^= fromBB;
 		if (m.r == Piece.QUEEN) {
 			blackQueens ^= toBB;
@@ -2725,9 +2670,7 @@ public class BoardState {
 				break;
 			}
 
-			//            hc ^= wt.get(whiteMailbox[m.to]).get(m.to);
-			//            hc ^= wt.get(m.q).get(m.to);
-			whiteMailbox[m.to] = m.q;
+			setWhiteMailbox(m.to, m.q);
 
 			whiteBoard ^= toBB;
 			board ^= fromBB;
@@ -2736,37 +2679,29 @@ public class BoardState {
 		}
 		blackBoard ^= fromToBB;
 
-		//        hc ^= bt.get(blackMailbox[m.from]).get(m.from);
-		//        hc ^= bt.get(m.p).get(m.from);
-		blackMailbox[m.from] = m.p;
+		setBlackMailbox(m.from, m.p);
 
-		//        hc ^= bt.get(blackMailbox[m.to]).get(m.to);
-		//        hc ^= bt.get(Piece.NONE).get(m.to);
-		blackMailbox[m.to] = Piece.NONE;
+		setBlackMailbox(m.to, Piece.NONE);
 	}
 
 	private void undoWhiteEPCapture(Move m) {
 		undoWhiteMoveQuiet(m);
 		int cap = 8 * (m.from / 8) + (m.to % 8);
-		blackPawns ^= sq[cap];
-		blackBoard ^= sq[cap];
-		board ^= sq[cap];
+		blackPawns ^= 1L << cap;
+		blackBoard ^= 1L << cap;
+		board ^= 1L << cap;
 
-		//        hc ^= bt.get(blackMailbox[cap]).get(cap);
-		//        hc ^= bt.get(Piece.PAWN).get(cap);
-		blackMailbox[cap] = Piece.PAWN;
+		setBlackMailbox(cap, Piece.PAWN);
 	}
 
 	private void undoBlackEPCapture(Move m) {
 		undoBlackMoveQuiet(m);
 		int cap = 8 * (m.from / 8) + (m.to % 8);
-		whitePawns ^= sq[cap];
-		whiteBoard ^= sq[cap];
-		board ^= sq[cap];
+		whitePawns ^= 1L << cap;
+		whiteBoard ^= 1L << cap;
+		board ^= 1L << cap;
 
-		//        hc ^= wt.get(whiteMailbox[cap]).get(cap);
-		//        hc ^= wt.get(Piece.PAWN).get(cap);
-		whiteMailbox[cap] = Piece.PAWN;
+		setWhiteMailbox(cap, Piece.PAWN);
 	}
 
 	private void undoWhiteInvalidMove() {
@@ -2811,12 +2746,14 @@ public class BoardState {
 		} else {
 			undoWhiteMoveQuiet(m);
 		}
+		hc ^= stateHash();
 		whiteKingside = prevWhiteKingside.pollLast();
 		whiteQueenside = prevWhiteQueenside.pollLast();
 		ep = prevEp.pollLast();
 		eps = prevEps.pollLast();
 		endGame = false;
 		hasBlackKing = hasWhiteKing = true;
+		hc ^= stateHash();
 	}
 
 	public void undoBlackMove(Move m) {
@@ -2839,12 +2776,14 @@ public class BoardState {
 		}
 		// note: ep does not need to be updated because when searching the game tree, every undo is followed by a new
 		// move that rewrites ep anyway.
+		hc ^= stateHash();
 		blackKingside = prevBlackKingside.pollLast();
 		blackQueenside = prevBlackQueenside.pollLast();
 		ep = prevEp.pollLast();
 		eps = prevEps.pollLast();
 		endGame = false;
 		hasBlackKing = hasWhiteKing = true;
+		hc ^= stateHash();
 	}
 
 	public String sense(int x) {
@@ -2880,40 +2819,40 @@ public class BoardState {
 
 		// white
 		for (long b = whiteBoard; b != 0; b &= b - 1) {
-			int from = convert.get(b & -b);
+			int from = Long.numberOfTrailingZeros(b);
 			switch (whiteMailbox[from]) {
 			case KNIGHT:
 				long knightMap = knightMoves[from] & ~whiteBoard;
 				for (long nb = knightMap; nb != 0; nb &= nb - 1) {
-					int to = convert.get(nb & -nb);
+					int to = Long.numberOfTrailingZeros(nb);
 					l2.get(0)[0][to] += genes[0 + 64] * genes[to];
 				}
 				break;
 			case ROOK:
 				long rookMap = (slideAttacks(from, rankMask[from]) ^ slideAttacks(from, fileMask[from])) & ~whiteBoard;
 				for (long rb = rookMap; rb != 0; rb &= rb - 1) {
-					int to = convert.get(rb & -rb);
+					int to = Long.numberOfTrailingZeros(rb);
 					l2.get(0)[1][to] += genes[1 + 64] * genes[to];
 				}
 				break;
 			case BISHOP:
 				long bishopMap = (slideAttacks(from, diagonalMask[from]) ^ slideAttacks(from, antiDiagonalMask[from])) & ~whiteBoard;
 				for (long bb = bishopMap; bb != 0; bb &= bb - 1) {
-					int to = convert.get(bb & -bb);
+					int to = Long.numberOfTrailingZeros(bb);
 					l2.get(0)[2][to] += genes[2 + 64] * genes[to];
 				}
 				break;
 			case QUEEN:
 				long queenMap = (slideAttacks(from, rankMask[from]) ^ slideAttacks(from, fileMask[from]) ^ slideAttacks(from, diagonalMask[from]) ^ slideAttacks(from, antiDiagonalMask[from])) & ~whiteBoard;
 				for (long qb = queenMap; qb != 0; qb &= qb - 1) {
-					int to = convert.get(qb & -qb);
+					int to = Long.numberOfTrailingZeros(qb);
 					l2.get(0)[3][to] += genes[3 + 64] * genes[to];
 				}
 				break;
 			case KING:
 				long kingMap = kingMoves[from] & ~whiteBoard;
 				for (long kb = kingMap; kb != 0; kb &= kb - 1) {
-					int to = convert.get(kb & -kb);
+					int to = Long.numberOfTrailingZeros(kb);
 					l2.get(0)[4][to] += genes[4 + 64] * genes[to];
 				}
 				break;
@@ -2921,91 +2860,91 @@ public class BoardState {
 		}
 		// pawns moves are handled separately
 		// left captures
-		long a = whitePawns >>> 7;
-		long d = a & 0b1111111011111110111111101111111011111110111111101111111011111110L;
+		long a = whitePawns << 7;
+		long d = a & 0b0111111101111111011111110111111101111111011111110111111101111111L;
 		// left captures, no promotion, no en passant
 		for (long lb = d & blackBoard; lb != 0; lb &= lb - 1) {
-			int to = convert.get(lb & -lb);
+			int to = Long.numberOfTrailingZeros(lb);
 			l2.get(0)[5][to] += genes[5 + 64] * genes[to];
 		}
 		// left captures, en passant
-		if (ep && (d & sq[eps]) != 0 && color == 1) {
+		if (ep && (d & (1L << eps)) != 0 && color == 1) {
 			l2.get(0)[5][eps - 8] += genes[5 + 64] * genes[eps - 8];
 		}
 		// right captures
-		a = whitePawns >>> 9;
-		d = a & 0b0111111101111111011111110111111101111111011111110111111101111111L;
+		a = whitePawns << 9;
+		d = a & 0b1111111011111110111111101111111011111110111111101111111011111110L;
 		// right captures, no promotion, no en passant
 		for (long lb = d & blackBoard; lb != 0; lb &= lb - 1) {
-			int to = convert.get(lb & -lb);
+			int to = Long.numberOfTrailingZeros(lb);
 			l2.get(0)[5][to] += genes[5 + 64] * genes[to];
 		}
 		// right captures, en passant
-		if (ep && (d & sq[eps]) != 0 && color == 1) {
+		if (ep && (d & (1L << eps)) != 0 && color == 1) {
 			l2.get(0)[5][eps - 8] += genes[5 + 64] * genes[eps - 8];
 		}
 		// black
 		for (long b = blackBoard; b != 0; b &= b - 1) {
-			int from = convert.get(b & -b);
+			int from = Long.numberOfTrailingZeros(b);
 			switch (blackMailbox[from]) {
 			case KNIGHT:
 				long knightMap = knightMoves[from] & ~blackBoard;
 				for (long nb = knightMap; nb != 0; nb &= nb - 1) {
-					int to = convert.get(nb & -nb);
+					int to = Long.numberOfTrailingZeros(nb);
 					l2.get(0)[0][to] -= genes[6 + 64] * genes[to];
 				}
 				break;
 			case ROOK:
 				long rookMap = (slideAttacks(from, rankMask[from]) ^ slideAttacks(from, fileMask[from])) & ~blackBoard;
 				for (long rb = rookMap; rb != 0; rb &= rb - 1) {
-					int to = convert.get(rb & -rb);
+					int to = Long.numberOfTrailingZeros(rb);
 					l2.get(0)[1][to] -= genes[7 + 64] * genes[to];
 				}
 				break;
 			case BISHOP:
 				long bishopMap = (slideAttacks(from, diagonalMask[from]) ^ slideAttacks(from, antiDiagonalMask[from])) & ~blackBoard;
 				for (long bb = bishopMap; bb != 0; bb &= bb - 1) {
-					int to = convert.get(bb & -bb);
+					int to = Long.numberOfTrailingZeros(bb);
 					l2.get(0)[2][to] -= genes[8 + 64] * genes[to];
 				}
 				break;
 			case QUEEN:
 				long queenMap = (slideAttacks(from, rankMask[from]) ^ slideAttacks(from, fileMask[from]) ^ slideAttacks(from, diagonalMask[from]) ^ slideAttacks(from, antiDiagonalMask[from])) & ~blackBoard;
 				for (long qb = queenMap; qb != 0; qb &= qb - 1) {
-					int to = convert.get(qb & -qb);
+					int to = Long.numberOfTrailingZeros(qb);
 					l2.get(0)[3][to] -= genes[9 + 64] * genes[to];
 				}
 				break;
 			case KING:
 				long kingMap = kingMoves[from] & ~blackBoard;
 				for (long kb = kingMap; kb != 0; kb &= kb - 1) {
-					int to = convert.get(kb & -kb);
+					int to = Long.numberOfTrailingZeros(kb);
 					l2.get(0)[4][to] -= genes[10 + 64] * genes[to];
 				}
 				break;
 			}
 		}
-		a = blackPawns << 9;
-		d = a & 0b1111111011111110111111101111111011111110111111101111111011111110L;
+		a = blackPawns >>> 9;
+		d = a & 0b0111111101111111011111110111111101111111011111110111111101111111L;
 		// left captures, no promotion, no en passant
 		for (long lb = d & whiteBoard; lb != 0; lb &= lb - 1) {
-			int to = convert.get(lb & -lb);
+			int to = Long.numberOfTrailingZeros(lb);
 			l2.get(0)[5][to] -= genes[11 + 64] * genes[to];
 		}
 		// left captures, en passant
-		if (ep && (d & sq[eps]) != 0) {
+		if (ep && (d & (1L << eps)) != 0) {
 			l2.get(0)[5][eps + 8] -= genes[11 + 64] * genes[eps + 8];
 		}
 		// right captures
-		a = blackPawns << 7;
-		d = a & 0b0111111101111111011111110111111101111111011111110111111101111111L;
+		a = blackPawns >>> 7;
+		d = a & 0b1111111011111110111111101111111011111110111111101111111011111110L;
 		// right captures, no promotion, no en passant
 		for (long lb = d & whiteBoard; lb != 0; lb &= lb - 1) {
-			int to = convert.get(lb & -lb);
+			int to = Long.numberOfTrailingZeros(lb);
 			l2.get(0)[5][to] -= genes[11 + 64] * genes[to];
 		}
 		// right captures, en passant
-		if (ep && (d & sq[eps]) != 0) {
+		if (ep && (d & (1L << eps)) != 0) {
 			l2.get(0)[5][eps + 8] -= genes[11 + 64] * genes[eps + 8];
 		}
 		return 0; //Outdated method
@@ -3161,15 +3100,10 @@ public class BoardState {
 	}
 
 	public static String bitBoardToString(long x) {
-		long k1 = 0x5555555555555555L, k2 = 0x3333333333333333L, k4 = 0x0f0f0f0f0f0f0f0fL;
-		x = ((x >>> 1) & k1) + 2 * (x & k1);
-		x = ((x >>> 2) & k2) + 4 * (x & k2);
-		x = ((x >>> 4) & k4) + 16 * (x & k4);
 		StringBuilder sb = new StringBuilder();
 		for (int j = 7; j >= 0; j--) {
 			for (int i = 0; i < 8; i++) {
-				sb.append(x & 1);
-				x = x >>> 1;
+				sb.append((x >>> (8 * j + i)) & 1);
 			}
 			sb.append('\n');
 		}
@@ -3208,7 +3142,40 @@ public class BoardState {
 	}
 
 	public int hashCode() {
-		//		return hc;
-		return 0;
+		return (int) (hc ^ (hc >>> 32));
+	}
+
+	// 64-bit zobrist key of the pieces, castling rights and en passant square, maintained incrementally
+	public long zobrist() {
+		return hc;
+	}
+
+	// castling rights and en passant part of the zobrist key
+	private long stateHash() {
+		long h = 0;
+		if (whiteKingside) {
+			h ^= castlingKeys[0];
+		}
+		if (whiteQueenside) {
+			h ^= castlingKeys[1];
+		}
+		if (blackKingside) {
+			h ^= castlingKeys[2];
+		}
+		if (blackQueenside) {
+			h ^= castlingKeys[3];
+		}
+		if (ep) {
+			h ^= epKeys[eps];
+		}
+		return h;
+	}
+
+	private long computeHash() {
+		long h = stateHash();
+		for (int i = 0; i < 64; i++) {
+			h ^= whiteKeys[whiteMailbox[i].ordinal()][i] ^ blackKeys[blackMailbox[i].ordinal()][i];
+		}
+		return h;
 	}
 }
\ No newline at end of file